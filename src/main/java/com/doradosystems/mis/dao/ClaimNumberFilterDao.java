@@ -0,0 +1,139 @@
+package com.doradosystems.mis.dao;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import com.doradosystems.data.dao.AbstractDao;
+import com.doradosystems.mis.domain.ClaimNumberFilter;
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+
+/**
+ * DAO for performing operations on {@link ClaimNumberFilter} records.
+ */
+public class ClaimNumberFilterDao extends AbstractDao {
+
+    /**
+     * Receives the claim numbers read by
+     * {@link ClaimNumberFilterDao#forEachClaimNumber(long, long, ClaimNumberCallback)}.
+     */
+    @FunctionalInterface
+    public interface ClaimNumberCallback {
+
+        /**
+         * @param claimNumber The claim number, which may be {@code null}.
+         * @param recordId The {@link ClaimValidationRecord#getId() id} of its record.
+         * @param createDate When its record was inserted, in milliseconds since the epoch.
+         */
+        void accept(String claimNumber, long recordId, long createDate);
+    }
+
+    /**
+     * SQL for inserting a single {@link ClaimNumberFilter} record.
+     */
+    private static final String INSERT_SQL =
+            "insert into claim_number_filter" +
+                    "(client_id, filter, last_record_id) " +
+                    "values(?, ?, ?)";
+    
+    /**
+     * SQL for selecting the {@link ClaimNumberFilter} record of a client.
+     */
+    private static final String SELECT_CLAIM_NUMBER_FILTER_BY_CLIENT_SQL =
+            "select filter, last_record_id from claim_number_filter where client_id = ?";
+    
+    /**
+     * SQL to replace the filter of a {@link ClaimNumberFilter} record.
+     */
+    private static final String UPDATE_CLAIM_NUMBER_FILTER_SQL =
+            "update claim_number_filter set filter = ?, last_record_id = ? " +
+                    "where client_id = ?";
+    
+    /**
+     * SQL for selecting the {@link ClaimValidationRecord#getClaimNumber() claim numbers}
+     * of a client's {@link ClaimValidationRecord ClaimValidationRecords} after a
+     * particular record id, in id order.
+     */
+    private static final String SELECT_CLAIM_NUMBERS_BY_CLIENT_AFTER_RECORD_SQL =
+            "select r.id, r.claim_number, r.create_date " +
+                    "from claim_validation_record r " +
+                    "join claim_validation_batch b on b.id = r.batch_id " +
+                    "where b.client_id = ? and r.id > ? order by r.id";
+    
+    /**
+     * Constructs a new {@link ClaimNumberFilterDao} using the provided
+     * {@link DataSource} to initialize the {@link JdbcTemplate}.
+     * 
+     * @param dataSource The {@link DataSource} to use to initialize the
+     * {@link JdbcTemplate}.
+     */
+    public ClaimNumberFilterDao(final DataSource dataSource) {
+        super(dataSource);
+    }
+    
+    /**
+     * Retrieves the {@link ClaimNumberFilter} of a client.
+     * 
+     * @param clientId The client to retrieve the filter of.
+     * @return The {@link ClaimNumberFilter}, or {@code null} if none has been saved.
+     */
+    public ClaimNumberFilter get(final long clientId) {
+        final List<ClaimNumberFilter> filters = jdbcTemplate.query(
+                SELECT_CLAIM_NUMBER_FILTER_BY_CLIENT_SQL,
+                new Object[]{ clientId },
+                (rs, count) -> {
+                    return new ClaimNumberFilter(
+                            clientId,
+                            rs.getBytes("filter"),
+                            rs.getLong("last_record_id")
+                            );
+                });
+        return filters.isEmpty() ? null : filters.get(0);
+    }
+    
+    /**
+     * Saves the {@link ClaimNumberFilter} of a client, replacing any saved before.
+     * 
+     * @param claimNumberFilter The {@link ClaimNumberFilter} to save.
+     */
+    public void save(final ClaimNumberFilter claimNumberFilter) {
+        final int updated = jdbcTemplate.update(
+                UPDATE_CLAIM_NUMBER_FILTER_SQL,
+                claimNumberFilter.getFilter(),
+                claimNumberFilter.getLastRecordId(),
+                claimNumberFilter.getClientId());
+        if(updated == 0) {
+            jdbcTemplate.update(
+                    INSERT_SQL,
+                    claimNumberFilter.getClientId(),
+                    claimNumberFilter.getFilter(),
+                    claimNumberFilter.getLastRecordId());
+        }
+    }
+    
+    /**
+     * Streams the {@link ClaimValidationRecord#getClaimNumber() claim numbers} of a
+     * client's {@link ClaimValidationRecord ClaimValidationRecords} with an id above
+     * {@code afterRecordId}, in id order, without holding them all in memory.
+     * 
+     * @param clientId The client to read the claim numbers of.
+     * @param afterRecordId Only records with a greater {@link ClaimValidationRecord#getId() id}
+     * are read.
+     * @param action Called with each claim number, the id of its record and when the
+     * record was inserted.
+     */
+    public void forEachClaimNumber(final long clientId, final long afterRecordId,
+            final ClaimNumberCallback action) {
+        jdbcTemplate.query(
+                SELECT_CLAIM_NUMBERS_BY_CLIENT_AFTER_RECORD_SQL,
+                new Object[]{ clientId, afterRecordId },
+                (RowCallbackHandler) rs -> {
+                    final Timestamp createDate = rs.getTimestamp("create_date");
+                    action.accept(rs.getString("claim_number"), rs.getLong("id"),
+                            createDate == null ? 0 : createDate.getTime());
+                });
+    }
+}
@@ -0,0 +1,311 @@
+package com.doradosystems.mis.dao;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.doradosystems.mis.domain.ClaimNumberFilter;
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+import com.doradosystems.mis.util.ScalableBloomFilter;
+
+/**
+ * Per-client {@link ScalableBloomFilter ScalableBloomFilters} of the
+ * {@link ClaimValidationRecord#getClaimNumber() claim numbers} already loaded, used
+ * by {@link ClaimValidationRecordDao} to rule out duplicates without a query.
+ * <p>
+ * A client's filter is read from the {@link ClaimNumberFilterDao} the first time it
+ * is needed, or built from the client's records if none was saved. Records inserted
+ * through {@link #add(long, String)} are added as they are inserted, so checks between
+ * top-ups cost no query. Records inserted any other way are picked up by the first
+ * check more than {@link #setRefreshInterval(long) refreshInterval} after the last
+ * top-up, which reads the records inserted since, or by {@link #refresh()}.
+ * <p>
+ * Only the top-up scan moves a filter's watermark, the last record id it is known to
+ * cover, and never past a record younger than {@link #setSettleTime(long) settleTime}:
+ * ids are assigned at insert but become visible at commit, so a lower id may still
+ * commit after a higher one has been scanned. Each top-up reads from the highest id
+ * scanned so far, and once every settleTime it reads again from the watermark to pick
+ * up such late commits. This makes the saved filter safe to lag behind, so
+ * {@link #flush()} only needs to be called periodically, for example after each file
+ * is loaded.
+ * <p>
+ * Claim numbers of records whose insert is later rolled back, or that are archived,
+ * stay in the filter, which only costs an extra query. Filters are rebuilt from the
+ * database every {@link #setRebuildInterval(long) rebuildInterval} to drop them.
+ * <p>
+ * Each client's filter is locked separately, so a client's database reads only hold
+ * up checks of that client.
+ */
+public class ClaimNumberFilters {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClaimNumberFilters.class);
+
+    private final ClaimNumberFilterDao claimNumberFilterDao;
+    private int initialCapacity = 10000;
+    private double falsePositiveRate = 0.001;
+    private long refreshInterval = TimeUnit.MINUTES.toMillis(1);
+    private long settleTime = TimeUnit.MINUTES.toMillis(10);
+    private long rebuildInterval = TimeUnit.DAYS.toMillis(1);
+    private LongSupplier clock = System::currentTimeMillis;
+
+    private final ConcurrentMap<Long, ClientFilter> filters = new ConcurrentHashMap<>();
+
+    public ClaimNumberFilters(final ClaimNumberFilterDao claimNumberFilterDao) {
+        this.claimNumberFilterDao = claimNumberFilterDao;
+    }
+
+    /**
+     * @param initialCapacity The number of claim numbers a new filter holds before it grows.
+     */
+    public void setInitialCapacity(final int initialCapacity) {
+        this.initialCapacity = initialCapacity;
+    }
+
+    /**
+     * @param falsePositiveRate The false positive rate of a new filter.
+     */
+    public void setFalsePositiveRate(final double falsePositiveRate) {
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * @param refreshInterval The time, in milliseconds, for which a filter is used
+     * without being topped up. Records inserted other than through
+     * {@link #add(long, String)} may be missed for this long. Defaults to a minute; 0
+     * tops up before every check, costing a query per check.
+     */
+    public void setRefreshInterval(final long refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * @param settleTime The time, in milliseconds, after its insert by which a record is
+     * assumed to be committed or rolled back. Defaults to 10 minutes.
+     */
+    public void setSettleTime(final long settleTime) {
+        this.settleTime = settleTime;
+    }
+
+    /**
+     * @param rebuildInterval The time, in milliseconds, after which a filter is rebuilt
+     * from the database. Defaults to a day.
+     */
+    public void setRebuildInterval(final long rebuildInterval) {
+        this.rebuildInterval = rebuildInterval;
+    }
+
+    /**
+     * @param clock The source of the current time, in milliseconds.
+     */
+    public void setClock(final LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Checks whether a client may already have a record with a claim number.
+     *
+     * @param clientId The client to check.
+     * @param claimNumber The claim number to check for.
+     * @return {@code false} if the client definitely has no such record.
+     */
+    public boolean mightContain(final long clientId, final String claimNumber) {
+        if(claimNumber == null) {
+            return false;
+        }
+        final ClientFilter client = clientFilter(clientId);
+        synchronized(client) {
+            final LoadedFilter loaded = load(clientId, client);
+            if(loaded.expired || clock.getAsLong() - loaded.refreshed >= refreshInterval) {
+                client.loaded = refresh(clientId, loaded);
+            }
+            return client.loaded.filter.mightContain(claimNumber);
+        }
+    }
+
+    /**
+     * Adds the claim number of a newly inserted record to its client's filter. The
+     * filter's watermark is left for the next top-up to move.
+     *
+     * @param clientId The client the record belongs to.
+     * @param claimNumber The claim number of the record.
+     */
+    public void add(final long clientId, final String claimNumber) {
+        if(claimNumber != null) {
+            final ClientFilter client = clientFilter(clientId);
+            synchronized(client) {
+                load(clientId, client).filter.add(claimNumber);
+            }
+        }
+    }
+
+    /**
+     * Makes the next check of every loaded filter top it up first, for records
+     * inserted without their client being known.
+     */
+    public void expire() {
+        for(final ClientFilter client : filters.values()) {
+            final LoadedFilter loaded = client.loaded;
+            if(loaded != null) {
+                loaded.expired = true;
+            }
+        }
+    }
+
+    /**
+     * Tops up every loaded filter, rebuilding those due, for example from a scheduler.
+     */
+    public void refresh() {
+        for(final Map.Entry<Long, ClientFilter> entry : filters.entrySet()) {
+            final ClientFilter client = entry.getValue();
+            synchronized(client) {
+                if(client.loaded != null) {
+                    client.loaded = refresh(entry.getKey(), client.loaded);
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuilds a client's filter from the database.
+     *
+     * @param clientId The client whose filter to rebuild.
+     */
+    public void rebuild(final long clientId) {
+        final ClientFilter client = clientFilter(clientId);
+        synchronized(client) {
+            client.loaded = build(clientId);
+        }
+    }
+
+    /**
+     * Saves every filter changed since it was last saved.
+     */
+    public void flush() {
+        for(final Map.Entry<Long, ClientFilter> entry : filters.entrySet()) {
+            final ClientFilter client = entry.getValue();
+            synchronized(client) {
+                final LoadedFilter loaded = client.loaded;
+                if(loaded != null && loaded.dirty) {
+                    claimNumberFilterDao.save(new ClaimNumberFilter(entry.getKey(), loaded.filter.toByteArray(),
+                            loaded.lastRecordId));
+                    loaded.dirty = false;
+                }
+            }
+        }
+    }
+
+    private ClientFilter clientFilter(final long clientId) {
+        return filters.computeIfAbsent(clientId, id -> new ClientFilter());
+    }
+
+    /**
+     * Returns a client's filter, reading or building it first if it is not loaded.
+     * Must be called holding the lock of the {@link ClientFilter}.
+     */
+    private LoadedFilter load(final long clientId, final ClientFilter client) {
+        LoadedFilter loaded = client.loaded;
+        if(loaded != null) {
+            return loaded;
+        }
+        final ClaimNumberFilter saved = claimNumberFilterDao.get(clientId);
+        if(saved == null) {
+            loaded = build(clientId);
+        } else {
+            loaded = new LoadedFilter(ScalableBloomFilter.fromByteArray(saved.getFilter()), saved.getLastRecordId(),
+                    clock.getAsLong());
+            topUp(clientId, loaded, true);
+        }
+        client.loaded = loaded;
+        return loaded;
+    }
+
+    /**
+     * Tops up a filter, or rebuilds it if it is due.
+     *
+     * @return The filter to use from now on.
+     */
+    private LoadedFilter refresh(final long clientId, final LoadedFilter loaded) {
+        if(clock.getAsLong() - loaded.built >= rebuildInterval) {
+            return build(clientId);
+        }
+        topUp(clientId, loaded, clock.getAsLong() - loaded.settled >= settleTime);
+        return loaded;
+    }
+
+    private LoadedFilter build(final long clientId) {
+        final LoadedFilter loaded = new LoadedFilter(new ScalableBloomFilter(initialCapacity, falsePositiveRate), 0,
+                clock.getAsLong());
+        topUp(clientId, loaded, true);
+        loaded.dirty = true;
+        LOG.debug("Built claim number filter of client {} with {} claim numbers.", clientId, loaded.filter.size());
+        return loaded;
+    }
+
+    /**
+     * Adds the claim numbers of records past the filter's scanned id, or past its
+     * watermark if {@code settle}, and moves the watermark over the records read that
+     * are older than {@link #settleTime}, stopping at the first younger one.
+     */
+    private void topUp(final long clientId, final LoadedFilter loaded, final boolean settle) {
+        final long now = clock.getAsLong();
+        final long settledBefore = now - settleTime;
+        final long sizeBefore = loaded.filter.size();
+        final long lastRecordIdBefore = loaded.lastRecordId;
+        final boolean[] settling = { settle };
+        claimNumberFilterDao.forEachClaimNumber(clientId, settle ? loaded.lastRecordId : loaded.scannedRecordId,
+                (claimNumber, recordId, createDate) -> {
+                    if(claimNumber != null && (recordId > loaded.scannedRecordId
+                            || !loaded.filter.mightContain(claimNumber))) {
+                        loaded.filter.add(claimNumber);
+                    }
+                    loaded.scannedRecordId = Math.max(loaded.scannedRecordId, recordId);
+                    if(settling[0] && createDate < settledBefore) {
+                        loaded.lastRecordId = recordId;
+                    } else {
+                        settling[0] = false;
+                    }
+                });
+        loaded.refreshed = now;
+        loaded.expired = false;
+        if(settle) {
+            loaded.settled = now;
+        }
+        loaded.dirty |= loaded.filter.size() != sizeBefore || loaded.lastRecordId != lastRecordIdBefore;
+    }
+
+    /**
+     * The lock of a client's filter, and the filter once it is loaded.
+     */
+    private static final class ClientFilter {
+
+        private volatile LoadedFilter loaded;
+    }
+
+    /**
+     * A client's filter, the last record it is known to cover, and the last record
+     * read into it.
+     */
+    private static final class LoadedFilter {
+
+        private final ScalableBloomFilter filter;
+        private final long built;
+        private long lastRecordId;
+        private long scannedRecordId;
+        private long refreshed;
+        private long settled;
+        private volatile boolean expired;
+        private boolean dirty;
+
+        private LoadedFilter(final ScalableBloomFilter filter, final long lastRecordId, final long built) {
+            this.filter = filter;
+            this.lastRecordId = lastRecordId;
+            this.scannedRecordId = lastRecordId;
+            this.built = built;
+        }
+    }
+}
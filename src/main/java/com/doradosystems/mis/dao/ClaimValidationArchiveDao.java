@@ -0,0 +1,308 @@
+package com.doradosystems.mis.dao;
+
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import com.doradosystems.data.dao.AbstractDao;
+import com.doradosystems.mis.domain.ClaimValidationBatch;
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+import com.doradosystems.mis.domain.ClaimValidationResponse;
+
+/**
+ * DAO for moving the {@link ClaimValidationRecord ClaimValidationRecords} and
+ * {@link ClaimValidationResponse ClaimValidationResponses} of finished
+ * {@link ClaimValidationBatch ClaimValidationBatches} into archive tables.
+ * <p>
+ * The archive tables, claim_validation_record_archive,
+ * claim_validation_response_archive and, if bodies are stored separately,
+ * claim_validation_record_body_archive, must have the same columns in the same
+ * order as the tables they archive (for example, MySQL's
+ * {@code create table claim_validation_record_archive like claim_validation_record}),
+ * without the foreign keys. Rows are copied with an existence check, so a chunk
+ * that failed part way may simply be retried.
+ * <p>
+ * Where the hot tables are partitioned by batch, with one partition per batch
+ * named {@code p<batchId>} on MySQL or a partition table named
+ * {@code <table>_p<batchId>} on PostgreSQL, the rows of an archived batch can be
+ * removed by {@link #dropBatchPartitions(long)} instead of being deleted. Whether a
+ * batch has such partitions is checked with {@link #hasBatchPartitions(long)}.
+ * <p>
+ * The MySQL DDL for the archive tables is in {@code db/mysql/claim-validation-archive.sql}.
+ */
+public class ClaimValidationArchiveDao extends AbstractDao {
+
+    /**
+     * SQL to select the {@link ClaimValidationRecord#getId() ids} of the
+     * {@link ClaimValidationRecord ClaimValidationRecords} of a batch, in id order.
+     */
+    private static final String SELECT_RECORD_IDS_BY_BATCH_SQL =
+            "select id from claim_validation_record where batch_id = ? and id > ? order by id limit ?";
+    
+    /**
+     * SQL to select the {@link ClaimValidationResponse#getId() ids} of the
+     * {@link ClaimValidationResponse ClaimValidationResponses} of a batch, in id order.
+     */
+    private static final String SELECT_RESPONSE_IDS_BY_BATCH_SQL =
+            "select id from claim_validation_response where batch_id = ? and id > ? order by id limit ?";
+    
+    /**
+     * SQL to count the MySQL partitions of a table in the current schema with a
+     * particular name.
+     */
+    private static final String COUNT_MYSQL_PARTITIONS_SQL =
+            "select count(0) from information_schema.partitions " +
+                    "where table_schema = database() and table_name = ? and partition_name = ?";
+    
+    /**
+     * SQL to count the PostgreSQL partition tables with a particular name attached to a
+     * particular parent table, both in the current schema search path.
+     */
+    private static final String COUNT_POSTGRESQL_PARTITIONS_SQL =
+            "select count(0) from pg_inherits i " +
+                    "join pg_class p on p.oid = i.inhparent " +
+                    "join pg_class c on c.oid = i.inhrelid " +
+                    "where p.relname = ? and c.relname = ? and pg_table_is_visible(c.oid)";
+    
+    /**
+     * SQL template to copy {@link ClaimValidationRecord ClaimValidationRecords} into
+     * the archive, skipping any already copied. The {@link InListSql#IN_LIST}
+     * placeholder is expanded for each chunk of ids.
+     */
+    private static final String ARCHIVE_RECORDS_BY_IDS_SQL =
+            "insert into claim_validation_record_archive " +
+                    "select * from claim_validation_record r where r.id in (" + InListSql.IN_LIST + ") " +
+                    "and not exists (select 1 from claim_validation_record_archive a where a.id = r.id)";
+    
+    /**
+     * SQL template to copy the separately stored bodies of
+     * {@link ClaimValidationRecord ClaimValidationRecords} into the archive, skipping
+     * any already copied.
+     */
+    private static final String ARCHIVE_RECORD_BODIES_BY_IDS_SQL =
+            "insert into claim_validation_record_body_archive " +
+                    "select * from claim_validation_record_body b where b.record_id in (" + InListSql.IN_LIST + ") " +
+                    "and not exists (select 1 from claim_validation_record_body_archive a " +
+                    "where a.record_id = b.record_id)";
+    
+    /**
+     * SQL template to copy {@link ClaimValidationResponse ClaimValidationResponses}
+     * into the archive, skipping any already copied.
+     */
+    private static final String ARCHIVE_RESPONSES_BY_IDS_SQL =
+            "insert into claim_validation_response_archive " +
+                    "select * from claim_validation_response r where r.id in (" + InListSql.IN_LIST + ") " +
+                    "and not exists (select 1 from claim_validation_response_archive a where a.id = r.id)";
+    
+    /**
+     * SQL template to delete {@link ClaimValidationRecord ClaimValidationRecords} by
+     * {@link ClaimValidationRecord#getId() id}.
+     */
+    private static final String DELETE_RECORDS_BY_IDS_SQL =
+            "delete from claim_validation_record where id in (" + InListSql.IN_LIST + ")";
+    
+    /**
+     * SQL template to delete separately stored record bodies by record id.
+     */
+    private static final String DELETE_RECORD_BODIES_BY_IDS_SQL =
+            "delete from claim_validation_record_body where record_id in (" + InListSql.IN_LIST + ")";
+    
+    /**
+     * SQL template to delete {@link ClaimValidationResponse ClaimValidationResponses} by
+     * {@link ClaimValidationResponse#getId() id}.
+     */
+    private static final String DELETE_RESPONSES_BY_IDS_SQL =
+            "delete from claim_validation_response where id in (" + InListSql.IN_LIST + ")";
+    
+    /**
+     * The tables partitioned by batch, whose partitions
+     * {@link #dropBatchPartitions(long)} drops.
+     */
+    private static final String[] PARTITIONED_TABLES = { "claim_validation_record", "claim_validation_response" };
+    
+    /**
+     * The {@link SqlDialect} of the database behind the {@link DataSource}.
+     */
+    private final SqlDialect dialect;
+    
+    /**
+     * Whether record bodies are archived along with their records.
+     */
+    private boolean archiveRecordBodies;
+    
+    /**
+     * Constructs a new {@link ClaimValidationArchiveDao} using the provided
+     * {@link DataSource} to initialize the {@link JdbcTemplate}.
+     * <p>
+     * The database is assumed to be {@link SqlDialect#MYSQL MySQL}.
+     * 
+     * @param dataSource The {@link DataSource} to use to initialize the
+     * {@link JdbcTemplate}.
+     */
+    public ClaimValidationArchiveDao(final DataSource dataSource) {
+        this(dataSource, SqlDialect.MYSQL);
+    }
+    
+    /**
+     * Constructs a new {@link ClaimValidationArchiveDao} using the provided
+     * {@link DataSource} to initialize the {@link JdbcTemplate}.
+     * 
+     * @param dataSource The {@link DataSource} to use to initialize the
+     * {@link JdbcTemplate}.
+     * @param dialect The {@link SqlDialect} of the database behind the
+     * {@link DataSource}.
+     */
+    public ClaimValidationArchiveDao(final DataSource dataSource, final SqlDialect dialect) {
+        super(dataSource);
+        this.dialect = dialect;
+    }
+    
+    public SqlDialect getDialect() {
+        return dialect;
+    }
+    
+    /**
+     * @param archiveRecordBodies {@code true} to archive the bodies in
+     * claim_validation_record_body along with their records, as needed unless
+     * bodies are stored {@link ClaimValidationRecordDao.RecordBodyStorage#INLINE INLINE}.
+     */
+    public void setArchiveRecordBodies(final boolean archiveRecordBodies) {
+        this.archiveRecordBodies = archiveRecordBodies;
+    }
+    
+    /**
+     * @return {@code true} if the dialect can drop a batch's partitions with
+     * {@link #dropBatchPartitions(long)}. Whether the tables are actually partitioned
+     * by batch is checked by {@link #hasBatchPartitions(long)}.
+     */
+    public boolean supportsBatchPartitions() {
+        return dialect.isA(SqlDialect.MYSQL) || dialect == SqlDialect.POSTGRESQL;
+    }
+    
+    /**
+     * Checks whether every table partitioned by batch has a partition for a batch, so
+     * that {@link #dropBatchPartitions(long)} removes all of the batch's rows.
+     * 
+     * @param batchId The {@link ClaimValidationBatch#getId() id} of the batch.
+     * @return {@code true} if the dialect {@link #supportsBatchPartitions() supports batch
+     * partitions} and each table has a partition for the batch.
+     */
+    public boolean hasBatchPartitions(final long batchId) {
+        if(!supportsBatchPartitions()) {
+            return false;
+        }
+        for(final String table : PARTITIONED_TABLES) {
+            final int partitions = dialect == SqlDialect.POSTGRESQL
+                    ? jdbcTemplate.queryForObject(
+                            COUNT_POSTGRESQL_PARTITIONS_SQL,
+                            new Object[]{ table, table + "_p" + batchId },
+                            Integer.class)
+                    : jdbcTemplate.queryForObject(
+                            COUNT_MYSQL_PARTITIONS_SQL,
+                            new Object[]{ table, "p" + batchId },
+                            Integer.class);
+            if(partitions == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Copies the next chunk of a batch's {@link ClaimValidationRecord ClaimValidationRecords}
+     * into the archive, in id order, and optionally deletes them from the hot tables.
+     * <p>
+     * This should be called within a transaction.
+     * 
+     * @param batchId The {@link ClaimValidationBatch#getId() id} of the batch.
+     * @param afterId Only records with a greater {@link ClaimValidationRecord#getId() id}
+     * are archived. When deleting, 0 may always be passed.
+     * @param limit The most records to archive, at most {@link InListSql#MAX_CHUNK_SIZE}.
+     * @param delete {@code true} to delete the records once copied.
+     * @return The greatest {@link ClaimValidationRecord#getId() id} archived, or -1
+     * if no records remain.
+     */
+    public long archiveRecords(final long batchId, final long afterId, final int limit, final boolean delete) {
+        final Object[] ids = nextIds(SELECT_RECORD_IDS_BY_BATCH_SQL, batchId, afterId, limit);
+        if(ids.length == 0) {
+            return -1;
+        }
+        jdbcTemplate.update(InListSql.expand(ARCHIVE_RECORDS_BY_IDS_SQL, ids.length), ids);
+        if(archiveRecordBodies) {
+            jdbcTemplate.update(InListSql.expand(ARCHIVE_RECORD_BODIES_BY_IDS_SQL, ids.length), ids);
+        }
+        if(delete) {
+            if(archiveRecordBodies) {
+                jdbcTemplate.update(InListSql.expand(DELETE_RECORD_BODIES_BY_IDS_SQL, ids.length), ids);
+            }
+            jdbcTemplate.update(InListSql.expand(DELETE_RECORDS_BY_IDS_SQL, ids.length), ids);
+        }
+        return (Long) ids[ids.length - 1];
+    }
+    
+    /**
+     * Copies the next chunk of a batch's {@link ClaimValidationResponse ClaimValidationResponses}
+     * into the archive, in id order, and optionally deletes them from the hot table.
+     * <p>
+     * This should be called within a transaction.
+     * 
+     * @param batchId The {@link ClaimValidationBatch#getId() id} of the batch.
+     * @param afterId Only responses with a greater {@link ClaimValidationResponse#getId() id}
+     * are archived. When deleting, 0 may always be passed.
+     * @param limit The most responses to archive, at most {@link InListSql#MAX_CHUNK_SIZE}.
+     * @param delete {@code true} to delete the responses once copied.
+     * @return The greatest {@link ClaimValidationResponse#getId() id} archived, or -1
+     * if no responses remain.
+     */
+    public long archiveResponses(final long batchId, final long afterId, final int limit, final boolean delete) {
+        final Object[] ids = nextIds(SELECT_RESPONSE_IDS_BY_BATCH_SQL, batchId, afterId, limit);
+        if(ids.length == 0) {
+            return -1;
+        }
+        jdbcTemplate.update(InListSql.expand(ARCHIVE_RESPONSES_BY_IDS_SQL, ids.length), ids);
+        if(delete) {
+            jdbcTemplate.update(InListSql.expand(DELETE_RESPONSES_BY_IDS_SQL, ids.length), ids);
+        }
+        return (Long) ids[ids.length - 1];
+    }
+    
+    /**
+     * Drops the partitions holding a batch's records and responses. The rows must
+     * already have been archived, and the caller should have checked
+     * {@link #hasBatchPartitions(long)} before copying them without deleting them.
+     * Partitions already dropped are skipped, so a drop interrupted part way may
+     * simply be retried.
+     * 
+     * @param batchId The {@link ClaimValidationBatch#getId() id} of the batch.
+     * @throws UnsupportedOperationException If the dialect does not
+     * {@link #supportsBatchPartitions() support batch partitions}.
+     */
+    public void dropBatchPartitions(final long batchId) {
+        for(final String table : PARTITIONED_TABLES) {
+            switch(dialect) {
+            case MYSQL:
+            case MYSQL8:
+                if(jdbcTemplate.queryForObject(
+                        COUNT_MYSQL_PARTITIONS_SQL,
+                        new Object[]{ table, "p" + batchId },
+                        Integer.class) > 0) {
+                    jdbcTemplate.execute("alter table " + table + " drop partition p" + batchId);
+                }
+                break;
+            case POSTGRESQL:
+                jdbcTemplate.execute("drop table if exists " + table + "_p" + batchId);
+                break;
+            default:
+                throw new UnsupportedOperationException("Batch partitions are not supported on " + dialect);
+            }
+        }
+    }
+    
+    private Object[] nextIds(final String sql, final long batchId, final long afterId, final int limit) {
+        final List<Long> ids = jdbcTemplate.queryForList(
+                sql,
+                new Object[]{ batchId, afterId, Math.min(limit, InListSql.MAX_CHUNK_SIZE) },
+                Long.class);
+        return ids.toArray();
+    }
+}
@@ -2,10 +2,16 @@ package com.doradosystems.mis.dao;
 
 import java.sql.PreparedStatement;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.sql.DataSource;
 
+import org.springframework.jdbc.core.RowCallbackHandler;
+
 import com.doradosystems.data.dao.AbstractDao;
 import com.doradosystems.exception.NotFoundException;
 import com.doradosystems.exception.UniqueConstraintException;
@@ -24,15 +30,16 @@ public class ClaimValidationBatchDao extends AbstractDao {
      */
     private static final String INSERT_SQL =
             "insert into claim_validation_batch" +
-                    "(client_id, filename, status, run_number, global_control_number) " +
-                    "value(?, ?, ?, ?, ?)";
+                    "(client_id, filename, status, run_number, global_control_number, priority, due_date) " +
+                    "values(?, ?, ?, ?, ?, ?, ?)";
     
     /**
      * SQL for selecting a {@link ClaimValidationBatch} record by it's
      * {@link ClaimValidationBatch#getId() id}.
      */
     private static final String SELECT_CLAIM_VALIDATION_BATCH_SQL =
-            "select client_id, filename, status, run_number, global_control_number, create_date, updated_date " +
+            "select client_id, filename, status, run_number, global_control_number, create_date, updated_date, " +
+                    "priority, due_date " +
                     "from claim_validation_batch where id = ?";
     
     /**
@@ -40,19 +47,116 @@ public class ClaimValidationBatchDao extends AbstractDao {
      * a particular {@link ClaimValidationBatch#getStatus() status}.
      */
     private static final String SELECT_CLAIM_VALIDATION_BATCH_BY_STATUS_SQL =
-            "select id, client_id, filename, run_number, global_control_number, create_date, updated_date " +
+            "select id, client_id, filename, run_number, global_control_number, create_date, updated_date, " +
+                    "priority, due_date " +
                     "from claim_validation_batch where status = ?";
     
+    /**
+     * Condition that leaves out {@link ClaimValidationBatch} records that must not be
+     * claimed yet, because their only remaining records are
+     * {@link com.doradosystems.mis.domain.ClaimValidationRecord.Status#DEFERRED DEFERRED}
+     * until a later time. See {@link #updateStatusAndRunNumber(long, Status, long, Date)}.
+     * <p>
+     * The time is compared with the database's clock, so a batch may be claimed early
+     * or late by as much as the database and application clocks differ.
+     */
+    private static final String CLAIMABLE_CONDITION =
+            "(not_before_date is null or not_before_date <= current_timestamp) ";
+    
     /**
      * SQL for selecting a specific number of {@link ClaimValidationBatch}
      * records with a particular {@link ClaimValidationBatch#getStatus() status}.
      * <p>
      * This orders the records by {@link ClaimValidationBatch#getCreateDate() createDate}
-     * ascending.
+     * ascending, and leaves out records that may not be claimed yet.
      */
     private static final String SELECT_CLAIM_VALIDATION_BATCH_BY_STATUS_WITH_LIMIT_ORDERED_BY_CREATE_DATE_SQL =
-            "select id, client_id, filename, run_number, global_control_number, create_date, updated_date " +
-                    "from claim_validation_batch where status = ? order by create_date ASC limit ?";
+            "select id, client_id, filename, run_number, global_control_number, create_date, updated_date, " +
+                    "priority, due_date " +
+                    "from claim_validation_batch where status = ? and " + CLAIMABLE_CONDITION +
+                    "order by create_date ASC limit ?";
+    
+    /**
+     * SQL for selecting a specific number of {@link ClaimValidationBatch} records
+     * belonging to a particular {@link ClaimValidationBatch#getClientId() client}
+     * with a particular {@link ClaimValidationBatch#getStatus() status}.
+     * <p>
+     * This orders the records by {@link ClaimValidationBatch#getCreateDate() createDate}
+     * ascending, and is served by an index on (client_id, status, create_date). Records
+     * that may not be claimed yet are left out.
+     */
+    private static final String SELECT_CLAIM_VALIDATION_BATCH_BY_CLIENT_AND_STATUS_WITH_LIMIT_ORDERED_BY_CREATE_DATE_SQL =
+            "select id, filename, run_number, global_control_number, create_date, updated_date, " +
+                    "priority, due_date " +
+                    "from claim_validation_batch where client_id = ? and status = ? and " + CLAIMABLE_CONDITION +
+                    "order by create_date ASC limit ?";
+    
+    /**
+     * SQL for counting the number of {@link ClaimValidationBatch} records in a
+     * particular {@link ClaimValidationBatch#getStatus() status} for each client,
+     * leaving out records that may not be claimed yet.
+     */
+    private static final String COUNT_CLAIM_VALIDATION_BATCH_BY_STATUS_GROUPED_BY_CLIENT_SQL =
+            "select client_id, count(0) as total " +
+                    "from claim_validation_batch where status = ? and " + CLAIMABLE_CONDITION +
+                    "group by client_id";
+    
+    /**
+     * SQL for selecting a specific number of {@link ClaimValidationBatch}
+     * records with a particular {@link ClaimValidationBatch#getStatus() status},
+     * most urgent first, leaving out records that may not be claimed yet.
+     * <p>
+     * The ordering clause is appended per {@link SqlDialect}.
+     */
+    private static final String SELECT_CLAIM_VALIDATION_BATCH_BY_STATUS_WITH_LIMIT_SQL =
+            "select id, client_id, filename, run_number, global_control_number, create_date, updated_date, " +
+                    "priority, due_date " +
+                    "from claim_validation_batch where status = ? and " + CLAIMABLE_CONDITION;
+    
+    /**
+     * Logical name of the statement that selects a specific number of
+     * {@link ClaimValidationBatch} records with a particular
+     * {@link ClaimValidationBatch#getStatus() status}, ordered by
+     * {@link ClaimValidationBatch#getPriority() priority}, then
+     * {@link ClaimValidationBatch#getDueDate() dueDate} with batches without one last,
+     * then {@link ClaimValidationBatch#getCreateDate() createDate}.
+     * <p>
+     * This is served by an index on (status, priority, due_date, create_date). MySQL
+     * has no {@code NULLS LAST}, so there the rows of each priority are sorted after
+     * being read from the index.
+     */
+    private static final String SELECT_BY_STATUS_WITH_LIMIT_ORDERED_BY_PRIORITY_AND_DUE_DATE =
+            "selectByStatusWithLimitOrderedByPriorityAndDueDate";
+    
+    /**
+     * Logical name of the statement that selects and locks a specific number of
+     * {@link ClaimValidationBatch} records with a particular
+     * {@link ClaimValidationBatch#getStatus() status}, oldest first.
+     */
+    private static final String LOCK_BY_STATUS_WITH_LIMIT_ORDERED_BY_CREATE_DATE =
+            "lockByStatusWithLimitOrderedByCreateDate";
+    
+    /**
+     * Dialect-specific statements, keyed by logical operation name.
+     * <p>
+     * Where the database supports {@code SKIP LOCKED} ({@link SqlDialect#MYSQL8 MySQL 8.0}
+     * and PostgreSQL), concurrent callers claiming batches skip over rows already
+     * locked by another caller instead of waiting for them.
+     */
+    private static final StatementRegistry STATEMENTS = StatementRegistry.builder()
+            .register(LOCK_BY_STATUS_WITH_LIMIT_ORDERED_BY_CREATE_DATE,
+                    SELECT_CLAIM_VALIDATION_BATCH_BY_STATUS_WITH_LIMIT_ORDERED_BY_CREATE_DATE_SQL + " for update")
+            .register(LOCK_BY_STATUS_WITH_LIMIT_ORDERED_BY_CREATE_DATE, SqlDialect.MYSQL8,
+                    SELECT_CLAIM_VALIDATION_BATCH_BY_STATUS_WITH_LIMIT_ORDERED_BY_CREATE_DATE_SQL + " for update skip locked")
+            .register(LOCK_BY_STATUS_WITH_LIMIT_ORDERED_BY_CREATE_DATE, SqlDialect.POSTGRESQL,
+                    SELECT_CLAIM_VALIDATION_BATCH_BY_STATUS_WITH_LIMIT_ORDERED_BY_CREATE_DATE_SQL + " for update skip locked")
+            .register(SELECT_BY_STATUS_WITH_LIMIT_ORDERED_BY_PRIORITY_AND_DUE_DATE,
+                    SELECT_CLAIM_VALIDATION_BATCH_BY_STATUS_WITH_LIMIT_SQL +
+                            "order by priority ASC, due_date ASC NULLS LAST, create_date ASC limit ?")
+            .register(SELECT_BY_STATUS_WITH_LIMIT_ORDERED_BY_PRIORITY_AND_DUE_DATE, SqlDialect.MYSQL,
+                    SELECT_CLAIM_VALIDATION_BATCH_BY_STATUS_WITH_LIMIT_SQL +
+                            "order by priority ASC, due_date IS NULL, due_date ASC, create_date ASC limit ?")
+            .build();
     
     /**
      * SQL for counting the number of {@link ClaimValidationBatch} records
@@ -62,6 +166,16 @@ public class ClaimValidationBatchDao extends AbstractDao {
             "select count(0) as total " +
                     "from claim_validation_batch where status = ?";
     
+    /**
+     * SQL for selecting the {@link ClaimValidationBatch#getId() ids} of the
+     * {@link ClaimValidationBatch} records in a particular
+     * {@link ClaimValidationBatch#getStatus() status} that were last updated
+     * before a given time, oldest first.
+     */
+    private static final String SELECT_CLAIM_VALIDATION_BATCH_IDS_BY_STATUS_UPDATED_BEFORE_SQL =
+            "select id from claim_validation_batch where status = ? and updated_date < ? " +
+                    "order by updated_date ASC limit ?";
+    
     /**
      * SQL to update the {@link ClaimValidationBatch#getStatus() status} of
      * a {@link ClaimValidationBatch} record.
@@ -70,24 +184,58 @@ public class ClaimValidationBatchDao extends AbstractDao {
             "update claim_validation_batch set status = ? " +
                     "where id = ?";
     
+    /**
+     * SQL to update the {@link ClaimValidationBatch#getStatus() status} of
+     * a {@link ClaimValidationBatch} record, only if it is still in an
+     * expected status.
+     */
+    private static final String UPDATE_CLAIM_VALIDATION_BATCH_STATUS_IF_CURRENT_SQL =
+            "update claim_validation_batch set status = ? " +
+                    "where id = ? and status = ?";
+    
     /**
      * SQL to update the {@link ClaimValidationBatch#getStatus() status} and
      * {@link ClaimValidationBatch#getRunNumber() runNumber} of a {@link ClaimValidationBatch}
-     * record.
+     * record, and the time before which it may not be claimed.
      */
     private static final String UPDATE_CLAIM_VALIDATION_BATCH_STATUS_AND_RUN_SQL =
-            "update claim_validation_batch set status = ?, run_number = ? " +
+            "update claim_validation_batch set status = ?, run_number = ?, not_before_date = ? " +
                     "where id = ?";
     
+    /**
+     * The {@link SqlDialect} of the database behind the {@link DataSource}.
+     */
+    private final SqlDialect dialect;
+    
     /**
      * Constructs a new {@link ClaimValidationBatchDao} using the provided
      * {@link DataSource} to initialize the {@link JdbcTemplate}.
+     * <p>
+     * The database is assumed to be {@link SqlDialect#MYSQL MySQL}.
      * 
      * @param dataSource The {@link DataSource} to use to initialize the
      * {@link JdbcTemplate}.
      */
     public ClaimValidationBatchDao(final DataSource dataSource) {
+        this(dataSource, SqlDialect.MYSQL);
+    }
+    
+    /**
+     * Constructs a new {@link ClaimValidationBatchDao} using the provided
+     * {@link DataSource} to initialize the {@link JdbcTemplate}.
+     * 
+     * @param dataSource The {@link DataSource} to use to initialize the
+     * {@link JdbcTemplate}.
+     * @param dialect The {@link SqlDialect} of the database behind the
+     * {@link DataSource}.
+     */
+    public ClaimValidationBatchDao(final DataSource dataSource, final SqlDialect dialect) {
         super(dataSource);
+        this.dialect = dialect;
+    }
+    
+    public SqlDialect getDialect() {
+        return dialect;
     }
     
     /**
@@ -112,6 +260,10 @@ public class ClaimValidationBatchDao extends AbstractDao {
                     preparedStatement.setString(3, claimValidationBatch.getStatus().toString());
                     preparedStatement.setLong(4, claimValidationBatch.getRunNumber());
                     preparedStatement.setString(5, claimValidationBatch.getGlobalControlNumber());
+                    preparedStatement.setInt(6, claimValidationBatch.getPriority() == null
+                            ? ClaimValidationBatch.DEFAULT_PRIORITY : claimValidationBatch.getPriority());
+                    preparedStatement.setTimestamp(7, claimValidationBatch.getDueDate() == null
+                            ? null : new Timestamp(claimValidationBatch.getDueDate().getTime()));
                     return preparedStatement;
                 });
     }
@@ -136,7 +288,9 @@ public class ClaimValidationBatchDao extends AbstractDao {
                             rs.getLong("run_number"),
                             rs.getString("global_control_number"),
                             rs.getTimestamp("create_date"),
-                            rs.getTimestamp("updated_date")
+                            rs.getTimestamp("updated_date"),
+                            rs.getInt("priority"),
+                            rs.getTimestamp("due_date")
                             );
                 }, id);
     }
@@ -150,6 +304,7 @@ public class ClaimValidationBatchDao extends AbstractDao {
      * @return A {@link List} of all {@link ClaimValidationBatch} records
      * currently in the provided {@link ClaimValidationBatch#getStatus() status}.
      */
+    @ReadReplica(maxStalenessMillis = 30000)
     public List<ClaimValidationBatch> getByStatus(final Status status) {
         return jdbcTemplate.query(
                 SELECT_CLAIM_VALIDATION_BATCH_BY_STATUS_SQL,
@@ -163,7 +318,9 @@ public class ClaimValidationBatchDao extends AbstractDao {
                             rs.getLong("run_number"),
                             rs.getString("global_control_number"),
                             rs.getTimestamp("create_date"),
-                            rs.getTimestamp("updated_date")
+                            rs.getTimestamp("updated_date"),
+                            rs.getInt("priority"),
+                            rs.getTimestamp("due_date")
                             );
                 });
     }
@@ -173,7 +330,8 @@ public class ClaimValidationBatchDao extends AbstractDao {
      * particular {@link ClaimValidationBatch#getStatus() status}.
      * <p>
      * This method will return values in ascending order of creation, such
-     * that the oldest values are the first ones returned.
+     * that the oldest values are the first ones returned. Records that may not be
+     * claimed yet are left out.
      * 
      * @param status The {@link ClaimValidationBatch#getStatus() status}
      * to retrieve records for.
@@ -193,11 +351,136 @@ public class ClaimValidationBatchDao extends AbstractDao {
                             rs.getLong("run_number"),
                             rs.getString("global_control_number"),
                             rs.getTimestamp("create_date"),
-                            rs.getTimestamp("updated_date")
+                            rs.getTimestamp("updated_date"),
+                            rs.getInt("priority"),
+                            rs.getTimestamp("due_date")
+                            );
+                });
+    }
+    
+    /**
+     * Retrieves a specific number of {@link ClaimValidationBatch} records with a
+     * particular {@link ClaimValidationBatch#getStatus() status}, most urgent first.
+     * <p>
+     * Records are ordered by {@link ClaimValidationBatch#getPriority() priority}, then
+     * by {@link ClaimValidationBatch#getDueDate() dueDate} (records without one come
+     * after those with one), then by {@link ClaimValidationBatch#getCreateDate() createDate}.
+     * Records that may not be claimed yet are left out.
+     * 
+     * @param status The {@link ClaimValidationBatch#getStatus() status}
+     * to retrieve records for.
+     * @param limit The maximum number of records to retrieve.
+     * @return A {@link List} of {@link ClaimValidationBatch} records, most urgent first.
+     */
+    public List<ClaimValidationBatch> getByStatusWithPriorityAndDueDateAscending(final Status status,
+            final int limit) {
+        return jdbcTemplate.query(
+                STATEMENTS.get(SELECT_BY_STATUS_WITH_LIMIT_ORDERED_BY_PRIORITY_AND_DUE_DATE, dialect),
+                new Object[]{ status.toString(), limit },
+                (rs, count) -> {
+                    return new ClaimValidationBatch(
+                            rs.getLong("id"),
+                            rs.getLong("client_id"),
+                            rs.getString("filename"),
+                            status,
+                            rs.getLong("run_number"),
+                            rs.getString("global_control_number"),
+                            rs.getTimestamp("create_date"),
+                            rs.getTimestamp("updated_date"),
+                            rs.getInt("priority"),
+                            rs.getTimestamp("due_date")
                             );
                 });
     }
     
+    /**
+     * Retrieves and locks a specific number of {@link ClaimValidationBatch} records
+     * with a particular {@link ClaimValidationBatch#getStatus() status}, oldest first.
+     * <p>
+     * This must be called within a transaction; the returned rows stay locked until
+     * it ends. Where the {@link SqlDialect} supports it, rows already locked by other
+     * transactions are skipped rather than waited on, so that several processes can
+     * claim batches concurrently. Records that may not be claimed yet are left out.
+     * 
+     * @param status The {@link ClaimValidationBatch#getStatus() status}
+     * to retrieve records for.
+     * @param limit The maximum number of records to retrieve.
+     * @return A {@link List} of the locked {@link ClaimValidationBatch} records.
+     */
+    public List<ClaimValidationBatch> lockByStatusWithCreateTimeAscending(final Status status, final int limit) {
+        return jdbcTemplate.query(
+                STATEMENTS.get(LOCK_BY_STATUS_WITH_LIMIT_ORDERED_BY_CREATE_DATE, dialect),
+                new Object[]{ status.toString(), limit },
+                (rs, count) -> {
+                    return new ClaimValidationBatch(
+                            rs.getLong("id"),
+                            rs.getLong("client_id"),
+                            rs.getString("filename"),
+                            status,
+                            rs.getLong("run_number"),
+                            rs.getString("global_control_number"),
+                            rs.getTimestamp("create_date"),
+                            rs.getTimestamp("updated_date"),
+                            rs.getInt("priority"),
+                            rs.getTimestamp("due_date")
+                            );
+                });
+    }
+    
+    /**
+     * Retrieves the oldest {@link ClaimValidationBatch} records of a single client
+     * with a particular {@link ClaimValidationBatch#getStatus() status}. Records that
+     * may not be claimed yet are left out.
+     * 
+     * @param clientId The {@link ClaimValidationBatch#getClientId() clientId}
+     * to retrieve records for.
+     * @param status The {@link ClaimValidationBatch#getStatus() status}
+     * to retrieve records for.
+     * @param limit The maximum number of records to retrieve.
+     * @return A {@link List} of {@link ClaimValidationBatch} records, oldest first.
+     */
+    public List<ClaimValidationBatch> getByClientIdAndStatusWithCreateTimeAscending(final long clientId,
+            final Status status, final int limit) {
+        return jdbcTemplate.query(
+                SELECT_CLAIM_VALIDATION_BATCH_BY_CLIENT_AND_STATUS_WITH_LIMIT_ORDERED_BY_CREATE_DATE_SQL,
+                new Object[]{ clientId, status.toString(), limit },
+                (rs, count) -> {
+                    return new ClaimValidationBatch(
+                            rs.getLong("id"),
+                            clientId,
+                            rs.getString("filename"),
+                            status,
+                            rs.getLong("run_number"),
+                            rs.getString("global_control_number"),
+                            rs.getTimestamp("create_date"),
+                            rs.getTimestamp("updated_date"),
+                            rs.getInt("priority"),
+                            rs.getTimestamp("due_date")
+                            );
+                });
+    }
+    
+    /**
+     * Counts the number of {@link ClaimValidationBatch} records in a particular
+     * {@link ClaimValidationBatch#getStatus() status}, for each client. Records that
+     * may not be claimed yet are not counted.
+     * 
+     * @param status The {@link ClaimValidationBatch#getStatus() status}
+     * to query for.
+     * @return A {@link Map} of {@link ClaimValidationBatch#getClientId() clientId} to
+     * the number of that client's records in the status. Clients without any such
+     * records are absent.
+     */
+    @ReadReplica(maxStalenessMillis = 5000)
+    public Map<Long, Integer> countByStatusGroupedByClientId(final Status status) {
+        final Map<Long, Integer> counts = new HashMap<>();
+        jdbcTemplate.query(
+                COUNT_CLAIM_VALIDATION_BATCH_BY_STATUS_GROUPED_BY_CLIENT_SQL,
+                new Object[]{ status.toString() },
+                (RowCallbackHandler) rs -> counts.put(rs.getLong("client_id"), rs.getInt("total")));
+        return counts;
+    }
+    
     /**
      * Counts the number of {@link ClaimValidationBatch} records in
      * a particular {@link ClaimValidationBatch#getStatus() status}.
@@ -207,6 +490,7 @@ public class ClaimValidationBatchDao extends AbstractDao {
      * @return The number of records in the specified
      * {@link ClaimValidationBatch#getStatus() status}.
      */
+    @ReadReplica(maxStalenessMillis = 30000)
     public int countByStatus(final Status status) {
         return jdbcTemplate.queryForObject(
                 COUNT_CLAIM_VALIDATION_BATCH_BY_STATUS_SQL,
@@ -214,6 +498,27 @@ public class ClaimValidationBatchDao extends AbstractDao {
                 Integer.class);
     }
     
+    /**
+     * Retrieves the {@link ClaimValidationBatch#getId() ids} of the
+     * {@link ClaimValidationBatch} records in a particular
+     * {@link ClaimValidationBatch#getStatus() status} that have not been updated
+     * since a given time.
+     * 
+     * @param status The {@link ClaimValidationBatch#getStatus() status}
+     * to query for.
+     * @param updatedBefore Only records with an earlier
+     * {@link ClaimValidationBatch#getUpdatedDate() updatedDate} are returned.
+     * @param limit The maximum number of ids to retrieve.
+     * @return A {@link List} of {@link ClaimValidationBatch#getId() ids}, least
+     * recently updated first.
+     */
+    public List<Long> getIdsByStatusUpdatedBefore(final Status status, final Date updatedBefore, final int limit) {
+        return jdbcTemplate.queryForList(
+                SELECT_CLAIM_VALIDATION_BATCH_IDS_BY_STATUS_UPDATED_BEFORE_SQL,
+                new Object[]{ status.toString(), new Timestamp(updatedBefore.getTime()), limit },
+                Long.class);
+    }
+    
     /**
      * Updates the {@link ClaimValidationBatch#getStatus() status} of a
      * particular {@link ClaimValidationBatch} record.
@@ -236,6 +541,28 @@ public class ClaimValidationBatchDao extends AbstractDao {
                 );
     }
     
+    /**
+     * Updates the {@link ClaimValidationBatch#getStatus() status} of a particular
+     * {@link ClaimValidationBatch} record, but only if it is currently in the
+     * expected status. This lets several processes race to claim the same batch
+     * safely.
+     * 
+     * @param id The {@link ClaimValidationBatch#getId() id} of the
+     * {@link ClaimValidationBatch} record to update.
+     * @param expectedStatus The {@link ClaimValidationBatch#getStatus() status}
+     * the record must currently be in.
+     * @param newStatus The new {@link ClaimValidationBatch#getStatus() status}
+     * to set on the {@link ClaimValidationBatch} record.
+     * @return {@code true} if the record was updated.
+     */
+    public boolean updateStatusIfCurrent(final long id, final Status expectedStatus, final Status newStatus) {
+        return jdbcTemplate.update(
+                UPDATE_CLAIM_VALIDATION_BATCH_STATUS_IF_CURRENT_SQL,
+                newStatus.toString(),
+                id,
+                expectedStatus.toString()) > 0;
+    }
+    
     /**
      * Updates the {@link ClaimValidationBatch#getStatus() status} and
      * {@link ClaimValidationBatch#getRunNumber() runNumber} of a specific
@@ -250,11 +577,33 @@ public class ClaimValidationBatchDao extends AbstractDao {
      * @throws UniqueConstraintException 
      */
     public int updateStatusAndRunNumber(final long id, final Status newStatus, final long newRunNumber) throws UniqueConstraintException, NotFoundException {
+        return updateStatusAndRunNumber(id, newStatus, newRunNumber, null);
+    }
+    
+    /**
+     * Updates the {@link ClaimValidationBatch#getStatus() status} and
+     * {@link ClaimValidationBatch#getRunNumber() runNumber} of a specific
+     * {@link ClaimValidationBatch} record, and keeps it from being selected for claiming
+     * until a given time.
+     * 
+     * @param id The {@link ClaimValidationBatch#getId() id} of the
+     * {@link ClaimValidationBatch} to update.
+     * @param newStatus The new {@link ClaimValidationBatch#getStatus() status}.
+     * @param newRunNumber The new {@link ClaimValidationBatch#getRunNumber() runNumber}.
+     * @param notBeforeDate The time before which the batch is left out of the queries
+     * that select batches to claim, or {@code null} to allow it to be claimed now.
+     * @return The number of records modified.
+     * @throws NotFoundException 
+     * @throws UniqueConstraintException 
+     */
+    public int updateStatusAndRunNumber(final long id, final Status newStatus, final long newRunNumber,
+            final Date notBeforeDate) throws UniqueConstraintException, NotFoundException {
         return super.update(
                 UPDATE_CLAIM_VALIDATION_BATCH_STATUS_AND_RUN_SQL,
                 true,
                 newStatus.toString(),
                 newRunNumber,
+                notBeforeDate == null ? null : new Timestamp(notBeforeDate.getTime()),
                 id);
     }
 }
@@ -2,51 +2,216 @@ package com.doradosystems.mis.dao;
 
 import java.sql.PreparedStatement;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
 
 import javax.sql.DataSource;
 
+import org.springframework.jdbc.core.RowCallbackHandler;
+
 import com.doradosystems.data.dao.AbstractDao;
 import com.doradosystems.exception.NotFoundException;
 import com.doradosystems.exception.UniqueConstraintException;
 import com.doradosystems.mis.domain.ClaimValidationRecord;
 import com.doradosystems.mis.domain.ClaimValidationRecord.Status;
+import com.doradosystems.mis.domain.ClaimValidationRecordBlock;
+import com.doradosystems.mis.domain.ClaimValidationResponseIdentifier;
+import com.doradosystems.mis.domain.ClaimValidationRunStatusSummary;
+import com.doradosystems.mis.util.TextCompression;
 
 /**
  * DAO for performing operations on {@link ClaimValidationRecord} records.
+ * <p>
+ * The {@link ClaimValidationRecord#getRecord() record} body may be kept in the
+ * claim_validation_record table itself, or in a separate
+ * claim_validation_record_body table so that status and run updates only touch
+ * narrow rows. See {@link RecordBodyStorage}. Either way, bodies may be
+ * {@link #setCompressRecords(boolean) compressed}.
  * 
  * @author <a href="mailto:neil.drummond@doradosystems.com">Neil Drummond</a>
  */
 public class ClaimValidationRecordDao extends AbstractDao {
     
+    /**
+     * Where the {@link ClaimValidationRecord#getRecord() record} bodies are stored.
+     * <p>
+     * The separate body table is expected to be:
+     * <pre>
+     * create table claim_validation_record_body (
+     *     record_id bigint not null primary key,
+     *     record longtext
+     * )
+     * </pre>
+     * To move an existing database to {@link #SEPARATE}, create the table, switch
+     * every process to {@link #MIGRATING}, run
+     * {@link com.doradosystems.mis.manager.ClaimValidationRecordBodyMigration} until it
+     * reports nothing left to move, then switch to {@link #SEPARATE}. The record
+     * column of claim_validation_record may be dropped after that.
+     */
+    public enum RecordBodyStorage {
+        
+        /**
+         * Bodies are stored in the record column of claim_validation_record.
+         */
+        INLINE,
+        
+        /**
+         * New bodies are stored in claim_validation_record_body, while bodies not yet
+         * moved are still read from claim_validation_record.
+         */
+        MIGRATING,
+        
+        /**
+         * Bodies are stored in claim_validation_record_body only.
+         */
+        SEPARATE
+    }
+    
+    /**
+     * The placeholder in the select templates for the expression giving the
+     * {@link ClaimValidationRecord#getRecord() record} body.
+     */
+    private static final String RECORD_BODY = "#{record}";
+    
+    /**
+     * The placeholder in the select templates for the join to the body table.
+     */
+    private static final String RECORD_BODY_JOIN = "#{join}";
+    
+    /**
+     * The join to the body table used by {@link RecordBodyStorage#MIGRATING MIGRATING}
+     * and {@link RecordBodyStorage#SEPARATE SEPARATE} storage.
+     */
+    private static final String LEFT_JOIN_RECORD_BODY =
+            "left join claim_validation_record_body b on b.record_id = r.id";
+    
     /**
      * SQL for inserting a single {@link ClaimValidationRecord}.
      */
     private static final String INSERT_SQL =
             "insert into claim_validation_record" +
                     "(batch_id, run_number, status, claim_number, record) " +
-                    "value(?, ?, ?, ?, ?)";
+                    "values(?, ?, ?, ?, ?)";
+    
+    /**
+     * SQL for inserting a single {@link ClaimValidationRecord} without its
+     * {@link ClaimValidationRecord#getRecord() record} body.
+     */
+    private static final String INSERT_WITHOUT_BODY_SQL =
+            "insert into claim_validation_record" +
+                    "(batch_id, run_number, status, claim_number) " +
+                    "values(?, ?, ?, ?)";
     
     /**
-     * SQL for selecting a single {@link ClaimValidationRecord} by it's
+     * SQL for inserting the {@link ClaimValidationRecord#getRecord() record} body
+     * of a single {@link ClaimValidationRecord} into the body table.
+     */
+    private static final String INSERT_BODY_SQL =
+            "insert into claim_validation_record_body(record_id, record) values(?, ?)";
+    
+    /**
+     * SQL template for selecting a single {@link ClaimValidationRecord} by it's
      * {@link ClaimValidationRecord#getId() id}.
      */
     private static final String SELECT_CLAIM_VALIDATION_RECORD_SQL =
-            "select batch_id, run_number, status, claim_number, record, create_date, updated_date " +
-                    "from claim_validation_record where id = ?";
+            "select r.batch_id, r.run_number, r.status, r.claim_number, " + RECORD_BODY + " as record, " +
+                    "r.create_date, r.updated_date, r.attempt_count, r.next_eligible_date " +
+                    "from claim_validation_record r " + RECORD_BODY_JOIN + " where r.id = ?";
+    
+    /**
+     * SQL template for selecting the {@link ClaimValidationRecord#getRecord() record}
+     * body of a single {@link ClaimValidationRecord} by it's
+     * {@link ClaimValidationRecord#getId() id}.
+     */
+    private static final String SELECT_CLAIM_VALIDATION_RECORD_BODY_SQL =
+            "select " + RECORD_BODY + " as record " +
+                    "from claim_validation_record r " + RECORD_BODY_JOIN + " where r.id = ?";
     
     /**
-     * SQL for selecting all {@link ClaimValidationRecord ClaimValidationRecords}
+     * SQL template for selecting all {@link ClaimValidationRecord ClaimValidationRecords}
      * for a particular {@link ClaimValidationRecord#getBatchId() batchId} and
      * {@link ClaimValidationRecord#getRunNumber() runNumber}.
      */
     private static final String SELECT_CLAIM_VALIDATION_RECORD_BY_BATCH_AND_RUN_SQL =
-            "select id, status, claim_number, record, create_date, updated_date " +
-                    "from claim_validation_record where batch_id = ? and run_number = ?";
+            "select r.id, r.status, r.claim_number, " + RECORD_BODY + " as record, r.create_date, r.updated_date, " +
+                    "r.attempt_count, r.next_eligible_date " +
+                    "from claim_validation_record r " + RECORD_BODY_JOIN + " " +
+                    "where r.batch_id = ? and r.run_number = ?";
+    
+    /**
+     * SQL template for selecting the next page of {@link ClaimValidationRecord ClaimValidationRecords}
+     * of a run in a particular {@link ClaimValidationRecord#getStatus() status}, in
+     * {@link ClaimValidationRecord#getId() id} order, after a given id.
+     */
+    private static final String SELECT_CLAIM_VALIDATION_RECORD_BY_BATCH_RUN_AND_STATUS_AFTER_ID_SQL =
+            "select r.id, r.status, r.claim_number, " + RECORD_BODY + " as record, r.create_date, r.updated_date, " +
+                    "r.attempt_count, r.next_eligible_date " +
+                    "from claim_validation_record r " + RECORD_BODY_JOIN + " " +
+                    "where r.batch_id = ? and r.run_number = ? and r.status = ? and r.id > ? " +
+                    "order by r.id limit ?";
+    
+    /**
+     * SQL for selecting the next page of {@link ClaimValidationRecord ClaimValidationRecords}
+     * of a run in a particular {@link ClaimValidationRecord#getStatus() status}, as
+     * {@link #SELECT_CLAIM_VALIDATION_RECORD_BY_BATCH_RUN_AND_STATUS_AFTER_ID_SQL} does,
+     * but without their {@link ClaimValidationRecord#getRecord() record} bodies.
+     */
+    private static final String SELECT_CLAIM_VALIDATION_RECORD_WITHOUT_BODY_BY_BATCH_RUN_AND_STATUS_AFTER_ID_SQL =
+            "select r.id, r.status, r.claim_number, null as record, r.create_date, r.updated_date, " +
+                    "r.attempt_count, r.next_eligible_date " +
+                    "from claim_validation_record r " +
+                    "where r.batch_id = ? and r.run_number = ? and r.status = ? and r.id > ? " +
+                    "order by r.id limit ?";
+    
+    /**
+     * SQL template for selecting the {@link ClaimValidationRecord#getRecord() record}
+     * bodies of many {@link ClaimValidationRecord ClaimValidationRecords} by
+     * {@link ClaimValidationRecord#getId() id}. The {@link InListSql#IN_LIST}
+     * placeholder is expanded for each chunk of ids.
+     */
+    private static final String SELECT_CLAIM_VALIDATION_RECORD_BODIES_BY_IDS_SQL =
+            "select r.id, " + RECORD_BODY + " as record " +
+                    "from claim_validation_record r " + RECORD_BODY_JOIN + " where r.id in (" + InListSql.IN_LIST + ")";
     
     private static final String SELECT_CLAIM_VALIDATION_RECORD_BY_BATCH_AND_RUN_ORDERED_BY_UPDATE_DATE_DESC_SQL =
-            "select id, status, claim_number, record, create_date, updated_date "+
-                    "from claim_validation_record where batch_id = ? and run_number = ? order by updated_date desc limit ?";
+            "select r.id, r.status, r.claim_number, " + RECORD_BODY + " as record, r.create_date, r.updated_date, " +
+                    "r.attempt_count, r.next_eligible_date " +
+                    "from claim_validation_record r " + RECORD_BODY_JOIN + " " +
+                    "where r.batch_id = ? and r.run_number = ? order by r.updated_date desc limit ?";
+    
+    /**
+     * SQL to select the {@link ClaimValidationRecord#getId() ids} of the
+     * {@link ClaimValidationRecord ClaimValidationRecords} whose bodies are still in
+     * claim_validation_record, in id order.
+     */
+    private static final String SELECT_IDS_OF_INLINE_BODIES_SQL =
+            "select id from claim_validation_record where id > ? and record is not null order by id limit ?";
+    
+    /**
+     * SQL template to copy the bodies of {@link ClaimValidationRecord ClaimValidationRecords}
+     * into the body table, skipping any already copied. The {@link InListSql#IN_LIST}
+     * placeholder is expanded for each chunk of ids.
+     */
+    private static final String COPY_INLINE_BODIES_BY_IDS_SQL =
+            "insert into claim_validation_record_body(record_id, record) " +
+                    "select r.id, r.record from claim_validation_record r " +
+                    "where r.id in (" + InListSql.IN_LIST + ") and not exists " +
+                    "(select 1 from claim_validation_record_body b where b.record_id = r.id)";
+    
+    /**
+     * SQL template to clear the bodies of {@link ClaimValidationRecord ClaimValidationRecords}
+     * from claim_validation_record once copied. The {@link InListSql#IN_LIST}
+     * placeholder is expanded for each chunk of ids.
+     */
+    private static final String CLEAR_INLINE_BODIES_BY_IDS_SQL =
+            "update claim_validation_record set record = null where id in (" + InListSql.IN_LIST + ")";
     
     /**
      * SQL to count the number of {@link ClaimValidationRecord ClaimValidationRecords}
@@ -59,6 +224,32 @@ public class ClaimValidationRecordDao extends AbstractDao {
                     "from claim_validation_record where " +
                     "batch_id = ? and run_number = ? and status = ?";
     
+    /**
+     * The placeholder in {@link #SUMMARIZE_CLAIM_VALIDATION_RECORDS_BY_RUN_SQL} for
+     * the runs to summarize.
+     */
+    private static final String RUN_CONDITIONS = "#{runs}";
+    
+    /**
+     * SQL template to count {@link ClaimValidationRecord ClaimValidationRecords} by
+     * status for several runs at once, along with the latest record and batch update
+     * dates. The {@link #RUN_CONDITIONS} placeholder is replaced with one
+     * {@link #RUN_CONDITION} per run, joined by {@code or}.
+     */
+    private static final String SUMMARIZE_CLAIM_VALIDATION_RECORDS_BY_RUN_SQL =
+            "select r.batch_id, r.run_number, r.status, count(0) as total, " +
+                    "max(r.updated_date) as last_updated_date, b.updated_date as batch_updated_date " +
+                    "from claim_validation_record r " +
+                    "join claim_validation_batch b on b.id = r.batch_id " +
+                    "where " + RUN_CONDITIONS + " " +
+                    "group by r.batch_id, r.run_number, r.status, b.updated_date";
+    
+    /**
+     * The condition matching a single run in
+     * {@link #SUMMARIZE_CLAIM_VALIDATION_RECORDS_BY_RUN_SQL}.
+     */
+    private static final String RUN_CONDITION = "(r.batch_id = ? and r.run_number = ?)";
+    
     /**
      * SQL to update the {@link ClaimValidationRecord#getStatus() status} of
      * a {@link ClaimValidationRecord}.
@@ -67,6 +258,41 @@ public class ClaimValidationRecordDao extends AbstractDao {
             "update claim_validation_record set status = ? " +
                     "where id = ?";
     
+    /**
+     * SQL template to update the {@link ClaimValidationRecord#getStatus() status} of
+     * many {@link ClaimValidationRecord ClaimValidationRecords} by
+     * {@link ClaimValidationRecord#getId() id}. The {@link InListSql#IN_LIST}
+     * placeholder is expanded for each chunk of ids.
+     */
+    private static final String UPDATE_CLAIM_VALIDATION_RECORD_STATUS_BY_IDS_SQL =
+            "update claim_validation_record set status = ? " +
+                    "where id in (" + InListSql.IN_LIST + ")";
+    
+    /**
+     * {@link #UPDATE_CLAIM_VALIDATION_RECORD_STATUS_BY_IDS_SQL} expanded for a
+     * full chunk of {@link InListSql#MAX_CHUNK_SIZE} ids.
+     */
+    private static final String UPDATE_CLAIM_VALIDATION_RECORD_STATUS_BY_FULL_CHUNK_OF_IDS_SQL =
+            InListSql.expand(UPDATE_CLAIM_VALIDATION_RECORD_STATUS_BY_IDS_SQL, InListSql.MAX_CHUNK_SIZE);
+    
+    /**
+     * SQL template to update the {@link ClaimValidationRecord#getStatus() status} of
+     * many {@link ClaimValidationRecord ClaimValidationRecords} by
+     * {@link ClaimValidationRecord#getId() id}, only where they are still in an
+     * expected status. The {@link InListSql#IN_LIST} placeholder is expanded for each
+     * chunk of ids.
+     */
+    private static final String UPDATE_CLAIM_VALIDATION_RECORD_STATUS_BY_IDS_IF_CURRENT_SQL =
+            "update claim_validation_record set status = ? " +
+                    "where status = ? and id in (" + InListSql.IN_LIST + ")";
+    
+    /**
+     * {@link #UPDATE_CLAIM_VALIDATION_RECORD_STATUS_BY_IDS_IF_CURRENT_SQL} expanded for a
+     * full chunk of {@link InListSql#MAX_CHUNK_SIZE} ids.
+     */
+    private static final String UPDATE_CLAIM_VALIDATION_RECORD_STATUS_BY_FULL_CHUNK_OF_IDS_IF_CURRENT_SQL =
+            InListSql.expand(UPDATE_CLAIM_VALIDATION_RECORD_STATUS_BY_IDS_IF_CURRENT_SQL, InListSql.MAX_CHUNK_SIZE);
+    
     /**
      * SQL to update {@link ClaimValidationRecord ClaimValidationRecords'}
      * {@link ClaimValidationRecord#getStatus() status} and
@@ -77,15 +303,179 @@ public class ClaimValidationRecordDao extends AbstractDao {
                     "set run_number = ?, status = ? " +
                     "where batch_id = ? and run_number = ? and status = ?";
     
+    /**
+     * SQL to move the {@link ClaimValidationRecord.Status#DEFERRED DEFERRED}
+     * {@link ClaimValidationRecord ClaimValidationRecords} of a run whose
+     * {@link ClaimValidationRecord#getNextEligibleDate() nextEligibleDate} has passed
+     * into another run and status.
+     */
+    private static final String UPDATE_ELIGIBLE_CLAIM_VALIDATION_RECORD_STATUS_AND_RUN_SQL =
+            "update claim_validation_record " +
+                    "set run_number = ?, status = ? " +
+                    "where batch_id = ? and run_number = ? and status = ? and next_eligible_date <= ?";
+    
+    /**
+     * SQL to select the earliest {@link ClaimValidationRecord#getNextEligibleDate() nextEligibleDate}
+     * of the {@link ClaimValidationRecord ClaimValidationRecords} of a run in a particular
+     * {@link ClaimValidationRecord#getStatus() status}.
+     */
+    private static final String SELECT_EARLIEST_NEXT_ELIGIBLE_DATE_BY_BATCH_AND_RUN_AND_STATUS_SQL =
+            "select min(next_eligible_date) " +
+                    "from claim_validation_record where " +
+                    "batch_id = ? and run_number = ? and status = ?";
+    
+    /**
+     * SQL to count the {@link ClaimValidationRecord ClaimValidationRecords} of a run
+     * in a particular {@link ClaimValidationRecord#getStatus() status}, for each
+     * {@link ClaimValidationRecord#getAttemptCount() attemptCount}.
+     */
+    private static final String COUNT_CLAIM_VALIDATION_RECORD_BY_BATCH_AND_RUN_AND_STATUS_GROUPED_BY_ATTEMPT_SQL =
+            "select attempt_count, count(0) as total " +
+                    "from claim_validation_record where " +
+                    "batch_id = ? and run_number = ? and status = ? group by attempt_count";
+    
+    /**
+     * SQL to record another attempt on the {@link ClaimValidationRecord ClaimValidationRecords}
+     * of a run with a particular {@link ClaimValidationRecord#getStatus() status} and
+     * {@link ClaimValidationRecord#getAttemptCount() attemptCount}, moving them into
+     * another run and status.
+     */
+    private static final String UPDATE_CLAIM_VALIDATION_RECORD_ATTEMPT_SQL =
+            "update claim_validation_record " +
+                    "set run_number = ?, status = ?, attempt_count = attempt_count + 1, next_eligible_date = ? " +
+                    "where batch_id = ? and run_number = ? and status = ? and attempt_count = ?";
+    
+    /**
+     * SQL to count the {@link ClaimValidationRecord ClaimValidationRecords} of a client
+     * with a particular {@link ClaimValidationRecord#getClaimNumber() claimNumber}.
+     */
+    private static final String COUNT_CLAIM_VALIDATION_RECORD_BY_CLIENT_AND_CLAIM_NUMBER_SQL =
+            "select count(0) as total " +
+                    "from claim_validation_record r " +
+                    "join claim_validation_batch b on b.id = r.batch_id " +
+                    "where b.client_id = ? and r.claim_number = ?";
+    
+    /**
+     * The {@link SqlDialect} of the database behind the {@link DataSource}.
+     */
+    private final SqlDialect dialect;
+    
+    /**
+     * The {@link ClaimNumberFilters} kept up to date by both add methods, or
+     * {@code null} for none.
+     */
+    private ClaimNumberFilters claimNumberFilters;
+    
+    /**
+     * Where {@link ClaimValidationRecord#getRecord() record} bodies are stored.
+     */
+    private RecordBodyStorage recordBodyStorage;
+    
+    /**
+     * Whether {@link ClaimValidationRecord#getRecord() record} bodies are written
+     * compressed.
+     */
+    private boolean compressRecords;
+    
+    private String selectClaimValidationRecordSql;
+    private String selectClaimValidationRecordBodySql;
+    private String selectClaimValidationRecordByBatchAndRunSql;
+    private String selectArchivedClaimValidationRecordByBatchAndRunSql;
+    private String selectClaimValidationRecordByBatchAndRunOrderedByUpdateDateDescSql;
+    private String selectClaimValidationRecordByBatchRunAndStatusAfterIdSql;
+    private String selectClaimValidationRecordBodiesByIdsSql;
+    private String selectClaimValidationRecordBodiesByFullChunkOfIdsSql;
+    
     /**
      * Constructs a new {@link ClaimValidationRecordDao} using the provided
      * {@link DataSource} to initialize the {@link JdbcTemplate}.
+     * <p>
+     * The database is assumed to be {@link SqlDialect#MYSQL MySQL}.
      * 
      * @param dataSource The {@link DataSource} to use to initialize the
      * {@link JdbcTemplate}.
      */
     public ClaimValidationRecordDao(final DataSource dataSource){
+        this(dataSource, SqlDialect.MYSQL);
+    }
+    
+    /**
+     * Constructs a new {@link ClaimValidationRecordDao} using the provided
+     * {@link DataSource} to initialize the {@link JdbcTemplate}.
+     * 
+     * @param dataSource The {@link DataSource} to use to initialize the
+     * {@link JdbcTemplate}.
+     * @param dialect The {@link SqlDialect} of the database behind the
+     * {@link DataSource}.
+     */
+    public ClaimValidationRecordDao(final DataSource dataSource, final SqlDialect dialect){
         super(dataSource);
+        this.dialect = dialect;
+        setRecordBodyStorage(RecordBodyStorage.INLINE);
+    }
+    
+    public SqlDialect getDialect() {
+        return dialect;
+    }
+    
+    public RecordBodyStorage getRecordBodyStorage() {
+        return recordBodyStorage;
+    }
+    
+    /**
+     * @param recordBodyStorage Where {@link ClaimValidationRecord#getRecord() record}
+     * bodies are stored. Defaults to {@link RecordBodyStorage#INLINE INLINE}.
+     */
+    public void setRecordBodyStorage(final RecordBodyStorage recordBodyStorage) {
+        this.recordBodyStorage = recordBodyStorage;
+        this.selectClaimValidationRecordSql = withRecordBody(SELECT_CLAIM_VALIDATION_RECORD_SQL);
+        this.selectClaimValidationRecordBodySql = withRecordBody(SELECT_CLAIM_VALIDATION_RECORD_BODY_SQL);
+        this.selectClaimValidationRecordByBatchAndRunSql =
+                withRecordBody(SELECT_CLAIM_VALIDATION_RECORD_BY_BATCH_AND_RUN_SQL);
+        this.selectArchivedClaimValidationRecordByBatchAndRunSql = selectClaimValidationRecordByBatchAndRunSql
+                .replace("claim_validation_record_body b", "claim_validation_record_body_archive b")
+                .replace("claim_validation_record r", "claim_validation_record_archive r");
+        this.selectClaimValidationRecordByBatchAndRunOrderedByUpdateDateDescSql =
+                withRecordBody(SELECT_CLAIM_VALIDATION_RECORD_BY_BATCH_AND_RUN_ORDERED_BY_UPDATE_DATE_DESC_SQL);
+        this.selectClaimValidationRecordByBatchRunAndStatusAfterIdSql =
+                withRecordBody(SELECT_CLAIM_VALIDATION_RECORD_BY_BATCH_RUN_AND_STATUS_AFTER_ID_SQL);
+        this.selectClaimValidationRecordBodiesByIdsSql = withRecordBody(SELECT_CLAIM_VALIDATION_RECORD_BODIES_BY_IDS_SQL);
+        this.selectClaimValidationRecordBodiesByFullChunkOfIdsSql =
+                InListSql.expand(selectClaimValidationRecordBodiesByIdsSql, InListSql.MAX_CHUNK_SIZE);
+    }
+    
+    /**
+     * @param compressRecords {@code true} to write {@link ClaimValidationRecord#getRecord() record}
+     * bodies compressed with {@link TextCompression}. Bodies are read correctly whether
+     * or not they were written compressed, so this may be switched at any time.
+     */
+    public void setCompressRecords(final boolean compressRecords) {
+        this.compressRecords = compressRecords;
+    }
+    
+    /**
+     * Fills in the {@link #RECORD_BODY} and {@link #RECORD_BODY_JOIN} placeholders of
+     * a select template for the current {@link RecordBodyStorage}.
+     */
+    private String withRecordBody(final String template) {
+        switch(recordBodyStorage) {
+        case MIGRATING:
+            return template.replace(RECORD_BODY, "coalesce(b.record, r.record)")
+                    .replace(RECORD_BODY_JOIN, LEFT_JOIN_RECORD_BODY);
+        case SEPARATE:
+            return template.replace(RECORD_BODY, "b.record").replace(RECORD_BODY_JOIN, LEFT_JOIN_RECORD_BODY);
+        default:
+            return template.replace(RECORD_BODY, "r.record").replace(RECORD_BODY_JOIN, "");
+        }
+    }
+    
+    /**
+     * @param claimNumberFilters The {@link ClaimNumberFilters} to maintain on insert and
+     * consult in {@link #existsByClientIdAndClaimNumber(long, String)}, or {@code null}
+     * to always query the database.
+     */
+    public void setClaimNumberFilters(final ClaimNumberFilters claimNumberFilters) {
+        this.claimNumberFilters = claimNumberFilters;
     }
     
     /**
@@ -95,23 +485,46 @@ public class ClaimValidationRecordDao extends AbstractDao {
      * {@link ClaimValidationRecord#getCreateDate() createDate}, and
      * {@link ClaimValidationRecord#getUpdatedDate() updatedDate} fields
      * of the provided record.
+     * <p>
+     * Unless bodies are stored {@link RecordBodyStorage#INLINE INLINE}, the body is
+     * inserted into the body table by a second statement, so this should be called
+     * within a transaction.
+     * <p>
+     * If {@link ClaimNumberFilters} are set, the client of the record is not known
+     * here, so its claim number is only picked up by the next top-up of the client's
+     * filter, up to {@link ClaimNumberFilters#setRefreshInterval(long) refreshInterval}
+     * later; prefer {@link #add(long, ClaimValidationRecord)}.
      * 
      * @param claimValidationRecord The {@link ClaimValidationRecord} to insert.
      * @return The {@link ClaimValidationRecord#getId() id} that was assigned to
      * the record.
      */
     public long add(final ClaimValidationRecord claimValidationRecord) throws UniqueConstraintException {
-        return super.add(
+        return insert(claimValidationRecord);
+    }
+    
+    private long insert(final ClaimValidationRecord claimValidationRecord) throws UniqueConstraintException {
+        final boolean inline = recordBodyStorage == RecordBodyStorage.INLINE;
+        final String body = compressRecords
+                ? TextCompression.encode(claimValidationRecord.getRecord())
+                : claimValidationRecord.getRecord();
+        final long id = super.add(
                 connection -> {
-                    final PreparedStatement preparedStatement =
-                            connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
+                    final PreparedStatement preparedStatement = connection.prepareStatement(
+                            inline ? INSERT_SQL : INSERT_WITHOUT_BODY_SQL, Statement.RETURN_GENERATED_KEYS);
                     preparedStatement.setLong(1, claimValidationRecord.getBatchId());
                     preparedStatement.setLong(2, claimValidationRecord.getRunNumber());
                     preparedStatement.setString(3, claimValidationRecord.getStatus().toString());
                     preparedStatement.setString(4, claimValidationRecord.getClaimNumber());
-                    preparedStatement.setString(5, claimValidationRecord.getRecord());
+                    if(inline) {
+                        preparedStatement.setString(5, body);
+                    }
                     return preparedStatement;
                 });
+        if(!inline) {
+            jdbcTemplate.update(INSERT_BODY_SQL, id, body);
+        }
+        return id;
     }
 
     /**
@@ -124,21 +537,81 @@ public class ClaimValidationRecordDao extends AbstractDao {
      */
     public ClaimValidationRecord get(final long id) throws NotFoundException {
         return super.get(
-                SELECT_CLAIM_VALIDATION_RECORD_SQL,
+                selectClaimValidationRecordSql,
                 (rs, count) -> {
                     return new ClaimValidationRecord(
                             id,
                             rs.getLong("batch_id"),
                             rs.getLong("run_number"),
                             Status.valueOf(rs.getString("status")),
-                            rs.getString("claimNumber"),
+                            rs.getString("claim_number"),
                             rs.getString("record"),
-                            rs.getTimestamp("createDate"),
-                            rs.getTimestamp("updatedDate")
+                            rs.getTimestamp("create_date"),
+                            rs.getTimestamp("updated_date"),
+                            rs.getInt("attempt_count"),
+                            rs.getTimestamp("next_eligible_date")
                             );
                 }, id);
     }
     
+    /**
+     * Retrieves only the {@link ClaimValidationRecord#getRecord() record} body of a
+     * {@link ClaimValidationRecord}, for callers that hold the record's status
+     * fields already and load the body only when they need it.
+     * 
+     * @param id The {@link ClaimValidationRecord#getId() id} of the
+     * {@link ClaimValidationRecord}.
+     * @return The record body, or {@code null} if the record has none.
+     */
+    public String getRecordBody(final long id) throws NotFoundException {
+        return super.get(
+                selectClaimValidationRecordBodySql,
+                (rs, count) -> TextCompression.decode(rs.getString("record")),
+                id);
+    }
+    
+    /**
+     * Inserts a {@link ClaimValidationRecord} of a particular client, as
+     * {@link #add(ClaimValidationRecord)} does, and adds its
+     * {@link ClaimValidationRecord#getClaimNumber() claimNumber} to the client's
+     * {@link ClaimNumberFilters claim number filter}, if one is set.
+     * 
+     * @param clientId The client the record's batch belongs to.
+     * @param claimValidationRecord The {@link ClaimValidationRecord} to insert.
+     * @return The {@link ClaimValidationRecord#getId() id} assigned to the record.
+     */
+    public long add(final long clientId, final ClaimValidationRecord claimValidationRecord)
+            throws UniqueConstraintException {
+        final long id = insert(claimValidationRecord);
+        if(claimNumberFilters != null) {
+            claimNumberFilters.add(clientId, claimValidationRecord.getClaimNumber());
+        }
+        return id;
+    }
+    
+    /**
+     * Checks whether a client already has a {@link ClaimValidationRecord} with a
+     * particular {@link ClaimValidationRecord#getClaimNumber() claimNumber}.
+     * <p>
+     * If {@link ClaimNumberFilters} are set, the database is only queried when the
+     * client's filter reports a possible match, so new claim numbers are usually
+     * ruled out without a query.
+     * 
+     * @param clientId The client to check.
+     * @param claimNumber The {@link ClaimValidationRecord#getClaimNumber() claimNumber}
+     * to check for.
+     * @return {@code true} if the client has such a record.
+     */
+    public boolean existsByClientIdAndClaimNumber(final long clientId, final String claimNumber) {
+        if(claimNumberFilters != null && !claimNumberFilters.mightContain(clientId, claimNumber)) {
+            return false;
+        }
+        return jdbcTemplate.queryForObject(
+                COUNT_CLAIM_VALIDATION_RECORD_BY_CLIENT_AND_CLAIM_NUMBER_SQL,
+                new Object[]{ clientId, claimNumber },
+                Integer.class) > 0;
+    }
+    
     /**
      * Retrieves a {@link List} of all {@link ClaimValidationRecord ClaimValidationRecords}
      * that match the given {@link ClaimValidationRecord#getBatchId() batchId}
@@ -150,9 +623,176 @@ public class ClaimValidationRecordDao extends AbstractDao {
      * @return A {@link List} of {@link ClaimValidationRecord ClaimValidationRecords}.
      */
     public List<ClaimValidationRecord> getByBatchIdAndRunNumber(final Long batchId, final Long runNumber) {
+        return getByBatchIdAndRunNumber(selectClaimValidationRecordByBatchAndRunSql, batchId, runNumber);
+    }
+    
+    /**
+     * Retrieves a {@link List} of all {@link ClaimValidationRecord ClaimValidationRecords}
+     * of an {@link com.doradosystems.mis.domain.ClaimValidationBatch.Status#ARCHIVED ARCHIVED}
+     * batch that match the given {@link ClaimValidationRecord#getBatchId() batchId}
+     * and {@link ClaimValidationRecord#getRunNumber() runNumber}, from the archive tables.
+     * 
+     * @param batchId The {@link ClaimValidationRecord#getBatchId() batchId} to search for.
+     * @param runNumber The {@link ClaimValidationRecord#getRunNumber() runNumber} to search
+     * for.
+     * @return A {@link List} of {@link ClaimValidationRecord ClaimValidationRecords}.
+     * @see ClaimValidationArchiveDao
+     */
+    public List<ClaimValidationRecord> getArchivedByBatchIdAndRunNumber(final Long batchId, final Long runNumber) {
+        return getByBatchIdAndRunNumber(selectArchivedClaimValidationRecordByBatchAndRunSql, batchId, runNumber);
+    }
+    
+    /**
+     * Retrieves one page of the {@link ClaimValidationRecord ClaimValidationRecords} of a
+     * run in a particular {@link ClaimValidationRecord#getStatus() status}, in
+     * {@link ClaimValidationRecord#getId() id} order, so that a large run can be
+     * streamed without holding all of it in memory. Pass the id of the last record of
+     * one page as {@code afterId} to get the next.
+     * 
+     * @param batchId The {@link ClaimValidationRecord#getBatchId() batchId} to search for.
+     * @param runNumber The {@link ClaimValidationRecord#getRunNumber() runNumber} to search
+     * for.
+     * @param status The {@link ClaimValidationRecord#getStatus() status} to search for.
+     * @param afterId Only records with a greater {@link ClaimValidationRecord#getId() id}
+     * are returned; 0 for the first page.
+     * @param limit The maximum number of records to return.
+     * @return A {@link List} of {@link ClaimValidationRecord ClaimValidationRecords}.
+     */
+    public List<ClaimValidationRecord> getByBatchIdAndRunNumberAndStatusAfterId(final long batchId,
+            final long runNumber, final Status status, final long afterId, final int limit) {
+        return getByBatchIdAndRunNumber(selectClaimValidationRecordByBatchRunAndStatusAfterIdSql, batchId, runNumber,
+                batchId, runNumber, status.toString(), afterId, limit);
+    }
+    
+    /**
+     * Retrieves one page of the {@link ClaimValidationRecord ClaimValidationRecords} of a
+     * run, as {@link #getByBatchIdAndRunNumberAndStatusAfterId(long, long, Status, long, int)}
+     * does, but without reading their {@link ClaimValidationRecord#getRecord() record}
+     * bodies, which are {@code null} in the returned records.
+     * 
+     * @param batchId The {@link ClaimValidationRecord#getBatchId() batchId} to search for.
+     * @param runNumber The {@link ClaimValidationRecord#getRunNumber() runNumber} to search
+     * for.
+     * @param status The {@link ClaimValidationRecord#getStatus() status} to search for.
+     * @param afterId Only records with a greater {@link ClaimValidationRecord#getId() id}
+     * are returned; 0 for the first page.
+     * @param limit The maximum number of records to return.
+     * @return A {@link List} of {@link ClaimValidationRecord ClaimValidationRecords}.
+     */
+    public List<ClaimValidationRecord> getWithoutBodyByBatchIdAndRunNumberAndStatusAfterId(final long batchId,
+            final long runNumber, final Status status, final long afterId, final int limit) {
+        return getByBatchIdAndRunNumber(SELECT_CLAIM_VALIDATION_RECORD_WITHOUT_BODY_BY_BATCH_RUN_AND_STATUS_AFTER_ID_SQL,
+                batchId, runNumber, batchId, runNumber, status.toString(), afterId, limit);
+    }
+    
+    /**
+     * Retrieves the {@link ClaimValidationRecord#getRecord() record} bodies of many
+     * {@link ClaimValidationRecord ClaimValidationRecords} at once.
+     * <p>
+     * The ids are bound in chunks of up to {@link InListSql#MAX_CHUNK_SIZE} per
+     * statement. Ids that do not match a record are left out of the result.
+     * 
+     * @param ids The {@link ClaimValidationRecord#getId() ids} of the
+     * {@link ClaimValidationRecord ClaimValidationRecords}.
+     * @return The bodies, by {@link ClaimValidationRecord#getId() id}.
+     */
+    public Map<Long, String> getRecordBodies(final long[] ids) {
+        final Map<Long, String> bodies = new HashMap<>(ids.length * 2);
+        for(int from = 0; from < ids.length; from += InListSql.MAX_CHUNK_SIZE) {
+            final int start = from;
+            final int end = Math.min(ids.length, from + InListSql.MAX_CHUNK_SIZE);
+            final String sql = end - start == InListSql.MAX_CHUNK_SIZE
+                    ? selectClaimValidationRecordBodiesByFullChunkOfIdsSql
+                    : InListSql.expand(selectClaimValidationRecordBodiesByIdsSql, end - start);
+            jdbcTemplate.query(sql,
+                    preparedStatement -> {
+                        for(int i = start; i < end; i++) {
+                            preparedStatement.setLong(i - start + 1, ids[i]);
+                        }
+                    },
+                    (RowCallbackHandler) rs -> bodies.put(rs.getLong("id"),
+                            TextCompression.decode(rs.getString("record"))));
+        }
+        return bodies;
+    }
+    
+    /**
+     * Appends all {@link ClaimValidationRecord ClaimValidationRecords} that match the
+     * given {@link ClaimValidationRecord#getBatchId() batchId} and
+     * {@link ClaimValidationRecord#getRunNumber() runNumber} to a
+     * {@link ClaimValidationRecordBlock}, as {@link #getByBatchIdAndRunNumber(Long, Long)}
+     * would return them, without building a {@link ClaimValidationRecord} for each.
+     * Bodies are appended as stored, so compressed bodies stay compressed.
+     *
+     * @param block The {@link ClaimValidationRecordBlock} to append to.
+     * @param batchId The {@link ClaimValidationRecord#getBatchId() batchId} to search for.
+     * @param runNumber The {@link ClaimValidationRecord#getRunNumber() runNumber} to search
+     * for.
+     * @return The number of records appended.
+     */
+    public int fillByBatchIdAndRunNumber(final ClaimValidationRecordBlock block, final long batchId,
+            final long runNumber) {
+        return fill(selectClaimValidationRecordByBatchAndRunSql, block, batchId, runNumber, batchId, runNumber);
+    }
+    
+    /**
+     * Appends one page of the {@link ClaimValidationRecord ClaimValidationRecords} of a
+     * run in a particular {@link ClaimValidationRecord#getStatus() status} to a
+     * {@link ClaimValidationRecordBlock}, as
+     * {@link #getByBatchIdAndRunNumberAndStatusAfterId(long, long, Status, long, int)}
+     * would return them.
+     *
+     * @param block The {@link ClaimValidationRecordBlock} to append to.
+     * @param batchId The {@link ClaimValidationRecord#getBatchId() batchId} to search for.
+     * @param runNumber The {@link ClaimValidationRecord#getRunNumber() runNumber} to search
+     * for.
+     * @param status The {@link ClaimValidationRecord#getStatus() status} to search for.
+     * @param afterId Only records with a greater {@link ClaimValidationRecord#getId() id}
+     * are appended; 0 for the first page.
+     * @param limit The maximum number of records to append.
+     * @return The number of records appended.
+     */
+    public int fillByBatchIdAndRunNumberAndStatusAfterId(final ClaimValidationRecordBlock block,
+            final long batchId, final long runNumber, final Status status, final long afterId, final int limit) {
+        return fill(selectClaimValidationRecordByBatchRunAndStatusAfterIdSql, block, batchId, runNumber,
+                batchId, runNumber, status.toString(), afterId, limit);
+    }
+    
+    private int fill(final String sql, final ClaimValidationRecordBlock block, final long batchId,
+            final long runNumber, final Object... args) {
+        final int before = block.size();
+        jdbcTemplate.query(
+                sql,
+                args,
+                (RowCallbackHandler) rs -> block.add(
+                        rs.getLong("id"),
+                        batchId,
+                        runNumber,
+                        Status.valueOf(rs.getString("status")),
+                        rs.getString("claim_number"),
+                        rs.getString("record"),
+                        toMillis(rs.getTimestamp("create_date")),
+                        toMillis(rs.getTimestamp("updated_date")),
+                        rs.getInt("attempt_count"),
+                        toMillis(rs.getTimestamp("next_eligible_date"))
+                        ));
+        return block.size() - before;
+    }
+    
+    private static long toMillis(final Date date) {
+        return date == null ? ClaimValidationRecordBlock.NO_DATE : date.getTime();
+    }
+    
+    private List<ClaimValidationRecord> getByBatchIdAndRunNumber(final String sql, final Long batchId,
+            final Long runNumber) {
+        return getByBatchIdAndRunNumber(sql, batchId, runNumber, batchId, runNumber);
+    }
+    
+    private List<ClaimValidationRecord> getByBatchIdAndRunNumber(final String sql, final Long batchId,
+            final Long runNumber, final Object... args) {
         return jdbcTemplate.query(
-                SELECT_CLAIM_VALIDATION_RECORD_BY_BATCH_AND_RUN_SQL,
-                new Object[]{ batchId, runNumber },
+                sql,
+                args,
                 (rs, count) -> {
                     return new ClaimValidationRecord(
                             rs.getLong("id"),
@@ -162,7 +802,9 @@ public class ClaimValidationRecordDao extends AbstractDao {
                             rs.getString("claim_number"),
                             rs.getString("record"),
                             rs.getTimestamp("create_date"),
-                            rs.getTimestamp("updated_date")
+                            rs.getTimestamp("updated_date"),
+                            rs.getInt("attempt_count"),
+                            rs.getTimestamp("next_eligible_date")
                             );
                 });
     }
@@ -182,7 +824,7 @@ public class ClaimValidationRecordDao extends AbstractDao {
     public List<ClaimValidationRecord> getByBatchIdAndRunNumberOrderByUpdateDateDescending(final Long batchId,
             final Long runNumber, int limit) {
         return jdbcTemplate.query(
-                SELECT_CLAIM_VALIDATION_RECORD_BY_BATCH_AND_RUN_ORDERED_BY_UPDATE_DATE_DESC_SQL,
+                selectClaimValidationRecordByBatchAndRunOrderedByUpdateDateDescSql,
                 new Object[]{ batchId, runNumber, limit },
                 (rs, count) -> {
                     return new ClaimValidationRecord(
@@ -193,7 +835,9 @@ public class ClaimValidationRecordDao extends AbstractDao {
                             rs.getString("claim_number"),
                             rs.getString("record"),
                             rs.getTimestamp("create_date"),
-                            rs.getTimestamp("updated_date")
+                            rs.getTimestamp("updated_date"),
+                            rs.getInt("attempt_count"),
+                            rs.getTimestamp("next_eligible_date")
                             );
                 });
     }
@@ -219,6 +863,43 @@ public class ClaimValidationRecordDao extends AbstractDao {
                 Integer.class);
     }
     
+    /**
+     * Summarizes the {@link ClaimValidationRecord ClaimValidationRecords} of several runs
+     * in a single query, grouped by run and {@link ClaimValidationRecord#getStatus() status}.
+     * <p>
+     * Runs without any records do not appear in the result.
+     * 
+     * @param runs The runs to summarize.
+     * @return A {@link List} of {@link ClaimValidationRunStatusSummary ClaimValidationRunStatusSummaries},
+     * one for each run and status that has records.
+     */
+    public List<ClaimValidationRunStatusSummary> summarizeByBatchIdAndRunNumber(
+            final Collection<ClaimValidationResponseIdentifier> runs) {
+        if(runs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final StringJoiner conditions = new StringJoiner(" or ");
+        final Object[] parameters = new Object[runs.size() * 2];
+        int index = 0;
+        for(final ClaimValidationResponseIdentifier run : runs) {
+            conditions.add(RUN_CONDITION);
+            parameters[index++] = run.getBatchId();
+            parameters[index++] = run.getRunNumber();
+        }
+        return jdbcTemplate.query(
+                SUMMARIZE_CLAIM_VALIDATION_RECORDS_BY_RUN_SQL.replace(RUN_CONDITIONS, conditions.toString()),
+                parameters,
+                (rs, count) -> {
+                    return new ClaimValidationRunStatusSummary(
+                            new ClaimValidationResponseIdentifier(rs.getLong("batch_id"), rs.getLong("run_number")),
+                            Status.valueOf(rs.getString("status")),
+                            rs.getLong("total"),
+                            rs.getTimestamp("last_updated_date"),
+                            rs.getTimestamp("batch_updated_date")
+                            );
+                });
+    }
+    
     /**
      * Updates the {@link ClaimValidationRecord#getStatus() status} of a
      * particular {@link ClaimValidationRecord}.
@@ -239,6 +920,73 @@ public class ClaimValidationRecordDao extends AbstractDao {
                 );
     }
     
+    /**
+     * Updates the {@link ClaimValidationRecord#getStatus() status} of many
+     * {@link ClaimValidationRecord ClaimValidationRecords} at once.
+     * <p>
+     * The ids are bound in chunks of up to {@link InListSql#MAX_CHUNK_SIZE}
+     * per statement, without boxing. Ids that do not match a record are
+     * ignored.
+     * 
+     * @param ids The {@link ClaimValidationRecord#getId() ids} of the
+     * {@link ClaimValidationRecord ClaimValidationRecords} to update.
+     * @param newStatus The new {@link ClaimValidationRecord#getStatus() status}
+     * to set on the {@link ClaimValidationRecord ClaimValidationRecords}.
+     * @return The number of records updated.
+     */
+    public int updateStatus(final long[] ids, final Status newStatus) {
+        int updated = 0;
+        for(int from = 0; from < ids.length; from += InListSql.MAX_CHUNK_SIZE) {
+            final int start = from;
+            final int end = Math.min(ids.length, from + InListSql.MAX_CHUNK_SIZE);
+            final String sql = end - start == InListSql.MAX_CHUNK_SIZE
+                    ? UPDATE_CLAIM_VALIDATION_RECORD_STATUS_BY_FULL_CHUNK_OF_IDS_SQL
+                    : InListSql.expand(UPDATE_CLAIM_VALIDATION_RECORD_STATUS_BY_IDS_SQL, end - start);
+            updated += jdbcTemplate.update(sql,
+                    preparedStatement -> {
+                        preparedStatement.setString(1, newStatus.toString());
+                        for(int i = start; i < end; i++) {
+                            preparedStatement.setLong(i - start + 2, ids[i]);
+                        }
+                    });
+        }
+        return updated;
+    }
+    
+    /**
+     * Updates the {@link ClaimValidationRecord#getStatus() status} of many
+     * {@link ClaimValidationRecord ClaimValidationRecords} at once, as
+     * {@link #updateStatus(long[], Status)} does, but leaves alone any that are no
+     * longer in the expected status, such as records a late reply has already completed.
+     * 
+     * @param ids The {@link ClaimValidationRecord#getId() ids} of the
+     * {@link ClaimValidationRecord ClaimValidationRecords} to update.
+     * @param expectedStatus The {@link ClaimValidationRecord#getStatus() status} the
+     * records must still be in to be updated.
+     * @param newStatus The new {@link ClaimValidationRecord#getStatus() status}
+     * to set on the {@link ClaimValidationRecord ClaimValidationRecords}.
+     * @return The number of records updated.
+     */
+    public int updateStatusIfCurrent(final long[] ids, final Status expectedStatus, final Status newStatus) {
+        int updated = 0;
+        for(int from = 0; from < ids.length; from += InListSql.MAX_CHUNK_SIZE) {
+            final int start = from;
+            final int end = Math.min(ids.length, from + InListSql.MAX_CHUNK_SIZE);
+            final String sql = end - start == InListSql.MAX_CHUNK_SIZE
+                    ? UPDATE_CLAIM_VALIDATION_RECORD_STATUS_BY_FULL_CHUNK_OF_IDS_IF_CURRENT_SQL
+                    : InListSql.expand(UPDATE_CLAIM_VALIDATION_RECORD_STATUS_BY_IDS_IF_CURRENT_SQL, end - start);
+            updated += jdbcTemplate.update(sql,
+                    preparedStatement -> {
+                        preparedStatement.setString(1, newStatus.toString());
+                        preparedStatement.setString(2, expectedStatus.toString());
+                        for(int i = start; i < end; i++) {
+                            preparedStatement.setLong(i - start + 3, ids[i]);
+                        }
+                    });
+        }
+        return updated;
+    }
+    
     /**
      * Updates {@link ClaimValidationRecord ClaimValidationRecords} in bulk.
      * 
@@ -267,4 +1015,137 @@ public class ClaimValidationRecordDao extends AbstractDao {
                 runNumber,
                 status.toString());
     }
+    
+    /**
+     * Moves the {@link ClaimValidationRecord.Status#DEFERRED DEFERRED}
+     * {@link ClaimValidationRecord ClaimValidationRecords} of a run that are eligible
+     * to be retried into another run and status.
+     * 
+     * @param batchId The {@link ClaimValidationRecord#getBatchId() batchId} of the
+     * {@link ClaimValidationRecord ClaimValidationRecords} to update.
+     * @param runNumber The {@link ClaimValidationRecord#getRunNumber() runNumber} of
+     * the {@link ClaimValidationRecord ClaimValidationRecords} to update.
+     * @param now Records with a {@link ClaimValidationRecord#getNextEligibleDate() nextEligibleDate}
+     * at or before this time are updated.
+     * @param newRunNumber The {@link ClaimValidationRecord#getRunNumber() runNumber}
+     * to set the {@link ClaimValidationRecord ClaimValidationRecords} to.
+     * @param newStatus The {@link ClaimValidationRecord#getStatus() status} to set
+     * the {@link ClaimValidationRecord ClaimValidationRecords} to.
+     * @return The number of {@link ClaimValidationRecord ClaimValidationRecords} that
+     * were updated.
+     */
+    public int updateEligibleDeferredStatusAndRunNumber(final long batchId, final long runNumber, final Date now,
+            final long newRunNumber, final Status newStatus) {
+        return jdbcTemplate.update(
+                UPDATE_ELIGIBLE_CLAIM_VALIDATION_RECORD_STATUS_AND_RUN_SQL,
+                newRunNumber,
+                newStatus.toString(),
+                batchId,
+                runNumber,
+                Status.DEFERRED.toString(),
+                new Timestamp(now.getTime()));
+    }
+    
+    /**
+     * Retrieves the earliest time at which a {@link ClaimValidationRecord.Status#DEFERRED DEFERRED}
+     * {@link ClaimValidationRecord} of a run becomes eligible to be retried.
+     * 
+     * @param batchId The {@link ClaimValidationRecord#getBatchId() batchId} to query for.
+     * @param runNumber The {@link ClaimValidationRecord#getRunNumber() runNumber} to query for.
+     * @return The earliest {@link ClaimValidationRecord#getNextEligibleDate() nextEligibleDate},
+     * or {@code null} if the run has no DEFERRED records.
+     */
+    public Date getEarliestDeferredNextEligibleDate(final long batchId, final long runNumber) {
+        return jdbcTemplate.queryForObject(
+                SELECT_EARLIEST_NEXT_ELIGIBLE_DATE_BY_BATCH_AND_RUN_AND_STATUS_SQL,
+                new Object[]{ batchId, runNumber, Status.DEFERRED.toString() },
+                Date.class);
+    }
+    
+    /**
+     * Counts the {@link ClaimValidationRecord ClaimValidationRecords} of a run in a
+     * particular {@link ClaimValidationRecord#getStatus() status}, for each
+     * {@link ClaimValidationRecord#getAttemptCount() attemptCount}.
+     * 
+     * @param batchId The {@link ClaimValidationRecord#getBatchId() batchId} to query for.
+     * @param runNumber The {@link ClaimValidationRecord#getRunNumber() runNumber} to query for.
+     * @param status The {@link ClaimValidationRecord#getStatus() status} to query for.
+     * @return A {@link Map} of {@link ClaimValidationRecord#getAttemptCount() attemptCount}
+     * to the number of records with it. Attempt counts without records are absent.
+     */
+    public Map<Integer, Integer> countByBatchIdAndRunNumberAndStatusGroupedByAttemptCount(final long batchId,
+            final long runNumber, final Status status) {
+        final Map<Integer, Integer> counts = new TreeMap<>();
+        jdbcTemplate.query(
+                COUNT_CLAIM_VALIDATION_RECORD_BY_BATCH_AND_RUN_AND_STATUS_GROUPED_BY_ATTEMPT_SQL,
+                new Object[]{ batchId, runNumber, status.toString() },
+                (RowCallbackHandler) rs -> counts.put(rs.getInt("attempt_count"), rs.getInt("total")));
+        return counts;
+    }
+    
+    /**
+     * Records another attempt on the {@link ClaimValidationRecord ClaimValidationRecords}
+     * of a run with a particular {@link ClaimValidationRecord#getStatus() status} and
+     * {@link ClaimValidationRecord#getAttemptCount() attemptCount}, incrementing their
+     * attempt count and moving them into another run and status.
+     * 
+     * @param batchId The {@link ClaimValidationRecord#getBatchId() batchId} of the
+     * {@link ClaimValidationRecord ClaimValidationRecords} to update.
+     * @param runNumber The {@link ClaimValidationRecord#getRunNumber() runNumber} of
+     * the {@link ClaimValidationRecord ClaimValidationRecords} to update.
+     * @param status The {@link ClaimValidationRecord#getStatus() status} of the
+     * {@link ClaimValidationRecord ClaimValidationRecords} to update.
+     * @param attemptCount The {@link ClaimValidationRecord#getAttemptCount() attemptCount}
+     * of the {@link ClaimValidationRecord ClaimValidationRecords} to update.
+     * @param newRunNumber The {@link ClaimValidationRecord#getRunNumber() runNumber}
+     * to set the {@link ClaimValidationRecord ClaimValidationRecords} to.
+     * @param newStatus The {@link ClaimValidationRecord#getStatus() status} to set
+     * the {@link ClaimValidationRecord ClaimValidationRecords} to.
+     * @param nextEligibleDate The {@link ClaimValidationRecord#getNextEligibleDate() nextEligibleDate}
+     * to set, or {@code null} for none.
+     * @return The number of {@link ClaimValidationRecord ClaimValidationRecords} that
+     * were updated.
+     */
+    public int updateAttempt(final long batchId, final long runNumber, final Status status, final int attemptCount,
+            final long newRunNumber, final Status newStatus, final Date nextEligibleDate) {
+        return jdbcTemplate.update(
+                UPDATE_CLAIM_VALIDATION_RECORD_ATTEMPT_SQL,
+                newRunNumber,
+                newStatus.toString(),
+                nextEligibleDate == null ? null : new Timestamp(nextEligibleDate.getTime()),
+                batchId,
+                runNumber,
+                status.toString(),
+                attemptCount);
+    }
+    
+    /**
+     * Moves the {@link ClaimValidationRecord#getRecord() record} bodies of up to
+     * {@code limit} {@link ClaimValidationRecord ClaimValidationRecords} from
+     * claim_validation_record to the body table, in id order.
+     * <p>
+     * Bodies already present in the body table are not copied again, so a chunk that
+     * failed part way may simply be retried. This should be called within a
+     * transaction, and only while bodies are stored
+     * {@link RecordBodyStorage#MIGRATING MIGRATING}.
+     * 
+     * @param afterId Only records with a greater {@link ClaimValidationRecord#getId() id}
+     * are moved.
+     * @param limit The most records to move, at most {@link InListSql#MAX_CHUNK_SIZE}.
+     * @return The greatest {@link ClaimValidationRecord#getId() id} moved, or -1 if
+     * no bodies remain to be moved.
+     */
+    public long moveInlineRecordBodies(final long afterId, final int limit) {
+        final List<Long> ids = jdbcTemplate.queryForList(
+                SELECT_IDS_OF_INLINE_BODIES_SQL,
+                new Object[]{ afterId, Math.min(limit, InListSql.MAX_CHUNK_SIZE) },
+                Long.class);
+        if(ids.isEmpty()) {
+            return -1;
+        }
+        final Object[] parameters = ids.toArray();
+        jdbcTemplate.update(InListSql.expand(COPY_INLINE_BODIES_BY_IDS_SQL, parameters.length), parameters);
+        jdbcTemplate.update(InListSql.expand(CLEAR_INLINE_BODIES_BY_IDS_SQL, parameters.length), parameters);
+        return ids.get(ids.size() - 1);
+    }
 }
@@ -1,17 +1,23 @@
 package com.doradosystems.mis.dao;
 
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.List;
 
 import javax.sql.DataSource;
 
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+
 import com.doradosystems.data.dao.AbstractDao;
 import com.doradosystems.exception.NotFoundException;
 import com.doradosystems.exception.UniqueConstraintException;
 import com.doradosystems.mis.domain.ClaimValidationResponse;
 import com.doradosystems.mis.domain.ClaimValidationResponse.Status;
 import com.doradosystems.mis.domain.ClaimValidationResponseIdentifier;
-import com.mysql.jdbc.Statement;
+import com.doradosystems.mis.util.TextCompression;
 
 /**
  * @author kev
@@ -27,6 +33,23 @@ public class ClaimValidationResponseDao extends AbstractDao {
             "where batch_id = ? " +
             "and run_number = ?";
     
+    /**
+     * SQL to select the {@link ClaimValidationResponse} for a
+     * {@link ClaimValidationResponse#getClaimValidationRecordId() claimValidationRecordId}.
+     */
+    private final static String SELECT_BY_RECORD_ID_SQL =
+            "SELECT id, batch_id, run_number, status, claim_number, response, " +
+            "create_date, updated_date, claim_validation_record_id " +
+            "FROM claim_validation_response " +
+            "where claim_validation_record_id = ?";
+    
+    /**
+     * {@link #SELECT_BY_BATCH_AND_RUN_SQL} against the archive table.
+     */
+    private final static String SELECT_ARCHIVED_BY_BATCH_AND_RUN_SQL =
+            SELECT_BY_BATCH_AND_RUN_SQL.replace("FROM claim_validation_response ",
+                    "FROM claim_validation_response_archive ");
+    
     /**
      * SQL to select all the
      * {@link ClaimValidationResponseIdentifier ClaimValidationResponseIdentifiers}
@@ -42,6 +65,35 @@ public class ClaimValidationResponseDao extends AbstractDao {
             "INSERT INTO claim_validation_response(batch_id, run_number, status, " +
             "claim_number, response, claim_validation_record_id) VALUES(?, ?, ?, ?, ?, ?)";
     
+    /**
+     * Logical name of the statement that inserts a {@link ClaimValidationResponse}
+     * unless one already exists for the same {@link ClaimValidationResponse#getClaimValidationRecordId()
+     * claimValidationRecordId}.
+     */
+    private static final String UPSERT = "upsert";
+    
+    /**
+     * Dialect-specific statements, keyed by logical operation name.
+     * <p>
+     * All forms of {@link #UPSERT} take the six insert parameters followed by the
+     * claim_validation_record_id again, and rely on a unique index on
+     * claim_validation_record_id. On PostgreSQL, {@code ON CONFLICT DO NOTHING}
+     * also covers two concurrent inserts for the same record.
+     */
+    private static final StatementRegistry STATEMENTS = StatementRegistry.builder()
+            .register(UPSERT,
+                    "INSERT INTO claim_validation_response(batch_id, run_number, status, " +
+                    "claim_number, response, claim_validation_record_id) " +
+                    "SELECT ?, ?, ?, ?, ?, ? FROM DUAL " +
+                    "WHERE NOT EXISTS (SELECT 1 FROM claim_validation_response WHERE claim_validation_record_id = ?)")
+            .register(UPSERT, SqlDialect.POSTGRESQL,
+                    "INSERT INTO claim_validation_response(batch_id, run_number, status, " +
+                    "claim_number, response, claim_validation_record_id) " +
+                    "SELECT ?, ?, ?, ?, ?, ? " +
+                    "WHERE NOT EXISTS (SELECT 1 FROM claim_validation_response WHERE claim_validation_record_id = ?) " +
+                    "ON CONFLICT (claim_validation_record_id) DO NOTHING")
+            .build();
+    
     /**
      * SQL to update the status of all {@link ClaimValidationResponse}
      * records in a single batch and run.
@@ -51,8 +103,71 @@ public class ClaimValidationResponseDao extends AbstractDao {
                     "SET status = ? " +
                     "WHERE batch_id = ? and run_number = ?";
     
+    /**
+     * SQL template to update the status of many {@link ClaimValidationResponse}
+     * records by id. The {@link InListSql#IN_LIST} placeholder is expanded for
+     * each chunk of ids.
+     */
+    private static final String UPDATE_STATUS_BY_IDS_SQL =
+            "UPDATE claim_validation_response " +
+                    "SET status = ? " +
+                    "WHERE id IN (" + InListSql.IN_LIST + ")";
+    
+    /**
+     * {@link #UPDATE_STATUS_BY_IDS_SQL} expanded for a full chunk of
+     * {@link InListSql#MAX_CHUNK_SIZE} ids.
+     */
+    private static final String UPDATE_STATUS_BY_FULL_CHUNK_OF_IDS_SQL =
+            InListSql.expand(UPDATE_STATUS_BY_IDS_SQL, InListSql.MAX_CHUNK_SIZE);
+    
+    /**
+     * The {@link SqlDialect} of the database behind the {@link DataSource}.
+     */
+    private final SqlDialect dialect;
+    
+    /**
+     * Whether {@link ClaimValidationResponse#getResponse() responses} are written
+     * compressed.
+     */
+    private boolean compressResponses;
+    
+    /**
+     * Constructs a new {@link ClaimValidationResponseDao} for a
+     * {@link SqlDialect#MYSQL MySQL} database.
+     * 
+     * @param dataSource The {@link DataSource} to use.
+     */
     public ClaimValidationResponseDao(DataSource dataSource) {
+        this(dataSource, SqlDialect.MYSQL);
+    }
+    
+    /**
+     * Constructs a new {@link ClaimValidationResponseDao}.
+     * 
+     * @param dataSource The {@link DataSource} to use.
+     * @param dialect The {@link SqlDialect} of the database behind the
+     * {@link DataSource}.
+     */
+    public ClaimValidationResponseDao(DataSource dataSource, SqlDialect dialect) {
         super (dataSource);
+        this.dialect = dialect;
+    }
+    
+    public SqlDialect getDialect() {
+        return dialect;
+    }
+    
+    /**
+     * @param compressResponses {@code true} to write {@link ClaimValidationResponse#getResponse() responses}
+     * compressed with {@link TextCompression}. Responses are read correctly whether or
+     * not they were written compressed, so this may be switched at any time.
+     */
+    public void setCompressResponses(final boolean compressResponses) {
+        this.compressResponses = compressResponses;
+    }
+    
+    private String responseOf(final ClaimValidationResponse response) {
+        return compressResponses ? TextCompression.encode(response.getResponse()) : response.getResponse();
     }
     
     /**
@@ -69,12 +184,75 @@ public class ClaimValidationResponseDao extends AbstractDao {
                     preparedStatement.setLong(2, response.getRunNumber());
                     preparedStatement.setString(3, response.getStatus().toString());
                     preparedStatement.setString(4, response.getClaimNumber());
-                    preparedStatement.setString(5, response.getResponse());
+                    preparedStatement.setString(5, responseOf(response));
                     preparedStatement.setLong(6, response.getClaimValidationRecordId());
                     return preparedStatement;
                 });     
     }
     
+    /**
+     * Persist a {@link ClaimValidationResponse} unless a response already exists for
+     * the same {@link ClaimValidationResponse#getClaimValidationRecordId() claimValidationRecordId}.
+     * <p>
+     * This makes redelivered validation events cheap to handle: the existence check
+     * happens in the same statement as the insert, so no separate SELECT is needed.
+     * Requires a unique index on claim_validation_record_id.
+     * 
+     * @param response a {@link ClaimValidationResponse} object.
+     * @return {@code true} if the response was inserted, or {@code false} if a
+     * response for the record already existed.
+     * @see #addIfAbsent(ClaimValidationResponse)
+     */
+    public boolean upsert(final ClaimValidationResponse response) {
+        return addIfAbsent(response) != null;
+    }
+    
+    /**
+     * Persist a {@link ClaimValidationResponse} unless a response already exists for
+     * the same {@link ClaimValidationResponse#getClaimValidationRecordId() claimValidationRecordId},
+     * as {@link #upsert(ClaimValidationResponse)} does.
+     * 
+     * @param response a {@link ClaimValidationResponse} object.
+     * @return the generated PK, or {@code null} if a response for the record already
+     * existed.
+     */
+    public Long addIfAbsent(final ClaimValidationResponse response) {
+        final GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+        try {
+            if(jdbcTemplate.update(
+                    connection -> {
+                        final PreparedStatement preparedStatement = connection.prepareStatement(
+                                STATEMENTS.get(UPSERT, dialect), Statement.RETURN_GENERATED_KEYS);
+                        preparedStatement.setLong(1, response.getBatchId());
+                        preparedStatement.setLong(2, response.getRunNumber());
+                        preparedStatement.setString(3, response.getStatus().toString());
+                        preparedStatement.setString(4, response.getClaimNumber());
+                        preparedStatement.setString(5, responseOf(response));
+                        preparedStatement.setLong(6, response.getClaimValidationRecordId());
+                        preparedStatement.setLong(7, response.getClaimValidationRecordId());
+                        return preparedStatement;
+                    }, keyHolder) == 0) {
+                return null;
+            }
+        } catch (final DuplicateKeyException exception) {
+            // A concurrent insert for the same record got in first.
+            return null;
+        }
+        return keyHolder.getKey().longValue();
+    }
+    
+    /**
+     * Get the {@link ClaimValidationResponse} for a
+     * {@link com.doradosystems.mis.domain.ClaimValidationRecord ClaimValidationRecord}.
+     * @param claimValidationRecordId the id of the record.
+     * @return the {@link ClaimValidationResponse}, or {@code null} if there is none.
+     */
+    public ClaimValidationResponse getByClaimValidationRecordId(final long claimValidationRecordId) {
+        final List<ClaimValidationResponse> responses = jdbcTemplate.query(SELECT_BY_RECORD_ID_SQL,
+                new Object[] { claimValidationRecordId }, (rs, count) -> toResponse(rs));
+        return responses.isEmpty() ? null : responses.get(0);
+    }
+    
     /**
      * Get all {@link ClaimValdiationResponse} objects for the given batch and run number.
      * @param batchId the batch id of the file.
@@ -82,18 +260,35 @@ public class ClaimValidationResponseDao extends AbstractDao {
      * @return a list of {@link ClaimValdiationResponse} objects.
      */
     public List<ClaimValidationResponse> get(Long batchId, Long runNumber) {
-        return jdbcTemplate.query(SELECT_BY_BATCH_AND_RUN_SQL, new Object[] { batchId, runNumber },
-                (rs, count) -> {
-                    return new ClaimValidationResponse(rs.getLong("id"), 
-                            rs.getLong("batch_id"),
-                            rs.getLong("run_number"),
-                            Status.valueOf(rs.getString("status")),
-                            rs.getString("claim_number"),
-                            rs.getString("response"),
-                            rs.getTimestamp("create_date"),
-                            rs.getTimestamp("updated_date"),
-                            rs.getLong("claim_validation_record_id"));
-                });
+        return get(SELECT_BY_BATCH_AND_RUN_SQL, batchId, runNumber);
+    }
+    
+    /**
+     * Get all {@link ClaimValidationResponse} objects of an archived batch for the
+     * given batch and run number, from the archive table.
+     * @param batchId the batch id of the file.
+     * @param runNumber the run number of the file
+     * @return a list of {@link ClaimValidationResponse} objects.
+     * @see ClaimValidationArchiveDao
+     */
+    public List<ClaimValidationResponse> getArchived(final Long batchId, final Long runNumber) {
+        return get(SELECT_ARCHIVED_BY_BATCH_AND_RUN_SQL, batchId, runNumber);
+    }
+    
+    private List<ClaimValidationResponse> get(final String sql, final Long batchId, final Long runNumber) {
+        return jdbcTemplate.query(sql, new Object[] { batchId, runNumber }, (rs, count) -> toResponse(rs));
+    }
+    
+    private static ClaimValidationResponse toResponse(final ResultSet rs) throws SQLException {
+        return new ClaimValidationResponse(rs.getLong("id"), 
+                rs.getLong("batch_id"),
+                rs.getLong("run_number"),
+                Status.valueOf(rs.getString("status")),
+                rs.getString("claim_number"),
+                rs.getString("response"),
+                rs.getTimestamp("create_date"),
+                rs.getTimestamp("updated_date"),
+                rs.getLong("claim_validation_record_id"));
     }
     
     /**
@@ -138,4 +333,37 @@ public class ClaimValidationResponseDao extends AbstractDao {
                 runNumber
                 );
     }
+    
+    /**
+     * Updates the {@link ClaimValidationResponse#getStatus() status} of many
+     * {@link ClaimValidationResponse} records at once.
+     * <p>
+     * The ids are bound in chunks of up to {@link InListSql#MAX_CHUNK_SIZE}
+     * per statement, without boxing. Ids that do not match a record are
+     * ignored.
+     * 
+     * @param ids The {@link ClaimValidationResponse#getId() ids} of the
+     * records to update.
+     * @param newStatus The new {@link ClaimValidationResponse#getStatus() status} to
+     * set the records to.
+     * @return The number of {@link ClaimValidationResponse} records modified.
+     */
+    public int updateStatus(final long[] ids, final Status newStatus) {
+        int updated = 0;
+        for(int from = 0; from < ids.length; from += InListSql.MAX_CHUNK_SIZE) {
+            final int start = from;
+            final int end = Math.min(ids.length, from + InListSql.MAX_CHUNK_SIZE);
+            final String sql = end - start == InListSql.MAX_CHUNK_SIZE
+                    ? UPDATE_STATUS_BY_FULL_CHUNK_OF_IDS_SQL
+                    : InListSql.expand(UPDATE_STATUS_BY_IDS_SQL, end - start);
+            updated += jdbcTemplate.update(sql,
+                    preparedStatement -> {
+                        preparedStatement.setString(1, newStatus.toString());
+                        for(int i = start; i < end; i++) {
+                            preparedStatement.setLong(i - start + 2, ids[i]);
+                        }
+                    });
+        }
+        return updated;
+    }
 }
@@ -0,0 +1,158 @@
+package com.doradosystems.mis.dao;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import com.doradosystems.data.dao.AbstractDao;
+
+/**
+ * DAO for the claim validation result cache, which maps the content hash of a
+ * claim to the response payload produced for it.
+ */
+public class ClaimValidationResultCacheDao extends AbstractDao {
+
+    /**
+     * Logical name of the statement that inserts a single cached result, unless
+     * one is already cached for its content hash.
+     */
+    private static final String INSERT_IF_ABSENT = "insertIfAbsent";
+    
+    /**
+     * Dialect-specific statements, keyed by logical operation name.
+     * <p>
+     * All forms of {@link #INSERT_IF_ABSENT} take the four insert parameters followed
+     * by the content hash again. An existing entry is skipped rather than raising a
+     * duplicate key error, which on PostgreSQL would abort the caller's transaction.
+     */
+    private static final StatementRegistry STATEMENTS = StatementRegistry.builder()
+            .register(INSERT_IF_ABSENT,
+                    "insert into claim_validation_result_cache(content_hash, client_id, rule_version, response) " +
+                    "select ?, ?, ?, ? from dual " +
+                    "where not exists (select 1 from claim_validation_result_cache where content_hash = ?)")
+            .register(INSERT_IF_ABSENT, SqlDialect.POSTGRESQL,
+                    "insert into claim_validation_result_cache(content_hash, client_id, rule_version, response) " +
+                    "select ?, ?, ?, ? " +
+                    "where not exists (select 1 from claim_validation_result_cache where content_hash = ?) " +
+                    "on conflict (content_hash) do nothing")
+            .build();
+    
+    /**
+     * SQL for selecting the cached response for a content hash.
+     */
+    private static final String SELECT_RESPONSE_BY_CONTENT_HASH_SQL =
+            "select response from claim_validation_result_cache where content_hash = ?";
+    
+    /**
+     * SQL template for selecting the cached responses for many content hashes. The
+     * {@link InListSql#IN_LIST} placeholder is expanded for each chunk of hashes.
+     */
+    private static final String SELECT_RESPONSES_BY_CONTENT_HASHES_SQL =
+            "select content_hash, response from claim_validation_result_cache " +
+                    "where content_hash in (" + InListSql.IN_LIST + ")";
+    
+    /**
+     * {@link #SELECT_RESPONSES_BY_CONTENT_HASHES_SQL} expanded for a full chunk of
+     * {@link InListSql#MAX_CHUNK_SIZE} hashes.
+     */
+    private static final String SELECT_RESPONSES_BY_FULL_CHUNK_OF_CONTENT_HASHES_SQL =
+            InListSql.expand(SELECT_RESPONSES_BY_CONTENT_HASHES_SQL, InListSql.MAX_CHUNK_SIZE);
+    
+    /**
+     * The {@link SqlDialect} of the database behind the {@link DataSource}.
+     */
+    private final SqlDialect dialect;
+    
+    /**
+     * Constructs a new {@link ClaimValidationResultCacheDao} using the provided
+     * {@link DataSource} to initialize the {@link JdbcTemplate}.
+     * <p>
+     * The database is assumed to be {@link SqlDialect#MYSQL MySQL}.
+     * 
+     * @param dataSource The {@link DataSource} to use to initialize the
+     * {@link JdbcTemplate}.
+     */
+    public ClaimValidationResultCacheDao(final DataSource dataSource) {
+        this(dataSource, SqlDialect.MYSQL);
+    }
+    
+    /**
+     * Constructs a new {@link ClaimValidationResultCacheDao} using the provided
+     * {@link DataSource} to initialize the {@link JdbcTemplate}.
+     * 
+     * @param dataSource The {@link DataSource} to use to initialize the
+     * {@link JdbcTemplate}.
+     * @param dialect The {@link SqlDialect} of the database behind the
+     * {@link DataSource}.
+     */
+    public ClaimValidationResultCacheDao(final DataSource dataSource, final SqlDialect dialect) {
+        super(dataSource);
+        this.dialect = dialect;
+    }
+    
+    public SqlDialect getDialect() {
+        return dialect;
+    }
+    
+    /**
+     * Retrieves the cached response for a content hash.
+     * 
+     * @param contentHash The content hash to look up.
+     * @return The cached response payload, or {@code null} if there is none.
+     */
+    public String getResponse(final String contentHash) {
+        final List<String> responses = jdbcTemplate.queryForList(
+                SELECT_RESPONSE_BY_CONTENT_HASH_SQL,
+                new Object[]{ contentHash },
+                String.class);
+        return responses.isEmpty() ? null : responses.get(0);
+    }
+    
+    /**
+     * Retrieves the cached responses for many content hashes, with one query per
+     * {@link InListSql#MAX_CHUNK_SIZE} hashes.
+     * 
+     * @param contentHashes The content hashes to look up.
+     * @return A {@link Map} of content hash to cached response payload. Hashes
+     * without a cached response are absent.
+     */
+    public Map<String, String> getResponses(final List<String> contentHashes) {
+        final Map<String, String> responses = new HashMap<>();
+        for(int from = 0; from < contentHashes.size(); from += InListSql.MAX_CHUNK_SIZE) {
+            final List<String> chunk = contentHashes.subList(from,
+                    Math.min(contentHashes.size(), from + InListSql.MAX_CHUNK_SIZE));
+            final String sql = chunk.size() == InListSql.MAX_CHUNK_SIZE
+                    ? SELECT_RESPONSES_BY_FULL_CHUNK_OF_CONTENT_HASHES_SQL
+                    : InListSql.expand(SELECT_RESPONSES_BY_CONTENT_HASHES_SQL, chunk.size());
+            jdbcTemplate.query(sql, chunk.toArray(),
+                    (RowCallbackHandler) rs -> responses.put(rs.getString("content_hash"), rs.getString("response")));
+        }
+        return responses;
+    }
+    
+    /**
+     * Caches a response for a content hash, unless one is already cached.
+     * 
+     * @param contentHash The content hash of the claim.
+     * @param clientId The client the claim belongs to.
+     * @param ruleVersion The version of the validation rules the response was produced by.
+     * @param response The response payload.
+     * @return {@code true} if the response was cached, {@code false} if one was
+     * already cached for the content hash.
+     */
+    public boolean add(final String contentHash, final long clientId, final String ruleVersion,
+            final String response) {
+        try {
+            return jdbcTemplate.update(STATEMENTS.get(INSERT_IF_ABSENT, dialect),
+                    contentHash, clientId, ruleVersion, response, contentHash) > 0;
+        } catch (final DuplicateKeyException exception) {
+            // Cached concurrently, or by an earlier run.
+            return false;
+        }
+    }
+}
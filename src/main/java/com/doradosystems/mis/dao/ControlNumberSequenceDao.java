@@ -0,0 +1,135 @@
+package com.doradosystems.mis.dao;
+
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.DuplicateKeyException;
+
+import com.doradosystems.data.dao.AbstractDao;
+
+/**
+ * DAO for the control_number_sequence table, which holds the next unreserved
+ * value of each named control number sequence:
+ * <pre>
+ * create table control_number_sequence (
+ *     name varchar(64) not null primary key,
+ *     next_value bigint not null
+ * )
+ * </pre>
+ */
+public class ControlNumberSequenceDao extends AbstractDao {
+
+    /**
+     * Logical name of the statement that creates a sequence, starting at 1, unless
+     * it already exists.
+     */
+    private static final String INSERT_IF_ABSENT = "insertIfAbsent";
+    
+    /**
+     * Dialect-specific statements, keyed by logical operation name.
+     * <p>
+     * All forms of {@link #INSERT_IF_ABSENT} take the sequence name twice.
+     */
+    private static final StatementRegistry STATEMENTS = StatementRegistry.builder()
+            .register(INSERT_IF_ABSENT,
+                    "insert into control_number_sequence(name, next_value) " +
+                    "select ?, 1 from dual " +
+                    "where not exists (select 1 from control_number_sequence where name = ?)")
+            .register(INSERT_IF_ABSENT, SqlDialect.POSTGRESQL,
+                    "insert into control_number_sequence(name, next_value) " +
+                    "select ?, 1 " +
+                    "where not exists (select 1 from control_number_sequence where name = ?) " +
+                    "on conflict (name) do nothing")
+            .build();
+    
+    /**
+     * SQL for selecting and locking the next unreserved value of a sequence.
+     */
+    private static final String SELECT_NEXT_VALUE_FOR_UPDATE_SQL =
+            "select next_value from control_number_sequence where name = ? for update";
+    
+    /**
+     * SQL for updating the next unreserved value of a sequence.
+     */
+    private static final String UPDATE_NEXT_VALUE_SQL =
+            "update control_number_sequence set next_value = ? where name = ?";
+    
+    /**
+     * The {@link SqlDialect} of the database behind the {@link DataSource}.
+     */
+    private final SqlDialect dialect;
+    
+    /**
+     * Constructs a new {@link ControlNumberSequenceDao} using the provided
+     * {@link DataSource} to initialize the {@link JdbcTemplate}.
+     * <p>
+     * The database is assumed to be {@link SqlDialect#MYSQL MySQL}.
+     * 
+     * @param dataSource The {@link DataSource} to use to initialize the
+     * {@link JdbcTemplate}.
+     */
+    public ControlNumberSequenceDao(final DataSource dataSource) {
+        this(dataSource, SqlDialect.MYSQL);
+    }
+    
+    /**
+     * Constructs a new {@link ControlNumberSequenceDao} using the provided
+     * {@link DataSource} to initialize the {@link JdbcTemplate}.
+     * 
+     * @param dataSource The {@link DataSource} to use to initialize the
+     * {@link JdbcTemplate}.
+     * @param dialect The {@link SqlDialect} of the database behind the
+     * {@link DataSource}.
+     */
+    public ControlNumberSequenceDao(final DataSource dataSource, final SqlDialect dialect) {
+        super(dataSource);
+        this.dialect = dialect;
+    }
+    
+    public SqlDialect getDialect() {
+        return dialect;
+    }
+    
+    /**
+     * Reserves the next block of values of a sequence, creating the sequence if it
+     * does not exist.
+     * <p>
+     * The block runs from the returned value for {@code blockSize} values, or up to
+     * {@code maxValue} if that comes first. Once a block reaches {@code maxValue},
+     * the sequence wraps around to 1.
+     * <p>
+     * The sequence's row is locked until the caller's transaction ends, so this
+     * should be called in a short transaction of its own.
+     * 
+     * @param name The name of the sequence.
+     * @param blockSize The number of values to reserve.
+     * @param maxValue The largest value of the sequence.
+     * @return The first value of the reserved block.
+     */
+    public long reserve(final String name, final int blockSize, final long maxValue) {
+        List<Long> nextValues = lockNextValue(name);
+        if(nextValues.isEmpty()) {
+            try {
+                jdbcTemplate.update(STATEMENTS.get(INSERT_IF_ABSENT, dialect), name, name);
+            } catch (final DuplicateKeyException exception) {
+                // Created concurrently.
+            }
+            nextValues = lockNextValue(name);
+        }
+        long first = nextValues.get(0);
+        if(first < 1 || first > maxValue) {
+            first = 1;
+        }
+        final long end = first + blockSize;
+        jdbcTemplate.update(UPDATE_NEXT_VALUE_SQL, end > maxValue ? 1 : end, name);
+        return first;
+    }
+    
+    private List<Long> lockNextValue(final String name) {
+        return jdbcTemplate.queryForList(
+                SELECT_NEXT_VALUE_FOR_UPDATE_SQL,
+                new Object[]{ name },
+                Long.class);
+    }
+}
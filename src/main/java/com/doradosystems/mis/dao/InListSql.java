@@ -0,0 +1,46 @@
+package com.doradosystems.mis.dao;
+
+import java.util.Arrays;
+
+/**
+ * Helpers for building statements with parameterized {@code IN (?, ?, ...)}
+ * lists, used by the DAOs' bulk id-based operations.
+ * <p>
+ * Ids are sent in chunks of at most {@link #MAX_CHUNK_SIZE} so that the
+ * statements stay below driver and database parameter limits, while most
+ * chunks share a single SQL string (and therefore a single cached
+ * prepared statement).
+ */
+final class InListSql {
+
+    /**
+     * The placeholder in a SQL template that is replaced with the
+     * {@code ?, ?, ...} list.
+     */
+    static final String IN_LIST = "#{ids}";
+
+    /**
+     * The maximum number of ids bound in a single statement.
+     */
+    static final int MAX_CHUNK_SIZE = 1000;
+
+    private InListSql() {
+    }
+
+    /**
+     * Expands the {@link #IN_LIST} placeholder of a SQL template into
+     * {@code size} parameter markers.
+     *
+     * @param template The SQL template containing {@link #IN_LIST}.
+     * @param size The number of parameter markers to generate.
+     * @return The expanded SQL.
+     */
+    static String expand(final String template, final int size) {
+        final char[] markers = new char[size * 2 - 1];
+        Arrays.fill(markers, ',');
+        for(int i = 0; i < markers.length; i += 2) {
+            markers[i] = '?';
+        }
+        return template.replace(IN_LIST, new String(markers));
+    }
+}
@@ -0,0 +1,161 @@
+package com.doradosystems.mis.dao;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+
+import com.doradosystems.data.dao.AbstractDao;
+import com.doradosystems.mis.domain.OutboxEvent;
+
+/**
+ * DAO for performing operations on {@link OutboxEvent} records.
+ */
+public class OutboxEventDao extends AbstractDao {
+
+    /**
+     * SQL for inserting a single {@link OutboxEvent} record.
+     */
+    private static final String INSERT_SQL =
+            "insert into outbox_event" +
+                    "(topic, event_key, payload) " +
+                    "values(?, ?, ?)";
+    
+    /**
+     * SQL for selecting a specific number of {@link OutboxEvent} records,
+     * in the order they were written.
+     */
+    private static final String SELECT_OUTBOX_EVENT_WITH_LIMIT_ORDERED_BY_ID_SQL =
+            "select id, topic, event_key, payload, create_date " +
+                    "from outbox_event order by id ASC limit ?";
+    
+    /**
+     * SQL for counting the {@link OutboxEvent} records not yet published.
+     */
+    private static final String COUNT_OUTBOX_EVENT_SQL =
+            "select count(0) as total from outbox_event";
+    
+    /**
+     * SQL for deleting {@link OutboxEvent} records by
+     * {@link OutboxEvent#getId() id}.
+     * <p>
+     * This is a template; {@link InListSql#IN_LIST} is expanded to one parameter
+     * marker per id.
+     */
+    private static final String DELETE_OUTBOX_EVENT_BY_IDS_SQL =
+            "delete from outbox_event where id in (" + InListSql.IN_LIST + ")";
+    
+    /**
+     * {@link #DELETE_OUTBOX_EVENT_BY_IDS_SQL} expanded for a full chunk of
+     * {@link InListSql#MAX_CHUNK_SIZE} ids.
+     */
+    private static final String DELETE_OUTBOX_EVENT_BY_FULL_CHUNK_OF_IDS_SQL =
+            InListSql.expand(DELETE_OUTBOX_EVENT_BY_IDS_SQL, InListSql.MAX_CHUNK_SIZE);
+    
+    /**
+     * Constructs a new {@link OutboxEventDao} using the provided
+     * {@link DataSource} to initialize the {@link JdbcTemplate}.
+     * 
+     * @param dataSource The {@link DataSource} to use to initialize the
+     * {@link JdbcTemplate}.
+     */
+    public OutboxEventDao(final DataSource dataSource) {
+        super(dataSource);
+    }
+    
+    /**
+     * Inserts {@link OutboxEvent} records into the database in a single batch.
+     * <p>
+     * Note: This ignores the {@link OutboxEvent#getId() id} and
+     * {@link OutboxEvent#getCreateDate() createDate} fields of the provided records.
+     * Ids are assigned in the order of the {@link List}, which is the order in which
+     * the records will be published.
+     * 
+     * @param outboxEvents The {@link OutboxEvent} records to insert.
+     * @return The number of records inserted.
+     */
+    public int addAll(final List<OutboxEvent> outboxEvents) {
+        if(outboxEvents.isEmpty()) {
+            return 0;
+        }
+        final int[] counts = jdbcTemplate.batchUpdate(
+                INSERT_SQL,
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(final PreparedStatement preparedStatement, final int i) throws SQLException {
+                        final OutboxEvent outboxEvent = outboxEvents.get(i);
+                        preparedStatement.setString(1, outboxEvent.getTopic());
+                        preparedStatement.setString(2, outboxEvent.getKey());
+                        preparedStatement.setBytes(3, outboxEvent.getPayload());
+                    }
+                    
+                    @Override
+                    public int getBatchSize() {
+                        return outboxEvents.size();
+                    }
+                });
+        // Drivers may report SUCCESS_NO_INFO rather than a count for batched rows.
+        return counts.length;
+    }
+    
+    /**
+     * Retrieves the oldest {@link OutboxEvent} records.
+     * 
+     * @param limit The maximum number of records to retrieve.
+     * @return A {@link List} of {@link OutboxEvent} records in ascending
+     * {@link OutboxEvent#getId() id} order.
+     */
+    public List<OutboxEvent> getOldest(final int limit) {
+        return jdbcTemplate.query(
+                SELECT_OUTBOX_EVENT_WITH_LIMIT_ORDERED_BY_ID_SQL,
+                new Object[]{ limit },
+                (rs, count) -> {
+                    return new OutboxEvent(
+                            rs.getLong("id"),
+                            rs.getString("topic"),
+                            rs.getString("event_key"),
+                            rs.getBytes("payload"),
+                            rs.getTimestamp("create_date")
+                            );
+                });
+    }
+    
+    /**
+     * Counts the {@link OutboxEvent} records not yet published.
+     * 
+     * @return The number of records in the outbox.
+     */
+    public int count() {
+        return jdbcTemplate.queryForObject(COUNT_OUTBOX_EVENT_SQL, Integer.class);
+    }
+    
+    /**
+     * Deletes {@link OutboxEvent} records in bulk.
+     * <p>
+     * The ids are bound in chunks of up to {@link InListSql#MAX_CHUNK_SIZE}
+     * per statement. Ids that do not match a record are ignored.
+     * 
+     * @param ids The {@link OutboxEvent#getId() ids} of the records to delete.
+     * @return The number of records deleted.
+     */
+    public int delete(final long[] ids) {
+        int deleted = 0;
+        for(int from = 0; from < ids.length; from += InListSql.MAX_CHUNK_SIZE) {
+            final int start = from;
+            final int end = Math.min(ids.length, from + InListSql.MAX_CHUNK_SIZE);
+            final String sql = end - start == InListSql.MAX_CHUNK_SIZE
+                    ? DELETE_OUTBOX_EVENT_BY_FULL_CHUNK_OF_IDS_SQL
+                    : InListSql.expand(DELETE_OUTBOX_EVENT_BY_IDS_SQL, end - start);
+            deleted += jdbcTemplate.update(sql,
+                    preparedStatement -> {
+                        for(int i = start; i < end; i++) {
+                            preparedStatement.setLong(i - start + 1, ids[i]);
+                        }
+                    });
+        }
+        return deleted;
+    }
+}
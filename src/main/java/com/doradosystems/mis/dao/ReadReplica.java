@@ -0,0 +1,28 @@
+package com.doradosystems.mis.dao;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a read-only DAO method that may be served by a read replica.
+ * <p>
+ * When the DAO is proxied with {@link ReadReplicaInterceptor#proxy(Object)} and its
+ * {@link javax.sql.DataSource DataSource} is a {@link ReplicaRoutingDataSource}, calls
+ * made outside a transaction are sent to the replica, provided it is reachable and
+ * lags the primary by no more than {@link #maxStalenessMillis()}. Otherwise, and
+ * always within a transaction, the primary is used.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface ReadReplica {
+
+    /**
+     * @return How far behind the primary, in milliseconds, the replica may be for
+     * its results to be acceptable.
+     */
+    long maxStalenessMillis() default 5000;
+}
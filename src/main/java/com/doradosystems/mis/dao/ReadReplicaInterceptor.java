@@ -0,0 +1,45 @@
+package com.doradosystems.mis.dao;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.core.annotation.AnnotationUtils;
+
+/**
+ * Routes calls to {@link ReadReplica} methods of a DAO to the read replica of its
+ * {@link ReplicaRoutingDataSource}.
+ */
+public class ReadReplicaInterceptor implements MethodInterceptor {
+
+    /**
+     * Wraps a DAO so that its {@link ReadReplica} methods read from the replica.
+     * <p>
+     * The DAO must have been constructed with a {@link ReplicaRoutingDataSource};
+     * with any other {@link javax.sql.DataSource DataSource} the proxy behaves
+     * exactly like the DAO.
+     *
+     * @param dao The DAO to wrap.
+     * @return A proxy of the same class as the DAO.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T proxy(final T dao) {
+        final ProxyFactory proxyFactory = new ProxyFactory(dao);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(new ReadReplicaInterceptor());
+        return (T) proxyFactory.getProxy();
+    }
+
+    @Override
+    public Object invoke(final MethodInvocation invocation) throws Throwable {
+        final ReadReplica readReplica = AnnotationUtils.findAnnotation(invocation.getMethod(), ReadReplica.class);
+        if(readReplica == null) {
+            return invocation.proceed();
+        }
+        final Long previous = ReplicaRoutingDataSource.beginReplicaRead(readReplica.maxStalenessMillis());
+        try {
+            return invocation.proceed();
+        } finally {
+            ReplicaRoutingDataSource.endReplicaRead(previous);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.doradosystems.mis.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.function.LongSupplier;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+/**
+ * A {@link DataSource} that hands out connections to a primary database, or to a
+ * read replica while a {@link ReadReplica} method is running.
+ * <p>
+ * The replica is only used if its replication lag, as reported by the
+ * {@link #setReplicationLagMonitor(LongSupplier) replicationLagMonitor}, is within
+ * the method's {@link ReadReplica#maxStalenessMillis() maxStalenessMillis}. If a
+ * connection to the replica cannot be opened, the primary is used instead and the
+ * replica is not tried again for {@link #setReplicaRetryInterval(long) replicaRetryInterval}.
+ * <p>
+ * Connections are chosen when they are opened, so a transaction keeps the
+ * connection it started with and reads within it always see its own writes.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    /**
+     * The staleness allowed by the {@link ReadReplica} method running on this thread,
+     * or {@code null} if none is.
+     */
+    private static final ThreadLocal<Long> ALLOWED_STALENESS = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private LongSupplier replicationLagMonitor = () -> 0L;
+    private long lagCheckInterval = 1000;
+    private long replicaRetryInterval = 30000;
+
+    private long replicationLag;
+    private long lastLagCheck = Long.MIN_VALUE;
+    private volatile long replicaFailedAt;
+
+    /**
+     * Constructs a new {@link ReplicaRoutingDataSource}.
+     *
+     * @param primary The {@link DataSource} of the primary database.
+     * @param replica The {@link DataSource} of the read replica.
+     */
+    public ReplicaRoutingDataSource(final DataSource primary, final DataSource replica) {
+        this.primary = primary;
+        this.replica = replica;
+    }
+
+    /**
+     * @param replicationLagMonitor Reports how far, in milliseconds, the replica is
+     * behind the primary. For MySQL this is typically Seconds_Behind_Master from
+     * {@code SHOW SLAVE STATUS}, times 1000. If it throws, the replica is assumed to
+     * be too far behind. Reports no lag by default.
+     */
+    public void setReplicationLagMonitor(final LongSupplier replicationLagMonitor) {
+        this.replicationLagMonitor = replicationLagMonitor;
+    }
+
+    /**
+     * @param lagCheckInterval How long, in milliseconds, a reported replication lag
+     * is reused before the monitor is asked again.
+     */
+    public void setLagCheckInterval(final long lagCheckInterval) {
+        this.lagCheckInterval = lagCheckInterval;
+    }
+
+    /**
+     * @param replicaRetryInterval How long, in milliseconds, to use the primary after
+     * a connection to the replica fails.
+     */
+    public void setReplicaRetryInterval(final long replicaRetryInterval) {
+        this.replicaRetryInterval = replicaRetryInterval;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if(useReplica()) {
+            try {
+                return replica.getConnection();
+            } catch (final SQLException exception) {
+                replicaUnavailable(exception);
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(final String username, final String password) throws SQLException {
+        if(useReplica()) {
+            try {
+                return replica.getConnection(username, password);
+            } catch (final SQLException exception) {
+                replicaUnavailable(exception);
+            }
+        }
+        return primary.getConnection(username, password);
+    }
+
+    /**
+     * Marks the start of a {@link ReadReplica} method on the current thread.
+     *
+     * @param maxStalenessMillis The staleness the method allows.
+     * @return The previous staleness, to pass to {@link #endReplicaRead(Long)}.
+     */
+    static Long beginReplicaRead(final long maxStalenessMillis) {
+        final Long previous = ALLOWED_STALENESS.get();
+        // A nested method cannot allow more staleness than the method calling it.
+        ALLOWED_STALENESS.set(previous == null ? maxStalenessMillis : Math.min(previous, maxStalenessMillis));
+        return previous;
+    }
+
+    /**
+     * Marks the end of a {@link ReadReplica} method on the current thread.
+     *
+     * @param previous The value returned by {@link #beginReplicaRead(long)}.
+     */
+    static void endReplicaRead(final Long previous) {
+        if(previous == null) {
+            ALLOWED_STALENESS.remove();
+        } else {
+            ALLOWED_STALENESS.set(previous);
+        }
+    }
+
+    private boolean useReplica() {
+        final Long allowedStaleness = ALLOWED_STALENESS.get();
+        if(allowedStaleness == null) {
+            return false;
+        }
+        final long now = System.currentTimeMillis();
+        if(now - replicaFailedAt < replicaRetryInterval) {
+            return false;
+        }
+        return currentReplicationLag(now) <= allowedStaleness;
+    }
+
+    private synchronized long currentReplicationLag(final long now) {
+        if(lastLagCheck == Long.MIN_VALUE || now - lastLagCheck >= lagCheckInterval) {
+            try {
+                replicationLag = replicationLagMonitor.getAsLong();
+            } catch (final RuntimeException exception) {
+                LOG.warn("Unable to determine replication lag; reading from the primary: {}",
+                        exception.getLocalizedMessage());
+                replicationLag = Long.MAX_VALUE;
+            }
+            lastLagCheck = now;
+        }
+        return replicationLag;
+    }
+
+    private void replicaUnavailable(final SQLException exception) {
+        replicaFailedAt = System.currentTimeMillis();
+        LOG.warn("Unable to connect to the read replica; reading from the primary for {} ms: {}",
+                replicaRetryInterval, exception.getLocalizedMessage());
+    }
+}
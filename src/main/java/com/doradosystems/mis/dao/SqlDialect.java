@@ -0,0 +1,128 @@
+package com.doradosystems.mis.dao;
+
+import java.sql.DatabaseMetaData;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.support.DatabaseMetaDataCallback;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+/**
+ * The SQL dialects the DAOs know how to generate statements for.
+ * <p>
+ * {@link #MYSQL} is the dialect the DAOs were originally written against,
+ * and remains the default when no dialect is given.
+ * <p>
+ * A dialect may build on a {@link #getBase() base} dialect, whose statements it
+ * uses wherever it has none of its own.
+ */
+public enum SqlDialect {
+
+    /**
+     * MySQL (5.7 and later), and MariaDB.
+     */
+    MYSQL(null),
+
+    /**
+     * MySQL (8.0 and later), which adds {@code SKIP LOCKED}. Builds on {@link #MYSQL}.
+     */
+    MYSQL8(MYSQL),
+
+    /**
+     * PostgreSQL (9.5 and later).
+     */
+    POSTGRESQL(null),
+
+    /**
+     * H2, used for embedded and test databases.
+     */
+    H2(null);
+
+    private final SqlDialect base;
+
+    private SqlDialect(final SqlDialect base) {
+        this.base = base;
+    }
+
+    /**
+     * @return The dialect whose statements this one uses where it has none of its
+     * own, or {@code null} if it builds on none.
+     */
+    public SqlDialect getBase() {
+        return base;
+    }
+
+    /**
+     * @param dialect A {@link SqlDialect}.
+     * @return {@code true} if this is the given dialect or builds on it.
+     */
+    public boolean isA(final SqlDialect dialect) {
+        for(SqlDialect current = this; current != null; current = current.base) {
+            if(current == dialect) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines the {@link SqlDialect} from a JDBC database product name,
+     * as returned by {@link java.sql.DatabaseMetaData#getDatabaseProductName()}.
+     * MySQL is assumed to be older than 8.0.
+     *
+     * @param productName The database product name.
+     * @return The matching {@link SqlDialect}.
+     * @throws IllegalArgumentException If the product is not supported.
+     */
+    public static SqlDialect fromProductName(final String productName) {
+        return fromProductName(productName, 0);
+    }
+
+    /**
+     * Determines the {@link SqlDialect} from a JDBC database product name and major
+     * version, as returned by {@link java.sql.DatabaseMetaData#getDatabaseProductName()}
+     * and {@link java.sql.DatabaseMetaData#getDatabaseMajorVersion()}.
+     * <p>
+     * MariaDB is always treated as {@link #MYSQL}, since its version numbers do not
+     * follow MySQL's.
+     *
+     * @param productName The database product name.
+     * @param majorVersion The database major version.
+     * @return The matching {@link SqlDialect}.
+     * @throws IllegalArgumentException If the product is not supported.
+     */
+    public static SqlDialect fromProductName(final String productName, final int majorVersion) {
+        final String name = productName == null ? "" : productName.toLowerCase();
+        if(name.contains("mysql") && !name.contains("mariadb") && majorVersion >= 8) {
+            return MYSQL8;
+        }
+        if(name.contains("mysql") || name.contains("mariadb")) {
+            return MYSQL;
+        } else if(name.contains("postgres")) {
+            return POSTGRESQL;
+        } else if(name.equals("h2")) {
+            return H2;
+        }
+        throw new IllegalArgumentException("Unsupported database product: " + productName);
+    }
+
+    /**
+     * Determines the {@link SqlDialect} of the database behind a {@link DataSource}
+     * by inspecting its metadata, including the database version.
+     *
+     * @param dataSource The {@link DataSource} to inspect.
+     * @return The matching {@link SqlDialect}.
+     * @throws IllegalArgumentException If the product is not supported, or the
+     * metadata cannot be read.
+     */
+    public static SqlDialect detect(final DataSource dataSource) {
+        try {
+            return (SqlDialect) JdbcUtils.extractDatabaseMetaData(dataSource,
+                    (DatabaseMetaDataCallback) (final DatabaseMetaData metaData) -> fromProductName(
+                            metaData.getDatabaseProductName(), metaData.getDatabaseMajorVersion()));
+        } catch (final MetaDataAccessException exception) {
+            throw new IllegalArgumentException("Unable to determine the database product", exception);
+        }
+    }
+}
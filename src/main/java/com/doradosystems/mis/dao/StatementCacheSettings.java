@@ -0,0 +1,90 @@
+package com.doradosystems.mis.dao;
+
+import java.util.Properties;
+
+/**
+ * Driver-level prepared statement cache configuration.
+ * <p>
+ * The DAOs prepare a statement on every call, so without a driver-side
+ * cache each call pays for parsing (and, for server-side statements, a
+ * round trip to prepare). These settings translate into the connection
+ * properties each supported driver uses to cache prepared statements, and
+ * should be applied to the connection pool's driver properties.
+ */
+public class StatementCacheSettings {
+
+    private int cacheSize = 250;
+    private int maxSqlLength = 4096;
+    private boolean serverSidePrepare = true;
+
+    /**
+     * @param cacheSize The number of prepared statements to cache per connection.
+     */
+    public void setCacheSize(final int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * @param maxSqlLength The longest SQL string, in characters, that will be cached.
+     * Statements built with large {@code IN} lists can exceed the drivers' defaults.
+     */
+    public void setMaxSqlLength(final int maxSqlLength) {
+        this.maxSqlLength = maxSqlLength;
+    }
+
+    /**
+     * @param serverSidePrepare Whether statements should be prepared on the
+     * server, rather than emulated by the driver.
+     */
+    public void setServerSidePrepare(final boolean serverSidePrepare) {
+        this.serverSidePrepare = serverSidePrepare;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public int getMaxSqlLength() {
+        return maxSqlLength;
+    }
+
+    public boolean isServerSidePrepare() {
+        return serverSidePrepare;
+    }
+
+    /**
+     * Builds the driver connection properties that apply these settings.
+     *
+     * @param dialect The {@link SqlDialect} whose driver will be configured.
+     * @return The connection {@link Properties}.
+     */
+    public Properties toConnectionProperties(final SqlDialect dialect) {
+        final Properties properties = new Properties();
+        switch(dialect) {
+        case MYSQL:
+        case MYSQL8:
+            properties.setProperty("cachePrepStmts", "true");
+            properties.setProperty("prepStmtCacheSize", Integer.toString(cacheSize));
+            properties.setProperty("prepStmtCacheSqlLimit", Integer.toString(maxSqlLength));
+            properties.setProperty("useServerPrepStmts", Boolean.toString(serverSidePrepare));
+            break;
+        case POSTGRESQL:
+            properties.setProperty("preparedStatementCacheQueries", Integer.toString(cacheSize));
+            // Zero disables server-side prepared statements in pgjdbc.
+            properties.setProperty("prepareThreshold", serverSidePrepare ? "1" : "0");
+            break;
+        case H2:
+            properties.setProperty("QUERY_CACHE_SIZE", Integer.toString(cacheSize));
+            break;
+        default:
+            throw new IllegalArgumentException("Unsupported dialect: " + dialect);
+        }
+        return properties;
+    }
+
+    @Override
+    public String toString() {
+        return "StatementCacheSettings [cacheSize=" + cacheSize + ", maxSqlLength=" + maxSqlLength
+                + ", serverSidePrepare=" + serverSidePrepare + "]";
+    }
+}
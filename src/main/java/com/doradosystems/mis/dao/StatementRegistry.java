@@ -0,0 +1,109 @@
+package com.doradosystems.mis.dao;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable set of SQL statements keyed by logical operation name, with
+ * optional per-{@link SqlDialect dialect} variants.
+ * <p>
+ * Each operation has a default statement, written in SQL that all supported
+ * dialects accept. An operation may also register a variant for a particular
+ * dialect, to take advantage of faster dialect-specific forms (for example
+ * {@code SKIP LOCKED} or native upserts). Lookups fall back to the variant of the
+ * dialect's {@link SqlDialect#getBase() base}, then to the default statement, when
+ * no variant is registered for the requested dialect.
+ */
+public final class StatementRegistry {
+
+    private final Map<String, String> defaults;
+    private final Map<String, Map<SqlDialect, String>> variants;
+
+    private StatementRegistry(final Map<String, String> defaults, final Map<String, Map<SqlDialect, String>> variants) {
+        this.defaults = Collections.unmodifiableMap(new HashMap<>(defaults));
+        final Map<String, Map<SqlDialect, String>> copy = new HashMap<>();
+        variants.forEach((operation, byDialect) -> copy.put(operation, new EnumMap<>(byDialect)));
+        this.variants = Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Retrieves the statement to use for an operation in a particular dialect.
+     *
+     * @param operation The logical name of the operation.
+     * @param dialect The {@link SqlDialect} of the target database.
+     * @return The SQL statement.
+     * @throws IllegalArgumentException If the operation is not registered.
+     */
+    public String get(final String operation, final SqlDialect dialect) {
+        final Map<SqlDialect, String> byDialect = variants.get(operation);
+        if(byDialect != null) {
+            for(SqlDialect current = dialect; current != null; current = current.getBase()) {
+                if(byDialect.containsKey(current)) {
+                    return byDialect.get(current);
+                }
+            }
+        }
+        final String statement = defaults.get(operation);
+        if(statement == null) {
+            throw new IllegalArgumentException("No statement registered for operation " + operation);
+        }
+        return statement;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder for {@link StatementRegistry} instances.
+     */
+    public static final class Builder {
+
+        private final Map<String, String> defaults = new HashMap<>();
+        private final Map<String, Map<SqlDialect, String>> variants = new HashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Registers the default statement for an operation.
+         *
+         * @param operation The logical name of the operation.
+         * @param statement The SQL statement, valid in every {@link SqlDialect}.
+         * @return This {@link Builder}.
+         */
+        public Builder register(final String operation, final String statement) {
+            defaults.put(operation, statement);
+            return this;
+        }
+
+        /**
+         * Registers a dialect-specific statement for an operation.
+         *
+         * @param operation The logical name of the operation.
+         * @param dialect The {@link SqlDialect} the statement is written for.
+         * @param statement The SQL statement.
+         * @return This {@link Builder}.
+         */
+        public Builder register(final String operation, final SqlDialect dialect, final String statement) {
+            variants.computeIfAbsent(operation, key -> new EnumMap<>(SqlDialect.class)).put(dialect, statement);
+            return this;
+        }
+
+        /**
+         * @return A new {@link StatementRegistry}.
+         * @throws IllegalStateException If an operation has dialect variants
+         * but no default statement.
+         */
+        public StatementRegistry build() {
+            for(final String operation : variants.keySet()) {
+                if(!defaults.containsKey(operation)) {
+                    throw new IllegalStateException("No default statement registered for operation " + operation);
+                }
+            }
+            return new StatementRegistry(defaults, variants);
+        }
+    }
+}
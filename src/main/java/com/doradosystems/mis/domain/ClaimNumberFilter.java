@@ -0,0 +1,43 @@
+package com.doradosystems.mis.domain;
+
+/**
+ * The persisted Bloom filter of the {@link ClaimValidationRecord#getClaimNumber() claim numbers}
+ * loaded for a single client.
+ */
+public class ClaimNumberFilter {
+
+    private final Long clientId;
+    private final byte[] filter;
+    private final long lastRecordId;
+
+    public ClaimNumberFilter(final Long clientId, final byte[] filter, final long lastRecordId) {
+        this.clientId = clientId;
+        this.filter = filter;
+        this.lastRecordId = lastRecordId;
+    }
+
+    public Long getClientId() {
+        return clientId;
+    }
+
+    /**
+     * @return The serialized {@link com.doradosystems.mis.util.ScalableBloomFilter ScalableBloomFilter}.
+     */
+    public byte[] getFilter() {
+        return filter;
+    }
+
+    /**
+     * @return The {@link ClaimValidationRecord#getId() id} up to which the claim number
+     * of every committed record is known to be in the filter.
+     */
+    public long getLastRecordId() {
+        return lastRecordId;
+    }
+
+    @Override
+    public String toString() {
+        return "ClaimNumberFilter [clientId=" + clientId + ", filterLength=" + (filter == null ? 0 : filter.length)
+                + ", lastRecordId=" + lastRecordId + "]";
+    }
+}
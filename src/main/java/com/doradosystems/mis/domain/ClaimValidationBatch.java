@@ -38,9 +38,29 @@ public class ClaimValidationBatch {
          * Used to represent that there was an error while loading or
          * processing a particular {@link ClaimValidationBatch} record.
          */
-        ERROR
+        ERROR,
+        
+        /**
+         * Used to represent that the {@link ClaimValidationBatch} was
+         * COMPLETE and its records and responses are being moved to the
+         * archive tables. Its rows may be split between the hot and archive
+         * tables until it is ARCHIVED.
+         */
+        ARCHIVING,
+        
+        /**
+         * Used to represent that the {@link ClaimValidationBatch} was
+         * COMPLETE and its records and responses have been moved to the
+         * archive tables.
+         */
+        ARCHIVED
     }
 
+    /**
+     * The {@link #priority} given to batches that are not given one.
+     */
+    public static final int DEFAULT_PRIORITY = 5;
+
     private final Long id;
     private final Long clientId;
     private final String filename;
@@ -49,10 +69,19 @@ public class ClaimValidationBatch {
     private final String globalControlNumber;
     private final Date createDate;
     private final Date updatedDate;
+    private final Integer priority;
+    private final Date dueDate;
     
     public ClaimValidationBatch(final Long id, final Long clientId, final String filename, final Status status,
             final Long runNumber, final String globalControlNumber,
             final Date createDate, final Date updatedDate) {
+        this(id, clientId, filename, status, runNumber, globalControlNumber, createDate, updatedDate,
+                DEFAULT_PRIORITY, null);
+    }
+    
+    public ClaimValidationBatch(final Long id, final Long clientId, final String filename, final Status status,
+            final Long runNumber, final String globalControlNumber,
+            final Date createDate, final Date updatedDate, final Integer priority, final Date dueDate) {
         this.id = id;
         this.clientId = clientId;
         this.filename = filename;
@@ -61,6 +90,8 @@ public class ClaimValidationBatch {
         this.globalControlNumber = globalControlNumber;
         this.createDate = createDate;
         this.updatedDate = updatedDate;
+        this.priority = priority;
+        this.dueDate = dueDate;
     }
 
     public Long getId() {
@@ -105,11 +136,43 @@ public class ClaimValidationBatch {
         return updatedDate;
     }
 
+    /**
+     * The {@link #priority} of the batch. Batches with lower values are processed
+     * before batches with higher values.
+     * 
+     * @return The {@link #priority}.
+     */
+    public Integer getPriority() {
+        return priority;
+    }
+
+    /**
+     * The {@link #dueDate} by which the batch has to be completed, or {@code null}
+     * if there is no contractual turnaround time.
+     * 
+     * @return The {@link #dueDate}.
+     */
+    public Date getDueDate() {
+        return dueDate;
+    }
+
+    /**
+     * Creates a copy of this batch with a different {@link #status}.
+     * 
+     * @param newStatus The {@link #status} of the copy.
+     * @return The copy.
+     */
+    public ClaimValidationBatch withStatus(final Status newStatus) {
+        return new ClaimValidationBatch(id, clientId, filename, newStatus, runNumber, globalControlNumber,
+                createDate, updatedDate, priority, dueDate);
+    }
+
     @Override
     public String toString() {
         return "ClaimValidationBatch [id=" + id + ", clientId=" + clientId + ", filename=" + filename + ", status="
                 + status + ", runNumber=" + runNumber + ", globalControlNumber=" + globalControlNumber + ", createDate="
-                + createDate + ", updatedDate=" + updatedDate + "]";
+                + createDate + ", updatedDate=" + updatedDate + ", priority=" + priority + ", dueDate=" + dueDate
+                + "]";
     }
     
 }
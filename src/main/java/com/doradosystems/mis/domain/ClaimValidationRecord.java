@@ -3,6 +3,8 @@ package com.doradosystems.mis.domain;
 import java.io.Serializable;
 import java.util.Date;
 
+import com.doradosystems.mis.util.TextCompression;
+
 public class ClaimValidationRecord implements Serializable{
 	private static final long serialVersionUID = 1L;
 
@@ -28,7 +30,21 @@ public class ClaimValidationRecord implements Serializable{
          * Used to represent that the {@link ClaimValidationRecord} has
          * not been processed, but an attempt was made.
          */
-        INCOMPLETE
+        INCOMPLETE,
+        
+        /**
+         * Used to represent that the {@link ClaimValidationRecord} was
+         * INCOMPLETE and is waiting until its
+         * {@link ClaimValidationRecord#getNextEligibleDate() nextEligibleDate}
+         * before it is retried.
+         */
+        DEFERRED,
+        
+        /**
+         * Used to represent that the {@link ClaimValidationRecord} was
+         * INCOMPLETE on every allowed attempt and will not be retried.
+         */
+        FAILED
     }
     
     private final Long id;
@@ -39,10 +55,24 @@ public class ClaimValidationRecord implements Serializable{
     private final String record;
     private final Date createDate;
     private final Date updatedDate;
+    private final int attemptCount;
+    private final Date nextEligibleDate;
+    
+    /**
+     * The {@link #record} decompressed, once {@link #getRecord()} has been called.
+     */
+    private transient volatile String decodedRecord;
     
     public ClaimValidationRecord(final Long id, final Long batchId, final Long runNumber,
             final Status status, final String claimNumber, final String record,
             final Date createDate, final Date updatedDate) {
+        this(id, batchId, runNumber, status, claimNumber, record, createDate, updatedDate, 0, null);
+    }
+    
+    public ClaimValidationRecord(final Long id, final Long batchId, final Long runNumber,
+            final Status status, final String claimNumber, final String record,
+            final Date createDate, final Date updatedDate, final int attemptCount,
+            final Date nextEligibleDate) {
         this.id = id;
         this.batchId = batchId;
         this.runNumber = runNumber;
@@ -51,6 +81,8 @@ public class ClaimValidationRecord implements Serializable{
         this.record = record;
         this.createDate = createDate;
         this.updatedDate = updatedDate;
+        this.attemptCount = attemptCount;
+        this.nextEligibleDate = nextEligibleDate;
     }
 
     public Long getId() {
@@ -73,8 +105,17 @@ public class ClaimValidationRecord implements Serializable{
         return claimNumber;
     }
 
+    /**
+     * @return The record text. If it was stored compressed, it is decompressed on
+     * the first call.
+     */
     public String getRecord() {
-        return record;
+        String decoded = decodedRecord;
+        if(decoded == null && record != null) {
+            decoded = TextCompression.decode(record);
+            decodedRecord = decoded;
+        }
+        return decoded;
     }
 
     public Date getCreateDate() {
@@ -85,10 +126,25 @@ public class ClaimValidationRecord implements Serializable{
         return updatedDate;
     }
 
+    /**
+     * @return The number of runs in which the record was left INCOMPLETE.
+     */
+    public int getAttemptCount() {
+        return attemptCount;
+    }
+
+    /**
+     * @return The time from which a DEFERRED record may be retried, or
+     * {@code null} if it has never been deferred.
+     */
+    public Date getNextEligibleDate() {
+        return nextEligibleDate;
+    }
+
     @Override
     public String toString() {
         return "ClaimValidationRecord [id=" + id + ", batchId=" + batchId + ", runNumber=" + runNumber + ", status="
                 + status + ", claimNumber=" + claimNumber + ", createDate=" + createDate + ", updatedDate="
-                + updatedDate + "]";
+                + updatedDate + ", attemptCount=" + attemptCount + ", nextEligibleDate=" + nextEligibleDate + "]";
     }
 }
@@ -0,0 +1,340 @@
+package com.doradosystems.mis.domain;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import com.doradosystems.mis.domain.ClaimValidationRecord.Status;
+import com.doradosystems.mis.util.TextCompression;
+
+/**
+ * A block of {@link ClaimValidationRecord ClaimValidationRecords} held column by column,
+ * for bulk paths that handle very many records at once.
+ * <p>
+ * Each field is kept in a primitive array indexed by the record's position in the
+ * block, and the {@link ClaimValidationRecord#getClaimNumber() claim numbers} and
+ * {@link ClaimValidationRecord#getRecord() record} bodies are kept as ranges of one
+ * shared {@code char} buffer, so a block costs a handful of arrays rather than a record
+ * object, boxed {@code Long}s, {@link Date Dates} and {@link String Strings} per record.
+ * Bodies are kept as they are stored, so a body stored compressed with
+ * {@link TextCompression} stays compressed until {@link #getRecord(int)} is called.
+ * <p>
+ * Dates are held as milliseconds since the epoch, with {@link #NO_DATE} for
+ * {@code null}. A block is filled by appending records and can be {@link #clear() cleared}
+ * and filled again, keeping its arrays, so one block can be reused for every page of a
+ * run.
+ * <p>
+ * This class is not thread safe.
+ */
+public class ClaimValidationRecordBlock {
+
+    /**
+     * The value of a date column for a {@code null} date.
+     */
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    /**
+     * The capacity used when no initial capacity is given.
+     */
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The number of {@code char}s of text reserved for each record of the initial
+     * capacity.
+     */
+    private static final int DEFAULT_TEXT_PER_RECORD = 64;
+
+    /**
+     * The most {@code char}s of text a block can hold, the largest array most JVMs
+     * allocate.
+     */
+    private static final int MAX_TEXT_LENGTH = Integer.MAX_VALUE - 8;
+
+    private static final Status[] STATUSES = Status.values();
+
+    private long[] ids;
+    private long[] batchIds;
+    private long[] runNumbers;
+    private byte[] statuses;
+    private int[] attemptCounts;
+    private long[] createDates;
+    private long[] updatedDates;
+    private long[] nextEligibleDates;
+
+    /**
+     * The start of each record's claim number in {@link #text}, followed by the start
+     * of its body; the text of one ends where the next begins.
+     */
+    private int[] textOffsets;
+
+    /**
+     * Whether each record's claim number, then its body, is {@code null}, two bits per
+     * record.
+     */
+    private byte[] nulls;
+
+    private char[] text;
+    private int textLength;
+    private int size;
+
+    /**
+     * Constructs a new, empty {@link ClaimValidationRecordBlock} with a default capacity.
+     */
+    public ClaimValidationRecordBlock() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new, empty {@link ClaimValidationRecordBlock}.
+     *
+     * @param initialCapacity The number of records the block can hold before it needs
+     * to grow.
+     */
+    public ClaimValidationRecordBlock(final int initialCapacity) {
+        if(initialCapacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative: " + initialCapacity);
+        }
+        ids = new long[initialCapacity];
+        batchIds = new long[initialCapacity];
+        runNumbers = new long[initialCapacity];
+        statuses = new byte[initialCapacity];
+        attemptCounts = new int[initialCapacity];
+        createDates = new long[initialCapacity];
+        updatedDates = new long[initialCapacity];
+        nextEligibleDates = new long[initialCapacity];
+        textOffsets = new int[initialCapacity * 2 + 1];
+        nulls = new byte[initialCapacity];
+        text = new char[initialCapacity * DEFAULT_TEXT_PER_RECORD];
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @param id The record's {@link ClaimValidationRecord#getId() id}.
+     * @param batchId The record's {@link ClaimValidationRecord#getBatchId() batchId}.
+     * @param runNumber The record's {@link ClaimValidationRecord#getRunNumber() runNumber}.
+     * @param status The record's {@link ClaimValidationRecord#getStatus() status}.
+     * @param claimNumber The record's {@link ClaimValidationRecord#getClaimNumber() claimNumber},
+     * or {@code null}.
+     * @param record The record body as stored, possibly compressed, or {@code null}.
+     * @param createDate The create date, or {@link #NO_DATE}.
+     * @param updatedDate The updated date, or {@link #NO_DATE}.
+     * @param attemptCount The record's {@link ClaimValidationRecord#getAttemptCount() attemptCount}.
+     * @param nextEligibleDate The next eligible date, or {@link #NO_DATE}.
+     * @return The index of the record in the block.
+     */
+    public int add(final long id, final long batchId, final long runNumber, final Status status,
+            final String claimNumber, final String record, final long createDate, final long updatedDate,
+            final int attemptCount, final long nextEligibleDate) {
+        ensureCapacity(size + 1);
+        final int index = size;
+        ids[index] = id;
+        batchIds[index] = batchId;
+        runNumbers[index] = runNumber;
+        statuses[index] = (byte) status.ordinal();
+        attemptCounts[index] = attemptCount;
+        createDates[index] = createDate;
+        updatedDates[index] = updatedDate;
+        nextEligibleDates[index] = nextEligibleDate;
+        nulls[index] = (byte) ((claimNumber == null ? 1 : 0) | (record == null ? 2 : 0));
+        appendText(index * 2, claimNumber);
+        appendText(index * 2 + 1, record);
+        size++;
+        return index;
+    }
+
+    /**
+     * Appends a {@link ClaimValidationRecord}. Its body is kept decompressed.
+     *
+     * @param record The {@link ClaimValidationRecord} to append. Its id, batchId,
+     * runNumber and status must not be {@code null}.
+     * @return The index of the record in the block.
+     */
+    public int add(final ClaimValidationRecord record) {
+        return add(record.getId(), record.getBatchId(), record.getRunNumber(), record.getStatus(),
+                record.getClaimNumber(), record.getRecord(), toMillis(record.getCreateDate()),
+                toMillis(record.getUpdatedDate()), record.getAttemptCount(), toMillis(record.getNextEligibleDate()));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all records from the block, keeping the current capacity.
+     */
+    public void clear() {
+        size = 0;
+        textLength = 0;
+    }
+
+    public long getId(final int index) {
+        checkIndex(index);
+        return ids[index];
+    }
+
+    public long getBatchId(final int index) {
+        checkIndex(index);
+        return batchIds[index];
+    }
+
+    public long getRunNumber(final int index) {
+        checkIndex(index);
+        return runNumbers[index];
+    }
+
+    public Status getStatus(final int index) {
+        checkIndex(index);
+        return STATUSES[statuses[index]];
+    }
+
+    public int getAttemptCount(final int index) {
+        checkIndex(index);
+        return attemptCounts[index];
+    }
+
+    /**
+     * @param index The index of the record.
+     * @return The create date, or {@link #NO_DATE}.
+     */
+    public long getCreateDate(final int index) {
+        checkIndex(index);
+        return createDates[index];
+    }
+
+    /**
+     * @param index The index of the record.
+     * @return The updated date, or {@link #NO_DATE}.
+     */
+    public long getUpdatedDate(final int index) {
+        checkIndex(index);
+        return updatedDates[index];
+    }
+
+    /**
+     * @param index The index of the record.
+     * @return The next eligible date, or {@link #NO_DATE}.
+     */
+    public long getNextEligibleDate(final int index) {
+        checkIndex(index);
+        return nextEligibleDates[index];
+    }
+
+    /**
+     * @param index The index of the record.
+     * @return A new {@link String} holding the claim number, or {@code null}.
+     */
+    public String getClaimNumber(final int index) {
+        checkIndex(index);
+        return (nulls[index] & 1) != 0 ? null : textOf(index * 2);
+    }
+
+    /**
+     * @param index The index of the record.
+     * @return The record body, decompressed if it was stored compressed, or
+     * {@code null}.
+     */
+    public String getRecord(final int index) {
+        return TextCompression.decode(getStoredRecord(index));
+    }
+
+    /**
+     * @param index The index of the record.
+     * @return The record body as stored, which may be compressed, or {@code null}.
+     */
+    public String getStoredRecord(final int index) {
+        checkIndex(index);
+        return (nulls[index] & 2) != 0 ? null : textOf(index * 2 + 1);
+    }
+
+    /**
+     * @return A new array holding the {@link ClaimValidationRecord#getId() ids} of the
+     * records, in order, as the bulk methods of
+     * {@link com.doradosystems.mis.dao.ClaimValidationRecordDao ClaimValidationRecordDao}
+     * take them.
+     */
+    public long[] getIds() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    /**
+     * Builds a {@link ClaimValidationRecord} for one record, for code that needs one.
+     *
+     * @param index The index of the record.
+     * @return A new {@link ClaimValidationRecord}.
+     */
+    public ClaimValidationRecord toRecord(final int index) {
+        return new ClaimValidationRecord(getId(index), batchIds[index], runNumbers[index], getStatus(index),
+                getClaimNumber(index), getStoredRecord(index), toDate(createDates[index]),
+                toDate(updatedDates[index]), attemptCounts[index], toDate(nextEligibleDates[index]));
+    }
+
+    /**
+     * Makes sure the block can hold at least {@code minCapacity} records without
+     * growing again.
+     *
+     * @param minCapacity The required capacity.
+     */
+    public void ensureCapacity(final int minCapacity) {
+        if(minCapacity > ids.length) {
+            final int capacity = Math.max(ids.length + (ids.length >> 1) + 1, minCapacity);
+            ids = Arrays.copyOf(ids, capacity);
+            batchIds = Arrays.copyOf(batchIds, capacity);
+            runNumbers = Arrays.copyOf(runNumbers, capacity);
+            statuses = Arrays.copyOf(statuses, capacity);
+            attemptCounts = Arrays.copyOf(attemptCounts, capacity);
+            createDates = Arrays.copyOf(createDates, capacity);
+            updatedDates = Arrays.copyOf(updatedDates, capacity);
+            nextEligibleDates = Arrays.copyOf(nextEligibleDates, capacity);
+            textOffsets = Arrays.copyOf(textOffsets, capacity * 2 + 1);
+            nulls = Arrays.copyOf(nulls, capacity);
+        }
+    }
+
+    /**
+     * Appends text to the shared buffer as the given slot of {@link #textOffsets}.
+     */
+    private void appendText(final int slot, final String value) {
+        textOffsets[slot] = textLength;
+        if(value != null) {
+            final int length = value.length();
+            final long required = (long) textLength + length;
+            if(required > MAX_TEXT_LENGTH) {
+                throw new IllegalStateException("Block text is full at " + size + " records");
+            }
+            if(required > text.length) {
+                final long grown = (long) text.length + (text.length >> 1) + 1;
+                text = Arrays.copyOf(text, (int) Math.min(MAX_TEXT_LENGTH, Math.max(grown, required)));
+            }
+            value.getChars(0, length, text, textLength);
+            textLength += length;
+        }
+        textOffsets[slot + 1] = textLength;
+    }
+
+    private String textOf(final int slot) {
+        return new String(text, textOffsets[slot], textOffsets[slot + 1] - textOffsets[slot]);
+    }
+
+    private void checkIndex(final int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private static long toMillis(final Date date) {
+        return date == null ? NO_DATE : date.getTime();
+    }
+
+    private static Date toDate(final long millis) {
+        return millis == NO_DATE ? null : new Date(millis);
+    }
+
+    @Override
+    public String toString() {
+        return "ClaimValidationRecordBlock [size=" + size + ", textLength=" + textLength + "]";
+    }
+}
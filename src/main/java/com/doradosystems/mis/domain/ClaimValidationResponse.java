@@ -2,6 +2,8 @@ package com.doradosystems.mis.domain;
 
 import java.util.Date;
 
+import com.doradosystems.mis.util.TextCompression;
+
 /**
  * @author kev
  *
@@ -38,6 +40,11 @@ public class ClaimValidationResponse {
     private Date updatedDate;
     private Long claimValidationRecordId;
     
+    /**
+     * The {@link #response} decompressed, once {@link #getResponse()} has been called.
+     */
+    private volatile String decodedResponse;
+    
     public ClaimValidationResponse(Long id, Long batchId, Long runNumber, Status status, String claimNumber,
             String response, Date createDate, Date updatedDate, Long claimValidationRecordId) {
         super();
@@ -72,8 +79,17 @@ public class ClaimValidationResponse {
         return claimNumber;
     }
 
+    /**
+     * @return The response text. If it was stored compressed, it is decompressed on
+     * the first call.
+     */
     public String getResponse() {
-        return response;
+        String decoded = decodedResponse;
+        if(decoded == null && response != null) {
+            decoded = TextCompression.decode(response);
+            decodedResponse = decoded;
+        }
+        return decoded;
     }
 
     public Date getCreateDate() {
@@ -87,6 +103,17 @@ public class ClaimValidationResponse {
     public Long getClaimValidationRecordId() {
         return claimValidationRecordId;
     }
+
+    /**
+     * Creates a copy of this response with a different {@link #id}.
+     * 
+     * @param newId The {@link #id} of the copy.
+     * @return The copy.
+     */
+    public ClaimValidationResponse withId(final Long newId) {
+        return new ClaimValidationResponse(newId, batchId, runNumber, status, claimNumber, response, createDate,
+                updatedDate, claimValidationRecordId);
+    }
     
     @Override
     public String toString() {
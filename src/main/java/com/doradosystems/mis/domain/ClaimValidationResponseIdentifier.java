@@ -1,5 +1,7 @@
 package com.doradosystems.mis.domain;
 
+import java.util.Objects;
+
 /**
  * Model class representing just those fields needed to identify
  * the {@link ClaimValidationResponse} records that go in a single
@@ -25,6 +27,23 @@ public class ClaimValidationResponseIdentifier {
         return runNumber;
     }
 
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hashCode(batchId) + Objects.hashCode(runNumber);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if(this == obj) {
+            return true;
+        }
+        if(!(obj instanceof ClaimValidationResponseIdentifier)) {
+            return false;
+        }
+        final ClaimValidationResponseIdentifier other = (ClaimValidationResponseIdentifier) obj;
+        return Objects.equals(batchId, other.batchId) && Objects.equals(runNumber, other.runNumber);
+    }
+
     @Override
     public String toString() {
         return "ClaimValidationResponseIdentifier [batchId=" + batchId + ", runNumber=" + runNumber + "]";
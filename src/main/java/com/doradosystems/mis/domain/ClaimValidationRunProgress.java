@@ -0,0 +1,72 @@
+package com.doradosystems.mis.domain;
+
+import java.util.Date;
+
+/**
+ * A point-in-time view of how far a single run of a {@link ClaimValidationBatch}
+ * has progressed, as counted by the
+ * {@link com.doradosystems.mis.manager.ClaimValidationRunTracker ClaimValidationRunTracker}.
+ */
+public class ClaimValidationRunProgress {
+
+    private final ClaimValidationResponseIdentifier identifier;
+    private final long pendingCount;
+    private final long completeCount;
+    private final long incompleteCount;
+    private final long deferredCount;
+    private final Date lastUpdatedDate;
+
+    public ClaimValidationRunProgress(final ClaimValidationResponseIdentifier identifier, final long pendingCount,
+            final long completeCount, final long incompleteCount, final long deferredCount,
+            final Date lastUpdatedDate) {
+        this.identifier = identifier;
+        this.pendingCount = pendingCount;
+        this.completeCount = completeCount;
+        this.incompleteCount = incompleteCount;
+        this.deferredCount = deferredCount;
+        this.lastUpdatedDate = lastUpdatedDate;
+    }
+
+    public ClaimValidationResponseIdentifier getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * @return The number of {@link ClaimValidationRecord.Status#PENDING PENDING}
+     * records remaining in the run.
+     */
+    public long getPendingCount() {
+        return pendingCount;
+    }
+
+    public long getCompleteCount() {
+        return completeCount;
+    }
+
+    public long getIncompleteCount() {
+        return incompleteCount;
+    }
+
+    /**
+     * @return The number of {@link ClaimValidationRecord.Status#DEFERRED DEFERRED}
+     * records carried into the run, which are not dispatched in it.
+     */
+    public long getDeferredCount() {
+        return deferredCount;
+    }
+
+    /**
+     * @return When a record in the run was last seen to change, or when
+     * tracking of the run began.
+     */
+    public Date getLastUpdatedDate() {
+        return lastUpdatedDate;
+    }
+
+    @Override
+    public String toString() {
+        return "ClaimValidationRunProgress [identifier=" + identifier + ", pendingCount=" + pendingCount
+                + ", completeCount=" + completeCount + ", incompleteCount=" + incompleteCount
+                + ", deferredCount=" + deferredCount + ", lastUpdatedDate=" + lastUpdatedDate + "]";
+    }
+}
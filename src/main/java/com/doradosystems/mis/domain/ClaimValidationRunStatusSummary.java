@@ -0,0 +1,61 @@
+package com.doradosystems.mis.domain;
+
+import java.util.Date;
+
+/**
+ * The number of {@link ClaimValidationRecord ClaimValidationRecords} in a single
+ * {@link ClaimValidationRecord#getStatus() status} within one run of a batch,
+ * along with when those records and their batch were last updated.
+ */
+public class ClaimValidationRunStatusSummary {
+
+    private final ClaimValidationResponseIdentifier identifier;
+    private final ClaimValidationRecord.Status status;
+    private final long recordCount;
+    private final Date lastRecordUpdatedDate;
+    private final Date batchUpdatedDate;
+
+    public ClaimValidationRunStatusSummary(final ClaimValidationResponseIdentifier identifier,
+            final ClaimValidationRecord.Status status, final long recordCount, final Date lastRecordUpdatedDate,
+            final Date batchUpdatedDate) {
+        this.identifier = identifier;
+        this.status = status;
+        this.recordCount = recordCount;
+        this.lastRecordUpdatedDate = lastRecordUpdatedDate;
+        this.batchUpdatedDate = batchUpdatedDate;
+    }
+
+    public ClaimValidationResponseIdentifier getIdentifier() {
+        return identifier;
+    }
+
+    public ClaimValidationRecord.Status getStatus() {
+        return status;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return The most recent {@link ClaimValidationRecord#getUpdatedDate() updatedDate}
+     * of the records in this status.
+     */
+    public Date getLastRecordUpdatedDate() {
+        return lastRecordUpdatedDate;
+    }
+
+    /**
+     * @return The {@link ClaimValidationBatch#getUpdatedDate() updatedDate} of the batch.
+     */
+    public Date getBatchUpdatedDate() {
+        return batchUpdatedDate;
+    }
+
+    @Override
+    public String toString() {
+        return "ClaimValidationRunStatusSummary [identifier=" + identifier + ", status=" + status + ", recordCount="
+                + recordCount + ", lastRecordUpdatedDate=" + lastRecordUpdatedDate + ", batchUpdatedDate="
+                + batchUpdatedDate + "]";
+    }
+}
@@ -126,6 +126,37 @@ public class IsaSegment {
         return segmentTerminator;
     }
 
+    /**
+     * Creates a copy of this segment for a new interchange.
+     * 
+     * @param interchangeDate The ISA09 interchange date, YYMMDD.
+     * @param interchangeTime The ISA10 interchange time, HHMM.
+     * @param interchangeControlNumber The ISA13 interchange control number, nine digits.
+     * @return A new {@link IsaSegment} with the given values and every other element
+     * copied from this one.
+     */
+    public IsaSegment forInterchange(final String interchangeDate, final String interchangeTime,
+            final String interchangeControlNumber) {
+        return new IsaSegment(elementSeparator, isa01_authorInfoQualifier, isa02_authorInformation,
+                isa03_securityInfoQual, isa04_securityInformation, isa05_interchangeIdQual,
+                isa06_interchangeSenderId, isa07_interchangeIdQual, isa08_interchangeReceiverId,
+                interchangeDate, interchangeTime, isa11_repetitionSeparator, isa12_interCtrlVersionNum,
+                interchangeControlNumber, isa14_ackRequested, isa15_usageIndicator, isa16_componentElemSepera,
+                segmentTerminator);
+    }
+
+    /**
+     * @return The segment in X12 form, from "ISA" through the segment terminator.
+     */
+    public String toX12() {
+        return String.join(elementSeparator, "ISA", isa01_authorInfoQualifier, isa02_authorInformation,
+                isa03_securityInfoQual, isa04_securityInformation, isa05_interchangeIdQual,
+                isa06_interchangeSenderId, isa07_interchangeIdQual, isa08_interchangeReceiverId,
+                isa09_interchangeDate, isa10_interchangeTime, isa11_repetitionSeparator, isa12_interCtrlVersionNum,
+                isa13_interCtrlNumber, isa14_ackRequested, isa15_usageIndicator, isa16_componentElemSepera)
+                + segmentTerminator;
+    }
+
     @Override
     public String toString() {
         return "IsaSegment [elementSeparator=" + elementSeparator + ", isa01_authorInfoQualifier="
@@ -0,0 +1,61 @@
+package com.doradosystems.mis.domain;
+
+import java.util.Date;
+
+/**
+ * A message waiting in the outbox to be published to Kafka.
+ * <p>
+ * Outbox events are written in the same transaction as the state change they
+ * announce, and are deleted once the
+ * {@link com.doradosystems.mis.manager.OutboxRelay OutboxRelay} has published them,
+ * so a message is never lost if the process dies between the two.
+ */
+public class OutboxEvent {
+
+    private final Long id;
+    private final String topic;
+    private final String key;
+    private final byte[] payload;
+    private final Date createDate;
+
+    public OutboxEvent(final Long id, final String topic, final String key, final byte[] payload,
+            final Date createDate) {
+        this.id = id;
+        this.topic = topic;
+        this.key = key;
+        this.payload = payload;
+        this.createDate = createDate;
+    }
+
+    /**
+     * @return The id of the event. Events are published in ascending id order.
+     */
+    public Long getId() {
+        return id;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return The serialized message.
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public Date getCreateDate() {
+        return createDate;
+    }
+
+    @Override
+    public String toString() {
+        return "OutboxEvent [id=" + id + ", topic=" + topic + ", key=" + key + ", payloadLength="
+                + (payload == null ? 0 : payload.length) + ", createDate=" + createDate + "]";
+    }
+}
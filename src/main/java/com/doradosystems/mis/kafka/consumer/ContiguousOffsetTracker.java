@@ -0,0 +1,188 @@
+package com.doradosystems.mis.kafka.consumer;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import com.doradosystems.mis.util.LongArrayList;
+import com.doradosystems.mis.util.LongOpenHashSet;
+
+/**
+ * Tracks which offsets of each partition have been processed when records are
+ * processed out of order, and works out how far each partition can safely be committed.
+ *
+ * A partition can be committed up to, but not including, its oldest offset that is still
+ * being processed, so a crash never skips an unprocessed record; records processed
+ * after that offset may be processed again. Offsets need not be consecutive, so gaps
+ * left by log compaction do not hold commits back.
+ *
+ * Each time a partition starts being tracked, for example after it has been revoked and
+ * assigned again, it gets a new generation. Offsets are completed in the generation they
+ * were tracked in, so a record of a revoked partition that finishes processing late
+ * cannot complete the same offset polled again after the partition came back.
+ *
+ * This class is thread safe.
+ */
+public class ContiguousOffsetTracker {
+
+	private final Map<TopicPartition, PartitionOffsets> partitions = new HashMap<>();
+	private long generations;
+
+	/**
+	 * Starts tracking an offset. Offsets of a partition must be tracked in the order
+	 * they were polled.
+	 *
+	 * @param partition The partition of the record.
+	 * @param offset The offset of the record.
+	 * @return The generation of the partition, to pass to
+	 * {@link #complete(TopicPartition, long, long)}.
+	 */
+	public synchronized long track(TopicPartition partition, long offset) {
+		PartitionOffsets offsets = partitions.computeIfAbsent(partition, p -> new PartitionOffsets(++generations));
+		offsets.track(offset);
+		return offsets.generation;
+	}
+
+	/**
+	 * Marks a tracked offset as processed. Offsets of partitions that have been
+	 * {@link #forget(Collection) forgotten} since they were tracked are ignored.
+	 *
+	 * @param partition The partition of the record.
+	 * @param offset The offset of the record.
+	 * @param generation The generation returned when the offset was tracked.
+	 */
+	public synchronized void complete(TopicPartition partition, long offset, long generation) {
+		PartitionOffsets offsets = partitions.get(partition);
+		if (offsets != null && offsets.generation == generation) {
+			offsets.complete(offset);
+			notifyAll();
+		}
+	}
+
+	/**
+	 * @return The offsets to commit for the partitions that can be committed further
+	 * than they were when this was last called.
+	 */
+	public synchronized Map<TopicPartition, OffsetAndMetadata> committable() {
+		Map<TopicPartition, OffsetAndMetadata> committable = new HashMap<>();
+		partitions.forEach((partition, offsets) -> {
+			long position = offsets.position();
+			if (position > offsets.committed) {
+				offsets.committed = position;
+				committable.put(partition, new OffsetAndMetadata(position));
+			}
+		});
+		return committable;
+	}
+
+	/**
+	 * @return The number of tracked offsets not yet processed, over all partitions.
+	 */
+	public synchronized int pending() {
+		int pending = 0;
+		for (PartitionOffsets offsets : partitions.values()) {
+			pending += offsets.pending();
+		}
+		return pending;
+	}
+
+	/**
+	 * Waits until every tracked offset of some partitions has been processed.
+	 *
+	 * @param awaited The partitions to wait for.
+	 * @param timeout The longest time, in milliseconds, to wait.
+	 * @return false if offsets were still being processed when the time ran out.
+	 * @throws InterruptedException If the thread is interrupted while waiting.
+	 */
+	public synchronized boolean awaitCompletion(Collection<TopicPartition> awaited, long timeout)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (pending(awaited) > 0) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return false;
+			}
+			wait(remaining);
+		}
+		return true;
+	}
+
+	private int pending(Collection<TopicPartition> awaited) {
+		int pending = 0;
+		for (TopicPartition partition : awaited) {
+			PartitionOffsets offsets = partitions.get(partition);
+			if (offsets != null) {
+				pending += offsets.pending();
+			}
+		}
+		return pending;
+	}
+
+	/**
+	 * Stops tracking partitions, for example once they have been revoked.
+	 *
+	 * @param revoked The partitions to forget.
+	 */
+	public synchronized void forget(Collection<TopicPartition> revoked) {
+		partitions.keySet().removeAll(revoked);
+	}
+
+	/**
+	 * The tracked offsets of one partition: a queue of offsets in poll order, and the
+	 * set of those processed ahead of the head of the queue.
+	 */
+	private static final class PartitionOffsets {
+
+		private final long generation;
+		private LongArrayList queue = new LongArrayList();
+		private int head;
+		private final LongOpenHashSet completed = new LongOpenHashSet();
+		private long lastCompleted = -1;
+		private long committed = -1;
+
+		private PartitionOffsets(long generation) {
+			this.generation = generation;
+		}
+
+		private void track(long offset) {
+			queue.add(offset);
+		}
+
+		private void complete(long offset) {
+			if (offset < position()) {
+				return;
+			}
+			completed.add(offset);
+			while (head < queue.size() && completed.remove(queue.get(head))) {
+				lastCompleted = queue.get(head);
+				head++;
+			}
+			if (head == queue.size()) {
+				queue.clear();
+				head = 0;
+			} else if (head > 1024 && head > queue.size() / 2) {
+				LongArrayList remaining = new LongArrayList(queue.size() - head);
+				for (int i = head; i < queue.size(); i++) {
+					remaining.add(queue.get(i));
+				}
+				queue = remaining;
+				head = 0;
+			}
+		}
+
+		/**
+		 * The offset of the next record to consume after a restart: the oldest offset
+		 * still being processed, or the one after the last processed.
+		 */
+		private long position() {
+			return head < queue.size() ? queue.get(head) : lastCompleted + 1;
+		}
+
+		private int pending() {
+			return queue.size() - head - completed.size();
+		}
+	}
+}
@@ -0,0 +1,292 @@
+package com.doradosystems.mis.kafka.consumer;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.doradosystems.mis.kafka.event.ProcessClaimValidationRecordEvent;
+import com.doradosystems.mis.kafka.serialization.ProcessClaimValidationRecordEventDeserializer;
+
+/**
+ * Consumes ProcessClaimValidationRecordEvents and processes them on a pool of worker
+ * threads, so that a single partition can keep many cores busy.
+ *
+ * Each event is handed to one of {@link #setWorkers(int) workers} single threaded lanes,
+ * chosen by hashing its {@link Ordering} key, so events with the same key are processed
+ * one at a time in the order they were polled, while events with different keys run in
+ * parallel. Offsets are only committed up to the oldest event still being processed,
+ * as worked out by a {@link ContiguousOffsetTracker}, so delivery stays at least once.
+ * When more than {@link #setMaxPendingRecords(int) maxPendingRecords} events are waiting,
+ * the assigned partitions are paused until the workers catch up.
+ *
+ * The {@link Consumer} is only used from the thread that calls {@link #run()} or
+ * {@link #pollOnce(long)}, since Kafka consumers are not thread safe. If a handler
+ * throws, the error is logged and the event counts as processed: its record stays
+ * PENDING, so it is dispatched again in the next run of its batch. In tests, a
+ * {@link org.apache.kafka.clients.consumer.MockConsumer MockConsumer} stands in for the
+ * {@link Consumer}.
+ */
+public class KeyOrderedEventConsumer {
+
+	private static final Logger LOG = LoggerFactory.getLogger(KeyOrderedEventConsumer.class);
+
+	/**
+	 * Which events must be processed one at a time, in order.
+	 */
+	public enum Ordering {
+		/**
+		 * Events for the same claim number.
+		 */
+		CLAIM_NUMBER(event -> event.getClaimValidationRecord().getClaimNumber()),
+		/**
+		 * Events for the same batch.
+		 */
+		BATCH(event -> event.getClaimValidationRecord().getBatchId());
+
+		private final Function<ProcessClaimValidationRecordEvent, Object> key;
+
+		Ordering(Function<ProcessClaimValidationRecordEvent, Object> key) {
+			this.key = key;
+		}
+	}
+
+	/**
+	 * Processes a single event.
+	 */
+	@FunctionalInterface
+	public interface EventHandler {
+
+		void handle(ProcessClaimValidationRecordEvent event) throws Exception;
+	}
+
+	private final Consumer<String, byte[]> consumer;
+	private final EventHandler handler;
+	private final ProcessClaimValidationRecordEventDeserializer deserializer =
+			new ProcessClaimValidationRecordEventDeserializer();
+	private final ContiguousOffsetTracker offsets = new ContiguousOffsetTracker();
+
+	private int workers = Runtime.getRuntime().availableProcessors();
+	private Ordering ordering = Ordering.CLAIM_NUMBER;
+	private int maxPendingRecords = 10000;
+	private long pollTimeout = 100;
+	private long revokeTimeout = TimeUnit.SECONDS.toMillis(30);
+
+	private ExecutorService[] lanes;
+	private volatile boolean running;
+
+	public KeyOrderedEventConsumer(Consumer<String, byte[]> consumer, EventHandler handler) {
+		this.consumer = consumer;
+		this.handler = handler;
+	}
+
+	/**
+	 * @param workers The number of worker threads. Defaults to the number of processors.
+	 */
+	public void setWorkers(int workers) {
+		this.workers = workers;
+	}
+
+	/**
+	 * @param ordering Which events are processed in order. Defaults to
+	 * {@link Ordering#CLAIM_NUMBER}.
+	 */
+	public void setOrdering(Ordering ordering) {
+		this.ordering = ordering;
+	}
+
+	/**
+	 * @param maxPendingRecords The number of polled events waiting to be processed at
+	 * which polling is paused.
+	 */
+	public void setMaxPendingRecords(int maxPendingRecords) {
+		this.maxPendingRecords = maxPendingRecords;
+	}
+
+	/**
+	 * @param pollTimeout The time, in milliseconds, each poll waits for events.
+	 */
+	public void setPollTimeout(long pollTimeout) {
+		this.pollTimeout = pollTimeout;
+	}
+
+	/**
+	 * @param revokeTimeout The longest time, in milliseconds, to wait for the events of
+	 * revoked partitions to be processed before committing them.
+	 */
+	public void setRevokeTimeout(long revokeTimeout) {
+		this.revokeTimeout = revokeTimeout;
+	}
+
+	/**
+	 * Subscribes the {@link Consumer} to topics. When partitions are revoked, waits up
+	 * to {@link #setRevokeTimeout(long) revokeTimeout} for their polled events to be
+	 * processed, commits them as far as they have been, then forgets their offsets.
+	 * Events still being processed after that are delivered again to whichever
+	 * consumer the partitions are assigned to.
+	 *
+	 * @param topics The topics to subscribe to.
+	 */
+	public void subscribe(Collection<String> topics) {
+		consumer.subscribe(topics, new ConsumerRebalanceListener() {
+			@Override
+			public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+				try {
+					if (!offsets.awaitCompletion(partitions, revokeTimeout)) {
+						LOG.warn("Giving up {} partitions with events still being processed.", partitions.size());
+					}
+				} catch (InterruptedException exception) {
+					Thread.currentThread().interrupt();
+				}
+				commit();
+				offsets.forget(partitions);
+			}
+
+			@Override
+			public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+				// Tracking starts with the first polled record.
+			}
+		});
+	}
+
+	/**
+	 * Polls and processes events until {@link #shutdown()} is called, then waits for the
+	 * workers to finish and commits what they processed.
+	 */
+	public void run() {
+		running = true;
+		try {
+			while (running) {
+				pollOnce(pollTimeout);
+			}
+		} catch (WakeupException exception) {
+			if (running) {
+				throw exception;
+			}
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * Stops {@link #run()}. May be called from any thread.
+	 */
+	public void shutdown() {
+		running = false;
+		consumer.wakeup();
+	}
+
+	/**
+	 * Polls once, hands the events to the workers, pauses or resumes the assigned
+	 * partitions according to the backlog, and commits what has been processed.
+	 *
+	 * @param timeout The time, in milliseconds, to wait for events.
+	 * @return The number of events polled.
+	 */
+	public int pollOnce(long timeout) {
+		startLanes();
+		ConsumerRecords<String, byte[]> records = consumer.poll(timeout);
+		for (ConsumerRecord<String, byte[]> record : records) {
+			TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+			long generation = offsets.track(partition, record.offset());
+			ProcessClaimValidationRecordEvent event;
+			try {
+				event = deserializer.deserialize(record.topic(), record.value());
+			} catch (RuntimeException exception) {
+				LOG.error("Skipping undeserializable event at {}@{}: {}", partition, record.offset(),
+						exception.getLocalizedMessage());
+				offsets.complete(partition, record.offset(), generation);
+				continue;
+			}
+			Object key = ordering.key.apply(event);
+			lanes[Utils.toPositive(key == null ? 0 : key.hashCode()) % lanes.length].execute(() -> {
+				try {
+					handler.handle(event);
+				} catch (Exception exception) {
+					LOG.error("Unable to process event at {}@{}: {}", partition, record.offset(),
+							exception.getLocalizedMessage());
+				} finally {
+					offsets.complete(partition, record.offset(), generation);
+				}
+			});
+		}
+
+		if (offsets.pending() >= maxPendingRecords) {
+			if (consumer.paused().isEmpty()) {
+				LOG.debug("Pausing {} partitions with {} events pending.", consumer.assignment().size(),
+						offsets.pending());
+				consumer.pause(consumer.assignment());
+			}
+		} else if (!consumer.paused().isEmpty()) {
+			consumer.resume(consumer.paused());
+		}
+		commit();
+		return records.count();
+	}
+
+	/**
+	 * Commits every partition as far as it has been processed.
+	 */
+	public void commit() {
+		Map<TopicPartition, OffsetAndMetadata> committable = offsets.committable();
+		if (!committable.isEmpty()) {
+			consumer.commitSync(committable);
+		}
+	}
+
+	/**
+	 * @return The number of polled events not yet processed.
+	 */
+	public int getPendingRecords() {
+		return offsets.pending();
+	}
+
+	/**
+	 * Waits for the workers to process every polled event, then commits.
+	 */
+	public void close() {
+		if (lanes != null) {
+			for (ExecutorService lane : lanes) {
+				lane.shutdown();
+			}
+			try {
+				for (ExecutorService lane : lanes) {
+					lane.awaitTermination(1, TimeUnit.MINUTES);
+				}
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+			}
+			lanes = null;
+		}
+		commit();
+	}
+
+	private void startLanes() {
+		if (lanes != null) {
+			return;
+		}
+		AtomicInteger threads = new AtomicInteger();
+		lanes = new ExecutorService[workers];
+		for (int i = 0; i < workers; i++) {
+			lanes[i] = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "claim-validation-worker-" + threads.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+}
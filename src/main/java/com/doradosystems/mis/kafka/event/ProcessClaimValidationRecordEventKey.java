@@ -0,0 +1,77 @@
+package com.doradosystems.mis.kafka.event;
+
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+
+/**
+ * Builds and reads the Kafka message key of a ProcessClaimValidationRecordEvent.
+ * 
+ * The key has the form {@code batchId:runNumber:recordId}, so that messages can be
+ * routed by run without deserializing the value.
+ *
+ */
+public final class ProcessClaimValidationRecordEventKey {
+
+	private static final char SEPARATOR = ':';
+
+	private ProcessClaimValidationRecordEventKey() {
+	}
+
+	public static String of(ClaimValidationRecord record) {
+		return of(record.getBatchId(), record.getRunNumber(), record.getId());
+	}
+
+	public static String of(long batchId, long runNumber, long recordId) {
+		return new StringBuilder(32).append(batchId).append(SEPARATOR).append(runNumber).append(SEPARATOR)
+				.append(recordId).toString();
+	}
+
+	/**
+	 * @return The batch id in the key, or -1 if the key is not in the expected form.
+	 */
+	public static long batchIdOf(String key) {
+		return field(key, 0);
+	}
+
+	/**
+	 * @return The run number in the key, or -1 if the key is not in the expected form.
+	 */
+	public static long runNumberOf(String key) {
+		return field(key, 1);
+	}
+
+	/**
+	 * @return The record id in the key, or -1 if the key is not in the expected form.
+	 */
+	public static long recordIdOf(String key) {
+		return field(key, 2);
+	}
+
+	private static long field(String key, int index) {
+		if (key == null) {
+			return -1;
+		}
+		int start = 0;
+		for (int i = 0; i < index; i++) {
+			start = key.indexOf(SEPARATOR, start) + 1;
+			if (start == 0) {
+				return -1;
+			}
+		}
+		int end = key.indexOf(SEPARATOR, start);
+		if (end < 0) {
+			end = key.length();
+		}
+		if (start == end) {
+			return -1;
+		}
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			char c = key.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+}
@@ -0,0 +1,142 @@
+package com.doradosystems.mis.kafka.partitioner;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.utils.Utils;
+
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+import com.doradosystems.mis.kafka.event.ProcessClaimValidationRecordEvent;
+import com.doradosystems.mis.kafka.event.ProcessClaimValidationRecordEventKey;
+
+/**
+ * Routes ProcessClaimValidationRecordEvents so that the records of one run of a batch
+ * land on the same partition.
+ * 
+ * The batch id and run number are read from the event, or parsed from a
+ * {@link ProcessClaimValidationRecordEventKey} when only the key is available, and
+ * mapped to a partition with jump consistent hashing, so adding partitions moves
+ * as few runs as possible. Messages without a batch and run fall back to hashing
+ * the key bytes, or round robin when there is no key.
+ * 
+ * Batches listed in {@link #HOT_BATCH_IDS_CONFIG} are split over
+ * {@link #HOT_BATCH_SPLIT_CONFIG} partitions instead of one, in runs of
+ * {@link #SPLIT_CHUNK_SIZE_CONFIG} consecutive record ids, so one very large file can
+ * be consumed in parallel while its records still arrive in chunks of the same run.
+ *
+ */
+public class ProcessClaimValidationRecordEventPartitioner implements Partitioner {
+
+	/**
+	 * Comma separated batch ids to split over several partitions.
+	 */
+	public static final String HOT_BATCH_IDS_CONFIG = "claim.validation.partitioner.hot.batch.ids";
+
+	/**
+	 * The number of partitions a hot batch is split over. Defaults to 1.
+	 */
+	public static final String HOT_BATCH_SPLIT_CONFIG = "claim.validation.partitioner.hot.batch.split";
+
+	/**
+	 * The number of consecutive record ids of a hot batch sent to the same partition.
+	 * Defaults to 500.
+	 */
+	public static final String SPLIT_CHUNK_SIZE_CONFIG = "claim.validation.partitioner.split.chunk.size";
+
+	private final AtomicInteger counter = new AtomicInteger();
+	private volatile Set<Long> hotBatchIds = Collections.emptySet();
+	private volatile int hotBatchSplit = 1;
+	private volatile int splitChunkSize = 500;
+
+	@Override
+	public void configure(Map<String, ?> configs) {
+		Object ids = configs.get(HOT_BATCH_IDS_CONFIG);
+		if (ids != null) {
+			Set<Long> parsed = new HashSet<>();
+			for (String id : ids.toString().split(",")) {
+				if (!id.trim().isEmpty()) {
+					parsed.add(Long.parseLong(id.trim()));
+				}
+			}
+			hotBatchIds = parsed;
+		}
+		Object split = configs.get(HOT_BATCH_SPLIT_CONFIG);
+		if (split != null) {
+			hotBatchSplit = Math.max(1, Integer.parseInt(split.toString().trim()));
+		}
+		Object chunkSize = configs.get(SPLIT_CHUNK_SIZE_CONFIG);
+		if (chunkSize != null) {
+			splitChunkSize = Math.max(1, Integer.parseInt(chunkSize.toString().trim()));
+		}
+	}
+
+	@Override
+	public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes,
+			Cluster cluster) {
+		int numPartitions = cluster.partitionsForTopic(topic).size();
+
+		long batchId = -1;
+		long runNumber = -1;
+		long recordId = -1;
+		if (value instanceof ProcessClaimValidationRecordEvent) {
+			ClaimValidationRecord record = ((ProcessClaimValidationRecordEvent) value).getClaimValidationRecord();
+			if (record != null && record.getBatchId() != null && record.getRunNumber() != null) {
+				batchId = record.getBatchId();
+				runNumber = record.getRunNumber();
+				recordId = record.getId() == null ? -1 : record.getId();
+			}
+		} else if (key instanceof String) {
+			batchId = ProcessClaimValidationRecordEventKey.batchIdOf((String) key);
+			runNumber = ProcessClaimValidationRecordEventKey.runNumberOf((String) key);
+			recordId = ProcessClaimValidationRecordEventKey.recordIdOf((String) key);
+		}
+
+		if (batchId < 0 || runNumber < 0) {
+			if (keyBytes != null) {
+				return Utils.toPositive(Utils.murmur2(keyBytes)) % numPartitions;
+			}
+			return Utils.toPositive(counter.getAndIncrement()) % numPartitions;
+		}
+
+		long hash = mix(batchId * 31 + runNumber);
+		if (hotBatchSplit > 1 && recordId >= 0 && hotBatchIds.contains(batchId)) {
+			hash = mix(hash + (recordId / splitChunkSize) % hotBatchSplit);
+		}
+		return jumpConsistentHash(hash, numPartitions);
+	}
+
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * Spreads the bits of a value so that consecutive ids hash far apart (the
+	 * SplitMix64 finalizer).
+	 */
+	static long mix(long value) {
+		long z = value + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Maps a hash to one of {@code buckets} buckets such that growing the number of
+	 * buckets from n to n + 1 moves only 1 / (n + 1) of the hashes (Lamping and Veach).
+	 */
+	static int jumpConsistentHash(long key, int buckets) {
+		long b = -1;
+		long j = 0;
+		while (j < buckets) {
+			b = j;
+			key = key * 2862933555777941757L + 1;
+			j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+		}
+		return (int) b;
+	}
+}
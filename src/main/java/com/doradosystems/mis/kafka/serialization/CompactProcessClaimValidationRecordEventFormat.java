@@ -0,0 +1,224 @@
+package com.doradosystems.mis.kafka.serialization;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+import com.doradosystems.mis.domain.ClaimValidationRecordBlock;
+import com.doradosystems.mis.kafka.event.ProcessClaimValidationRecordEvent;
+
+/**
+ * A compact binary encoding of ProcessClaimValidationRecordEvents in which the fields
+ * that change between runs of a record, its run number and attempt count, sit at fixed
+ * offsets, so an encoded event can be re-dispatched in a later run by patching them
+ * with {@link #withRun(byte[], long, int)} instead of being encoded again.
+ *
+ * The layout, all big endian, is:
+ * <pre>
+ *  0  magic 0xC5 0x56, which Java serialization streams (0xAC 0xED) never start with
+ *  2  version
+ *  3  flags: 1 = clientId present, 2 = record present
+ *  4  runNumber (8)
+ * 12  attemptCount (4)
+ * 16  clientId (8)
+ * 24  id, batchId, createDate, updatedDate, nextEligibleDate (8 each)
+ * 64  status, claimNumber, record: each a length (4, -1 for null) and UTF-8 bytes
+ * </pre>
+ * Absent longs and dates are written as {@link Long#MIN_VALUE}. The record body is
+ * written decompressed.
+ */
+public final class CompactProcessClaimValidationRecordEventFormat {
+
+	private static final byte MAGIC_0 = (byte) 0xC5;
+	private static final byte MAGIC_1 = (byte) 0x56;
+	private static final byte VERSION = 1;
+
+	private static final int FLAGS_OFFSET = 3;
+	private static final int RUN_NUMBER_OFFSET = 4;
+	private static final int ATTEMPT_COUNT_OFFSET = 12;
+	private static final int BATCH_ID_OFFSET = 32;
+	private static final int FIXED_LENGTH = 64;
+
+	private static final byte HAS_CLIENT_ID = 1;
+	private static final byte HAS_RECORD = 2;
+	private static final long ABSENT = Long.MIN_VALUE;
+
+	private CompactProcessClaimValidationRecordEventFormat() {
+	}
+
+	/**
+	 * @param data Serialized bytes.
+	 * @return Whether the bytes are in this format.
+	 */
+	public static boolean isCompact(byte[] data) {
+		return data != null && data.length >= FIXED_LENGTH && data[0] == MAGIC_0 && data[1] == MAGIC_1;
+	}
+
+	/**
+	 * Encodes an event.
+	 *
+	 * @param event The event to encode.
+	 * @return The encoded event.
+	 */
+	public static byte[] write(ProcessClaimValidationRecordEvent event) {
+		ClaimValidationRecord record = event.getClaimValidationRecord();
+		if (record == null) {
+			return write(event.getClientId(), false, ABSENT, 0, ABSENT, ABSENT, ABSENT, ABSENT, ABSENT, null, null,
+					null);
+		}
+		return write(event.getClientId(), true, orAbsent(record.getRunNumber()), record.getAttemptCount(),
+				orAbsent(record.getId()), orAbsent(record.getBatchId()), orAbsent(record.getCreateDate()),
+				orAbsent(record.getUpdatedDate()), orAbsent(record.getNextEligibleDate()),
+				record.getStatus() == null ? null : record.getStatus().name(), record.getClaimNumber(),
+				record.getRecord());
+	}
+
+	/**
+	 * Encodes the event for one record of a {@link ClaimValidationRecordBlock}, without
+	 * building a {@link ClaimValidationRecord} for it.
+	 *
+	 * @param clientId The id of the client the record belongs to.
+	 * @param block The block holding the record.
+	 * @param index The index of the record in the block.
+	 * @return The encoded event.
+	 */
+	public static byte[] write(Long clientId, ClaimValidationRecordBlock block, int index) {
+		return write(clientId, true, block.getRunNumber(index), block.getAttemptCount(index), block.getId(index),
+				block.getBatchId(index), dateOrAbsent(block.getCreateDate(index)),
+				dateOrAbsent(block.getUpdatedDate(index)), dateOrAbsent(block.getNextEligibleDate(index)),
+				block.getStatus(index).name(), block.getClaimNumber(index), block.getRecord(index));
+	}
+
+	private static byte[] write(Long clientId, boolean hasRecord, long runNumber, int attemptCount, long id,
+			long batchId, long createDate, long updatedDate, long nextEligibleDate, String statusName,
+			String claimNumberText, String bodyText) {
+		byte[] status = utf8(statusName);
+		byte[] claimNumber = utf8(claimNumberText);
+		byte[] body = utf8(bodyText);
+		ByteBuffer buffer = ByteBuffer.allocate(FIXED_LENGTH + 12 + length(status) + length(claimNumber)
+				+ length(body));
+		buffer.put(MAGIC_0).put(MAGIC_1).put(VERSION);
+		buffer.put((byte) ((clientId != null ? HAS_CLIENT_ID : 0) | (hasRecord ? HAS_RECORD : 0)));
+		buffer.putLong(runNumber);
+		buffer.putInt(attemptCount);
+		buffer.putLong(orAbsent(clientId));
+		buffer.putLong(id);
+		buffer.putLong(batchId);
+		buffer.putLong(createDate);
+		buffer.putLong(updatedDate);
+		buffer.putLong(nextEligibleDate);
+		putString(buffer, status);
+		putString(buffer, claimNumber);
+		putString(buffer, body);
+		return buffer.array();
+	}
+
+	/**
+	 * Decodes an event.
+	 *
+	 * @param data Bytes for which {@link #isCompact(byte[])} is true.
+	 * @return The decoded event.
+	 */
+	public static ProcessClaimValidationRecordEvent read(byte[] data) {
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		if (data[2] != VERSION) {
+			throw new IllegalArgumentException("Unsupported event format version " + data[2]);
+		}
+		byte flags = data[FLAGS_OFFSET];
+		buffer.position(RUN_NUMBER_OFFSET);
+		long runNumber = buffer.getLong();
+		int attemptCount = buffer.getInt();
+		long clientId = buffer.getLong();
+		long id = buffer.getLong();
+		long batchId = buffer.getLong();
+		long createDate = buffer.getLong();
+		long updatedDate = buffer.getLong();
+		long nextEligibleDate = buffer.getLong();
+		String status = getString(buffer);
+		String claimNumber = getString(buffer);
+		String body = getString(buffer);
+
+		ClaimValidationRecord record = null;
+		if ((flags & HAS_RECORD) != 0) {
+			record = new ClaimValidationRecord(longOrNull(id), longOrNull(batchId), longOrNull(runNumber),
+					status == null ? null : ClaimValidationRecord.Status.valueOf(status), claimNumber, body,
+					dateOrNull(createDate), dateOrNull(updatedDate), attemptCount, dateOrNull(nextEligibleDate));
+		}
+		return new ProcessClaimValidationRecordEvent((flags & HAS_CLIENT_ID) != 0 ? clientId : null, record);
+	}
+
+	/**
+	 * Copies an encoded event with a new run number and attempt count. The original is
+	 * left unchanged, since it may still be waiting to be sent.
+	 *
+	 * @param data Bytes for which {@link #isCompact(byte[])} is true.
+	 * @param runNumber The run number to set.
+	 * @param attemptCount The attempt count to set.
+	 * @return The patched copy.
+	 */
+	public static byte[] withRun(byte[] data, long runNumber, int attemptCount) {
+		byte[] copy = Arrays.copyOf(data, data.length);
+		ByteBuffer buffer = ByteBuffer.wrap(copy);
+		buffer.putLong(RUN_NUMBER_OFFSET, runNumber);
+		buffer.putInt(ATTEMPT_COUNT_OFFSET, attemptCount);
+		return copy;
+	}
+
+	/**
+	 * Reads the batch id of an encoded event without decoding the rest of it.
+	 *
+	 * @param data Bytes for which {@link #isCompact(byte[])} is true.
+	 * @return The batch id, or {@code null} if the event has none.
+	 */
+	public static Long batchIdOf(byte[] data) {
+		return longOrNull(ByteBuffer.wrap(data).getLong(BATCH_ID_OFFSET));
+	}
+
+	private static byte[] utf8(String value) {
+		return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static int length(byte[] value) {
+		return value == null ? 0 : value.length;
+	}
+
+	private static void putString(ByteBuffer buffer, byte[] value) {
+		if (value == null) {
+			buffer.putInt(-1);
+		} else {
+			buffer.putInt(value.length).put(value);
+		}
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0) {
+			return null;
+		}
+		String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+		return value;
+	}
+
+	private static long orAbsent(Long value) {
+		return value == null ? ABSENT : value;
+	}
+
+	private static long orAbsent(Date value) {
+		return value == null ? ABSENT : value.getTime();
+	}
+
+	private static long dateOrAbsent(long date) {
+		return date == ClaimValidationRecordBlock.NO_DATE ? ABSENT : date;
+	}
+
+	private static Long longOrNull(long value) {
+		return value == ABSENT ? null : value;
+	}
+
+	private static Date dateOrNull(long value) {
+		return value == ABSENT ? null : new Date(value);
+	}
+}
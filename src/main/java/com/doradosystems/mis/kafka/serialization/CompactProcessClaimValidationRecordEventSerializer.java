@@ -0,0 +1,31 @@
+package com.doradosystems.mis.kafka.serialization;
+
+import java.util.Map;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+import com.doradosystems.mis.kafka.event.ProcessClaimValidationRecordEvent;
+
+/**
+ * Serializes a ProcessClaimValidationRecordEvent into a byte array in the
+ * {@link CompactProcessClaimValidationRecordEventFormat}.
+ *
+ * The {@link ProcessClaimValidationRecordEventDeserializer} reads both this format and
+ * the Java serialization written by {@link ProcessClaimValidationRecordEventSerializer},
+ * so consumers should be upgraded before producers switch to this serializer.
+ */
+public class CompactProcessClaimValidationRecordEventSerializer implements Serializer<ProcessClaimValidationRecordEvent> {
+
+	@Override
+	public void configure(Map<String, ?> configs, boolean isKey) {
+	}
+
+	@Override
+	public byte[] serialize(String topic, ProcessClaimValidationRecordEvent event) {
+		return event == null ? null : CompactProcessClaimValidationRecordEventFormat.write(event);
+	}
+
+	@Override
+	public void close() {
+	}
+}
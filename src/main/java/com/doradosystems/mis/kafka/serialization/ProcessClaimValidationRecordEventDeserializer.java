@@ -6,9 +6,20 @@ import com.doradosystems.mis.kafka.event.ProcessClaimValidationRecordEvent;
 /**
  * Deserializes a byte array into a ProcessClaimValidationRecordEvent
  * 
+ * Events in the {@link CompactProcessClaimValidationRecordEventFormat} are recognized by
+ * their leading magic bytes; anything else is read with Java serialization.
+ * 
  * @author Arthur Tolentino
  *
  */
 public class ProcessClaimValidationRecordEventDeserializer extends ObjectDeserializer<ProcessClaimValidationRecordEvent> {
 
+	@Override
+	public ProcessClaimValidationRecordEvent deserialize(String topic, byte[] data) {
+		if (CompactProcessClaimValidationRecordEventFormat.isCompact(data)) {
+			return CompactProcessClaimValidationRecordEventFormat.read(data);
+		}
+		return super.deserialize(topic, data);
+	}
+
 }
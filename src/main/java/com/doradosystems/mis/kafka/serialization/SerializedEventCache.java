@@ -0,0 +1,132 @@
+package com.doradosystems.mis.kafka.serialization;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, least recently used cache of events encoded in the
+ * {@link CompactProcessClaimValidationRecordEventFormat}, by record id, so that a record
+ * retried in a later run can be re-dispatched without reading its body again or
+ * encoding it again.
+ *
+ * Only the run number and attempt count of a record change between runs, and
+ * {@link #get(long, long, int)} patches those into a copy of the cached bytes. Other
+ * fields, such as the updated date, are as they were when the record was first encoded.
+ *
+ * This class is thread safe.
+ */
+public class SerializedEventCache {
+
+	private final int maxEntries;
+	private final long maxBytes;
+	private final LinkedHashMap<Long, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long bytes;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param maxEntries The most events to keep.
+	 * @param maxBytes The most bytes of events to keep.
+	 */
+	public SerializedEventCache(int maxEntries, long maxBytes) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @param recordId The id of the record.
+	 * @param runNumber The run the record is being dispatched in.
+	 * @param attemptCount The record's current attempt count.
+	 * @return The record's encoded event patched for the run, or {@code null} if it is
+	 * not cached.
+	 */
+	public byte[] get(long recordId, long runNumber, int attemptCount) {
+		byte[] cached;
+		synchronized (this) {
+			cached = entries.get(recordId);
+		}
+		if (cached == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return CompactProcessClaimValidationRecordEventFormat.withRun(cached, runNumber, attemptCount);
+	}
+
+	/**
+	 * @param recordId The id of the record.
+	 * @return Whether the record's event is cached.
+	 */
+	public synchronized boolean contains(long recordId) {
+		return entries.containsKey(recordId);
+	}
+
+	/**
+	 * Caches the encoded event of a record, evicting the least recently used events
+	 * while over either bound.
+	 *
+	 * @param recordId The id of the record.
+	 * @param data The event, in the {@link CompactProcessClaimValidationRecordEventFormat}.
+	 */
+	public synchronized void put(long recordId, byte[] data) {
+		if (data.length > maxBytes) {
+			return;
+		}
+		byte[] previous = entries.put(recordId, data);
+		bytes += data.length - (previous == null ? 0 : previous.length);
+		Iterator<Map.Entry<Long, byte[]>> eldest = entries.entrySet().iterator();
+		while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+			bytes -= eldest.next().getValue().length;
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Removes a record's event, for example once the record is complete.
+	 *
+	 * @param recordId The id of the record.
+	 */
+	public synchronized void invalidate(long recordId) {
+		byte[] removed = entries.remove(recordId);
+		if (removed != null) {
+			bytes -= removed.length;
+		}
+	}
+
+	/**
+	 * Removes the events of every record of a batch, for example once the batch is
+	 * archived. This scans the whole cache.
+	 *
+	 * @param batchId The id of the batch.
+	 * @return The number of events removed.
+	 */
+	public synchronized int invalidateBatch(long batchId) {
+		int removed = 0;
+		Iterator<Map.Entry<Long, byte[]>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			byte[] data = iterator.next().getValue();
+			Long eventBatchId = CompactProcessClaimValidationRecordEventFormat.batchIdOf(data);
+			if (eventBatchId != null && eventBatchId == batchId) {
+				bytes -= data.length;
+				iterator.remove();
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+}
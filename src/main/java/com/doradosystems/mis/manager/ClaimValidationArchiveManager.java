@@ -0,0 +1,215 @@
+package com.doradosystems.mis.manager;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.TransactionStatus;
+
+import com.doradosystems.data.manager.AbstractManager;
+import com.doradosystems.mis.dao.ClaimValidationArchiveDao;
+import com.doradosystems.mis.dao.ClaimValidationBatchDao;
+import com.doradosystems.mis.domain.ClaimValidationBatch;
+import com.doradosystems.mis.kafka.serialization.SerializedEventCache;
+
+/**
+ * Moves the records and responses of {@link ClaimValidationBatch.Status#COMPLETE COMPLETE}
+ * batches that have not been updated for the {@link #setRetention(long) retention}
+ * period into the archive tables, keeping the hot tables small.
+ * <p>
+ * A batch is first moved from COMPLETE to
+ * {@link ClaimValidationBatch.Status#ARCHIVING ARCHIVING}, so that it cannot be
+ * reopened or rerun while its rows are moved, and is left alone if it is no longer
+ * COMPLETE. Rows are then moved a chunk at a time, each chunk in its own short
+ * transaction, with an optional pause between chunks so that archiving does not
+ * compete with processing. Responses are moved before records, and the batch is
+ * marked {@link ClaimValidationBatch.Status#ARCHIVED ARCHIVED} once all its rows have
+ * been moved. An interrupted batch stays ARCHIVING and is finished the next time
+ * archiving runs, so only one process should archive at a time.
+ * <p>
+ * If {@link #setDropPartitions(boolean) dropPartitions} is set and the batch has its
+ * own partitions, rows are copied but not deleted, and the batch's partitions are
+ * dropped afterwards, which is much cheaper than deleting them. A batch without its
+ * own partitions has its rows deleted a chunk at a time instead.
+ *
+ * @see ClaimValidationArchiveDao
+ */
+public class ClaimValidationArchiveManager extends AbstractManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClaimValidationArchiveManager.class);
+
+    private ClaimValidationBatchDao claimValidationBatchDao;
+    private ClaimValidationArchiveDao claimValidationArchiveDao;
+    private long retention = TimeUnit.DAYS.toMillis(90);
+    private int batchesPerRun = 10;
+    private int chunkSize = 500;
+    private long pauseBetweenChunks = 100;
+    private boolean dropPartitions;
+    private SerializedEventCache serializedEventCache;
+
+    public void setClaimValidationBatchDao(final ClaimValidationBatchDao claimValidationBatchDao) {
+        this.claimValidationBatchDao = claimValidationBatchDao;
+    }
+
+    public void setClaimValidationArchiveDao(final ClaimValidationArchiveDao claimValidationArchiveDao) {
+        this.claimValidationArchiveDao = claimValidationArchiveDao;
+    }
+
+    /**
+     * @param retention How long, in milliseconds, a COMPLETE batch is kept in the
+     * hot tables after it was last updated.
+     */
+    public void setRetention(final long retention) {
+        this.retention = retention;
+    }
+
+    /**
+     * @param batchesPerRun The most batches archived by each call to
+     * {@link #archiveExpiredBatches()}.
+     */
+    public void setBatchesPerRun(final int batchesPerRun) {
+        this.batchesPerRun = batchesPerRun;
+    }
+
+    /**
+     * @param chunkSize The number of rows moved per transaction.
+     */
+    public void setChunkSize(final int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param pauseBetweenChunks How long, in milliseconds, to wait between chunks.
+     */
+    public void setPauseBetweenChunks(final long pauseBetweenChunks) {
+        this.pauseBetweenChunks = pauseBetweenChunks;
+    }
+
+    /**
+     * @param dropPartitions {@code true} to drop the partitions of archived batches
+     * instead of deleting their rows, where the dialect supports it.
+     */
+    public void setDropPartitions(final boolean dropPartitions) {
+        this.dropPartitions = dropPartitions;
+    }
+
+    /**
+     * @param serializedEventCache The {@link SerializedEventCache} of the
+     * {@link ClaimValidationRecordDispatcher} in this process, whose events for a batch
+     * are dropped once its records are archived, or {@code null}.
+     */
+    public void setSerializedEventCache(final SerializedEventCache serializedEventCache) {
+        this.serializedEventCache = serializedEventCache;
+    }
+
+    /**
+     * Finishes any batches left ARCHIVING by an interrupted run, then archives the
+     * batches whose retention period has passed, least recently updated first, up to
+     * {@link #setBatchesPerRun(int) batchesPerRun} in all.
+     *
+     * @return The number of batches archived.
+     * @throws InterruptedException If interrupted while pausing between chunks.
+     */
+    public int archiveExpiredBatches() throws InterruptedException {
+        final Date now = new Date();
+        final Date cutoff = new Date(now.getTime() - retention);
+        int archived = 0;
+        final List<Long> interrupted = claimValidationBatchDao.getIdsByStatusUpdatedBefore(
+                ClaimValidationBatch.Status.ARCHIVING, now, batchesPerRun);
+        for(final Long batchId : interrupted) {
+            if(moveRows(batchId)) {
+                archived++;
+            }
+        }
+        final List<Long> batchIds = interrupted.size() >= batchesPerRun
+                ? Collections.<Long>emptyList()
+                : claimValidationBatchDao.getIdsByStatusUpdatedBefore(ClaimValidationBatch.Status.COMPLETE, cutoff,
+                        batchesPerRun - interrupted.size());
+        for(final Long batchId : batchIds) {
+            if(archiveBatch(batchId)) {
+                archived++;
+            }
+        }
+        if(archived > 0) {
+            LOG.info("Archived {} batches last updated before {}", archived, cutoff);
+        }
+        return archived;
+    }
+
+    /**
+     * Archives the records and responses of a single COMPLETE batch.
+     *
+     * @param batchId The {@link ClaimValidationBatch#getId() id} of the batch.
+     * @return {@code true} if the batch was archived, or {@code false} if it was
+     * no longer COMPLETE, in which case none of its rows are moved.
+     * @throws InterruptedException If interrupted while pausing between chunks.
+     */
+    public boolean archiveBatch(final long batchId) throws InterruptedException {
+        final boolean claimed = inTransaction(() -> claimValidationBatchDao.updateStatusIfCurrent(batchId,
+                ClaimValidationBatch.Status.COMPLETE, ClaimValidationBatch.Status.ARCHIVING) ? 1 : 0) > 0;
+        if(!claimed) {
+            LOG.warn("Batch {} was no longer COMPLETE, so it was not archived", batchId);
+            return false;
+        }
+        return moveRows(batchId);
+    }
+
+    /**
+     * Moves the rows of an ARCHIVING batch and marks it ARCHIVED.
+     */
+    private boolean moveRows(final long batchId) throws InterruptedException {
+        final boolean drop = dropPartitions && claimValidationArchiveDao.hasBatchPartitions(batchId);
+        if(dropPartitions && !drop) {
+            LOG.warn("Batch {} has no partitions of its own, so its rows are deleted instead", batchId);
+        }
+        int chunks = 0;
+        // Responses first, as they refer to the records.
+        for(long lastId = 0; lastId >= 0; chunks++) {
+            final long afterId = lastId;
+            lastId = inTransaction(() -> claimValidationArchiveDao.archiveResponses(batchId, afterId, chunkSize, !drop));
+            pause(lastId);
+        }
+        for(long lastId = 0; lastId >= 0; chunks++) {
+            final long afterId = lastId;
+            lastId = inTransaction(() -> claimValidationArchiveDao.archiveRecords(batchId, afterId, chunkSize, !drop));
+            pause(lastId);
+        }
+        if(serializedEventCache != null) {
+            serializedEventCache.invalidateBatch(batchId);
+        }
+        if(drop) {
+            claimValidationArchiveDao.dropBatchPartitions(batchId);
+        }
+        final boolean archived = inTransaction(() -> claimValidationBatchDao.updateStatusIfCurrent(batchId,
+                ClaimValidationBatch.Status.ARCHIVING, ClaimValidationBatch.Status.ARCHIVED) ? 1 : 0) > 0;
+        if(archived) {
+            LOG.debug("Archived batch {} in {} transactions", batchId, chunks);
+        } else {
+            LOG.warn("Batch {} was no longer ARCHIVING once its rows were archived", batchId);
+        }
+        return archived;
+    }
+
+    private long inTransaction(final LongSupplier work) {
+        final TransactionStatus transaction = getTransaction();
+        try {
+            final long result = work.getAsLong();
+            commit(transaction);
+            return result;
+        } catch (final RuntimeException exception) {
+            rollback(transaction);
+            LOG.error("Rolling back due to exception: {}", exception.getLocalizedMessage());
+            throw exception;
+        }
+    }
+
+    private void pause(final long lastId) throws InterruptedException {
+        if(lastId >= 0 && pauseBetweenChunks > 0) {
+            Thread.sleep(pauseBetweenChunks);
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.doradosystems.mis.manager;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,8 +14,14 @@ import com.doradosystems.data.manager.AbstractManager;
 import com.doradosystems.exception.NotFoundException;
 import com.doradosystems.mis.dao.ClaimValidationBatchDao;
 import com.doradosystems.mis.dao.ClaimValidationRecordDao;
+import com.doradosystems.mis.dao.OutboxEventDao;
 import com.doradosystems.mis.domain.ClaimValidationBatch;
 import com.doradosystems.mis.domain.ClaimValidationRecord;
+import com.doradosystems.mis.domain.ClaimValidationRunProgress;
+import com.doradosystems.mis.domain.OutboxEvent;
+import com.doradosystems.mis.kafka.event.ProcessClaimValidationRecordEvent;
+import com.doradosystems.mis.kafka.event.ProcessClaimValidationRecordEventKey;
+import com.doradosystems.mis.kafka.serialization.ProcessClaimValidationRecordEventSerializer;
 
 /**
  * Manager for manipulating {@link ClaimValidationBatch} records.
@@ -26,6 +35,36 @@ public class ClaimValidationBatchManager extends AbstractManager {
     private ClaimValidationBatchDao claimValidationBatchDao;
     private ClaimValidationRecordDao claimValidationRecordDao;
     private int pollWaitInterval;
+    private ClaimValidationRunTracker runTracker;
+    private boolean pollUsingRunTracker;
+    private ClaimValidationRunWatchService runWatchService;
+    private ClaimValidationBatchScheduler batchScheduler;
+    private BatchSelectionMode batchSelectionMode = BatchSelectionMode.OLDEST_FIRST;
+    private ClaimValidationDeadlineMetrics deadlineMetrics;
+    private OutboxEventDao outboxEventDao;
+    private String dispatchTopic;
+    private ClaimValidationResponseManager claimValidationResponseManager;
+    private int maxAttempts = Integer.MAX_VALUE;
+    private long retryBackoff;
+    private long maxRetryBackoff = 60L * 60 * 1000;
+    private final ProcessClaimValidationRecordEventSerializer eventSerializer =
+            new ProcessClaimValidationRecordEventSerializer();
+    
+    /**
+     * How {@link #claimPendingBatches(int)} orders pending batches when no
+     * {@link ClaimValidationBatchScheduler} is set.
+     */
+    public enum BatchSelectionMode {
+        /**
+         * Oldest {@link ClaimValidationBatch#getCreateDate() createDate} first.
+         */
+        OLDEST_FIRST,
+        /**
+         * Lowest {@link ClaimValidationBatch#getPriority() priority} first, then
+         * earliest {@link ClaimValidationBatch#getDueDate() dueDate}, then oldest.
+         */
+        EARLIEST_DEADLINE_FIRST
+    }
     
     public void setClaimValidationBatchDao(final ClaimValidationBatchDao claimValidationBatchDao) {
         this.claimValidationBatchDao = claimValidationBatchDao;
@@ -38,6 +77,252 @@ public class ClaimValidationBatchManager extends AbstractManager {
     public void setPollWaitInterval (final int interval){
         this.pollWaitInterval = interval;
     }
+    
+    /**
+     * @param runTracker The {@link ClaimValidationRunTracker} to keep up to date as
+     * batches are claimed and runs are completed, or {@code null} for none.
+     */
+    public void setRunTracker(final ClaimValidationRunTracker runTracker) {
+        this.runTracker = runTracker;
+    }
+    
+    /**
+     * Sets whether {@link #pollUntilNoPendingRecordsRemain(Long, Long, long)} should
+     * read a run's progress from the {@link ClaimValidationRunTracker} instead of the
+     * database, when the run is tracked.
+     * <p>
+     * Only enable this when every response for the polled runs is created in this
+     * process, since the tracker does not see changes made elsewhere.
+     * 
+     * @param pollUsingRunTracker {@code true} to poll the tracker.
+     */
+    public void setPollUsingRunTracker(final boolean pollUsingRunTracker) {
+        this.pollUsingRunTracker = pollUsingRunTracker;
+    }
+    
+    /**
+     * @param runWatchService The {@link ClaimValidationRunWatchService} that
+     * {@link #pollUntilNoPendingRecordsRemain(Long, Long, long)} should wait on, instead
+     * of polling the database itself, or {@code null} for none.
+     */
+    public void setRunWatchService(final ClaimValidationRunWatchService runWatchService) {
+        this.runWatchService = runWatchService;
+    }
+    
+    /**
+     * @param batchScheduler The {@link ClaimValidationBatchScheduler} that
+     * {@link #claimPendingBatches(int)} should use to choose batches, or {@code null}
+     * to claim the oldest batches first.
+     */
+    public void setBatchScheduler(final ClaimValidationBatchScheduler batchScheduler) {
+        this.batchScheduler = batchScheduler;
+    }
+    
+    /**
+     * @param batchSelectionMode The {@link BatchSelectionMode} used by
+     * {@link #claimPendingBatches(int)} when no {@link ClaimValidationBatchScheduler} is set.
+     */
+    public void setBatchSelectionMode(final BatchSelectionMode batchSelectionMode) {
+        this.batchSelectionMode = batchSelectionMode;
+    }
+    
+    /**
+     * @param deadlineMetrics The {@link ClaimValidationDeadlineMetrics} to record claimed
+     * and completed batches in, or {@code null} for none.
+     */
+    public void setDeadlineMetrics(final ClaimValidationDeadlineMetrics deadlineMetrics) {
+        this.deadlineMetrics = deadlineMetrics;
+    }
+    
+    /**
+     * @param outboxEventDao The {@link OutboxEventDao} to queue a
+     * {@link ProcessClaimValidationRecordEvent} in for every pending record of each
+     * claimed batch, or {@code null} to leave dispatching to the caller.
+     */
+    public void setOutboxEventDao(final OutboxEventDao outboxEventDao) {
+        this.outboxEventDao = outboxEventDao;
+    }
+    
+    /**
+     * @param dispatchTopic The Kafka topic that queued
+     * {@link ProcessClaimValidationRecordEvent ProcessClaimValidationRecordEvents}
+     * are published to.
+     */
+    public void setDispatchTopic(final String dispatchTopic) {
+        this.dispatchTopic = dispatchTopic;
+    }
+    
+    /**
+     * @param claimValidationResponseManager The {@link ClaimValidationResponseManager}
+     * to answer records from its {@link ClaimValidationResultCache} before they are
+     * queued for dispatch, or {@code null} to dispatch every pending record. It must
+     * share this manager's transaction manager.
+     */
+    public void setClaimValidationResponseManager(
+            final ClaimValidationResponseManager claimValidationResponseManager) {
+        this.claimValidationResponseManager = claimValidationResponseManager;
+    }
+    
+    /**
+     * @param maxAttempts The number of runs a record may be left INCOMPLETE in before
+     * {@link #completeRun(ClaimValidationBatch)} marks it
+     * {@link ClaimValidationRecord.Status#FAILED FAILED}. Unlimited by default.
+     */
+    public void setMaxAttempts(final int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+    
+    /**
+     * @param retryBackoff The time, in milliseconds, a record left INCOMPLETE for the
+     * first time is {@link ClaimValidationRecord.Status#DEFERRED DEFERRED} before it is
+     * retried. The delay doubles with each further attempt. With the default of 0,
+     * INCOMPLETE records are retried in the next run.
+     */
+    public void setRetryBackoff(final long retryBackoff) {
+        this.retryBackoff = retryBackoff;
+    }
+    
+    /**
+     * @param maxRetryBackoff The longest time, in milliseconds, a record is
+     * {@link ClaimValidationRecord.Status#DEFERRED DEFERRED} for.
+     */
+    public void setMaxRetryBackoff(final long maxRetryBackoff) {
+        this.maxRetryBackoff = maxRetryBackoff;
+    }
+    
+    /**
+     * Claims up to {@code limit} {@link ClaimValidationBatch.Status#PENDING PENDING}
+     * batches by marking them {@link ClaimValidationBatch.Status#PROCESSING PROCESSING}
+     * in a single transaction.
+     * <p>
+     * If a {@link ClaimValidationBatchScheduler} is set, it chooses the batches;
+     * otherwise they are chosen according to the {@link BatchSelectionMode}. If an
+     * {@link OutboxEventDao} is set, an event for every pending record in the current
+     * run of each claimed batch is written to the outbox in the same transaction, so
+     * that a batch is never claimed without its records being dispatched, or
+     * dispatched twice by one claim. Records whose claim has already been answered are
+     * instead answered from the cache of the
+     * {@link #setClaimValidationResponseManager(ClaimValidationResponseManager) ClaimValidationResponseManager},
+     * if one is set. Batches claimed concurrently by
+     * another process are skipped, so fewer than {@code limit} batches may be returned
+     * even when more are pending. DEFERRED records of a claimed batch that are
+     * eligible to be retried become PENDING in its current run, so that a batch held
+     * back until its earliest deferred record was eligible has work when it is claimed.
+     * If a {@link ClaimValidationRunTracker} is set, the
+     * current run of each claimed batch is tracked, seeded from the database.
+     * 
+     * @param limit The maximum number of batches to claim.
+     * @return The claimed {@link ClaimValidationBatch ClaimValidationBatches}.
+     * @throws Exception May be rethrown if an {@link Exception} occurs.
+     */
+    public List<ClaimValidationBatch> claimPendingBatches(final int limit) throws Exception {
+        final TransactionStatus transaction = getTransaction();
+        final List<ClaimValidationBatch> claimed = new ArrayList<>();
+        final Date now = new Date();
+        
+        try {
+            final List<ClaimValidationBatch> candidates;
+            if(batchScheduler != null) {
+                candidates = batchScheduler.selectNext(limit);
+            } else if(batchSelectionMode == BatchSelectionMode.EARLIEST_DEADLINE_FIRST) {
+                candidates = claimValidationBatchDao.getByStatusWithPriorityAndDueDateAscending(
+                        ClaimValidationBatch.Status.PENDING, limit);
+            } else {
+                candidates = claimValidationBatchDao.lockByStatusWithCreateTimeAscending(
+                        ClaimValidationBatch.Status.PENDING, limit);
+            }
+            for(final ClaimValidationBatch batch : candidates) {
+                if(!claimValidationBatchDao.updateStatusIfCurrent(batch.getId(), ClaimValidationBatch.Status.PENDING,
+                        ClaimValidationBatch.Status.PROCESSING)) {
+                    LOG.debug("Batch {} was claimed elsewhere.", batch.getId());
+                    continue;
+                }
+                claimed.add(batch.withStatus(ClaimValidationBatch.Status.PROCESSING));
+                final int deferredRecordsRetried = claimValidationRecordDao.updateEligibleDeferredStatusAndRunNumber(
+                        batch.getId(), batch.getRunNumber(), now, batch.getRunNumber(),
+                        ClaimValidationRecord.Status.PENDING);
+                if(deferredRecordsRetried > 0) {
+                    LOG.debug("{} DEFERRED records of batch {} are eligible for retry", deferredRecordsRetried,
+                            batch.getId());
+                }
+                if(outboxEventDao != null) {
+                    queueDispatch(batch);
+                }
+            }
+            commit(transaction);
+            LOG.info("Claimed {} batches.", claimed.size());
+        } catch (final Exception exception) {
+            rollback(transaction);
+            LOG.error("Rolling back due to exception: {}", exception.getLocalizedMessage());
+            throw exception;
+        }
+        
+        if(runTracker != null) {
+            for(final ClaimValidationBatch batch : claimed) {
+                trackRun(batch.getId(), batch.getRunNumber());
+            }
+        }
+        if(deadlineMetrics != null) {
+            for(final ClaimValidationBatch batch : claimed) {
+                deadlineMetrics.recordClaimed(batch, now);
+            }
+        }
+        return claimed;
+    }
+    
+    /**
+     * Writes an {@link OutboxEvent} for every pending record in the current run of a
+     * batch that cannot be answered from the result cache, whose lookups are made
+     * together. Must be called within the transaction that claims the batch.
+     * 
+     * @param batch The claimed {@link ClaimValidationBatch}.
+     * @throws Exception May be rethrown if an {@link Exception} occurs.
+     */
+    private void queueDispatch(final ClaimValidationBatch batch) throws Exception {
+        final List<ClaimValidationRecord> pending = new ArrayList<>();
+        for(final ClaimValidationRecord record
+                : claimValidationRecordDao.getByBatchIdAndRunNumber(batch.getId(), batch.getRunNumber())) {
+            if(record.getStatus() == ClaimValidationRecord.Status.PENDING) {
+                pending.add(record);
+            }
+        }
+        final Set<Long> answeredFromCache = claimValidationResponseManager != null
+                ? claimValidationResponseManager.createResponsesFromCache(batch.getClientId(), pending)
+                : Collections.emptySet();
+        final List<OutboxEvent> events = new ArrayList<>();
+        for(final ClaimValidationRecord record : pending) {
+            if(answeredFromCache.contains(record.getId())) {
+                continue;
+            }
+            final byte[] payload = eventSerializer.serialize(dispatchTopic,
+                    new ProcessClaimValidationRecordEvent(batch.getClientId(), record));
+            events.add(new OutboxEvent(null, dispatchTopic, ProcessClaimValidationRecordEventKey.of(record),
+                    payload, null));
+        }
+        outboxEventDao.addAll(events);
+        LOG.debug("Queued {} records of batch {} for dispatch; answered {} from the result cache.",
+                events.size(), batch.getId(), answeredFromCache.size());
+    }
+    
+    /**
+     * Starts tracking a run in the {@link ClaimValidationRunTracker}, seeding its
+     * counts from the database.
+     * 
+     * @param batchId The batch id of the run.
+     * @param runNumber The run number of the run.
+     */
+    public void trackRun(final long batchId, final long runNumber) {
+        runTracker.track(batchId, runNumber,
+                claimValidationRecordDao.countByBatchIdAndRunNumberAndStatus(
+                        batchId, runNumber, ClaimValidationRecord.Status.PENDING),
+                claimValidationRecordDao.countByBatchIdAndRunNumberAndStatus(
+                        batchId, runNumber, ClaimValidationRecord.Status.COMPLETE),
+                claimValidationRecordDao.countByBatchIdAndRunNumberAndStatus(
+                        batchId, runNumber, ClaimValidationRecord.Status.INCOMPLETE),
+                claimValidationRecordDao.countByBatchIdAndRunNumberAndStatus(
+                        batchId, runNumber, ClaimValidationRecord.Status.DEFERRED));
+        LOG.debug("Tracking run {} of batch {}: {}", runNumber, batchId, runTracker.getProgress(batchId, runNumber));
+    }
 
     /**
      * Updates a {@link ClaimValidationBatch} record to end the current run.
@@ -46,10 +331,24 @@ public class ClaimValidationBatchManager extends AbstractManager {
      * run and batch are complete, the batch and incomplete/pending records
      * will be marked PENDING, and have their runNumber incremented.
      * <p>
+     * Each INCOMPLETE record has its {@link ClaimValidationRecord#getAttemptCount() attemptCount}
+     * incremented. Once it reaches {@link #setMaxAttempts(int) maxAttempts} the record is
+     * marked FAILED and left out of later runs. Otherwise, if a
+     * {@link #setRetryBackoff(long) retryBackoff} is set, it is marked DEFERRED until the
+     * backoff for its attempt count has passed, and only then included in a run again.
+     * DEFERRED records that are not yet eligible move to the next run without being
+     * dispatched.
+     * <p>
      * If all {@link ClaimValidationRecord ClaimValidationRecords} in the current
-     * run and batch are complete, the batch will be marked as COMPLETE.
+     * run and batch are complete or FAILED, the batch will be marked as COMPLETE.
+     * A batch whose only remaining records are DEFERRED is marked PENDING, but is not
+     * selected to be claimed again until the earliest of them becomes eligible.
      * <p>
      * All operations are performed in a single transaction.
+     * <p>
+     * If {@link ClaimValidationDeadlineMetrics} are set and the batch is now COMPLETE,
+     * it is recorded as completed on time or late against its
+     * {@link ClaimValidationBatch#getDueDate() dueDate}.
      * 
      * @param batch The {@link ClaimValidationBatch} to end the run for.
      * @throws Exception May be rethrown if an {@link Exception} occurs.
@@ -71,26 +370,71 @@ public class ClaimValidationBatchManager extends AbstractManager {
             final long newRecordRunNumber = completedRecordCount > 0 ? runNumber + 1 : runNumber;
             LOG.debug("New run for unprocessed records will be {}", newRecordRunNumber);
             
-            // Update any INCOMPLETE records to PENDING with the new run number.
-            final long incompleteRecordsUpdated = claimValidationRecordDao.updateStatusAndRunNumber(
-                    batchId, runNumber, ClaimValidationRecord.Status.INCOMPLETE,
-                    newRecordRunNumber, ClaimValidationRecord.Status.PENDING);
-            LOG.debug("{} INCOMPLETE records updated", incompleteRecordsUpdated);
-            
-            // Update any PENDING records to the new run number.
+            // Update any PENDING records to the new run number. This is done first so
+            // that records moved to PENDING below, possibly in the same run, are not counted twice.
             final long pendingRecordsUpdated = claimValidationRecordDao.updateStatusAndRunNumber(
                     batchId, runNumber, ClaimValidationRecord.Status.PENDING,
                     newRecordRunNumber, ClaimValidationRecord.Status.PENDING);
             LOG.debug("{} PENDING records updated", pendingRecordsUpdated);
             
+            // Retry any DEFERRED records whose backoff has passed in the new run.
+            final Date now = new Date();
+            final long deferredRecordsRetried = claimValidationRecordDao.updateEligibleDeferredStatusAndRunNumber(
+                    batchId, runNumber, now, newRecordRunNumber, ClaimValidationRecord.Status.PENDING);
+            LOG.debug("{} DEFERRED records are eligible for retry", deferredRecordsRetried);
+            
+            // Carry any DEFERRED records that are not yet eligible into the new run.
+            long deferredRecordsUpdated = claimValidationRecordDao.updateStatusAndRunNumber(
+                    batchId, runNumber, ClaimValidationRecord.Status.DEFERRED,
+                    newRecordRunNumber, ClaimValidationRecord.Status.DEFERRED);
+            
+            // Update any INCOMPLETE records to PENDING, DEFERRED or FAILED according to
+            // how many attempts they have had.
+            long incompleteRecordsUpdated = 0;
+            long failedRecordsUpdated = 0;
+            for(final Integer attemptCount : claimValidationRecordDao
+                    .countByBatchIdAndRunNumberAndStatusGroupedByAttemptCount(
+                            batchId, runNumber, ClaimValidationRecord.Status.INCOMPLETE).keySet()) {
+                final int attempts = attemptCount + 1;
+                final long backoff = backoffFor(attempts);
+                final ClaimValidationRecord.Status newRecordStatus = attempts >= maxAttempts
+                        ? ClaimValidationRecord.Status.FAILED
+                        : backoff > 0 ? ClaimValidationRecord.Status.DEFERRED : ClaimValidationRecord.Status.PENDING;
+                final int updated = claimValidationRecordDao.updateAttempt(
+                        batchId, runNumber, ClaimValidationRecord.Status.INCOMPLETE, attemptCount,
+                        newRecordStatus == ClaimValidationRecord.Status.FAILED ? runNumber : newRecordRunNumber,
+                        newRecordStatus,
+                        newRecordStatus == ClaimValidationRecord.Status.DEFERRED
+                                ? new Date(now.getTime() + backoff) : null);
+                if(newRecordStatus == ClaimValidationRecord.Status.FAILED) {
+                    failedRecordsUpdated += updated;
+                } else if(newRecordStatus == ClaimValidationRecord.Status.DEFERRED) {
+                    deferredRecordsUpdated += updated;
+                } else {
+                    incompleteRecordsUpdated += updated;
+                }
+            }
+            LOG.debug("{} INCOMPLETE records updated, {} records DEFERRED", incompleteRecordsUpdated,
+                    deferredRecordsUpdated);
+            if(failedRecordsUpdated > 0) {
+                LOG.warn("{} records of batch {} FAILED after {} attempts", failedRecordsUpdated, batchId, maxAttempts);
+            }
+            
             // Figure out the new status and runNumber of the batch based on whether
             // or not any records are in the next run.
             final ClaimValidationBatch.Status newBatchStatus;
             final long newBatchRunNumber;
-            if(pendingRecordsUpdated + incompleteRecordsUpdated > 0) {
+            final long pendingRecordCount = deferredRecordsRetried + pendingRecordsUpdated + incompleteRecordsUpdated;
+            Date notBeforeDate = null;
+            if(pendingRecordCount + deferredRecordsUpdated > 0) {
                 // Still more records to process, so go to the next run.
                 newBatchStatus = ClaimValidationBatch.Status.PENDING;
                 newBatchRunNumber = newRecordRunNumber;
+                if(pendingRecordCount == 0) {
+                    // Only DEFERRED records remain, so hold the batch back until one is eligible.
+                    notBeforeDate = claimValidationRecordDao.getEarliestDeferredNextEligibleDate(
+                            batchId, newRecordRunNumber);
+                }
             } else {
                 // All processing done, so stop and use the old run number.
                 newBatchStatus = ClaimValidationBatch.Status.COMPLETE;
@@ -99,12 +443,25 @@ public class ClaimValidationBatchManager extends AbstractManager {
             LOG.debug("Batch will be set to status {}, run {}", newBatchStatus, newBatchRunNumber);
             
             // Update the batch to it's new status and runNumber
-            claimValidationBatchDao.updateStatusAndRunNumber(batchId, newBatchStatus, newBatchRunNumber);
+            if(notBeforeDate == null) {
+                claimValidationBatchDao.updateStatusAndRunNumber(batchId, newBatchStatus, newBatchRunNumber);
+            } else {
+                claimValidationBatchDao.updateStatusAndRunNumber(batchId, newBatchStatus, newBatchRunNumber,
+                        notBeforeDate);
+                LOG.debug("Batch will not be claimed before {}", notBeforeDate);
+            }
             LOG.debug("Updated batch.");
             
             // Commit the transaction.
             commit(transaction);
             LOG.info("Batch {} is now {} in run {}", batchId, newBatchStatus, newBatchRunNumber);
+            
+            if(runTracker != null) {
+                runTracker.rollOver(batchId, runNumber, newBatchRunNumber, pendingRecordCount, deferredRecordsUpdated);
+            }
+            if(deadlineMetrics != null && newBatchStatus == ClaimValidationBatch.Status.COMPLETE) {
+                deadlineMetrics.recordCompleted(batch, new Date());
+            }
         } catch (final Exception exception) {
             rollback(transaction);
             LOG.error("Rolling back due to exception: {}", exception.getLocalizedMessage());
@@ -112,6 +469,22 @@ public class ClaimValidationBatchManager extends AbstractManager {
         }
     }
     
+    /**
+     * The time a record is {@link ClaimValidationRecord.Status#DEFERRED DEFERRED} for
+     * after a number of attempts: {@link #setRetryBackoff(long) retryBackoff}, doubled
+     * for each attempt after the first, up to {@link #setMaxRetryBackoff(long) maxRetryBackoff}.
+     */
+    private long backoffFor(final int attempts) {
+        if(retryBackoff <= 0) {
+            return 0;
+        }
+        final int doublings = attempts - 1;
+        if(doublings >= Long.numberOfLeadingZeros(retryBackoff) - 1) {
+            return maxRetryBackoff;
+        }
+        return Math.min(retryBackoff << doublings, maxRetryBackoff);
+    }
+    
     /**
      * Polls the database until there are zero pending {@link ClaimValidationRecord}s associated with 
      * the {@link ClaimValidationBatch} being evaluated. The {@link pollWaitInterval} value is the
@@ -121,6 +494,12 @@ public class ClaimValidationBatchManager extends AbstractManager {
      * 
      * The poll will exit either when there are no longer {@link ClaimValidationRecord}s in PENDING status
      * or the wait idle time has expired.
+     * <p>
+     * If {@link #setPollUsingRunTracker(boolean) pollUsingRunTracker} is enabled and the run
+     * is tracked by the {@link ClaimValidationRunTracker}, the pending count and last update
+     * time are read from the tracker and the database is not queried.
+     * Otherwise, if a {@link ClaimValidationRunWatchService} is set, the wait is delegated to
+     * it, so that all watched runs share its grouped query.
      * 
      * <p>
      * @param batchId - batch Id of the {@link ClaimValidationBatch} being examined
@@ -136,6 +515,23 @@ public class ClaimValidationBatchManager extends AbstractManager {
 
         LOG.info("Polling run {} of batch {} until no pending records remain.", runNumber, batchId);
         while (true) {
+            final ClaimValidationRunProgress progress = pollUsingRunTracker && runTracker != null
+                    ? runTracker.getProgress(batchId, runNumber) : null;
+            if(progress != null) {
+                final boolean isWaitTimeExpired =
+                        (System.currentTimeMillis() - progress.getLastUpdatedDate().getTime()) > waitIdleTimeInMilliseconds;
+                LOG.debug("There are {} PENDING records in batch {}, run {}.", progress.getPendingCount(), batchId, runNumber);
+                if(progress.getPendingCount() <= 0 || isWaitTimeExpired) {
+                    break;
+                }
+                Thread.sleep(this.pollWaitInterval);
+                continue;
+            }
+            if(runWatchService != null) {
+                runWatchService.awaitNoPendingRecords(batchId, runNumber, waitIdleTimeInMilliseconds);
+                break;
+            }
+            
             // find the most recently updated record
             List<ClaimValidationRecord> mostRecentlyUpdatedRecords = claimValidationRecordDao
                     .getByBatchIdAndRunNumberOrderByUpdateDateDescending(batchId, runNumber, 1);
@@ -0,0 +1,142 @@
+package com.doradosystems.mis.manager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.doradosystems.mis.dao.ClaimValidationBatchDao;
+import com.doradosystems.mis.domain.ClaimValidationBatch;
+
+/**
+ * Chooses which {@link ClaimValidationBatch.Status#PENDING PENDING} batches to process
+ * next, sharing capacity fairly between clients rather than strictly by age.
+ * <p>
+ * Selection uses weighted fair queuing: each client has a virtual time that advances
+ * by {@code 1 / weight} every time one of its batches is selected, and the client with
+ * the lowest virtual time goes next. A client that drops fifty files therefore takes
+ * turns with every other client, in proportion to its weight, instead of
+ * holding the front of the queue until all fifty are done. Within a client, batches are
+ * taken oldest first. A client that was idle re-enters at the current virtual time, so
+ * it cannot bank credit while it has nothing queued.
+ * <p>
+ * No client is given more batches than
+ * {@link #setMaxConcurrentBatchesPerClient(int) maxConcurrentBatchesPerClient}, counting
+ * those it already has {@link ClaimValidationBatch.Status#PROCESSING PROCESSING}.
+ * <p>
+ * Virtual times are kept in memory, so fairness is per process.
+ */
+public class ClaimValidationBatchScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClaimValidationBatchScheduler.class);
+
+    private ClaimValidationBatchDao claimValidationBatchDao;
+    private Map<Long, Integer> clientWeights = Collections.emptyMap();
+    private int defaultWeight = 1;
+    private int maxConcurrentBatchesPerClient = Integer.MAX_VALUE;
+
+    private final Map<Long, Double> virtualTimes = new HashMap<>();
+    private double systemVirtualTime;
+
+    public void setClaimValidationBatchDao(final ClaimValidationBatchDao claimValidationBatchDao) {
+        this.claimValidationBatchDao = claimValidationBatchDao;
+    }
+
+    /**
+     * @param clientWeights The weight of each client, by
+     * {@link ClaimValidationBatch#getClientId() clientId}. A client with weight 2 is
+     * selected twice as often as a client with weight 1 when both have batches waiting.
+     */
+    public void setClientWeights(final Map<Long, Integer> clientWeights) {
+        this.clientWeights = new HashMap<>(clientWeights);
+    }
+
+    /**
+     * @param defaultWeight The weight of clients not given one in
+     * {@link #setClientWeights(Map) clientWeights}.
+     */
+    public void setDefaultWeight(final int defaultWeight) {
+        this.defaultWeight = defaultWeight;
+    }
+
+    /**
+     * @param maxConcurrentBatchesPerClient The most batches a single client may have
+     * processing at once.
+     */
+    public void setMaxConcurrentBatchesPerClient(final int maxConcurrentBatchesPerClient) {
+        this.maxConcurrentBatchesPerClient = maxConcurrentBatchesPerClient;
+    }
+
+    /**
+     * Selects the next {@link ClaimValidationBatch.Status#PENDING PENDING} batches to
+     * process, in the order they should be processed.
+     * <p>
+     * The batches are not claimed; the caller is expected to claim them, and may find
+     * that another process claimed some of them first.
+     *
+     * @param limit The maximum number of batches to select.
+     * @return A {@link List} of up to {@code limit} {@link ClaimValidationBatch ClaimValidationBatches}.
+     */
+    public synchronized List<ClaimValidationBatch> selectNext(final int limit) {
+        final Map<Long, Integer> pendingByClient =
+                claimValidationBatchDao.countByStatusGroupedByClientId(ClaimValidationBatch.Status.PENDING);
+        final Map<Long, Integer> processingByClient =
+                claimValidationBatchDao.countByStatusGroupedByClientId(ClaimValidationBatch.Status.PROCESSING);
+
+        // Work out how many batches each client may still be given.
+        final Map<Long, Integer> allowance = new HashMap<>();
+        pendingByClient.forEach((clientId, pending) -> {
+            final int processing = processingByClient.getOrDefault(clientId, 0);
+            final int available = Math.min(pending, Math.max(0, maxConcurrentBatchesPerClient - processing));
+            if(available > 0) {
+                allowance.put(clientId, available);
+                virtualTimes.merge(clientId, systemVirtualTime, Math::max);
+            }
+        });
+        virtualTimes.keySet().retainAll(pendingByClient.keySet());
+
+        // Hand out slots to the client with the lowest virtual time, one at a time.
+        final List<Long> order = new ArrayList<>();
+        final Map<Long, Integer> slots = new HashMap<>();
+        while(order.size() < limit && !allowance.isEmpty()) {
+            Long next = null;
+            for(final Long clientId : allowance.keySet()) {
+                if(next == null || virtualTimes.get(clientId) < virtualTimes.get(next)
+                        || (virtualTimes.get(clientId).equals(virtualTimes.get(next)) && clientId < next)) {
+                    next = clientId;
+                }
+            }
+            order.add(next);
+            slots.merge(next, 1, Integer::sum);
+            systemVirtualTime = virtualTimes.get(next);
+            virtualTimes.put(next, systemVirtualTime + 1.0 / weightOf(next));
+            if(allowance.merge(next, -1, Integer::sum) == 0) {
+                allowance.remove(next);
+            }
+        }
+
+        // Fetch each client's oldest batches, then lay them out in slot order.
+        final Map<Long, Iterator<ClaimValidationBatch>> batchesByClient = new HashMap<>();
+        slots.forEach((clientId, count) -> batchesByClient.put(clientId,
+                claimValidationBatchDao.getByClientIdAndStatusWithCreateTimeAscending(
+                        clientId, ClaimValidationBatch.Status.PENDING, count).iterator()));
+        final List<ClaimValidationBatch> selected = new ArrayList<>(order.size());
+        for(final Long clientId : order) {
+            final Iterator<ClaimValidationBatch> batches = batchesByClient.get(clientId);
+            if(batches.hasNext()) {
+                selected.add(batches.next());
+            }
+        }
+        LOG.debug("Selected {} batches for {} clients.", selected.size(), slots.size());
+        return selected;
+    }
+
+    private int weightOf(final Long clientId) {
+        return Math.max(1, clientWeights.getOrDefault(clientId, defaultWeight));
+    }
+}
@@ -0,0 +1,107 @@
+package com.doradosystems.mis.manager;
+
+import java.util.Date;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.doradosystems.mis.domain.ClaimValidationBatch;
+
+/**
+ * Counts how often {@link ClaimValidationBatch ClaimValidationBatches} with a
+ * {@link ClaimValidationBatch#getDueDate() dueDate} miss it.
+ * <p>
+ * A batch is counted once when it is claimed after its due date has already passed,
+ * and once when it completes, either on time or late. Batches without a due date are
+ * not counted. Misses are also logged at warn level so they can be alerted on.
+ */
+public class ClaimValidationDeadlineMetrics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClaimValidationDeadlineMetrics.class);
+
+    private final LongAdder claimedPastDue = new LongAdder();
+    private final LongAdder completedOnTime = new LongAdder();
+    private final LongAdder completedLate = new LongAdder();
+    private final LongAdder totalLatenessMillis = new LongAdder();
+    private final LongAccumulator maxLatenessMillis = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records that a batch was claimed for processing.
+     *
+     * @param batch The claimed {@link ClaimValidationBatch}.
+     * @param now The time it was claimed.
+     */
+    public void recordClaimed(final ClaimValidationBatch batch, final Date now) {
+        if(batch.getDueDate() != null && now.after(batch.getDueDate())) {
+            claimedPastDue.increment();
+            LOG.warn("Batch {} of client {} was claimed {} ms after it was due.", batch.getId(), batch.getClientId(),
+                    now.getTime() - batch.getDueDate().getTime());
+        }
+    }
+
+    /**
+     * Records that a batch was completed.
+     *
+     * @param batch The completed {@link ClaimValidationBatch}.
+     * @param now The time it was completed.
+     */
+    public void recordCompleted(final ClaimValidationBatch batch, final Date now) {
+        if(batch.getDueDate() == null) {
+            return;
+        }
+        final long lateness = now.getTime() - batch.getDueDate().getTime();
+        if(lateness > 0) {
+            completedLate.increment();
+            totalLatenessMillis.add(lateness);
+            maxLatenessMillis.accumulate(lateness);
+            LOG.warn("Batch {} of client {} completed {} ms after it was due.", batch.getId(), batch.getClientId(),
+                    lateness);
+        } else {
+            completedOnTime.increment();
+        }
+    }
+
+    /**
+     * @return The number of batches claimed after their due date had passed.
+     */
+    public long getClaimedPastDueCount() {
+        return claimedPastDue.sum();
+    }
+
+    /**
+     * @return The number of batches completed by their due date.
+     */
+    public long getCompletedOnTimeCount() {
+        return completedOnTime.sum();
+    }
+
+    /**
+     * @return The number of batches completed after their due date.
+     */
+    public long getCompletedLateCount() {
+        return completedLate.sum();
+    }
+
+    /**
+     * @return The summed lateness, in milliseconds, of all batches completed late.
+     */
+    public long getTotalLatenessMillis() {
+        return totalLatenessMillis.sum();
+    }
+
+    /**
+     * @return The greatest lateness, in milliseconds, of any batch completed late.
+     */
+    public long getMaxLatenessMillis() {
+        return maxLatenessMillis.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ClaimValidationDeadlineMetrics [claimedPastDue=" + getClaimedPastDueCount() + ", completedOnTime="
+                + getCompletedOnTimeCount() + ", completedLate=" + getCompletedLateCount() + ", maxLatenessMillis="
+                + getMaxLatenessMillis() + "]";
+    }
+}
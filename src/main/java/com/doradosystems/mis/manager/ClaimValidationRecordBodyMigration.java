@@ -0,0 +1,84 @@
+package com.doradosystems.mis.manager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.TransactionStatus;
+
+import com.doradosystems.data.manager.AbstractManager;
+import com.doradosystems.mis.dao.ClaimValidationRecordDao;
+import com.doradosystems.mis.dao.ClaimValidationRecordDao.RecordBodyStorage;
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+
+/**
+ * Moves {@link ClaimValidationRecord#getRecord() record} bodies out of the
+ * claim_validation_record table into claim_validation_record_body, a chunk at a
+ * time, while the application keeps running.
+ * <p>
+ * Each chunk is moved in its own short transaction, with an optional pause
+ * between chunks to limit the load on the database. The migration may be stopped
+ * and run again at any time; it resumes with the bodies not yet moved.
+ */
+public class ClaimValidationRecordBodyMigration extends AbstractManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClaimValidationRecordBodyMigration.class);
+
+    private ClaimValidationRecordDao claimValidationRecordDao;
+    private int chunkSize = 500;
+    private long pauseBetweenChunks;
+
+    public void setClaimValidationRecordDao(final ClaimValidationRecordDao claimValidationRecordDao) {
+        this.claimValidationRecordDao = claimValidationRecordDao;
+    }
+
+    /**
+     * @param chunkSize The number of bodies moved per transaction.
+     */
+    public void setChunkSize(final int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param pauseBetweenChunks How long, in milliseconds, to wait between chunks.
+     */
+    public void setPauseBetweenChunks(final long pauseBetweenChunks) {
+        this.pauseBetweenChunks = pauseBetweenChunks;
+    }
+
+    /**
+     * Moves every body still stored in claim_validation_record.
+     *
+     * @return The number of chunks moved.
+     * @throws IllegalStateException If the {@link ClaimValidationRecordDao} is not
+     * storing bodies {@link RecordBodyStorage#MIGRATING MIGRATING}.
+     * @throws InterruptedException If interrupted while pausing between chunks.
+     * @throws Exception May be rethrown if an {@link Exception} occurs.
+     */
+    public int run() throws Exception {
+        if(claimValidationRecordDao.getRecordBodyStorage() != RecordBodyStorage.MIGRATING) {
+            throw new IllegalStateException("Record bodies can only be moved while they are stored "
+                    + RecordBodyStorage.MIGRATING + ", not " + claimValidationRecordDao.getRecordBodyStorage());
+        }
+        int chunks = 0;
+        long lastId = 0;
+        while(true) {
+            final TransactionStatus transaction = getTransaction();
+            try {
+                lastId = claimValidationRecordDao.moveInlineRecordBodies(lastId, chunkSize);
+                commit(transaction);
+            } catch (final Exception exception) {
+                rollback(transaction);
+                LOG.error("Rolling back due to exception: {}", exception.getLocalizedMessage());
+                throw exception;
+            }
+            if(lastId < 0) {
+                LOG.info("Moved record bodies in {} chunks.", chunks);
+                return chunks;
+            }
+            chunks++;
+            LOG.debug("Moved record bodies up to id {}", lastId);
+            if(pauseBetweenChunks > 0) {
+                Thread.sleep(pauseBetweenChunks);
+            }
+        }
+    }
+}
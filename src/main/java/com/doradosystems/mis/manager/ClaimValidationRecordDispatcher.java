@@ -0,0 +1,424 @@
+package com.doradosystems.mis.manager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.doradosystems.mis.dao.ClaimValidationRecordDao;
+import com.doradosystems.mis.domain.ClaimValidationBatch;
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+import com.doradosystems.mis.domain.ClaimValidationRecordBlock;
+import com.doradosystems.mis.kafka.event.ProcessClaimValidationRecordEvent;
+import com.doradosystems.mis.kafka.event.ProcessClaimValidationRecordEventKey;
+import com.doradosystems.mis.kafka.serialization.CompactProcessClaimValidationRecordEventFormat;
+import com.doradosystems.mis.kafka.serialization.ProcessClaimValidationRecordEventSerializer;
+import com.doradosystems.mis.kafka.serialization.SerializedEventCache;
+import com.doradosystems.mis.util.LongArrayList;
+
+/**
+ * Sends a {@link ProcessClaimValidationRecordEvent} for every
+ * {@link ClaimValidationRecord.Status#PENDING PENDING} record of a run straight to Kafka,
+ * for services that dispatch directly rather than through the outbox and
+ * {@link OutboxRelay}.
+ * <p>
+ * The run is read in pages of {@link #setPageSize(int) pageSize} records, so a large
+ * batch is never held in memory at once, and sends are pipelined: up to
+ * {@link #setMaxInFlight(int) maxInFlight} may be unacknowledged at a time, and the
+ * dispatcher only blocks when that limit is reached. How the producer groups sends into
+ * requests is set by its {@code linger.ms} and {@code batch.size}; see
+ * {@link #producerConfigs(String, int, int)}. With {@link #setCompactEvents(boolean)
+ * compactEvents} and no {@link SerializedEventCache}, each page is read into one reused
+ * {@link ClaimValidationRecordBlock} and its events encoded straight from the block,
+ * without a {@link ClaimValidationRecord} being built per record.
+ * <p>
+ * Sends that fail are not retried here. Their records are marked
+ * {@link ClaimValidationRecord.Status#INCOMPLETE INCOMPLETE} in bulk, at most every
+ * {@link #setFailureFlushSize(int) failureFlushSize} failures, from the dispatching
+ * thread rather than the producer's callback thread, so that
+ * {@link ClaimValidationBatchManager#completeRun(ClaimValidationBatch)} retries them in
+ * the next run. Only records still PENDING are marked, so a reply that has already
+ * completed a record is never undone.
+ * <p>
+ * In tests, a {@link org.apache.kafka.clients.producer.MockProducer MockProducer}
+ * stands in for the {@link Producer}.
+ */
+public class ClaimValidationRecordDispatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClaimValidationRecordDispatcher.class);
+
+    private final ProcessClaimValidationRecordEventSerializer eventSerializer =
+            new ProcessClaimValidationRecordEventSerializer();
+
+    private ClaimValidationRecordDao claimValidationRecordDao;
+    private Producer<String, byte[]> producer;
+    private String topic;
+    private int pageSize = 500;
+    private int maxInFlight = 1000;
+    private int failureFlushSize = 500;
+    private long sendTimeout = 30000;
+    private SerializedEventCache serializedEventCache;
+    private boolean compactEvents;
+
+    private final AtomicLong dispatchedRecords = new AtomicLong();
+    private final AtomicLong failedRecords = new AtomicLong();
+    private final AtomicLong dispatchedBytes = new AtomicLong();
+    private final AtomicLong dispatchNanos = new AtomicLong();
+
+    /**
+     * Builds the configuration of a {@link Producer} suitable for this dispatcher.
+     *
+     * @param bootstrapServers The Kafka brokers to connect to.
+     * @param lingerMs How long, in milliseconds, the producer waits for more events to
+     * fill a request before sending it.
+     * @param batchSize The most bytes the producer puts in one request per partition.
+     * @return The producer configuration.
+     */
+    public static Map<String, Object> producerConfigs(final String bootstrapServers, final int lingerMs,
+            final int batchSize) {
+        final Map<String, Object> configs = new HashMap<>();
+        configs.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        configs.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configs.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        configs.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        configs.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        configs.put(ProducerConfig.ACKS_CONFIG, "all");
+        return configs;
+    }
+
+    public void setClaimValidationRecordDao(final ClaimValidationRecordDao claimValidationRecordDao) {
+        this.claimValidationRecordDao = claimValidationRecordDao;
+    }
+
+    public void setProducer(final Producer<String, byte[]> producer) {
+        this.producer = producer;
+    }
+
+    /**
+     * @param topic The Kafka topic the events are sent to.
+     */
+    public void setTopic(final String topic) {
+        this.topic = topic;
+    }
+
+    /**
+     * @param pageSize The number of records read from the database at a time.
+     */
+    public void setPageSize(final int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @param maxInFlight The most sends that may be awaiting acknowledgement at once.
+     */
+    public void setMaxInFlight(final int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * @param failureFlushSize The number of failed sends collected before their records
+     * are marked INCOMPLETE.
+     */
+    public void setFailureFlushSize(final int failureFlushSize) {
+        this.failureFlushSize = failureFlushSize;
+    }
+
+    /**
+     * @param sendTimeout The longest time, in milliseconds, to wait for Kafka to
+     * acknowledge the last sends of a run.
+     */
+    public void setSendTimeout(final long sendTimeout) {
+        this.sendTimeout = sendTimeout;
+    }
+
+    /**
+     * @param serializedEventCache A {@link SerializedEventCache} to keep encoded events in,
+     * or {@code null}, the default, to serialize every event with Java serialization.
+     * With a cache, events are written in the {@link CompactProcessClaimValidationRecordEventFormat},
+     * and a record retried in a later run is re-dispatched from the cache without its body
+     * being read again.
+     */
+    public void setSerializedEventCache(final SerializedEventCache serializedEventCache) {
+        this.serializedEventCache = serializedEventCache;
+    }
+
+    /**
+     * @param compactEvents Whether to write events in the
+     * {@link CompactProcessClaimValidationRecordEventFormat} even without a
+     * {@link SerializedEventCache}, reading each page into a
+     * {@link ClaimValidationRecordBlock}. Defaults to {@code false}, Java serialization,
+     * which every consumer can read; only enable it once every consumer uses a
+     * {@link com.doradosystems.mis.kafka.serialization.ProcessClaimValidationRecordEventDeserializer
+     * ProcessClaimValidationRecordEventDeserializer} that reads the compact format.
+     */
+    public void setCompactEvents(final boolean compactEvents) {
+        this.compactEvents = compactEvents;
+    }
+
+    /**
+     * Sends an event for every PENDING record in the current run of a batch, and waits
+     * until every send has been acknowledged or has failed.
+     *
+     * @param batch The {@link ClaimValidationBatch} to dispatch the current run of.
+     * @return The number of events Kafka acknowledged.
+     * @throws InterruptedException If the calling thread is interrupted.
+     */
+    public long dispatch(final ClaimValidationBatch batch) throws InterruptedException {
+        final long started = System.nanoTime();
+        final Semaphore inFlight = new Semaphore(maxInFlight);
+        final FailedSends failures = new FailedSends();
+        final AtomicLong acknowledged = new AtomicLong();
+        long sent = 0;
+        long bytes = 0;
+        long failed = 0;
+
+        final ClaimValidationRecordBlock block = compactEvents && serializedEventCache == null
+                ? new ClaimValidationRecordBlock(pageSize) : null;
+        long afterId = 0;
+        Page page;
+        do {
+            page = block != null ? readPage(batch, block, afterId) : readPage(batch, afterId);
+            afterId = page.lastId;
+            for(int i = 0; i < page.size; i++) {
+                final long recordId = page.ids[i];
+                final byte[] payload = page.payloads[i];
+                inFlight.acquire();
+                try {
+                    producer.send(new ProducerRecord<>(topic, page.keys[i], payload),
+                            (metadata, exception) -> {
+                                if(exception == null) {
+                                    acknowledged.incrementAndGet();
+                                } else {
+                                    failures.add(recordId);
+                                }
+                                inFlight.release();
+                            });
+                } catch (final RuntimeException exception) {
+                    LOG.error("Unable to send record {}: {}", recordId, exception.getLocalizedMessage());
+                    failures.add(recordId);
+                    inFlight.release();
+                }
+                sent++;
+                bytes += payload.length;
+            }
+            if(failures.size() >= failureFlushSize) {
+                failed += markIncomplete(failures.drain());
+            }
+        } while(page.read == pageSize);
+
+        producer.flush();
+        if(!inFlight.tryAcquire(maxInFlight, sendTimeout, TimeUnit.MILLISECONDS)) {
+            LOG.warn("{} sends of batch {} were not acknowledged within {} ms; they are left PENDING.",
+                    maxInFlight - inFlight.availablePermits(), batch.getId(), sendTimeout);
+        }
+        failed += markIncomplete(failures.drain());
+
+        final long elapsed = System.nanoTime() - started;
+        dispatchedRecords.addAndGet(acknowledged.get());
+        failedRecords.addAndGet(failed);
+        dispatchedBytes.addAndGet(bytes);
+        dispatchNanos.addAndGet(elapsed);
+        LOG.info("Dispatched {} of {} records of batch {}, run {} in {} ms ({} records/s); {} failed.",
+                acknowledged.get(), sent, batch.getId(), batch.getRunNumber(), TimeUnit.NANOSECONDS.toMillis(elapsed),
+                String.format("%.0f", perSecond(acknowledged.get(), elapsed)), failed);
+        return acknowledged.get();
+    }
+
+    /**
+     * Reads the next page of PENDING records of a run as {@link ClaimValidationRecord
+     * ClaimValidationRecords}, and serializes their events.
+     */
+    private Page readPage(final ClaimValidationBatch batch, final long afterId) {
+        final List<ClaimValidationRecord> records = serializedEventCache == null
+                ? claimValidationRecordDao.getByBatchIdAndRunNumberAndStatusAfterId(batch.getId(),
+                        batch.getRunNumber(), ClaimValidationRecord.Status.PENDING, afterId, pageSize)
+                : claimValidationRecordDao.getWithoutBodyByBatchIdAndRunNumberAndStatusAfterId(batch.getId(),
+                        batch.getRunNumber(), ClaimValidationRecord.Status.PENDING, afterId, pageSize);
+        final byte[][] payloads = payloadsOf(batch, records);
+        int size = 0;
+        for(final byte[] payload : payloads) {
+            if(payload != null) {
+                size++;
+            }
+        }
+        final Page page = new Page(records.size(), size);
+        for(int i = 0, j = 0; i < records.size(); i++) {
+            final ClaimValidationRecord record = records.get(i);
+            page.lastId = record.getId();
+            if(payloads[i] != null) {
+                page.ids[j] = record.getId();
+                page.keys[j] = ProcessClaimValidationRecordEventKey.of(record);
+                page.payloads[j++] = payloads[i];
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Reads the next page of PENDING records of a run into a cleared block, and encodes
+     * their events in the {@link CompactProcessClaimValidationRecordEventFormat}.
+     */
+    private Page readPage(final ClaimValidationBatch batch, final ClaimValidationRecordBlock block,
+            final long afterId) {
+        block.clear();
+        claimValidationRecordDao.fillByBatchIdAndRunNumberAndStatusAfterId(block, batch.getId(),
+                batch.getRunNumber(), ClaimValidationRecord.Status.PENDING, afterId, pageSize);
+        final Page page = new Page(block.size(), block.size());
+        for(int i = 0; i < block.size(); i++) {
+            page.lastId = block.getId(i);
+            page.ids[i] = block.getId(i);
+            page.keys[i] = ProcessClaimValidationRecordEventKey.of(block.getBatchId(i), block.getRunNumber(i),
+                    block.getId(i));
+            page.payloads[i] = CompactProcessClaimValidationRecordEventFormat.write(batch.getClientId(), block, i);
+        }
+        return page;
+    }
+
+    /**
+     * Serializes the events of a page of records. With a {@link SerializedEventCache},
+     * the page was read without bodies: cached events are patched for the current run,
+     * and the bodies of the rest are read in one query and their events encoded and cached.
+     * A record whose body is no longer there, because it was archived after the page was
+     * read, gets a {@code null} event and is neither cached nor sent.
+     */
+    private byte[][] payloadsOf(final ClaimValidationBatch batch, final List<ClaimValidationRecord> page) {
+        final byte[][] payloads = new byte[page.size()][];
+        if(serializedEventCache == null) {
+            for(int i = 0; i < page.size(); i++) {
+                payloads[i] = eventSerializer.serialize(topic,
+                        new ProcessClaimValidationRecordEvent(batch.getClientId(), page.get(i)));
+            }
+            return payloads;
+        }
+
+        final LongArrayList uncached = new LongArrayList();
+        for(int i = 0; i < page.size(); i++) {
+            final ClaimValidationRecord record = page.get(i);
+            payloads[i] = serializedEventCache.get(record.getId(), record.getRunNumber(), record.getAttemptCount());
+            if(payloads[i] == null) {
+                uncached.add(record.getId());
+            }
+        }
+        if(uncached.isEmpty()) {
+            return payloads;
+        }
+        final Map<Long, String> bodies = claimValidationRecordDao.getRecordBodies(uncached.toArray());
+        for(int i = 0; i < page.size(); i++) {
+            if(payloads[i] == null) {
+                final ClaimValidationRecord record = page.get(i);
+                if(!bodies.containsKey(record.getId())) {
+                    LOG.debug("Record {} was archived while its run was dispatched; skipping it.", record.getId());
+                    continue;
+                }
+                payloads[i] = CompactProcessClaimValidationRecordEventFormat.write(new ProcessClaimValidationRecordEvent(
+                        batch.getClientId(), new ClaimValidationRecord(record.getId(), record.getBatchId(),
+                                record.getRunNumber(), record.getStatus(), record.getClaimNumber(),
+                                bodies.get(record.getId()), record.getCreateDate(), record.getUpdatedDate(),
+                                record.getAttemptCount(), record.getNextEligibleDate())));
+                serializedEventCache.put(record.getId(), payloads[i]);
+            }
+        }
+        return payloads;
+    }
+
+    /**
+     * Marks the records of failed sends INCOMPLETE, if they are still PENDING.
+     *
+     * @return The number of failed sends.
+     */
+    private long markIncomplete(final long[] ids) {
+        if(ids.length > 0) {
+            final int updated = claimValidationRecordDao.updateStatusIfCurrent(ids,
+                    ClaimValidationRecord.Status.PENDING, ClaimValidationRecord.Status.INCOMPLETE);
+            LOG.warn("{} sends failed; marked {} records INCOMPLETE.", ids.length, updated);
+        }
+        return ids.length;
+    }
+
+    /**
+     * @return The number of events acknowledged by Kafka, over all dispatches.
+     */
+    public long getDispatchedRecords() {
+        return dispatchedRecords.get();
+    }
+
+    /**
+     * @return The number of sends that failed, over all dispatches.
+     */
+    public long getFailedRecords() {
+        return failedRecords.get();
+    }
+
+    /**
+     * @return The total size of the events sent, in bytes, over all dispatches.
+     */
+    public long getDispatchedBytes() {
+        return dispatchedBytes.get();
+    }
+
+    /**
+     * @return The acknowledged events per second, over the time spent dispatching.
+     */
+    public double getRecordsPerSecond() {
+        return perSecond(dispatchedRecords.get(), dispatchNanos.get());
+    }
+
+    private static double perSecond(final long count, final long nanos) {
+        return nanos == 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    /**
+     * The ids, message keys and serialized events of the records of one page that are
+     * to be sent, and how many records were read for the page, up to which id.
+     */
+    private static final class Page {
+
+        private final int read;
+        private final int size;
+        private final long[] ids;
+        private final String[] keys;
+        private final byte[][] payloads;
+        private long lastId;
+
+        private Page(final int read, final int size) {
+            this.read = read;
+            this.size = size;
+            this.ids = new long[size];
+            this.keys = new String[size];
+            this.payloads = new byte[size][];
+        }
+    }
+
+    /**
+     * The ids of records whose sends failed, added from the producer's callback thread
+     * and drained by the dispatching thread.
+     */
+    private static final class FailedSends {
+
+        private LongArrayList ids = new LongArrayList();
+
+        private synchronized void add(final long id) {
+            ids.add(id);
+        }
+
+        private synchronized int size() {
+            return ids.size();
+        }
+
+        private synchronized long[] drain() {
+            final long[] drained = ids.toArray();
+            ids = new LongArrayList();
+            return drained;
+        }
+    }
+}
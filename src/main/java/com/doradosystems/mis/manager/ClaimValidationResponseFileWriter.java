@@ -0,0 +1,292 @@
+package com.doradosystems.mis.manager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.doradosystems.mis.dao.ClaimValidationResponseDao;
+import com.doradosystems.mis.domain.ClaimValidationResponse;
+import com.doradosystems.mis.domain.IsaSegment;
+
+/**
+ * Writes the {@link ClaimValidationResponse ClaimValidationResponses} of a run to
+ * X12 files, splitting them into several interchanges when there are too many to
+ * send as one.
+ * <p>
+ * Each {@link ClaimValidationResponse#getResponse() response} is taken to be the
+ * body of one transaction set, without its ST and SE segments. Responses are
+ * split, in order, into shards of at most
+ * {@link #setMaxResponsesPerInterchange(int) maxResponsesPerInterchange} responses
+ * and roughly {@link #setMaxBytesPerInterchange(long) maxBytesPerInterchange} bytes.
+ * Each shard becomes a single interchange, with one functional group, in a file
+ * of its own. Interchange control numbers are taken from the
+ * {@link #setControlNumbers(LongSupplier) controlNumbers} in shard order, and the
+ * group control number matches the interchange's. Transaction sets are numbered
+ * from 0001 within each interchange.
+ * <p>
+ * Shards are rendered and written in parallel, each through its own
+ * {@link FileChannel}.
+ */
+public class ClaimValidationResponseFileWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClaimValidationResponseFileWriter.class);
+
+    /**
+     * The largest interchange control number.
+     */
+    private static final long MAX_CONTROL_NUMBER = 999999999L;
+
+    /**
+     * The approximate size of the envelope segments of a transaction set.
+     */
+    private static final int TRANSACTION_SET_OVERHEAD = 48;
+
+    private static final DateTimeFormatter ISA_DATE = DateTimeFormatter.ofPattern("yyMMdd");
+    private static final DateTimeFormatter GS_DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HHmm");
+
+    private ClaimValidationResponseDao claimValidationResponseDao;
+    private LongSupplier controlNumbers;
+    private int maxResponsesPerInterchange = 5000;
+    private long maxBytesPerInterchange = 16 * 1024 * 1024;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private String functionalIdentifierCode = "HN";
+    private String transactionSetIdentifierCode = "277";
+    private String versionCode = "005010X214";
+
+    public void setClaimValidationResponseDao(final ClaimValidationResponseDao claimValidationResponseDao) {
+        this.claimValidationResponseDao = claimValidationResponseDao;
+    }
+
+    /**
+     * @param controlNumbers Supplies a new interchange control number, between 1 and
+     * 999999999, for each interchange written.
+     */
+    public void setControlNumbers(final LongSupplier controlNumbers) {
+        this.controlNumbers = controlNumbers;
+    }
+
+    /**
+     * @param maxResponsesPerInterchange The most responses written to a single interchange.
+     */
+    public void setMaxResponsesPerInterchange(final int maxResponsesPerInterchange) {
+        this.maxResponsesPerInterchange = maxResponsesPerInterchange;
+    }
+
+    /**
+     * @param maxBytesPerInterchange The approximate largest size of a single interchange.
+     * A response larger than this on its own is still written, alone.
+     */
+    public void setMaxBytesPerInterchange(final long maxBytesPerInterchange) {
+        this.maxBytesPerInterchange = maxBytesPerInterchange;
+    }
+
+    /**
+     * @param threads The most files written at once.
+     */
+    public void setThreads(final int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @param functionalIdentifierCode The GS01 functional identifier code.
+     */
+    public void setFunctionalIdentifierCode(final String functionalIdentifierCode) {
+        this.functionalIdentifierCode = functionalIdentifierCode;
+    }
+
+    /**
+     * @param transactionSetIdentifierCode The ST01 transaction set identifier code.
+     */
+    public void setTransactionSetIdentifierCode(final String transactionSetIdentifierCode) {
+        this.transactionSetIdentifierCode = transactionSetIdentifierCode;
+    }
+
+    /**
+     * @param versionCode The GS08 and ST03 version, release, and industry identifier code.
+     */
+    public void setVersionCode(final String versionCode) {
+        this.versionCode = versionCode;
+    }
+
+    /**
+     * Writes the responses of a run to one or more files.
+     * <p>
+     * The files are named {@code filename} followed by a three digit shard number,
+     * starting at 001. If any file cannot be written, the files already written are
+     * removed.
+     *
+     * @param isaSegment The ISA segment to base each interchange's on. Its date, time
+     * and control number are replaced.
+     * @param batchId The batch id of the run.
+     * @param runNumber The run number of the run.
+     * @param directory The directory to write the files to.
+     * @param filename The name of the files, without the shard number.
+     * @return The files written, in shard order. Empty if the run has no responses.
+     * @throws IOException If a file cannot be written.
+     */
+    public List<Path> write(final IsaSegment isaSegment, final long batchId, final long runNumber,
+            final Path directory, final String filename) throws IOException {
+        final List<Shard> shards = split(claimValidationResponseDao.get(batchId, runNumber));
+        if(shards.isEmpty()) {
+            return new ArrayList<>();
+        }
+        final LocalDateTime now = LocalDateTime.now();
+        final List<Path> paths = new ArrayList<>(shards.size());
+        for(final Shard shard : shards) {
+            shard.controlNumber = nextControlNumber();
+            shard.path = directory.resolve(String.format("%s.%03d", filename, paths.size() + 1));
+            paths.add(shard.path);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, shards.size())));
+        try {
+            final List<Future<?>> futures = new ArrayList<>(shards.size());
+            for(final Shard shard : shards) {
+                futures.add(executor.submit(() -> {
+                    writeShard(shard, isaSegment, now);
+                    return null;
+                }));
+            }
+            for(final Future<?> future : futures) {
+                future.get();
+            }
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            deleteAll(paths);
+            throw new IOException("Interrupted while writing responses of run " + runNumber + " of batch " + batchId,
+                    exception);
+        } catch (final ExecutionException exception) {
+            deleteAll(paths);
+            if(exception.getCause() instanceof IOException) {
+                throw (IOException) exception.getCause();
+            }
+            throw new IOException("Unable to write responses of run " + runNumber + " of batch " + batchId,
+                    exception.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        LOG.info("Wrote run {} of batch {} to {} interchanges", runNumber, batchId, shards.size());
+        return paths;
+    }
+
+    private List<Shard> split(final List<ClaimValidationResponse> responses) {
+        final List<Shard> shards = new ArrayList<>();
+        Shard shard = null;
+        for(final ClaimValidationResponse response : responses) {
+            final String body = response.getResponse() == null ? "" : response.getResponse();
+            final long size = body.length() + TRANSACTION_SET_OVERHEAD;
+            if(shard == null || shard.responses.size() >= maxResponsesPerInterchange
+                    || (!shard.responses.isEmpty() && shard.size + size > maxBytesPerInterchange)) {
+                shard = new Shard();
+                shards.add(shard);
+            }
+            shard.responses.add(body);
+            shard.size += size;
+        }
+        return shards;
+    }
+
+    private synchronized long nextControlNumber() {
+        final long controlNumber = controlNumbers.getAsLong();
+        if(controlNumber < 1 || controlNumber > MAX_CONTROL_NUMBER) {
+            throw new IllegalStateException("Interchange control number out of range: " + controlNumber);
+        }
+        return controlNumber;
+    }
+
+    private void writeShard(final Shard shard, final IsaSegment isaSegment, final LocalDateTime now)
+            throws IOException {
+        final String separator = isaSegment.getElementSeparator();
+        final String terminator = isaSegment.getSegmentTerminator();
+        final String interchangeControlNumber = String.format("%09d", shard.controlNumber);
+        final StringBuilder x12 = new StringBuilder((int) Math.min(Integer.MAX_VALUE - 8, shard.size + 512));
+
+        x12.append(isaSegment.forInterchange(ISA_DATE.format(now), TIME.format(now), interchangeControlNumber)
+                .toX12());
+        x12.append(String.join(separator, "GS", functionalIdentifierCode,
+                isaSegment.getIsa06_interchangeSenderId().trim(), isaSegment.getIsa08_interchangeReceiverId().trim(),
+                GS_DATE.format(now), TIME.format(now), Long.toString(shard.controlNumber), "X", versionCode))
+                .append(terminator);
+        int transactionSets = 0;
+        for(final String body : shard.responses) {
+            final String transactionSetControlNumber = String.format("%04d", ++transactionSets);
+            x12.append(String.join(separator, "ST", transactionSetIdentifierCode, transactionSetControlNumber,
+                    versionCode)).append(terminator);
+            int segments = 2;
+            if(!body.isEmpty()) {
+                x12.append(body);
+                if(!body.endsWith(terminator)) {
+                    x12.append(terminator);
+                }
+                segments += count(body, terminator);
+            }
+            x12.append(String.join(separator, "SE", Integer.toString(segments), transactionSetControlNumber))
+                    .append(terminator);
+        }
+        x12.append(String.join(separator, "GE", Integer.toString(transactionSets),
+                Long.toString(shard.controlNumber))).append(terminator);
+        x12.append(String.join(separator, "IEA", "1", interchangeControlNumber)).append(terminator);
+
+        final ByteBuffer buffer = StandardCharsets.UTF_8.encode(CharBuffer.wrap(x12));
+        try(final FileChannel channel = FileChannel.open(shard.path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        LOG.debug("Wrote interchange {} with {} transaction sets to {}", interchangeControlNumber,
+                transactionSets, shard.path);
+    }
+
+    /**
+     * Counts the segments in a transaction set body, including an unterminated
+     * last segment.
+     */
+    private static int count(final String body, final String terminator) {
+        int segments = 0;
+        for(int index = body.indexOf(terminator); index >= 0;
+                index = body.indexOf(terminator, index + terminator.length())) {
+            segments++;
+        }
+        return body.endsWith(terminator) ? segments : segments + 1;
+    }
+
+    private static void deleteAll(final List<Path> paths) {
+        for(final Path path : paths) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (final IOException exception) {
+                LOG.warn("Unable to remove partially written file {}: {}", path, exception.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * The responses written to a single interchange.
+     */
+    private static final class Shard {
+
+        private final List<String> responses = new ArrayList<>();
+        private long size;
+        private long controlNumber;
+        private Path path;
+    }
+}
@@ -1,14 +1,23 @@
 package com.doradosystems.mis.manager;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.doradosystems.data.manager.AbstractManager;
 import com.doradosystems.mis.dao.ClaimValidationRecordDao;
 import com.doradosystems.mis.dao.ClaimValidationResponseDao;
 import com.doradosystems.mis.domain.ClaimValidationRecord;
 import com.doradosystems.mis.domain.ClaimValidationResponse;
+import com.doradosystems.mis.kafka.serialization.SerializedEventCache;
 
 /**
  * Manager for manipulating {@link ClaimValidationResponse} objects.
@@ -21,6 +30,12 @@ public class ClaimValidationResponseManager extends AbstractManager {
 
     private ClaimValidationRecordDao claimValidationRecordDao;
     private ClaimValidationResponseDao claimValidationResponseDao;
+    private ClaimValidationRunTracker runTracker;
+    private boolean idempotentResponses;
+    private int unitOfWorkCommitInterval = 500;
+    private long unitOfWorkFlushInterval = 1000;
+    private ClaimValidationResultCache resultCache;
+    private SerializedEventCache serializedEventCache;
     
     public void setClaimValidationRecordDao(final ClaimValidationRecordDao claimValidationRecordDao) {
         this.claimValidationRecordDao = claimValidationRecordDao;
@@ -30,41 +45,313 @@ public class ClaimValidationResponseManager extends AbstractManager {
         this.claimValidationResponseDao = claimValidationResponseDao;
     }
     
+    /**
+     * @param runTracker The {@link ClaimValidationRunTracker} to notify when responses
+     * are committed, or {@code null} for none.
+     */
+    public void setRunTracker(final ClaimValidationRunTracker runTracker) {
+        this.runTracker = runTracker;
+    }
+    
+    /**
+     * Sets whether {@link #createResponse(String, ClaimValidationRecord)} should treat
+     * a response that already exists for the record as a replay of an event that was
+     * already handled, rather than failing or inserting a duplicate.
+     * <p>
+     * This relies on a unique index on the response's claim_validation_record_id.
+     * 
+     * @param idempotentResponses {@code true} to treat replays as no-ops.
+     */
+    public void setIdempotentResponses(final boolean idempotentResponses) {
+        this.idempotentResponses = idempotentResponses;
+    }
+    
+    /**
+     * @param commitInterval The number of successful operations after which
+     * {@link #inUnitOfWork(Consumer)} commits its transaction.
+     */
+    public void setUnitOfWorkCommitInterval(final int commitInterval) {
+        this.unitOfWorkCommitInterval = commitInterval;
+    }
+    
+    /**
+     * @param flushInterval The number of milliseconds after which
+     * {@link #inUnitOfWork(Consumer)} commits its transaction, even if fewer than
+     * {@link #setUnitOfWorkCommitInterval(int) commitInterval} operations have
+     * been performed.
+     */
+    public void setUnitOfWorkFlushInterval(final long flushInterval) {
+        this.unitOfWorkFlushInterval = flushInterval;
+    }
+    
+    /**
+     * @param resultCache The {@link ClaimValidationResultCache} to record responses in,
+     * and to answer {@link #createResponseFromCache(long, ClaimValidationRecord)} from,
+     * or {@code null} for none.
+     */
+    public void setResultCache(final ClaimValidationResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+    
+    /**
+     * @param serializedEventCache The {@link SerializedEventCache} of the
+     * {@link ClaimValidationRecordDispatcher} in this process, whose events are dropped
+     * once their records are COMPLETE, or {@code null}.
+     */
+    public void setSerializedEventCache(final SerializedEventCache serializedEventCache) {
+        this.serializedEventCache = serializedEventCache;
+    }
+    
     /**
      * Constructs a new {@link ClaimValidationResponse}, stores it in the database,
      * and updates the matching {@link ClaimValidationRecord} to the
      * {@link ClaimValidationRecord.Status#COMPLETE COMPLETE} status, all in a single
      * transaction.
+     * <p>
+     * If {@link #setIdempotentResponses(boolean) idempotent responses} are enabled and
+     * a response already exists for the record, the event is assumed to have been
+     * redelivered after it was already handled, nothing is changed, and the existing
+     * response is returned instead.
      * 
      * @param payload The payload to store in the {@link ClaimValidationResponse}.
      * @param record The {@link ClaimValidationRecord} that was used to create the
      * response payload.
-     * @return The {@link ClaimValidationResponse} that is created.
+     * @return The {@link ClaimValidationResponse} that is created, or the one that
+     * already existed. If a concurrent duplicate has not committed yet, so the existing
+     * response cannot be read, the response that was not stored is returned, with a
+     * {@code null} {@link ClaimValidationResponse#getId() id}.
      * @throws Exception May be rethrown if an {@link Exception} occurs.
      */
     public ClaimValidationResponse createResponse(final String payload, final ClaimValidationRecord record)
             throws Exception {
         
-        final ClaimValidationResponse claimValidationResponse = new ClaimValidationResponse(null, record.getBatchId(),
-                record.getRunNumber(), ClaimValidationResponse.Status.PENDING, record.getClaimNumber(), payload, null,
-                null, record.getId());
+        final ClaimValidationResponse claimValidationResponse = newResponse(payload, record);
         
         final TransactionStatus transaction = getTransaction();
         
+        final ClaimValidationResponse saved;
         try{
-            LOG.debug("Adding response: {}", claimValidationResponse);
-            claimValidationResponseDao.add(claimValidationResponse);
-            LOG.debug("Updating record {} to COMPLETE.", record);
-            claimValidationRecordDao.updateStatus(record.getId(), ClaimValidationRecord.Status.COMPLETE);
+            saved = saveResponse(claimValidationResponse, record);
             
             commit(transaction);
-            LOG.info("Response saved: {}", claimValidationResponse);
+            if(saved != null) {
+                LOG.info("Response saved: {}", saved);
+            }
         } catch (final Exception exception) {
             rollback(transaction);
             LOG.error("Rolling back due to exception: {}", exception.getLocalizedMessage());
             throw exception;
         }
         
+        return saved != null ? saved : existingResponse(claimValidationResponse);
+    }
+    
+    /**
+     * Performs {@link #createResponse(String, ClaimValidationRecord)}, and also records
+     * the payload in the {@link ClaimValidationResultCache}, if one is set, so that
+     * identical claims of the same client can be answered from it.
+     * 
+     * @param clientId The client the record belongs to.
+     * @param payload The payload to store in the {@link ClaimValidationResponse}.
+     * @param record The {@link ClaimValidationRecord} that was used to create the
+     * response payload.
+     * @return The {@link ClaimValidationResponse} that is created.
+     * @throws Exception May be rethrown if an {@link Exception} occurs.
+     */
+    public ClaimValidationResponse createResponse(final long clientId, final String payload,
+            final ClaimValidationRecord record) throws Exception {
+        final ClaimValidationResponse claimValidationResponse = createResponse(payload, record);
+        if(resultCache != null) {
+            resultCache.put(clientId, record, payload);
+        }
         return claimValidationResponse;
     }
+    
+    /**
+     * Creates the response for a record from the {@link ClaimValidationResultCache},
+     * if an identical claim of the same client has already been answered, so that the
+     * record does not have to be sent for validation.
+     * <p>
+     * The response is created as by {@link #createResponse(String, ClaimValidationRecord)},
+     * joining the caller's transaction if there is one.
+     * 
+     * @param clientId The client the record belongs to.
+     * @param record The {@link ClaimValidationRecord} to answer.
+     * @return The {@link ClaimValidationResponse} that is created, or {@code null} if
+     * no response is cached for the claim, or no cache is set.
+     * @throws Exception May be rethrown if an {@link Exception} occurs.
+     */
+    public ClaimValidationResponse createResponseFromCache(final long clientId, final ClaimValidationRecord record)
+            throws Exception {
+        if(resultCache == null) {
+            return null;
+        }
+        final String payload = resultCache.get(clientId, record);
+        if(payload == null) {
+            return null;
+        }
+        LOG.debug("Answering record {} from the result cache.", record.getId());
+        return createResponse(payload, record);
+    }
+    
+    /**
+     * Performs {@link #createResponseFromCache(long, ClaimValidationRecord)} for many
+     * records of one client, looking their claims up in the
+     * {@link ClaimValidationResultCache} together rather than one query per record.
+     * 
+     * @param clientId The client the records belong to.
+     * @param records The {@link ClaimValidationRecord ClaimValidationRecords} to answer.
+     * @return The ids of the records that were answered from the cache; empty if no
+     * cache is set.
+     * @throws Exception May be rethrown if an {@link Exception} occurs.
+     */
+    public Set<Long> createResponsesFromCache(final long clientId, final List<ClaimValidationRecord> records)
+            throws Exception {
+        final Set<Long> answered = new HashSet<>();
+        if(resultCache == null || records.isEmpty()) {
+            return answered;
+        }
+        final Map<Long, String> payloads = resultCache.getAll(clientId, records);
+        for(final ClaimValidationRecord record : records) {
+            final String payload = payloads.get(record.getId());
+            if(payload != null) {
+                createResponse(payload, record);
+                answered.add(record.getId());
+            }
+        }
+        LOG.debug("Answered {} of {} records from the result cache.", answered.size(), records.size());
+        return answered;
+    }
+    
+    /**
+     * Performs many operations in as few transactions as possible.
+     * <p>
+     * The provided {@link Consumer} is passed a {@link Session}, whose operations
+     * share a transaction that is committed every
+     * {@link #setUnitOfWorkCommitInterval(int) commitInterval} successful operations,
+     * every {@link #setUnitOfWorkFlushInterval(long) flushInterval} milliseconds,
+     * and when the {@link Consumer} returns. Each operation runs in its own
+     * savepoint, so when one fails (and the caller catches the {@link Exception})
+     * only that operation's changes are rolled back.
+     * <p>
+     * If the {@link Consumer} throws, the uncommitted operations are rolled back
+     * and the exception is rethrown. Operations already committed by an earlier
+     * interval stay committed.
+     * 
+     * @param work The work to perform.
+     */
+    public void inUnitOfWork(final Consumer<Session> work) {
+        final UnitOfWork unitOfWork = new UnitOfWork(this::getTransaction, this::commit, this::rollback,
+                unitOfWorkCommitInterval, unitOfWorkFlushInterval);
+        try {
+            work.accept(new Session(unitOfWork));
+            unitOfWork.flush();
+        } catch (final RuntimeException exception) {
+            unitOfWork.abort();
+            LOG.error("Rolling back unit of work due to exception: {}", exception.getLocalizedMessage());
+            throw exception;
+        }
+    }
+    
+    /**
+     * Builds the {@link ClaimValidationResponse} for a {@link ClaimValidationRecord}.
+     */
+    private ClaimValidationResponse newResponse(final String payload, final ClaimValidationRecord record) {
+        return new ClaimValidationResponse(null, record.getBatchId(),
+                record.getRunNumber(), ClaimValidationResponse.Status.PENDING, record.getClaimNumber(), payload, null,
+                null, record.getId());
+    }
+    
+    /**
+     * Stores a {@link ClaimValidationResponse} and marks its {@link ClaimValidationRecord}
+     * {@link ClaimValidationRecord.Status#COMPLETE COMPLETE}, within the caller's transaction.
+     * 
+     * @return The stored response, with its id, or {@code null} if the response already
+     * existed and nothing was changed.
+     */
+    private ClaimValidationResponse saveResponse(final ClaimValidationResponse claimValidationResponse,
+            final ClaimValidationRecord record) throws Exception {
+        LOG.debug("Adding response: {}", claimValidationResponse);
+        final ClaimValidationResponse saved;
+        if(idempotentResponses) {
+            final Long id = claimValidationResponseDao.addIfAbsent(claimValidationResponse);
+            if(id == null) {
+                LOG.info("Response already exists for record {}; ignoring replayed event.", record.getId());
+                return null;
+            }
+            saved = claimValidationResponse.withId(id);
+        } else {
+            saved = claimValidationResponse.withId(claimValidationResponseDao.add(claimValidationResponse));
+        }
+        LOG.debug("Updating record {} to COMPLETE.", record);
+        claimValidationRecordDao.updateStatus(record.getId(), ClaimValidationRecord.Status.COMPLETE);
+        if(runTracker != null) {
+            afterCommit(() -> runTracker.recordCompleted(record.getBatchId(), record.getRunNumber()));
+        }
+        if(serializedEventCache != null) {
+            afterCommit(() -> serializedEventCache.invalidate(record.getId()));
+        }
+        return saved;
+    }
+    
+    /**
+     * Reads the response that already existed when storing another for the same
+     * record was skipped, falling back to the response that was not stored if it
+     * cannot be read yet.
+     */
+    private ClaimValidationResponse existingResponse(final ClaimValidationResponse claimValidationResponse) {
+        final ClaimValidationResponse existing = claimValidationResponseDao.getByClaimValidationRecordId(
+                claimValidationResponse.getClaimValidationRecordId());
+        return existing != null ? existing : claimValidationResponse;
+    }
+    
+    /**
+     * Runs an action once the current transaction commits, or immediately if
+     * transaction synchronization is not active.
+     */
+    private static void afterCommit(final Runnable action) {
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+    
+    /**
+     * The operations available within {@link ClaimValidationResponseManager#inUnitOfWork(Consumer)}.
+     */
+    public class Session {
+        
+        private final UnitOfWork unitOfWork;
+        
+        private Session(final UnitOfWork unitOfWork) {
+            this.unitOfWork = unitOfWork;
+        }
+        
+        /**
+         * Performs {@link ClaimValidationResponseManager#createResponse(String, ClaimValidationRecord)}
+         * as part of the unit of work.
+         * <p>
+         * If this throws, the changes it made have already been rolled back, and the
+         * caller may carry on with other operations.
+         * 
+         * @param payload The payload to store in the {@link ClaimValidationResponse}.
+         * @param record The {@link ClaimValidationRecord} that was used to create the
+         * response payload.
+         * @return The {@link ClaimValidationResponse} that is created, or the one that
+         * already existed, as for {@link ClaimValidationResponseManager#createResponse(String, ClaimValidationRecord)}.
+         * @throws Exception May be rethrown if an {@link Exception} occurs.
+         */
+        public ClaimValidationResponse createResponse(final String payload, final ClaimValidationRecord record)
+                throws Exception {
+            final ClaimValidationResponse claimValidationResponse = newResponse(payload, record);
+            final ClaimValidationResponse saved = unitOfWork.execute(() -> saveResponse(claimValidationResponse, record));
+            return saved != null ? saved : existingResponse(claimValidationResponse);
+        }
+    }
 }
@@ -0,0 +1,190 @@
+package com.doradosystems.mis.manager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.doradosystems.mis.dao.ClaimValidationResultCacheDao;
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+
+/**
+ * Remembers the response produced for each distinct claim, so that a claim
+ * resubmitted byte for byte can be answered without being validated again.
+ * <p>
+ * Claims are identified by a SHA-256 hash of the client id, the
+ * {@link #setRuleVersion(String) ruleVersion} and the normalized
+ * {@link ClaimValidationRecord#getRecord() record}; normalizing removes line breaks
+ * and leading and trailing whitespace, which files commonly differ by. Changing the
+ * rule version therefore invalidates every cached result.
+ * <p>
+ * Results are stored in the database and the most recently used
+ * {@link #setMaxEntries(int) maxEntries} are also kept in memory.
+ */
+public class ClaimValidationResultCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClaimValidationResultCache.class);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private ClaimValidationResultCacheDao claimValidationResultCacheDao;
+    private String ruleVersion = "1";
+    private int maxEntries = 10000;
+
+    private final Map<String, String> recentlyUsed = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    public void setClaimValidationResultCacheDao(final ClaimValidationResultCacheDao claimValidationResultCacheDao) {
+        this.claimValidationResultCacheDao = claimValidationResultCacheDao;
+    }
+
+    /**
+     * @param ruleVersion The version of the validation rules currently deployed.
+     */
+    public void setRuleVersion(final String ruleVersion) {
+        this.ruleVersion = ruleVersion;
+    }
+
+    /**
+     * @param maxEntries The number of results to keep in memory.
+     */
+    public void setMaxEntries(final int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Looks up the cached response for a claim.
+     *
+     * @param clientId The client the claim belongs to.
+     * @param record The {@link ClaimValidationRecord} holding the claim.
+     * @return The cached response payload, or {@code null} if the claim has not been
+     * seen before.
+     */
+    public String get(final long clientId, final ClaimValidationRecord record) {
+        final String contentHash = contentHash(clientId, ruleVersion, record.getRecord());
+        synchronized(recentlyUsed) {
+            final String response = recentlyUsed.get(contentHash);
+            if(response != null) {
+                return response;
+            }
+        }
+        final String response = claimValidationResultCacheDao.getResponse(contentHash);
+        if(response != null) {
+            LOG.debug("Found cached response for record {}.", record.getId());
+            synchronized(recentlyUsed) {
+                recentlyUsed.put(contentHash, response);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Looks up the cached responses for many claims of one client at once. Claims not
+     * held in memory are read from the database together, rather than one by one.
+     *
+     * @param clientId The client the claims belong to.
+     * @param records The {@link ClaimValidationRecord ClaimValidationRecords} holding
+     * the claims.
+     * @return A {@link Map} of {@link ClaimValidationRecord#getId() record id} to cached
+     * response payload. Records whose claim has not been seen before are absent.
+     */
+    public Map<Long, String> getAll(final long clientId, final List<ClaimValidationRecord> records) {
+        final Map<Long, String> responses = new HashMap<>();
+        final Map<Long, String> missed = new HashMap<>();
+        synchronized(recentlyUsed) {
+            for(final ClaimValidationRecord record : records) {
+                final String contentHash = contentHash(clientId, ruleVersion, record.getRecord());
+                final String response = recentlyUsed.get(contentHash);
+                if(response != null) {
+                    responses.put(record.getId(), response);
+                } else {
+                    missed.put(record.getId(), contentHash);
+                }
+            }
+        }
+        if(missed.isEmpty()) {
+            return responses;
+        }
+        final Map<String, String> found = claimValidationResultCacheDao.getResponses(
+                new ArrayList<>(new HashSet<>(missed.values())));
+        if(!found.isEmpty()) {
+            LOG.debug("Found {} cached responses for {} records of client {}.", found.size(), missed.size(), clientId);
+            synchronized(recentlyUsed) {
+                recentlyUsed.putAll(found);
+            }
+            missed.forEach((recordId, contentHash) -> {
+                final String response = found.get(contentHash);
+                if(response != null) {
+                    responses.put(recordId, response);
+                }
+            });
+        }
+        return responses;
+    }
+
+    /**
+     * Caches the response produced for a claim.
+     *
+     * @param clientId The client the claim belongs to.
+     * @param record The {@link ClaimValidationRecord} holding the claim.
+     * @param response The response payload.
+     */
+    public void put(final long clientId, final ClaimValidationRecord record, final String response) {
+        final String contentHash = contentHash(clientId, ruleVersion, record.getRecord());
+        claimValidationResultCacheDao.add(contentHash, clientId, ruleVersion, response);
+        synchronized(recentlyUsed) {
+            recentlyUsed.put(contentHash, response);
+        }
+    }
+
+    /**
+     * Computes the content hash of a claim.
+     *
+     * @return The hash, as 64 lower case hexadecimal characters.
+     */
+    static String contentHash(final long clientId, final String ruleVersion, final String record) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("SHA-256 is not available", exception);
+        }
+        digest.update((clientId + "\n" + ruleVersion + "\n").getBytes(StandardCharsets.UTF_8));
+        digest.update(normalize(record).getBytes(StandardCharsets.UTF_8));
+        final byte[] hash = digest.digest();
+        final char[] hex = new char[hash.length * 2];
+        for(int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX[(hash[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[hash[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private static String normalize(final String record) {
+        if(record == null) {
+            return "";
+        }
+        final StringBuilder normalized = new StringBuilder(record.length());
+        for(int i = 0; i < record.length(); i++) {
+            final char c = record.charAt(i);
+            if(c != '\r' && c != '\n') {
+                normalized.append(c);
+            }
+        }
+        return normalized.toString().trim();
+    }
+}
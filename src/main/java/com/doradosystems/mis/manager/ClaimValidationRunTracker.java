@@ -0,0 +1,199 @@
+package com.doradosystems.mis.manager;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+import com.doradosystems.mis.domain.ClaimValidationResponseIdentifier;
+import com.doradosystems.mis.domain.ClaimValidationRunProgress;
+
+/**
+ * Process-local counts of the {@link ClaimValidationRecord ClaimValidationRecords}
+ * in each active run, so that progress can be read without a COUNT query.
+ * <p>
+ * Runs are keyed by {@link ClaimValidationResponseIdentifier} (batch id and run
+ * number). Counts are held in {@link LongAdder LongAdders}, which spread
+ * concurrent updates over separate cells, so many consumer threads can record
+ * responses for the same run without contending on a single counter.
+ * <p>
+ * The tracker only sees changes made through the managers it is given to, in this
+ * process. Counts for a run are only accurate if every response for that run is
+ * created by this process; otherwise the database remains the source of truth.
+ */
+public class ClaimValidationRunTracker {
+
+    private final Map<ClaimValidationResponseIdentifier, RunCounters> runs = new ConcurrentHashMap<>();
+
+    /**
+     * Starts tracking a run, replacing any counts already held for it.
+     *
+     * @param batchId The batch id of the run.
+     * @param runNumber The run number of the run.
+     * @param pendingCount The number of {@link ClaimValidationRecord.Status#PENDING PENDING} records.
+     * @param completeCount The number of {@link ClaimValidationRecord.Status#COMPLETE COMPLETE} records.
+     * @param incompleteCount The number of {@link ClaimValidationRecord.Status#INCOMPLETE INCOMPLETE} records.
+     */
+    public void track(final long batchId, final long runNumber, final long pendingCount, final long completeCount,
+            final long incompleteCount) {
+        track(batchId, runNumber, pendingCount, completeCount, incompleteCount, 0);
+    }
+
+    /**
+     * Starts tracking a run, replacing any counts already held for it.
+     *
+     * @param batchId The batch id of the run.
+     * @param runNumber The run number of the run.
+     * @param pendingCount The number of {@link ClaimValidationRecord.Status#PENDING PENDING} records.
+     * @param completeCount The number of {@link ClaimValidationRecord.Status#COMPLETE COMPLETE} records.
+     * @param incompleteCount The number of {@link ClaimValidationRecord.Status#INCOMPLETE INCOMPLETE} records.
+     * @param deferredCount The number of {@link ClaimValidationRecord.Status#DEFERRED DEFERRED} records.
+     */
+    public void track(final long batchId, final long runNumber, final long pendingCount, final long completeCount,
+            final long incompleteCount, final long deferredCount) {
+        runs.put(new ClaimValidationResponseIdentifier(batchId, runNumber),
+                new RunCounters(pendingCount, completeCount, incompleteCount, deferredCount));
+    }
+
+    /**
+     * Records that a {@link ClaimValidationRecord.Status#PENDING PENDING} record in a
+     * run became {@link ClaimValidationRecord.Status#COMPLETE COMPLETE}. Has no
+     * effect if the run is not tracked.
+     *
+     * @param batchId The batch id of the run.
+     * @param runNumber The run number of the run.
+     */
+    public void recordCompleted(final long batchId, final long runNumber) {
+        final RunCounters counters = runs.get(new ClaimValidationResponseIdentifier(batchId, runNumber));
+        if(counters != null) {
+            counters.pending.decrement();
+            counters.complete.increment();
+            counters.touch();
+        }
+    }
+
+    /**
+     * Records that a {@link ClaimValidationRecord.Status#PENDING PENDING} record in a
+     * run became {@link ClaimValidationRecord.Status#INCOMPLETE INCOMPLETE}. Has no
+     * effect if the run is not tracked.
+     *
+     * @param batchId The batch id of the run.
+     * @param runNumber The run number of the run.
+     */
+    public void recordIncomplete(final long batchId, final long runNumber) {
+        final RunCounters counters = runs.get(new ClaimValidationResponseIdentifier(batchId, runNumber));
+        if(counters != null) {
+            counters.pending.decrement();
+            counters.incomplete.increment();
+            counters.touch();
+        }
+    }
+
+    /**
+     * Records that a run was completed, and its unfinished records carried over
+     * into a new run as {@link ClaimValidationRecord.Status#PENDING PENDING}.
+     * <p>
+     * Tracking of the old run stops. If any records were carried over, tracking of
+     * the new run begins.
+     *
+     * @param batchId The batch id of the run.
+     * @param runNumber The run number of the completed run.
+     * @param newRunNumber The run number the unfinished records were moved to.
+     * @param carriedOverCount The number of records moved to the new run.
+     */
+    public void rollOver(final long batchId, final long runNumber, final long newRunNumber,
+            final long carriedOverCount) {
+        rollOver(batchId, runNumber, newRunNumber, carriedOverCount, 0);
+    }
+
+    /**
+     * Records that a run was completed, and its unfinished records carried over
+     * into a new run as {@link ClaimValidationRecord.Status#PENDING PENDING} or
+     * {@link ClaimValidationRecord.Status#DEFERRED DEFERRED}.
+     * <p>
+     * Tracking of the old run stops. If any records were carried over, tracking of
+     * the new run begins.
+     *
+     * @param batchId The batch id of the run.
+     * @param runNumber The run number of the completed run.
+     * @param newRunNumber The run number the unfinished records were moved to.
+     * @param carriedOverCount The number of records moved to the new run as PENDING.
+     * @param deferredCount The number of records moved to the new run as DEFERRED.
+     */
+    public void rollOver(final long batchId, final long runNumber, final long newRunNumber,
+            final long carriedOverCount, final long deferredCount) {
+        stopTracking(batchId, runNumber);
+        if(carriedOverCount > 0 || deferredCount > 0) {
+            track(batchId, newRunNumber, carriedOverCount, 0, 0, deferredCount);
+        }
+    }
+
+    /**
+     * Stops tracking a run.
+     *
+     * @param batchId The batch id of the run.
+     * @param runNumber The run number of the run.
+     */
+    public void stopTracking(final long batchId, final long runNumber) {
+        runs.remove(new ClaimValidationResponseIdentifier(batchId, runNumber));
+    }
+
+    /**
+     * Takes a snapshot of a single run's progress.
+     *
+     * @param batchId The batch id of the run.
+     * @param runNumber The run number of the run.
+     * @return The {@link ClaimValidationRunProgress}, or {@code null} if the run is
+     * not tracked.
+     */
+    public ClaimValidationRunProgress getProgress(final long batchId, final long runNumber) {
+        final ClaimValidationResponseIdentifier identifier = new ClaimValidationResponseIdentifier(batchId, runNumber);
+        final RunCounters counters = runs.get(identifier);
+        return counters == null ? null : counters.snapshot(identifier);
+    }
+
+    /**
+     * Takes a snapshot of the progress of every tracked run.
+     *
+     * @return A {@link List} of {@link ClaimValidationRunProgress}, in no
+     * particular order.
+     */
+    public List<ClaimValidationRunProgress> getProgress() {
+        final List<ClaimValidationRunProgress> progress = new ArrayList<>(runs.size());
+        runs.forEach((identifier, counters) -> progress.add(counters.snapshot(identifier)));
+        return progress;
+    }
+
+    /**
+     * The counters for a single run.
+     */
+    private static final class RunCounters {
+
+        private final LongAdder pending = new LongAdder();
+        private final LongAdder complete = new LongAdder();
+        private final LongAdder incomplete = new LongAdder();
+        private final long deferred;
+        private final LongAccumulator lastUpdated = new LongAccumulator(Long::max, System.currentTimeMillis());
+
+        private RunCounters(final long pendingCount, final long completeCount, final long incompleteCount,
+                final long deferredCount) {
+            pending.add(pendingCount);
+            complete.add(completeCount);
+            incomplete.add(incompleteCount);
+            deferred = deferredCount;
+        }
+
+        private void touch() {
+            lastUpdated.accumulate(System.currentTimeMillis());
+        }
+
+        private ClaimValidationRunProgress snapshot(final ClaimValidationResponseIdentifier identifier) {
+            return new ClaimValidationRunProgress(identifier, pending.sum(), complete.sum(), incomplete.sum(),
+                    deferred, new Date(lastUpdated.get()));
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.doradosystems.mis.manager;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.doradosystems.mis.dao.ClaimValidationRecordDao;
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+import com.doradosystems.mis.domain.ClaimValidationResponseIdentifier;
+import com.doradosystems.mis.domain.ClaimValidationRunStatusSummary;
+
+/**
+ * Watches many runs for the point where no {@link ClaimValidationRecord.Status#PENDING PENDING}
+ * records remain, using one grouped query per tick for all of them.
+ * <p>
+ * This is the shared equivalent of
+ * {@link ClaimValidationBatchManager#pollUntilNoPendingRecordsRemain(Long, Long, long)}: a
+ * watched run is finished when it has no pending records, or when neither its records
+ * nor its batch have been updated for the watcher's idle time. Instead of each waiter
+ * running its own queries, a single thread summarizes every watched run with
+ * {@link ClaimValidationRecordDao#summarizeByBatchIdAndRunNumber(java.util.Collection)}
+ * and hands the results to all waiters, so the database load stays roughly constant
+ * however many runs are watched.
+ * <p>
+ * The tick interval starts at {@link #setMinPollInterval(long) minPollInterval}, doubles
+ * each tick in which nothing changed, up to {@link #setMaxPollInterval(long) maxPollInterval},
+ * and drops back to the minimum as soon as something changes or a new run is watched.
+ * <p>
+ * If {@link #setMaxConsecutiveFailures(int) maxConsecutiveFailures} ticks in a row fail,
+ * for example because the database is down, every current waiter is completed
+ * exceptionally with the last error rather than left waiting.
+ */
+public class ClaimValidationRunWatchService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClaimValidationRunWatchService.class);
+
+    private final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    private final Object monitor = new Object();
+
+    private ClaimValidationRecordDao claimValidationRecordDao;
+    private long minPollInterval = 250;
+    private long maxPollInterval = 5000;
+    private int maxConsecutiveFailures = 3;
+    private int consecutiveFailures;
+
+    private long currentPollInterval = minPollInterval;
+    private Map<ClaimValidationResponseIdentifier, RunState> lastStates = new HashMap<>();
+    private boolean wakeRequested;
+    private volatile boolean running;
+    private Thread thread;
+
+    public void setClaimValidationRecordDao(final ClaimValidationRecordDao claimValidationRecordDao) {
+        this.claimValidationRecordDao = claimValidationRecordDao;
+    }
+
+    /**
+     * @param minPollInterval The shortest time, in milliseconds, between ticks.
+     */
+    public void setMinPollInterval(final long minPollInterval) {
+        this.minPollInterval = minPollInterval;
+        this.currentPollInterval = minPollInterval;
+    }
+
+    /**
+     * @param maxPollInterval The longest time, in milliseconds, between ticks when
+     * nothing is changing.
+     */
+    public void setMaxPollInterval(final long maxPollInterval) {
+        this.maxPollInterval = maxPollInterval;
+    }
+
+    /**
+     * @param maxConsecutiveFailures The number of ticks in a row that may fail before
+     * the current waiters are failed. Defaults to 3.
+     */
+    public void setMaxConsecutiveFailures(final int maxConsecutiveFailures) {
+        this.maxConsecutiveFailures = maxConsecutiveFailures;
+    }
+
+    /**
+     * Starts the thread that polls the watched runs.
+     */
+    public synchronized void start() {
+        if(running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::pollLoop, "claim-validation-run-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the polling thread. Runs still being watched are completed
+     * exceptionally.
+     */
+    public synchronized void shutdown() {
+        running = false;
+        synchronized(monitor) {
+            monitor.notifyAll();
+        }
+        if(thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+        for(final Waiter waiter : waiters) {
+            waiter.future.completeExceptionally(new IllegalStateException("Run watch service was shut down"));
+        }
+        waiters.clear();
+    }
+
+    /**
+     * Starts watching a run.
+     *
+     * @param batchId The batch id of the run.
+     * @param runNumber The run number of the run.
+     * @param waitIdleTimeInMilliseconds How long the run may go without updates
+     * before the watch gives up waiting for it.
+     * @return A {@link CompletableFuture} that completes once no pending records
+     * remain in the run, or the idle time expires, or exceptionally if polling keeps
+     * failing. Cancelling it stops the watch.
+     */
+    public CompletableFuture<Void> watch(final long batchId, final long runNumber,
+            final long waitIdleTimeInMilliseconds) {
+        final Waiter waiter = new Waiter(new ClaimValidationResponseIdentifier(batchId, runNumber),
+                waitIdleTimeInMilliseconds);
+        waiters.add(waiter);
+        waiter.future.whenComplete((result, error) -> {
+            if(waiter.future.isCancelled()) {
+                waiters.remove(waiter);
+            }
+        });
+        synchronized(monitor) {
+            currentPollInterval = minPollInterval;
+            wakeRequested = true;
+            monitor.notifyAll();
+        }
+        return waiter.future;
+    }
+
+    /**
+     * Blocks until no pending records remain in a run, or the idle time expires.
+     *
+     * @param batchId The batch id of the run.
+     * @param runNumber The run number of the run.
+     * @param waitIdleTimeInMilliseconds How long the run may go without updates
+     * before giving up.
+     * @throws InterruptedException If the calling thread is interrupted, in which
+     * case the run is no longer watched.
+     * @throws IllegalStateException If polling the run keeps failing, or the service
+     * is shut down.
+     */
+    public void awaitNoPendingRecords(final long batchId, final long runNumber,
+            final long waitIdleTimeInMilliseconds) throws InterruptedException {
+        final CompletableFuture<Void> future = watch(batchId, runNumber, waitIdleTimeInMilliseconds);
+        try {
+            future.get();
+        } catch (final InterruptedException exception) {
+            future.cancel(false);
+            throw exception;
+        } catch (final ExecutionException exception) {
+            throw new IllegalStateException("Unable to watch run " + runNumber + " of batch " + batchId,
+                    exception.getCause());
+        }
+    }
+
+    private void pollLoop() {
+        while(running) {
+            poll();
+            synchronized(monitor) {
+                if(running && !wakeRequested) {
+                    try {
+                        monitor.wait(currentPollInterval);
+                    } catch (final InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                wakeRequested = false;
+            }
+        }
+    }
+
+    /**
+     * Runs a {@link #tick()}, and fails every current waiter once
+     * {@link #maxConsecutiveFailures} ticks in a row have failed.
+     */
+    void poll() {
+        try {
+            tick();
+            consecutiveFailures = 0;
+        } catch (final RuntimeException exception) {
+            consecutiveFailures++;
+            LOG.error("Unable to poll watched runs ({} failures in a row): {}", consecutiveFailures,
+                    exception.getLocalizedMessage());
+            if(consecutiveFailures >= maxConsecutiveFailures) {
+                for(final Iterator<Waiter> iterator = waiters.iterator(); iterator.hasNext();) {
+                    final Waiter waiter = iterator.next();
+                    iterator.remove();
+                    waiter.future.completeExceptionally(exception);
+                }
+                consecutiveFailures = 0;
+            }
+        }
+    }
+
+    /**
+     * Summarizes every watched run with a single query, completes the waiters that
+     * are finished, and adjusts the poll interval.
+     */
+    void tick() {
+        if(waiters.isEmpty()) {
+            return;
+        }
+        final Set<ClaimValidationResponseIdentifier> runs = new LinkedHashSet<>();
+        for(final Waiter waiter : waiters) {
+            runs.add(waiter.identifier);
+        }
+
+        final Map<ClaimValidationResponseIdentifier, RunState> states = new HashMap<>();
+        for(final ClaimValidationRunStatusSummary summary
+                : claimValidationRecordDao.summarizeByBatchIdAndRunNumber(runs)) {
+            states.computeIfAbsent(summary.getIdentifier(), identifier -> new RunState()).add(summary);
+        }
+        LOG.debug("Polled {} watched runs.", runs.size());
+
+        final long now = System.currentTimeMillis();
+        for(final Iterator<Waiter> iterator = waiters.iterator(); iterator.hasNext();) {
+            final Waiter waiter = iterator.next();
+            if(!runs.contains(waiter.identifier)) {
+                // Started watching after the query was run.
+                continue;
+            }
+            final RunState state = states.get(waiter.identifier);
+            // A run without any records has nothing pending.
+            final boolean finished = state == null || state.pendingCount == 0
+                    || now - state.lastUpdated > waiter.waitIdleTimeInMilliseconds;
+            if(finished) {
+                iterator.remove();
+                LOG.debug("Finished watching {}", waiter.identifier);
+                waiter.future.complete(null);
+            }
+        }
+
+        synchronized(monitor) {
+            if(states.equals(lastStates)) {
+                currentPollInterval = Math.min(maxPollInterval, currentPollInterval * 2);
+            } else {
+                currentPollInterval = minPollInterval;
+            }
+        }
+        lastStates = states;
+    }
+
+    int getWaiterCount() {
+        return waiters.size();
+    }
+
+    long getCurrentPollInterval() {
+        synchronized(monitor) {
+            return currentPollInterval;
+        }
+    }
+
+    /**
+     * The pending record count and latest update time of a single run.
+     */
+    private static final class RunState {
+
+        private long pendingCount;
+        private long totalCount;
+        private long lastUpdated;
+
+        private void add(final ClaimValidationRunStatusSummary summary) {
+            if(summary.getStatus() == ClaimValidationRecord.Status.PENDING) {
+                pendingCount += summary.getRecordCount();
+            }
+            totalCount += summary.getRecordCount();
+            if(summary.getLastRecordUpdatedDate() != null) {
+                lastUpdated = Math.max(lastUpdated, summary.getLastRecordUpdatedDate().getTime());
+            }
+            if(summary.getBatchUpdatedDate() != null) {
+                lastUpdated = Math.max(lastUpdated, summary.getBatchUpdatedDate().getTime());
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(pendingCount) * 31 + Long.hashCode(lastUpdated);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if(!(obj instanceof RunState)) {
+                return false;
+            }
+            final RunState other = (RunState) obj;
+            return pendingCount == other.pendingCount && lastUpdated == other.lastUpdated
+                    && totalCount == other.totalCount;
+        }
+    }
+
+    /**
+     * A caller waiting on a single run.
+     */
+    private static final class Waiter {
+
+        private final ClaimValidationResponseIdentifier identifier;
+        private final long waitIdleTimeInMilliseconds;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Waiter(final ClaimValidationResponseIdentifier identifier, final long waitIdleTimeInMilliseconds) {
+            this.identifier = identifier;
+            this.waitIdleTimeInMilliseconds = waitIdleTimeInMilliseconds;
+        }
+    }
+}
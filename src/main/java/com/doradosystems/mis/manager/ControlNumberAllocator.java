@@ -0,0 +1,127 @@
+package com.doradosystems.mis.manager;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.TransactionStatus;
+
+import com.doradosystems.data.manager.AbstractManager;
+import com.doradosystems.mis.dao.ControlNumberSequenceDao;
+import com.doradosystems.mis.domain.ClaimValidationBatch;
+import com.doradosystems.mis.domain.IsaSegment;
+
+/**
+ * Hands out unique control numbers, such as {@link IsaSegment#getIsa13_interCtrlNumber() ISA13}
+ * interchange control numbers and {@link ClaimValidationBatch#getGlobalControlNumber() globalControlNumbers},
+ * without a database round trip for each one.
+ * <p>
+ * This is a hi/lo allocator: each instance reserves a block of
+ * {@link #setBlockSize(int) blockSize} numbers from a
+ * {@link ControlNumberSequenceDao sequence} in one short transaction, then hands
+ * them out from memory without locking until the block is used up. The sequence
+ * persists the high-water mark, so numbers are unique across nodes and restarts.
+ * Numbers in a block that is not used up, for example because the node stops,
+ * are skipped, and numbers from different nodes interleave rather than strictly
+ * increasing.
+ * <p>
+ * Numbers run from 1 to {@link #MAX_CONTROL_NUMBER} and then wrap around to 1, as
+ * X12 allows. Blocks must not be reserved inside another transaction, as the
+ * sequence row would stay locked until that transaction ends.
+ */
+public class ControlNumberAllocator extends AbstractManager implements LongSupplier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ControlNumberAllocator.class);
+
+    /**
+     * The largest control number; the largest that fits the nine digits of ISA13.
+     */
+    public static final long MAX_CONTROL_NUMBER = 999999999L;
+
+    /**
+     * A block whose numbers are all used, so that the first request reserves one.
+     */
+    private static final Block EXHAUSTED = new Block(1, 0);
+
+    private ControlNumberSequenceDao controlNumberSequenceDao;
+    private String sequenceName = "interchange_control_number";
+    private int blockSize = 100;
+
+    private volatile Block block = EXHAUSTED;
+
+    public void setControlNumberSequenceDao(final ControlNumberSequenceDao controlNumberSequenceDao) {
+        this.controlNumberSequenceDao = controlNumberSequenceDao;
+    }
+
+    /**
+     * @param sequenceName The name of the sequence to reserve blocks from. Allocators
+     * sharing a name never hand out the same number.
+     */
+    public void setSequenceName(final String sequenceName) {
+        this.sequenceName = sequenceName;
+    }
+
+    /**
+     * @param blockSize The number of control numbers reserved at a time.
+     */
+    public void setBlockSize(final int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * @return The next control number, between 1 and {@link #MAX_CONTROL_NUMBER}.
+     */
+    @Override
+    public long getAsLong() {
+        while(true) {
+            final Block current = block;
+            final long next = current.next.getAndIncrement();
+            if(next <= current.last) {
+                return next;
+            }
+            synchronized(this) {
+                if(block == current) {
+                    block = reserveBlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The next control number, zero-padded to the nine digits of ISA13.
+     */
+    public String nextControlNumber() {
+        return String.format("%09d", getAsLong());
+    }
+
+    private Block reserveBlock() {
+        final TransactionStatus transaction = getTransaction();
+        final long first;
+        try {
+            first = controlNumberSequenceDao.reserve(sequenceName, blockSize, MAX_CONTROL_NUMBER);
+            commit(transaction);
+        } catch (final RuntimeException exception) {
+            rollback(transaction);
+            LOG.error("Rolling back due to exception: {}", exception.getLocalizedMessage());
+            throw exception;
+        }
+        final long last = Math.min(first + blockSize - 1, MAX_CONTROL_NUMBER);
+        LOG.debug("Reserved control numbers {} to {} of {}", first, last, sequenceName);
+        return new Block(first, last);
+    }
+
+    /**
+     * A reserved range of control numbers.
+     */
+    private static final class Block {
+
+        private final AtomicLong next;
+        private final long last;
+
+        private Block(final long first, final long last) {
+            this.next = new AtomicLong(first);
+            this.last = last;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.doradosystems.mis.manager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.doradosystems.mis.dao.OutboxEventDao;
+import com.doradosystems.mis.domain.OutboxEvent;
+import com.doradosystems.mis.util.LongArrayList;
+
+/**
+ * Publishes {@link OutboxEvent OutboxEvents} to Kafka and removes them from the outbox.
+ * <p>
+ * Events are read oldest first in batches of {@link #setBatchSize(int) batchSize}, all
+ * sent before any is waited on, and the acknowledged ones are then deleted in bulk.
+ * Events whose send failed stay in the outbox and are retried on the next pass, by
+ * which time events after them in the batch may already have been published, so
+ * delivery is at least once but not ordered: a retried event can arrive after later
+ * ones, and a crash between sending and deleting republishes the last batch.
+ * Consumers absorb both by treating responses idempotently, and do not rely on the
+ * order of events. In tests, a
+ * {@link org.apache.kafka.clients.producer.MockProducer MockProducer} stands in for
+ * the {@link Producer}.
+ * <p>
+ * Only one relay should run against an outbox at a time.
+ */
+public class OutboxRelay {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private OutboxEventDao outboxEventDao;
+    private Producer<String, byte[]> producer;
+    private int batchSize = 1000;
+    private long idleInterval = 500;
+    private long sendTimeout = 30000;
+
+    private final Object monitor = new Object();
+    private volatile boolean running;
+    private Thread thread;
+
+    public void setOutboxEventDao(final OutboxEventDao outboxEventDao) {
+        this.outboxEventDao = outboxEventDao;
+    }
+
+    public void setProducer(final Producer<String, byte[]> producer) {
+        this.producer = producer;
+    }
+
+    /**
+     * @param batchSize The maximum number of events read, sent and deleted together.
+     */
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param idleInterval The time, in milliseconds, to wait before checking the outbox
+     * again once it has been emptied.
+     */
+    public void setIdleInterval(final long idleInterval) {
+        this.idleInterval = idleInterval;
+    }
+
+    /**
+     * @param sendTimeout The longest time, in milliseconds, to wait for Kafka to
+     * acknowledge an event.
+     */
+    public void setSendTimeout(final long sendTimeout) {
+        this.sendTimeout = sendTimeout;
+    }
+
+    /**
+     * Starts the thread that drains the outbox.
+     */
+    public synchronized void start() {
+        if(running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::relayLoop, "outbox-relay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the relay thread. Events not yet published stay in the outbox.
+     */
+    public synchronized void shutdown() {
+        running = false;
+        synchronized(monitor) {
+            monitor.notifyAll();
+        }
+        if(thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * Wakes the relay thread so that newly written events are published without
+     * waiting for the idle interval.
+     */
+    public void wakeUp() {
+        synchronized(monitor) {
+            monitor.notifyAll();
+        }
+    }
+
+    /**
+     * Publishes events until the outbox is empty or a batch has a failed send.
+     *
+     * @return The number of events published.
+     * @throws InterruptedException If the calling thread is interrupted.
+     */
+    public long drain() throws InterruptedException {
+        long total = 0;
+        while(true) {
+            final int published = relayBatch();
+            total += published;
+            if(published < batchSize) {
+                LOG.debug("Relayed {} outbox events.", total);
+                return total;
+            }
+        }
+    }
+
+    /**
+     * Publishes the oldest batch of events and deletes those that were acknowledged,
+     * leaving any that failed for the next pass.
+     *
+     * @return The number of events published.
+     * @throws InterruptedException If the calling thread is interrupted.
+     */
+    public int relayBatch() throws InterruptedException {
+        final List<OutboxEvent> events = outboxEventDao.getOldest(batchSize);
+        if(events.isEmpty()) {
+            return 0;
+        }
+
+        final List<Future<RecordMetadata>> sends = new ArrayList<>(events.size());
+        for(final OutboxEvent event : events) {
+            sends.add(producer.send(new ProducerRecord<>(event.getTopic(), event.getKey(), event.getPayload())));
+        }
+        producer.flush();
+
+        // Events after a failed one may be on the broker already, so every
+        // acknowledged event is deleted, not just those before the failure.
+        final long deadline = System.currentTimeMillis() + sendTimeout;
+        final LongArrayList published = new LongArrayList(events.size());
+        int failed = 0;
+        for(int i = 0; i < events.size(); i++) {
+            try {
+                sends.get(i).get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                published.add(events.get(i).getId());
+            } catch (final ExecutionException | TimeoutException exception) {
+                if(failed++ == 0) {
+                    LOG.error("Unable to publish outbox event {}; it will be retried: {}", events.get(i).getId(),
+                            exception.getLocalizedMessage());
+                }
+            }
+        }
+        if(failed > 1) {
+            LOG.error("{} outbox events failed to publish and will be retried.", failed);
+        }
+        if(!published.isEmpty()) {
+            outboxEventDao.delete(published.toArray());
+        }
+        return published.size();
+    }
+
+    private void relayLoop() {
+        while(running) {
+            try {
+                drain();
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (final RuntimeException exception) {
+                LOG.error("Unable to relay outbox events: {}", exception.getLocalizedMessage());
+            }
+            synchronized(monitor) {
+                if(running) {
+                    try {
+                        monitor.wait(idleInterval);
+                    } catch (final InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+}
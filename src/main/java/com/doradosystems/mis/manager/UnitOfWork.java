@@ -0,0 +1,141 @@
+package com.doradosystems.mis.manager;
+
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.TransactionStatus;
+
+/**
+ * Groups many manager operations into a small number of transactions.
+ * <p>
+ * Each operation runs inside a savepoint of the current transaction, so an
+ * operation that fails is rolled back on its own without affecting the others.
+ * The transaction is committed, and a new one begun, once
+ * {@link #commitInterval} operations have succeeded in it or once it has been
+ * open for {@link #flushIntervalMillis}, whichever comes first. Both checks
+ * happen when an operation completes, on the calling thread, since the
+ * transaction is bound to that thread.
+ * <p>
+ * Instances are not thread safe, and are meant to be used for the duration of
+ * a single call to a manager's {@code inUnitOfWork} method.
+ */
+final class UnitOfWork {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UnitOfWork.class);
+
+    /**
+     * A single operation to run within the unit of work.
+     *
+     * @param <T> The type of result the operation produces.
+     */
+    interface Operation<T> {
+        T run() throws Exception;
+    }
+
+    private final Supplier<TransactionStatus> begin;
+    private final Consumer<TransactionStatus> commit;
+    private final Consumer<TransactionStatus> rollback;
+    private final int commitInterval;
+    private final long flushIntervalMillis;
+    private final LongSupplier clock;
+
+    private TransactionStatus transaction;
+    private long transactionStartMillis;
+    private int operationsInTransaction;
+
+    /**
+     * Constructs a new {@link UnitOfWork}.
+     *
+     * @param begin Begins a new transaction.
+     * @param commit Commits a transaction.
+     * @param rollback Rolls back a transaction.
+     * @param commitInterval The number of successful operations after which the
+     * transaction is committed.
+     * @param flushIntervalMillis The time, in milliseconds, after which an open
+     * transaction is committed.
+     */
+    UnitOfWork(final Supplier<TransactionStatus> begin, final Consumer<TransactionStatus> commit,
+            final Consumer<TransactionStatus> rollback, final int commitInterval, final long flushIntervalMillis) {
+        this(begin, commit, rollback, commitInterval, flushIntervalMillis, System::currentTimeMillis);
+    }
+
+    UnitOfWork(final Supplier<TransactionStatus> begin, final Consumer<TransactionStatus> commit,
+            final Consumer<TransactionStatus> rollback, final int commitInterval, final long flushIntervalMillis,
+            final LongSupplier clock) {
+        if(commitInterval < 1) {
+            throw new IllegalArgumentException("Commit interval must be at least 1: " + commitInterval);
+        }
+        this.begin = begin;
+        this.commit = commit;
+        this.rollback = rollback;
+        this.commitInterval = commitInterval;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Runs an operation inside a savepoint of the current transaction, beginning
+     * a transaction first if none is open.
+     * <p>
+     * If the operation fails, the work it did is rolled back to the savepoint and
+     * the {@link Exception} is rethrown; work done by earlier operations is kept.
+     *
+     * @param operation The {@link Operation} to run.
+     * @return The result of the operation.
+     * @throws Exception The {@link Exception} thrown by the operation.
+     */
+    <T> T execute(final Operation<T> operation) throws Exception {
+        if(transaction == null) {
+            transaction = begin.get();
+            transactionStartMillis = clock.getAsLong();
+            operationsInTransaction = 0;
+        }
+
+        final Object savepoint = transaction.createSavepoint();
+        final T result;
+        try {
+            result = operation.run();
+        } catch (final Exception exception) {
+            LOG.debug("Rolling back operation to savepoint due to exception: {}", exception.getLocalizedMessage());
+            transaction.rollbackToSavepoint(savepoint);
+            transaction.releaseSavepoint(savepoint);
+            throw exception;
+        }
+        transaction.releaseSavepoint(savepoint);
+        operationsInTransaction++;
+
+        if(operationsInTransaction >= commitInterval
+                || clock.getAsLong() - transactionStartMillis >= flushIntervalMillis) {
+            flush();
+        }
+        return result;
+    }
+
+    /**
+     * Commits the current transaction, if one is open.
+     */
+    void flush() {
+        if(transaction != null) {
+            final TransactionStatus committing = transaction;
+            transaction = null;
+            LOG.debug("Committing {} operations.", operationsInTransaction);
+            commit.accept(committing);
+        }
+    }
+
+    /**
+     * Rolls back the current transaction, if one is open. Transactions that
+     * were already committed are not affected.
+     */
+    void abort() {
+        if(transaction != null) {
+            final TransactionStatus rollingBack = transaction;
+            transaction = null;
+            LOG.debug("Rolling back {} operations.", operationsInTransaction);
+            rollback.accept(rollingBack);
+        }
+    }
+}
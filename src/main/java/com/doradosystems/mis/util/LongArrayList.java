@@ -0,0 +1,147 @@
+package com.doradosystems.mis.util;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * A growable list of primitive {@code long} values.
+ * <p>
+ * Used on bulk paths that collect large numbers of ids (for example
+ * {@link com.doradosystems.mis.domain.ClaimValidationRecord ClaimValidationRecord}
+ * ids), where a {@code List<Long>} would box every element.
+ * <p>
+ * This class is not thread safe.
+ */
+public class LongArrayList {
+
+    /**
+     * The capacity used when no initial capacity is given.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] elements;
+    private int size;
+
+    /**
+     * Constructs a new, empty {@link LongArrayList} with a default capacity.
+     */
+    public LongArrayList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new, empty {@link LongArrayList}.
+     *
+     * @param initialCapacity The number of elements the list can hold
+     * before it needs to grow.
+     */
+    public LongArrayList(final int initialCapacity) {
+        if(initialCapacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative: " + initialCapacity);
+        }
+        this.elements = new long[initialCapacity];
+    }
+
+    /**
+     * Appends a value to the end of the list.
+     *
+     * @param value The value to append.
+     */
+    public void add(final long value) {
+        ensureCapacity(size + 1);
+        elements[size++] = value;
+    }
+
+    /**
+     * Appends all of the provided values to the end of the list.
+     *
+     * @param values The values to append.
+     */
+    public void addAll(final long[] values) {
+        ensureCapacity(size + values.length);
+        System.arraycopy(values, 0, elements, size, values.length);
+        size += values.length;
+    }
+
+    /**
+     * Retrieves the value at a particular position.
+     *
+     * @param index The position of the value to retrieve.
+     * @return The value at {@code index}.
+     */
+    public long get(final int index) {
+        checkIndex(index);
+        return elements[index];
+    }
+
+    /**
+     * Replaces the value at a particular position.
+     *
+     * @param index The position of the value to replace.
+     * @param value The new value.
+     * @return The value previously at {@code index}.
+     */
+    public long set(final int index, final long value) {
+        checkIndex(index);
+        final long previous = elements[index];
+        elements[index] = value;
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all values from the list, keeping the current capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Makes sure the list can hold at least {@code minCapacity} values
+     * without growing again.
+     *
+     * @param minCapacity The required capacity.
+     */
+    public void ensureCapacity(final int minCapacity) {
+        if(minCapacity > elements.length) {
+            final int grown = elements.length + (elements.length >> 1) + 1;
+            elements = Arrays.copyOf(elements, Math.max(grown, minCapacity));
+        }
+    }
+
+    /**
+     * Passes each value, in order, to the provided {@link LongConsumer}.
+     *
+     * @param action The {@link LongConsumer} to call for each value.
+     */
+    public void forEach(final LongConsumer action) {
+        for(int i = 0; i < size; i++) {
+            action.accept(elements[i]);
+        }
+    }
+
+    /**
+     * @return A new array holding the values of this list, in order.
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    private void checkIndex(final int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LongArrayList [size=" + size + "]";
+    }
+}
@@ -0,0 +1,243 @@
+package com.doradosystems.mis.util;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * A hash set of primitive {@code long} values using open addressing with
+ * linear probing.
+ * <p>
+ * Used to de-duplicate large numbers of ids without boxing each one into
+ * a {@link Long}. Iteration order is unspecified.
+ * <p>
+ * This class is not thread safe.
+ */
+public class LongOpenHashSet {
+
+    /**
+     * The value used to mark an empty slot in the table. Since it is also
+     * a legal element, membership of this value is tracked separately in
+     * {@link #containsFreeValue}.
+     */
+    private static final long FREE = 0L;
+
+    /**
+     * The fraction of the table that may be filled before it is grown.
+     */
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] table;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+    private boolean containsFreeValue;
+
+    /**
+     * Constructs a new, empty {@link LongOpenHashSet} with a default capacity.
+     */
+    public LongOpenHashSet() {
+        this(16);
+    }
+
+    /**
+     * Constructs a new, empty {@link LongOpenHashSet}.
+     *
+     * @param expectedSize The number of values the set should be able to
+     * hold before it needs to grow.
+     */
+    public LongOpenHashSet(final int expectedSize) {
+        if(expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size must not be negative: " + expectedSize);
+        }
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Adds a value to the set.
+     *
+     * @param value The value to add.
+     * @return {@code true} if the value was not already in the set.
+     */
+    public boolean add(final long value) {
+        if(value == FREE) {
+            if(containsFreeValue) {
+                return false;
+            }
+            containsFreeValue = true;
+            size++;
+            return true;
+        }
+        int slot = slot(value);
+        while(table[slot] != FREE) {
+            if(table[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = value;
+        if(++size >= resizeThreshold) {
+            rehash(table.length << 1);
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a value is in the set.
+     *
+     * @param value The value to look for.
+     * @return {@code true} if the value is in the set.
+     */
+    public boolean contains(final long value) {
+        if(value == FREE) {
+            return containsFreeValue;
+        }
+        int slot = slot(value);
+        while(table[slot] != FREE) {
+            if(table[slot] == value) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Removes a value from the set.
+     *
+     * @param value The value to remove.
+     * @return {@code true} if the value was in the set.
+     */
+    public boolean remove(final long value) {
+        if(value == FREE) {
+            if(!containsFreeValue) {
+                return false;
+            }
+            containsFreeValue = false;
+            size--;
+            return true;
+        }
+        int slot = slot(value);
+        while(table[slot] != FREE) {
+            if(table[slot] == value) {
+                shiftKeys(slot);
+                size--;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all values from the set, keeping the current capacity.
+     */
+    public void clear() {
+        Arrays.fill(table, FREE);
+        containsFreeValue = false;
+        size = 0;
+    }
+
+    /**
+     * Passes each value in the set to the provided {@link LongConsumer}.
+     *
+     * @param action The {@link LongConsumer} to call for each value.
+     */
+    public void forEach(final LongConsumer action) {
+        if(containsFreeValue) {
+            action.accept(FREE);
+        }
+        for(final long value : table) {
+            if(value != FREE) {
+                action.accept(value);
+            }
+        }
+    }
+
+    /**
+     * @return A new array holding the values of this set.
+     */
+    public long[] toArray() {
+        final long[] values = new long[size];
+        int index = 0;
+        if(containsFreeValue) {
+            values[index++] = FREE;
+        }
+        for(final long value : table) {
+            if(value != FREE) {
+                values[index++] = value;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Closes the gap left by a removed value so that later values in the
+     * same probe sequence can still be found.
+     */
+    private void shiftKeys(int gap) {
+        int slot = gap;
+        while(true) {
+            slot = (slot + 1) & mask;
+            final long value = table[slot];
+            if(value == FREE) {
+                table[gap] = FREE;
+                return;
+            }
+            final int home = slot(value);
+            // Move the value into the gap unless its home slot lies cyclically within (gap, slot].
+            final boolean homeBetween = gap <= slot ? (gap < home && home <= slot) : (gap < home || home <= slot);
+            if(!homeBetween) {
+                table[gap] = value;
+                gap = slot;
+            }
+        }
+    }
+
+    private void rehash(final int newTableSize) {
+        final long[] old = table;
+        allocate(newTableSize);
+        for(final long value : old) {
+            if(value != FREE) {
+                int slot = slot(value);
+                while(table[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = value;
+            }
+        }
+    }
+
+    private void allocate(final int tableSize) {
+        table = new long[tableSize];
+        mask = tableSize - 1;
+        resizeThreshold = (int) (tableSize * LOAD_FACTOR);
+    }
+
+    private int slot(final long value) {
+        // Spread the bits so that sequential ids do not cluster in the table.
+        long h = value * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return (int) h & mask;
+    }
+
+    private static int tableSizeFor(final int expectedSize) {
+        final long needed = Math.max(4L, (long) Math.ceil(expectedSize / LOAD_FACTOR) + 1);
+        if(needed > (1 << 30)) {
+            throw new IllegalArgumentException("Expected size is too large: " + expectedSize);
+        }
+        return Integer.highestOneBit((int) needed - 1) << 1;
+    }
+
+    @Override
+    public String toString() {
+        return "LongOpenHashSet [size=" + size + "]";
+    }
+}
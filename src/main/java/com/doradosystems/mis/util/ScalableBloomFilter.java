@@ -0,0 +1,240 @@
+package com.doradosystems.mis.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Bloom filter of strings that grows as values are added while keeping its
+ * false positive rate bounded (Almeida et al., "Scalable Bloom Filters").
+ * <p>
+ * The filter is a series of fixed-size stages. Values are added to the newest
+ * stage until it holds its capacity, at which point a new stage is started with
+ * {@link #GROWTH_FACTOR} times the capacity and {@link #TIGHTENING_RATIO} times the
+ * false positive rate, so the compound rate stays close to twice the initial rate however large
+ * the filter grows.
+ * A value is reported as possibly present if any stage contains it; a value that
+ * was added is always reported.
+ * <p>
+ * This class is not thread safe.
+ */
+public class ScalableBloomFilter {
+
+    /**
+     * How much larger the capacity of each stage is than the last.
+     */
+    private static final int GROWTH_FACTOR = 2;
+
+    /**
+     * How much lower the false positive rate of each stage is than the last.
+     */
+    private static final double TIGHTENING_RATIO = 0.5;
+
+    /**
+     * The format version written by {@link #toByteArray()}.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private final List<Stage> stages = new ArrayList<>();
+    private final int initialCapacity;
+    private final double falsePositiveRate;
+    private long size;
+
+    /**
+     * Constructs a new, empty {@link ScalableBloomFilter}.
+     *
+     * @param initialCapacity The number of values the first stage holds.
+     * @param falsePositiveRate The false positive rate of the first stage.
+     */
+    public ScalableBloomFilter(final int initialCapacity, final double falsePositiveRate) {
+        if(initialCapacity < 1) {
+            throw new IllegalArgumentException("Initial capacity must be positive: " + initialCapacity);
+        }
+        if(falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        this.initialCapacity = initialCapacity;
+        this.falsePositiveRate = falsePositiveRate;
+        stages.add(new Stage(initialCapacity, falsePositiveRate));
+    }
+
+    /**
+     * Adds a value to the filter.
+     *
+     * @param value The value to add.
+     */
+    public void add(final String value) {
+        final long hash1 = hash(value);
+        final long hash2 = mix(hash1 ^ 0x6A09E667F3BCC909L) | 1;
+        Stage stage = stages.get(stages.size() - 1);
+        if(stage.count >= stage.capacity) {
+            stage = new Stage((int) Math.min(Integer.MAX_VALUE / 2, (long) stage.capacity * GROWTH_FACTOR),
+                    stage.falsePositiveRate * TIGHTENING_RATIO);
+            stages.add(stage);
+        }
+        stage.add(hash1, hash2);
+        size++;
+    }
+
+    /**
+     * Checks whether a value may have been added to the filter.
+     *
+     * @param value The value to check for.
+     * @return {@code false} if the value was definitely never added; {@code true}
+     * if it probably was.
+     */
+    public boolean mightContain(final String value) {
+        final long hash1 = hash(value);
+        final long hash2 = mix(hash1 ^ 0x6A09E667F3BCC909L) | 1;
+        for(int i = stages.size() - 1; i >= 0; i--) {
+            if(stages.get(i).mightContain(hash1, hash2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of values added to the filter.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return The number of stages the filter has grown to.
+     */
+    public int getStageCount() {
+        return stages.size();
+    }
+
+    /**
+     * Serializes the filter, for example to persist it.
+     *
+     * @return The serialized filter.
+     */
+    public byte[] toByteArray() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(initialCapacity);
+            out.writeDouble(falsePositiveRate);
+            out.writeLong(size);
+            out.writeInt(stages.size());
+            for(final Stage stage : stages) {
+                out.writeInt(stage.capacity);
+                out.writeDouble(stage.falsePositiveRate);
+                out.writeInt(stage.count);
+                for(final long word : stage.bits) {
+                    out.writeLong(word);
+                }
+            }
+        } catch (final IOException exception) {
+            throw new IllegalStateException("Unable to serialize filter", exception);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a filter written by {@link #toByteArray()}.
+     *
+     * @param bytes The serialized filter.
+     * @return The filter.
+     * @throws IllegalArgumentException If the bytes are not a serialized filter.
+     */
+    public static ScalableBloomFilter fromByteArray(final byte[] bytes) {
+        try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            final int version = in.readInt();
+            if(version != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unsupported filter format version: " + version);
+            }
+            final ScalableBloomFilter filter = new ScalableBloomFilter(in.readInt(), in.readDouble());
+            filter.size = in.readLong();
+            final int stageCount = in.readInt();
+            filter.stages.clear();
+            for(int i = 0; i < stageCount; i++) {
+                final Stage stage = new Stage(in.readInt(), in.readDouble());
+                stage.count = in.readInt();
+                for(int j = 0; j < stage.bits.length; j++) {
+                    stage.bits[j] = in.readLong();
+                }
+                filter.stages.add(stage);
+            }
+            return filter;
+        } catch (final IOException exception) {
+            throw new IllegalArgumentException("Malformed filter", exception);
+        }
+    }
+
+    /**
+     * Hashes a value to 64 bits (FNV-1a over its UTF-8 bytes, then mixed).
+     */
+    private static long hash(final String value) {
+        long hash = 0xCBF29CE484222325L;
+        for(final byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * The SplitMix64 finalizer.
+     */
+    private static long mix(final long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * A fixed-size Bloom filter, probed with double hashing.
+     */
+    private static final class Stage {
+
+        private final int capacity;
+        private final double falsePositiveRate;
+        private final long[] bits;
+        private final long bitCount;
+        private final int hashCount;
+        private int count;
+
+        private Stage(final int capacity, final double falsePositiveRate) {
+            this.capacity = capacity;
+            this.falsePositiveRate = falsePositiveRate;
+            // m = -n ln p / (ln 2)^2, k = (m / n) ln 2
+            final long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bits = new long[(int) Math.max(1, (optimalBits + 63) >>> 6)];
+            this.bitCount = (long) bits.length << 6;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        }
+
+        private void add(final long hash1, final long hash2) {
+            long combined = hash1;
+            for(int i = 0; i < hashCount; i++) {
+                final long bit = (combined & Long.MAX_VALUE) % bitCount;
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+                combined += hash2;
+            }
+            count++;
+        }
+
+        private boolean mightContain(final long hash1, final long hash2) {
+            long combined = hash1;
+            for(int i = 0; i < hashCount; i++) {
+                final long bit = (combined & Long.MAX_VALUE) % bitCount;
+                if((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+                combined += hash2;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.doradosystems.mis.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses large text values, such as raw X12 records and JSON responses, for
+ * storage in the existing text columns.
+ * <p>
+ * A compressed value is {@link #MARKER} followed by the Base64 encoding of the
+ * deflated UTF-8 text. Neither X12 nor JSON can start with the marker, so
+ * {@link #decode(String)} returns values written before compression was enabled
+ * unchanged. Values shorter than {@link #MIN_COMPRESSED_LENGTH}, and values that
+ * would not get smaller, are stored as they are.
+ */
+public final class TextCompression {
+
+    /**
+     * The prefix identifying a compressed value. The unit separator control
+     * character does not occur in claim or response text.
+     */
+    public static final String MARKER = "\u001Fz";
+
+    /**
+     * The shortest value worth compressing.
+     */
+    public static final int MIN_COMPRESSED_LENGTH = 256;
+
+    private TextCompression() {
+    }
+
+    /**
+     * Compresses a value, if it is worth compressing.
+     *
+     * @param text The value to compress, or {@code null}.
+     * @return The compressed value, or {@code text} itself if it is {@code null},
+     * already compressed, too short, or does not compress.
+     */
+    public static String encode(final String text) {
+        if(text == null || text.length() < MIN_COMPRESSED_LENGTH || isCompressed(text)) {
+            return text;
+        }
+        final byte[] input = text.getBytes(StandardCharsets.UTF_8);
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 4 + 16);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            final byte[] buffer = new byte[4096];
+            while(!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } finally {
+            deflater.end();
+        }
+        final String encoded = MARKER + Base64.getEncoder().encodeToString(output.toByteArray());
+        return encoded.length() < text.length() ? encoded : text;
+    }
+
+    /**
+     * Decompresses a value written by {@link #encode(String)}.
+     *
+     * @param stored The stored value, or {@code null}.
+     * @return The original text, or {@code stored} itself if it is not compressed.
+     * @throws IllegalArgumentException If the value carries the {@link #MARKER} but
+     * is not valid compressed data.
+     */
+    public static String decode(final String stored) {
+        if(!isCompressed(stored)) {
+            return stored;
+        }
+        final byte[] input = Base64.getDecoder().decode(stored.substring(MARKER.length()));
+        final Inflater inflater = new Inflater();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(input.length * 6);
+        try {
+            inflater.setInput(input);
+            final byte[] buffer = new byte[4096];
+            while(!inflater.finished()) {
+                final int inflated = inflater.inflate(buffer);
+                if(inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Compressed value is truncated");
+                }
+                output.write(buffer, 0, inflated);
+            }
+        } catch (final DataFormatException exception) {
+            throw new IllegalArgumentException("Compressed value is corrupt", exception);
+        } finally {
+            inflater.end();
+        }
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param stored A stored value, or {@code null}.
+     * @return {@code true} if the value was written compressed by {@link #encode(String)}.
+     */
+    public static boolean isCompressed(final String stored) {
+        return stored != null && stored.startsWith(MARKER);
+    }
+}
@@ -0,0 +1,45 @@
+-- Creates the archive tables that ClaimValidationArchiveDao moves the records and
+-- responses of archived batches into.
+--
+-- The archive DAO copies rows with "insert ... select *", so each archive table must
+-- have the same columns in the same order as the table it archives. They are
+-- therefore created with "create table ... like", which copies the columns and
+-- indexes but not the foreign keys. It also copies partitioning, so any partitioning
+-- of the archive tables is removed: new batches have no partition in them to insert
+-- into. Tables that already exist are left alone, and the body archive is only
+-- created where record bodies are stored in claim_validation_record_body.
+--
+-- Run this before any later migration that alters the hot tables, or make that
+-- migration alter the archive tables too, as claim-validation-record-retry.sql does.
+
+create table if not exists claim_validation_record_archive like claim_validation_record;
+
+create table if not exists claim_validation_response_archive like claim_validation_response;
+
+set @create_body_archive = (
+    select if(count(0) > 0,
+            'create table if not exists claim_validation_record_body_archive like claim_validation_record_body',
+            'do 0')
+    from information_schema.tables
+    where table_schema = database() and table_name = 'claim_validation_record_body');
+prepare create_body_archive from @create_body_archive;
+execute create_body_archive;
+deallocate prepare create_body_archive;
+
+set @unpartition_record_archive = (
+    select if(count(0) > 0, 'alter table claim_validation_record_archive remove partitioning', 'do 0')
+    from information_schema.partitions
+    where table_schema = database() and table_name = 'claim_validation_record_archive'
+        and partition_name is not null);
+prepare unpartition_record_archive from @unpartition_record_archive;
+execute unpartition_record_archive;
+deallocate prepare unpartition_record_archive;
+
+set @unpartition_response_archive = (
+    select if(count(0) > 0, 'alter table claim_validation_response_archive remove partitioning', 'do 0')
+    from information_schema.partitions
+    where table_schema = database() and table_name = 'claim_validation_response_archive'
+        and partition_name is not null);
+prepare unpartition_response_archive from @unpartition_response_archive;
+execute unpartition_response_archive;
+deallocate prepare unpartition_response_archive;
@@ -0,0 +1,13 @@
+-- Adds the columns used to select claim validation batches earliest deadline first.
+--
+-- priority orders batches before anything else, lower first; existing batches get
+-- the default of 5. due_date is the contractual turnaround time of a batch, if it
+-- has one. The index serves ClaimValidationBatchDao's
+-- getByStatusWithPriorityAndDueDateAscending.
+
+alter table claim_validation_batch
+    add column priority int not null default 5,
+    add column due_date datetime null;
+
+create index claim_validation_batch_status_priority_due_date
+    on claim_validation_batch (status, priority, due_date, create_date);
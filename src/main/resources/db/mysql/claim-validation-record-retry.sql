@@ -0,0 +1,32 @@
+-- Adds the columns used to retry INCOMPLETE claim validation records with a backoff.
+--
+-- claim_validation_record.attempt_count and next_eligible_date record how many runs
+-- a record has been left INCOMPLETE in and when a DEFERRED record may be retried.
+-- claim_validation_batch.not_before_date holds back a batch whose only remaining
+-- records are DEFERRED until the earliest of them may be retried.
+--
+-- The archive table must keep the same columns in the same order as the hot table,
+-- so it gains the same columns, if it exists and does not have them yet. Where it
+-- does not exist, claim-validation-archive.sql creates it from the hot table later.
+
+alter table claim_validation_record
+    add column attempt_count int not null default 0,
+    add column next_eligible_date datetime null;
+
+set @alter_record_archive = (
+    select if(count(0) > 0,
+            concat('alter table claim_validation_record_archive ',
+                'add column attempt_count int not null default 0, ',
+                'add column next_eligible_date datetime null'),
+            'do 0')
+    from information_schema.tables t
+    where t.table_schema = database() and t.table_name = 'claim_validation_record_archive'
+        and not exists (select 1 from information_schema.columns c
+            where c.table_schema = t.table_schema and c.table_name = t.table_name
+                and c.column_name = 'attempt_count'));
+prepare alter_record_archive from @alter_record_archive;
+execute alter_record_archive;
+deallocate prepare alter_record_archive;
+
+alter table claim_validation_batch
+    add column not_before_date datetime null;
@@ -0,0 +1,30 @@
+-- Adds the unique index on claim_validation_response.claim_validation_record_id that
+-- ClaimValidationResponseDao's upsert relies on.
+--
+-- The upsert's "insert ... select ... where not exists" only keeps a single response
+-- per record while inserts for the same record do not overlap; the index makes the
+-- second of two concurrent inserts fail, which addIfAbsent treats as the response
+-- already existing. Records that already have more than one response keep the first
+-- of them, as the upsert would have, so that the index can be created.
+--
+-- MySQL requires a unique index of a partitioned table to include the partitioning
+-- columns, so where the table is partitioned by batch the index also covers
+-- batch_id. A record belongs to a single batch, so this is just as unique.
+
+delete duplicate
+    from claim_validation_response duplicate
+    join claim_validation_response first
+        on first.claim_validation_record_id = duplicate.claim_validation_record_id
+        and first.id < duplicate.id;
+
+set @create_record_index = (
+    select if(count(0) > 0,
+            'create unique index claim_validation_response_record on claim_validation_response (claim_validation_record_id, batch_id)',
+            'create unique index claim_validation_response_record on claim_validation_response (claim_validation_record_id)')
+    from information_schema.partitions
+    where table_schema = database() and table_name = 'claim_validation_response'
+        and partition_name is not null
+);
+prepare create_record_index from @create_record_index;
+execute create_record_index;
+deallocate prepare create_record_index;
@@ -0,0 +1,180 @@
+package com.doradosystems.mis.dao;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+
+public class ClaimNumberFiltersTest {
+
+	private static final long SETTLE_TIME = TimeUnit.MINUTES.toMillis(1);
+
+	private JdbcTemplate jdbcTemplate;
+	private ClaimNumberFilterDao filterDao;
+	private ClaimValidationRecordDao recordDao;
+	private ClaimNumberFilters filters;
+	private long now = System.currentTimeMillis();
+	private final AtomicInteger connections = new AtomicInteger();
+
+	@Before
+	public void setup() {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:filters" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "") {
+			@Override
+			public Connection getConnection() throws SQLException {
+				connections.incrementAndGet();
+				return super.getConnection();
+			}
+		};
+		DatabasePopulatorUtils.execute(
+				new ResourceDatabasePopulator(new ClassPathResource("load/claim-validation-schema.sql")), dataSource);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.update("insert into claim_validation_batch(id, client_id, status, run_number) "
+				+ "values(1, 7, 'PENDING', 1)");
+		filterDao = new ClaimNumberFilterDao(dataSource);
+		filters = new ClaimNumberFilters(filterDao);
+		filters.setSettleTime(SETTLE_TIME);
+		filters.setClock(() -> now);
+		recordDao = new ClaimValidationRecordDao(dataSource, SqlDialect.H2);
+		recordDao.setClaimNumberFilters(filters);
+	}
+
+	private void insertFromOutside(long id, String claimNumber) {
+		jdbcTemplate.update("insert into claim_validation_record(id, batch_id, run_number, status, claim_number) "
+				+ "values(?, 1, 1, 'PENDING', ?)", id, claimNumber);
+	}
+
+	private long savedWatermark() {
+		filters.flush();
+		return filterDao.get(7).getLastRecordId();
+	}
+
+	@Test
+	public void recordsAddedThroughTheDaoAreFound() throws Exception {
+		recordDao.add(7, new ClaimValidationRecord(null, 1L, 1L, ClaimValidationRecord.Status.PENDING, "A", "a",
+				null, null));
+
+		assertThat(recordDao.existsByClientIdAndClaimNumber(7, "A"), is(true));
+		assertThat(recordDao.existsByClientIdAndClaimNumber(7, "B"), is(false));
+		assertThat(recordDao.existsByClientIdAndClaimNumber(8, "A"), is(false));
+	}
+
+	@Test
+	public void recordsInsertedFromOutsideTheFilterAreFound() {
+		assertThat(recordDao.existsByClientIdAndClaimNumber(7, "A"), is(false));
+
+		insertFromOutside(100, "A");
+		now += TimeUnit.MINUTES.toMillis(1);
+
+		assertThat(recordDao.existsByClientIdAndClaimNumber(7, "A"), is(true));
+	}
+
+	@Test
+	public void repeatedChecksForNewClaimNumbersIssueNoQueries() throws Exception {
+		assertThat(recordDao.existsByClientIdAndClaimNumber(7, "A"), is(false));
+		recordDao.add(7, new ClaimValidationRecord(null, 1L, 1L, ClaimValidationRecord.Status.PENDING, "B", "b",
+				null, null));
+		connections.set(0);
+
+		for(int i = 0; i < 100; i++) {
+			assertThat(recordDao.existsByClientIdAndClaimNumber(7, "NEW" + i), is(false));
+		}
+
+		assertThat(connections.get(), is(0));
+	}
+
+	@Test
+	public void addingDoesNotMoveTheWatermark() throws Exception {
+		insertFromOutside(1, "A");
+		assertThat(filters.mightContain(7, "A"), is(true));
+		recordDao.add(7, new ClaimValidationRecord(null, 1L, 1L, ClaimValidationRecord.Status.PENDING, "B", "b",
+				null, null));
+
+		// Neither record is older than the settle time yet.
+		assertThat(savedWatermark(), is(0L));
+
+		now += 2 * SETTLE_TIME;
+		filters.refresh();
+		assertThat(savedWatermark(), is(jdbcTemplate.queryForObject("select max(id) from claim_validation_record",
+				Long.class)));
+	}
+
+	@Test
+	public void lateCommitsBelowTheScannedIdAreFound() {
+		insertFromOutside(10, "A");
+		assertThat(filters.mightContain(7, "A"), is(true));
+
+		// Committed after id 10 had been scanned, with a lower id.
+		insertFromOutside(5, "LATE");
+		now += SETTLE_TIME;
+
+		assertThat(recordDao.existsByClientIdAndClaimNumber(7, "LATE"), is(true));
+	}
+
+	@Test
+	public void savedFiltersAreToppedUpOnLoad() {
+		insertFromOutside(1, "A");
+		now += 2 * SETTLE_TIME;
+		filters.refresh();
+		assertThat(filters.mightContain(7, "A"), is(true));
+		filters.flush();
+		insertFromOutside(2, "B");
+
+		ClaimNumberFilters reloaded = new ClaimNumberFilters(filterDao);
+		reloaded.setRefreshInterval(TimeUnit.HOURS.toMillis(1));
+
+		assertThat(reloaded.mightContain(7, "A"), is(true));
+		assertThat(reloaded.mightContain(7, "B"), is(true));
+	}
+
+	@Test
+	public void expiringMakesTheNextCheckTopUp() {
+		filters.setRefreshInterval(TimeUnit.HOURS.toMillis(1));
+		assertThat(filters.mightContain(7, "A"), is(false));
+
+		insertFromOutside(1, "A");
+		filters.expire();
+
+		assertThat(filters.mightContain(7, "A"), is(true));
+	}
+
+	@Test
+	public void recordsAddedWithoutTheirClientAreFoundByTheNextRefresh() throws Exception {
+		filters.setRefreshInterval(TimeUnit.HOURS.toMillis(1));
+		assertThat(filters.mightContain(7, "A"), is(false));
+
+		recordDao.add(new ClaimValidationRecord(null, 1L, 1L, ClaimValidationRecord.Status.PENDING, "A", "a", null,
+				null));
+		assertThat(filters.mightContain(7, "A"), is(false));
+		filters.refresh();
+
+		assertThat(filters.mightContain(7, "A"), is(true));
+	}
+
+	@Test
+	public void rebuildingDropsDeletedClaimNumbers() {
+		filters.setRebuildInterval(TimeUnit.HOURS.toMillis(1));
+		insertFromOutside(1, "A");
+		assertThat(filters.mightContain(7, "A"), is(true));
+		jdbcTemplate.update("delete from claim_validation_record");
+
+		now += TimeUnit.HOURS.toMillis(1);
+
+		assertThat(filters.mightContain(7, "A"), is(false));
+	}
+
+}
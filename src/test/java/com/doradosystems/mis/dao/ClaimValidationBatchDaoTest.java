@@ -0,0 +1,132 @@
+package com.doradosystems.mis.dao;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import com.doradosystems.mis.domain.ClaimValidationBatch;
+
+public class ClaimValidationBatchDaoTest {
+
+	private String lockStatement(SqlDialect dialect) throws Exception {
+		return statement(dialect, true);
+	}
+
+	private String priorityStatement(SqlDialect dialect) throws Exception {
+		return statement(dialect, false);
+	}
+
+	private String statement(SqlDialect dialect, boolean lock) throws Exception {
+		DataSource dataSource = mock(DataSource.class);
+		Connection connection = mock(Connection.class);
+		PreparedStatement preparedStatement = mock(PreparedStatement.class);
+		when(dataSource.getConnection()).thenReturn(connection);
+		when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+		when(preparedStatement.executeQuery()).thenReturn(mock(ResultSet.class));
+
+		ClaimValidationBatchDao batchDao = new ClaimValidationBatchDao(dataSource, dialect);
+		if(lock) {
+			batchDao.lockByStatusWithCreateTimeAscending(ClaimValidationBatch.Status.PENDING, 10);
+		} else {
+			batchDao.getByStatusWithPriorityAndDueDateAscending(ClaimValidationBatch.Status.PENDING, 10);
+		}
+
+		ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+		verify(connection).prepareStatement(sql.capture());
+		return sql.getValue();
+	}
+
+	@Test
+	public void onlyDialectsWithSkipLockedSkipLockedBatches() throws Exception {
+		assertThat(lockStatement(SqlDialect.MYSQL), containsString(" for update"));
+		assertThat(lockStatement(SqlDialect.MYSQL), not(containsString("skip locked")));
+		assertThat(lockStatement(SqlDialect.H2), not(containsString("skip locked")));
+		assertThat(lockStatement(SqlDialect.MYSQL8), containsString(" for update skip locked"));
+		assertThat(lockStatement(SqlDialect.POSTGRESQL), containsString(" for update skip locked"));
+	}
+
+	@Test
+	public void mySql8UsesTheMySqlOrderingWithoutNullsLast() throws Exception {
+		assertThat(priorityStatement(SqlDialect.MYSQL), containsString("due_date IS NULL"));
+		assertThat(priorityStatement(SqlDialect.MYSQL8), containsString("due_date IS NULL"));
+		assertThat(priorityStatement(SqlDialect.MYSQL8), not(containsString("NULLS LAST")));
+		assertThat(priorityStatement(SqlDialect.POSTGRESQL), containsString("NULLS LAST"));
+	}
+
+	/**
+	 * Adds batches to an embedded database, each created a minute after the last, and
+	 * selects them most urgent first.
+	 */
+	private List<String> mostUrgentFirst(SqlDialect dialect) throws Exception {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:batches" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+		DatabasePopulatorUtils.execute(
+				new ResourceDatabasePopulator(new ClassPathResource("load/claim-validation-schema.sql")), dataSource);
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		ClaimValidationBatchDao batchDao = new ClaimValidationBatchDao(dataSource, dialect);
+		long now = System.currentTimeMillis();
+		Date soon = new Date(now + TimeUnit.HOURS.toMillis(1));
+		Date later = new Date(now + TimeUnit.HOURS.toMillis(2));
+		Object[][] batches = {
+				{ "no-due-date", 5, null },
+				{ "due-later", 5, later },
+				{ "urgent-no-due-date", 1, null },
+				{ "due-soon", 5, soon },
+				{ "due-soon-newer", 5, soon },
+				{ "not-urgent", 9, soon },
+		};
+		for(int i = 0; i < batches.length; i++) {
+			long id = batchDao.add(new ClaimValidationBatch(null, 1L, (String) batches[i][0],
+					ClaimValidationBatch.Status.PENDING, 1L, String.valueOf(i), null, null, (Integer) batches[i][1],
+					(Date) batches[i][2]));
+			jdbcTemplate.update("update claim_validation_batch set create_date = ? where id = ?",
+					new Timestamp(now + TimeUnit.MINUTES.toMillis(i)), id);
+		}
+		batchDao.add(new ClaimValidationBatch(null, 1L, "complete", ClaimValidationBatch.Status.COMPLETE, 1L,
+				"complete", null, null, 0, soon));
+
+		List<String> filenames = new ArrayList<>();
+		for(ClaimValidationBatch batch
+				: batchDao.getByStatusWithPriorityAndDueDateAscending(ClaimValidationBatch.Status.PENDING, 10)) {
+			filenames.add(batch.getFilename());
+		}
+		return filenames;
+	}
+
+	@Test
+	public void pendingBatchesAreSelectedByPriorityThenDueDateWithoutOneLastThenAge() throws Exception {
+		assertThat(mostUrgentFirst(SqlDialect.H2), contains("urgent-no-due-date", "due-soon", "due-soon-newer",
+				"due-later", "no-due-date", "not-urgent"));
+	}
+
+	@Test
+	public void mySqlOrderingPutsBatchesWithoutADueDateLastToo() throws Exception {
+		assertThat(mostUrgentFirst(SqlDialect.MYSQL), contains("urgent-no-due-date", "due-soon", "due-soon-newer",
+				"due-later", "no-due-date", "not-urgent"));
+	}
+}
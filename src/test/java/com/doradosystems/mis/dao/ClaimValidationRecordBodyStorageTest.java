@@ -0,0 +1,114 @@
+package com.doradosystems.mis.dao;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.doradosystems.mis.dao.ClaimValidationRecordDao.RecordBodyStorage;
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+import com.doradosystems.mis.domain.ClaimValidationRecordBlock;
+import com.doradosystems.mis.manager.ClaimValidationRecordBodyMigration;
+import com.doradosystems.mis.util.TextCompression;
+
+public class ClaimValidationRecordBodyStorageTest {
+
+	private DriverManagerDataSource dataSource;
+	private JdbcTemplate jdbcTemplate;
+	private ClaimValidationRecordDao recordDao;
+
+	@Before
+	public void setup() {
+		dataSource = new DriverManagerDataSource("jdbc:h2:mem:records" + System.nanoTime() + ";DB_CLOSE_DELAY=-1",
+				"sa", "");
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("create table claim_validation_record (id bigint auto_increment primary key, "
+				+ "batch_id bigint, run_number bigint, status varchar(32), claim_number varchar(64), record clob, "
+				+ "create_date timestamp default current_timestamp, updated_date timestamp default current_timestamp, "
+				+ "attempt_count int default 0, next_eligible_date timestamp)");
+		jdbcTemplate.execute("create table claim_validation_record_body (record_id bigint primary key, record clob)");
+		recordDao = new ClaimValidationRecordDao(dataSource);
+	}
+
+	private static ClaimValidationRecord record(String claimNumber) {
+		return new ClaimValidationRecord(null, 1L, 1L, ClaimValidationRecord.Status.PENDING, claimNumber,
+				"body of " + claimNumber, null, null);
+	}
+
+	private List<String> bodies() {
+		return recordDao.getByBatchIdAndRunNumber(1L, 1L).stream().map(ClaimValidationRecord::getRecord)
+				.sorted().collect(Collectors.toList());
+	}
+
+	@Test
+	public void separateStorageKeepsBodiesOutOfTheRecordTable() throws Exception {
+		recordDao.setRecordBodyStorage(RecordBodyStorage.SEPARATE);
+
+		long id = recordDao.add(record("A"));
+
+		assertThat(jdbcTemplate.queryForObject("select count(0) from claim_validation_record where record is null",
+				Integer.class), is(1));
+		assertThat(recordDao.get(id).getRecord(), is("body of A"));
+		assertThat(recordDao.getRecordBody(id), is("body of A"));
+	}
+
+	@Test
+	public void migrationMovesEveryInlineBody() throws Exception {
+		for(int i = 0; i < 7; i++) {
+			recordDao.add(record("I" + i));
+		}
+		recordDao.setRecordBodyStorage(RecordBodyStorage.MIGRATING);
+		recordDao.add(record("M"));
+		ClaimValidationRecordBodyMigration migration = new ClaimValidationRecordBodyMigration();
+		migration.setTransactionManager(new DataSourceTransactionManager(dataSource));
+		migration.setClaimValidationRecordDao(recordDao);
+		migration.setChunkSize(3);
+
+		List<String> before = bodies();
+		assertThat(migration.run(), is(3));
+
+		assertThat(jdbcTemplate.queryForObject("select count(0) from claim_validation_record_body", Integer.class),
+				is(8));
+		recordDao.setRecordBodyStorage(RecordBodyStorage.SEPARATE);
+		assertThat(bodies(), is(before));
+	}
+
+	@Test
+	public void blocksAreFilledWithStoredBodies() throws Exception {
+		StringBuilder body = new StringBuilder();
+		for(int i = 0; i < 100; i++) {
+			body.append("SV1*HC:99213*125*UN*1~");
+		}
+		recordDao.setRecordBodyStorage(RecordBodyStorage.SEPARATE);
+		recordDao.setCompressRecords(true);
+		long first = recordDao.add(new ClaimValidationRecord(null, 1L, 1L, ClaimValidationRecord.Status.PENDING, "L",
+				body.toString(), null, null));
+		for(int i = 0; i < 4; i++) {
+			recordDao.add(record("S" + i));
+		}
+		recordDao.updateStatus(first + 1, ClaimValidationRecord.Status.COMPLETE);
+
+		ClaimValidationRecordBlock block = new ClaimValidationRecordBlock(1);
+		assertThat(recordDao.fillByBatchIdAndRunNumber(block, 1L, 1L), is(5));
+		assertThat(block.getStoredRecord(0).startsWith(TextCompression.MARKER), is(true));
+		assertThat(block.getRecord(0), is(body.toString()));
+		ClaimValidationRecord stored = recordDao.get(first + 1);
+		assertThat(block.getStatus(1), is(stored.getStatus()));
+		assertThat(block.getClaimNumber(1), is(stored.getClaimNumber()));
+		assertThat(block.getCreateDate(1), is(stored.getCreateDate().getTime()));
+
+		block.clear();
+		assertThat(recordDao.fillByBatchIdAndRunNumberAndStatusAfterId(block, 1L, 1L,
+				ClaimValidationRecord.Status.PENDING, first, 2), is(2));
+		assertThat(block.getClaimNumber(0), is("S1"));
+		assertThat(block.getClaimNumber(1), is("S2"));
+	}
+
+}
@@ -0,0 +1,108 @@
+package com.doradosystems.mis.dao;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+import com.doradosystems.mis.domain.ClaimValidationResponse;
+
+/**
+ * Compares insert and read throughput, and bytes written, with and without
+ * compressed record and response text, on an embedded database.
+ */
+public class CompressedTextStorageBenchmarkTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(CompressedTextStorageBenchmarkTest.class);
+
+	private static final int RECORDS = 2000;
+
+	private static String claim(int number) {
+		StringBuilder claim = new StringBuilder("ISA*00*          *00*          *ZZ*SUBMITTER      *ZZ*RECEIVER*");
+		for(int line = 1; line <= 20; line++) {
+			claim.append("LX*").append(line).append("~SV1*HC:99213*").append(line * 25)
+					.append("*UN*1***1~DTP*472*D8*20170101~REF*6R*").append(number).append('-').append(line)
+					.append("~");
+		}
+		return claim.append("IEA*1*").append(number).append('~').toString();
+	}
+
+	private static String response(int number) {
+		StringBuilder response = new StringBuilder("{\"claimNumber\":\"").append(number).append("\",\"edits\":[");
+		for(int edit = 0; edit < 10; edit++) {
+			response.append(edit == 0 ? "" : ",").append("{\"code\":\"E").append(edit)
+					.append("\",\"severity\":\"WARNING\",\"message\":\"Service line is missing a rendering provider\"}");
+		}
+		return response.append("]}").toString();
+	}
+
+	private static JdbcTemplate database() {
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+				"jdbc:h2:mem:compression" + System.nanoTime() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+		jdbcTemplate.execute("create table claim_validation_record (id bigint auto_increment primary key, "
+				+ "batch_id bigint, run_number bigint, status varchar(32), claim_number varchar(64), record clob, "
+				+ "create_date timestamp default current_timestamp, updated_date timestamp default current_timestamp, "
+				+ "attempt_count int default 0, next_eligible_date timestamp)");
+		jdbcTemplate.execute("create table claim_validation_response (id bigint auto_increment primary key, "
+				+ "batch_id bigint, run_number bigint, status varchar(32), claim_number varchar(64), response clob, "
+				+ "create_date timestamp default current_timestamp, updated_date timestamp default current_timestamp, "
+				+ "claim_validation_record_id bigint)");
+		return jdbcTemplate;
+	}
+
+	private long run(boolean compress) throws Exception {
+		JdbcTemplate jdbcTemplate = database();
+		ClaimValidationRecordDao recordDao = new ClaimValidationRecordDao(jdbcTemplate.getDataSource());
+		ClaimValidationResponseDao responseDao = new ClaimValidationResponseDao(jdbcTemplate.getDataSource());
+		recordDao.setCompressRecords(compress);
+		responseDao.setCompressResponses(compress);
+
+		long insertStart = System.nanoTime();
+		for(int i = 0; i < RECORDS; i++) {
+			long id = recordDao.add(new ClaimValidationRecord(null, 1L, 1L, ClaimValidationRecord.Status.PENDING,
+					String.valueOf(i), claim(i), null, null));
+			responseDao.add(new ClaimValidationResponse(null, 1L, 1L, ClaimValidationResponse.Status.PENDING,
+					String.valueOf(i), response(i), null, null, id));
+		}
+		long insertTime = System.nanoTime() - insertStart;
+
+		long readStart = System.nanoTime();
+		List<ClaimValidationRecord> records = recordDao.getByBatchIdAndRunNumber(1L, 1L);
+		List<ClaimValidationResponse> responses = responseDao.get(1L, 1L);
+		long characters = 0;
+		for(ClaimValidationRecord record : records) {
+			characters += record.getRecord().length();
+		}
+		for(ClaimValidationResponse response : responses) {
+			characters += response.getResponse().length();
+		}
+		long readTime = System.nanoTime() - readStart;
+
+		long bytesWritten = jdbcTemplate.queryForObject("select sum(length(record)) from claim_validation_record",
+				Long.class) + jdbcTemplate.queryForObject(
+						"select sum(length(response)) from claim_validation_response", Long.class);
+		assertThat(records.get(7).getRecord(), is(claim(Integer.parseInt(records.get(7).getClaimNumber()))));
+		LOG.info("compress={}: {} inserts/s, {} reads/s, {} characters written for {} characters of text",
+				compress, RECORDS * 2 * TimeUnit.SECONDS.toNanos(1) / insertTime,
+				RECORDS * 2 * TimeUnit.SECONDS.toNanos(1) / readTime, bytesWritten, characters);
+		return bytesWritten;
+	}
+
+	@Test
+	public void compressionWritesFarFewerBytes() throws Exception {
+		long uncompressed = run(false);
+		long compressed = run(true);
+
+		assertThat(compressed * 3, lessThan(uncompressed));
+	}
+
+}
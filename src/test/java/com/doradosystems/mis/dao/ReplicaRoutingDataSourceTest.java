@@ -0,0 +1,88 @@
+package com.doradosystems.mis.dao;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.doradosystems.mis.domain.ClaimValidationBatch;
+
+public class ReplicaRoutingDataSourceTest {
+
+	private static final String CREATE_TABLE_SQL = "create table claim_validation_batch (id bigint primary key, "
+			+ "client_id bigint, filename varchar(255), status varchar(32), run_number bigint, "
+			+ "global_control_number varchar(32), create_date timestamp, updated_date timestamp, "
+			+ "priority int, due_date timestamp, not_before_date timestamp)";
+
+	private AtomicLong replicationLag;
+	private ReplicaRoutingDataSource dataSource;
+	private ClaimValidationBatchDao batchDao;
+
+	@Before
+	public void setup() {
+		DataSource primary = database("primary", 3);
+		DataSource replica = database("replica", 2);
+		replicationLag = new AtomicLong();
+		dataSource = new ReplicaRoutingDataSource(primary, replica);
+		dataSource.setReplicationLagMonitor(replicationLag::get);
+		dataSource.setLagCheckInterval(0);
+		batchDao = ReadReplicaInterceptor.proxy(new ClaimValidationBatchDao(dataSource));
+	}
+
+	private static DataSource database(String name, int pendingBatches) {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:" + name + System.nanoTime() + ";DB_CLOSE_DELAY=-1", "sa", "");
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute(CREATE_TABLE_SQL);
+		for(int i = 0; i < pendingBatches; i++) {
+			jdbcTemplate.update("insert into claim_validation_batch (id, client_id, filename, status, run_number) "
+					+ "values (?, 1, 'file', 'PENDING', 1)", i);
+		}
+		return dataSource;
+	}
+
+	@Test
+	public void annotatedReadsUseTheReplica() {
+		assertThat(batchDao.countByStatus(ClaimValidationBatch.Status.PENDING), is(2));
+	}
+
+	@Test
+	public void staleReplicaFallsBackToThePrimary() {
+		replicationLag.set(60000);
+
+		assertThat(batchDao.countByStatus(ClaimValidationBatch.Status.PENDING), is(3));
+	}
+
+	@Test
+	public void failedLagMonitorFallsBackToThePrimary() {
+		dataSource.setReplicationLagMonitor(() -> {
+			throw new IllegalStateException("replica status unavailable");
+		});
+
+		assertThat(batchDao.countByStatus(ClaimValidationBatch.Status.PENDING), is(3));
+	}
+
+	@Test
+	public void unreachableReplicaFallsBackToThePrimary() {
+		DataSource primary = database("primary", 3);
+		DataSource unreachable = new DriverManagerDataSource("jdbc:h2:mem:missing;IFEXISTS=TRUE", "sa", "");
+		ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, unreachable);
+		ClaimValidationBatchDao dao = ReadReplicaInterceptor.proxy(new ClaimValidationBatchDao(routing));
+
+		assertThat(dao.countByStatus(ClaimValidationBatch.Status.PENDING), is(3));
+	}
+
+	@Test
+	public void unannotatedReadsUseThePrimary() {
+		assertThat(batchDao.getByClientIdAndStatusWithCreateTimeAscending(1, ClaimValidationBatch.Status.PENDING, 10)
+				.size(), is(3));
+	}
+
+}
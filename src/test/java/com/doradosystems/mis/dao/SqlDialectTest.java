@@ -0,0 +1,41 @@
+package com.doradosystems.mis.dao;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Test;
+
+public class SqlDialectTest {
+
+	@Test
+	public void mySqlIsMySql8FromVersion8() {
+		assertThat(SqlDialect.fromProductName("MySQL", 5), is(SqlDialect.MYSQL));
+		assertThat(SqlDialect.fromProductName("MySQL", 8), is(SqlDialect.MYSQL8));
+		assertThat(SqlDialect.fromProductName("MySQL"), is(SqlDialect.MYSQL));
+		assertThat(SqlDialect.fromProductName("MariaDB", 10), is(SqlDialect.MYSQL));
+		assertThat(SqlDialect.fromProductName("PostgreSQL", 9), is(SqlDialect.POSTGRESQL));
+		assertThat(SqlDialect.fromProductName("H2", 1), is(SqlDialect.H2));
+	}
+
+	@Test
+	public void mySql8BuildsOnMySql() {
+		assertThat(SqlDialect.MYSQL8.isA(SqlDialect.MYSQL), is(true));
+		assertThat(SqlDialect.MYSQL8.isA(SqlDialect.MYSQL8), is(true));
+		assertThat(SqlDialect.MYSQL.isA(SqlDialect.MYSQL8), is(false));
+		assertThat(SqlDialect.H2.isA(SqlDialect.MYSQL), is(false));
+	}
+
+	@Test
+	public void statementsFallBackToTheBaseDialectThenTheDefault() {
+		StatementRegistry statements = StatementRegistry.builder()
+				.register("lock", "default")
+				.register("lock", SqlDialect.MYSQL, "mysql")
+				.register("lock", SqlDialect.POSTGRESQL, "postgresql")
+				.build();
+
+		assertThat(statements.get("lock", SqlDialect.MYSQL), is("mysql"));
+		assertThat(statements.get("lock", SqlDialect.MYSQL8), is("mysql"));
+		assertThat(statements.get("lock", SqlDialect.POSTGRESQL), is("postgresql"));
+		assertThat(statements.get("lock", SqlDialect.H2), is("default"));
+	}
+}
@@ -0,0 +1,76 @@
+package com.doradosystems.mis.domain;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.beans.SamePropertyValuesAs.samePropertyValuesAs;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.doradosystems.mis.domain.ClaimValidationRecord.Status;
+import com.doradosystems.mis.util.TextCompression;
+
+public class ClaimValidationRecordBlockTest {
+
+	private static ClaimValidationRecord record(long id, String claimNumber, String body) {
+		return new ClaimValidationRecord(id, 5L, 2L, Status.INCOMPLETE, claimNumber, body, new Date(1000),
+				new Date(2000), 3, null);
+	}
+
+	@Test
+	public void recordsReadBackAsAdded() {
+		ClaimValidationRecordBlock block = new ClaimValidationRecordBlock(2);
+		for(int i = 0; i < 50; i++) {
+			block.add(record(i, "C" + i, i % 7 == 0 ? null : "CLM*C" + i + "~"));
+		}
+		block.add(record(50, null, ""));
+
+		assertThat(block.size(), is(51));
+		for(int i = 0; i < 50; i++) {
+			assertThat(block.toRecord(i), samePropertyValuesAs(record(i, "C" + i, i % 7 == 0 ? null : "CLM*C" + i + "~")));
+		}
+		assertThat(block.getClaimNumber(50), is(nullValue()));
+		assertThat(block.getRecord(50), is(""));
+		assertThat(block.getNextEligibleDate(3), is(ClaimValidationRecordBlock.NO_DATE));
+		assertThat(block.getIds().length, is(51));
+		assertThat(block.getIds()[50], is(50L));
+	}
+
+	@Test
+	public void compressedBodiesAreDecodedOnRead() {
+		StringBuilder body = new StringBuilder();
+		for(int i = 0; i < 100; i++) {
+			body.append("SV1*HC:99213*125*UN*1~");
+		}
+		String stored = TextCompression.encode(body.toString());
+		ClaimValidationRecordBlock block = new ClaimValidationRecordBlock();
+		block.add(1L, 5L, 2L, Status.PENDING, "C1", stored, ClaimValidationRecordBlock.NO_DATE,
+				ClaimValidationRecordBlock.NO_DATE, 0, ClaimValidationRecordBlock.NO_DATE);
+
+		assertThat(block.getStoredRecord(0), is(stored));
+		assertThat(block.getRecord(0), is(body.toString()));
+		assertThat(block.toRecord(0).getRecord(), is(body.toString()));
+		assertThat(block.toRecord(0).getCreateDate(), is(nullValue()));
+	}
+
+	@Test
+	public void clearedBlocksAreRefilled() {
+		ClaimValidationRecordBlock block = new ClaimValidationRecordBlock(4);
+		block.add(record(1, "FIRST", "a long first body"));
+		block.clear();
+		block.add(record(2, "B", "b"));
+
+		assertThat(block.size(), is(1));
+		assertThat(block.toRecord(0), samePropertyValuesAs(record(2, "B", "b")));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void indexesPastTheEndAreRejected() {
+		ClaimValidationRecordBlock block = new ClaimValidationRecordBlock();
+		block.add(record(1, "A", "a"));
+		block.getId(1);
+	}
+
+}
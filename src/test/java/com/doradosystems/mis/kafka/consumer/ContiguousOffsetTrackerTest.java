@@ -0,0 +1,96 @@
+package com.doradosystems.mis.kafka.consumer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Collections;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+public class ContiguousOffsetTrackerTest {
+
+	private final TopicPartition partition = new TopicPartition("claims", 0);
+	private final ContiguousOffsetTracker tracker = new ContiguousOffsetTracker();
+
+	@Test
+	public void commitsOnlyUpToTheOldestUnprocessedOffset() {
+		long generation = 0;
+		for (long offset = 10; offset < 15; offset++) {
+			generation = tracker.track(partition, offset);
+		}
+		tracker.complete(partition, 12, generation);
+		tracker.complete(partition, 13, generation);
+		assertThat(tracker.committable().get(partition), is(new OffsetAndMetadata(10)));
+
+		tracker.complete(partition, 10, generation);
+		tracker.complete(partition, 11, generation);
+		assertThat(tracker.committable().get(partition), is(new OffsetAndMetadata(14)));
+		assertThat(tracker.pending(), is(1));
+
+		tracker.complete(partition, 14, generation);
+		assertThat(tracker.committable().get(partition), is(new OffsetAndMetadata(15)));
+		assertThat(tracker.committable().isEmpty(), is(true));
+	}
+
+	@Test
+	public void gapsInOffsetsDoNotHoldCommitsBack() {
+		long generation = tracker.track(partition, 3);
+		tracker.track(partition, 7);
+		tracker.track(partition, 8);
+		tracker.complete(partition, 7, generation);
+		tracker.complete(partition, 3, generation);
+
+		assertThat(tracker.committable().get(partition), is(new OffsetAndMetadata(8)));
+	}
+
+	@Test
+	public void manyOffsetsCompletedInReverse() {
+		long generation = 0;
+		for (long offset = 0; offset < 5000; offset++) {
+			generation = tracker.track(partition, offset);
+		}
+		for (long offset = 4999; offset > 0; offset--) {
+			tracker.complete(partition, offset, generation);
+		}
+		assertThat(tracker.committable().get(partition), is(new OffsetAndMetadata(0)));
+		tracker.complete(partition, 0, generation);
+		assertThat(tracker.committable().get(partition), is(new OffsetAndMetadata(5000)));
+		assertThat(tracker.pending(), is(0));
+	}
+
+	@Test
+	public void completionsFromBeforeAPartitionWasForgottenAreIgnored() {
+		long revoked = tracker.track(partition, 5);
+		tracker.forget(Collections.singleton(partition));
+		long generation = tracker.track(partition, 5);
+		tracker.track(partition, 6);
+
+		tracker.complete(partition, 5, revoked);
+		assertThat(tracker.committable().get(partition), is(new OffsetAndMetadata(5)));
+		assertThat(tracker.pending(), is(2));
+
+		tracker.complete(partition, 5, generation);
+		tracker.complete(partition, 5, generation);
+		assertThat(tracker.pending(), is(1));
+		tracker.complete(partition, 6, generation);
+		assertThat(tracker.committable().get(partition), is(new OffsetAndMetadata(7)));
+		assertThat(tracker.pending(), is(0));
+	}
+
+	@Test
+	public void awaitingCompletionWaitsForTheOffsetsOfThePartitions() throws Exception {
+		TopicPartition other = new TopicPartition("claims", 1);
+		long generation = tracker.track(partition, 0);
+		tracker.track(other, 0);
+		assertThat(tracker.awaitCompletion(Collections.singleton(partition), 10), is(false));
+
+		Thread completer = new Thread(() -> tracker.complete(partition, 0, generation));
+		completer.start();
+		assertThat(tracker.awaitCompletion(Collections.singleton(partition), 5000), is(true));
+		assertThat(tracker.pending(), is(1));
+		completer.join();
+	}
+
+}
@@ -0,0 +1,277 @@
+package com.doradosystems.mis.kafka.consumer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+import com.doradosystems.mis.kafka.event.ProcessClaimValidationRecordEvent;
+import com.doradosystems.mis.kafka.event.ProcessClaimValidationRecordEventKey;
+import com.doradosystems.mis.kafka.serialization.ProcessClaimValidationRecordEventSerializer;
+
+public class KeyOrderedEventConsumerTest {
+
+	private final TopicPartition partition = new TopicPartition("claims", 0);
+	private final ProcessClaimValidationRecordEventSerializer serializer = new ProcessClaimValidationRecordEventSerializer();
+	private MockConsumer<String, byte[]> consumer;
+
+	@Before
+	public void setup() {
+		consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+		consumer.assign(Collections.singletonList(partition));
+		Map<TopicPartition, Long> beginning = new HashMap<>();
+		beginning.put(partition, 0L);
+		consumer.updateBeginningOffsets(beginning);
+	}
+
+	/**
+	 * A MockConsumer that keeps its rebalance listener, so tests can revoke and assign
+	 * partitions the way a real consumer does during a poll. It also keeps its commits,
+	 * which MockConsumer forgets when it rebalances.
+	 */
+	private static class RebalancingConsumer extends MockConsumer<String, byte[]> {
+
+		private final Map<TopicPartition, OffsetAndMetadata> commits = new ConcurrentHashMap<>();
+		private ConsumerRebalanceListener listener;
+
+		RebalancingConsumer() {
+			super(OffsetResetStrategy.EARLIEST);
+		}
+
+		@Override
+		public void subscribe(Collection<String> topics, ConsumerRebalanceListener listener) {
+			super.subscribe(topics, listener);
+			this.listener = listener;
+		}
+
+		@Override
+		public void commitSync(Map<TopicPartition, OffsetAndMetadata> offsets) {
+			super.commitSync(offsets);
+			commits.putAll(offsets);
+		}
+
+		void reassign(Collection<TopicPartition> partitions) {
+			listener.onPartitionsRevoked(assignment());
+			rebalance(partitions);
+			listener.onPartitionsAssigned(partitions);
+		}
+	}
+
+	private RebalancingConsumer subscribedConsumer() {
+		RebalancingConsumer rebalancing = new RebalancingConsumer();
+		consumer = rebalancing;
+		Map<TopicPartition, Long> beginning = new HashMap<>();
+		beginning.put(partition, 0L);
+		consumer.updateBeginningOffsets(beginning);
+		return rebalancing;
+	}
+
+	private void addEvent(long offset, long recordId, String claimNumber) {
+		ClaimValidationRecord record = new ClaimValidationRecord(recordId, 1L, 1L, ClaimValidationRecord.Status.PENDING,
+				claimNumber, "CLM*" + claimNumber + "~", null, null);
+		consumer.addRecord(new ConsumerRecord<>(partition.topic(), partition.partition(), offset,
+				ProcessClaimValidationRecordEventKey.of(record),
+				serializer.serialize(partition.topic(), new ProcessClaimValidationRecordEvent(7L, record))));
+	}
+
+	@Test
+	public void eventsOfOneClaimStayInOrderWhileOthersRunInParallel() throws Exception {
+		Map<String, List<Long>> handled = new ConcurrentHashMap<>();
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		KeyOrderedEventConsumer eventConsumer = new KeyOrderedEventConsumer(consumer, event -> {
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			Thread.sleep(1);
+			ClaimValidationRecord record = event.getClaimValidationRecord();
+			handled.computeIfAbsent(record.getClaimNumber(), claim -> Collections.synchronizedList(new ArrayList<>()))
+					.add(record.getId());
+			running.decrementAndGet();
+		});
+		eventConsumer.setWorkers(8);
+
+		for (int offset = 0; offset < 400; offset++) {
+			addEvent(offset, offset, "C" + offset % 40);
+		}
+		eventConsumer.pollOnce(0);
+		eventConsumer.close();
+
+		assertThat(handled.size(), is(40));
+		for (List<Long> recordIds : handled.values()) {
+			List<Long> sorted = new ArrayList<>(recordIds);
+			Collections.sort(sorted);
+			assertThat(recordIds, is(sorted));
+			assertThat(recordIds.size(), is(10));
+		}
+		assertThat(maxRunning.get(), greaterThan(1));
+		assertThat(consumer.committed(partition), is(new OffsetAndMetadata(400)));
+	}
+
+	@Test
+	public void commitsStopAtTheOldestEventStillProcessing() throws Exception {
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		KeyOrderedEventConsumer eventConsumer = new KeyOrderedEventConsumer(consumer, event -> {
+			if (event.getClaimValidationRecord().getId() == 2L) {
+				blocked.countDown();
+				release.await(5, TimeUnit.SECONDS);
+			}
+		});
+		eventConsumer.setWorkers(4);
+		for (int offset = 0; offset < 10; offset++) {
+			addEvent(offset, offset, "C" + offset);
+		}
+
+		eventConsumer.pollOnce(0);
+		blocked.await(5, TimeUnit.SECONDS);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (consumer.committed(partition) == null && System.currentTimeMillis() < deadline) {
+			eventConsumer.commit();
+			Thread.sleep(1);
+		}
+		Thread.sleep(50);
+		eventConsumer.commit();
+		assertThat(consumer.committed(partition), is(new OffsetAndMetadata(2)));
+
+		release.countDown();
+		eventConsumer.close();
+		assertThat(consumer.committed(partition), is(new OffsetAndMetadata(10)));
+	}
+
+	@Test
+	public void backlogPausesPolling() throws Exception {
+		Object gate = new Object();
+		KeyOrderedEventConsumer eventConsumer = new KeyOrderedEventConsumer(consumer, event -> {
+			synchronized (gate) {
+				gate.wait(5000);
+			}
+		});
+		eventConsumer.setWorkers(2);
+		eventConsumer.setMaxPendingRecords(5);
+		for (int offset = 0; offset < 10; offset++) {
+			addEvent(offset, offset, "C" + offset);
+		}
+
+		eventConsumer.pollOnce(0);
+		assertThat(consumer.paused(), is(Collections.singleton(partition)));
+
+		synchronized (gate) {
+			gate.notifyAll();
+		}
+		while (eventConsumer.getPendingRecords() > 0) {
+			synchronized (gate) {
+				gate.notifyAll();
+			}
+			Thread.sleep(1);
+		}
+		eventConsumer.pollOnce(0);
+		assertThat(consumer.paused().isEmpty(), is(true));
+		eventConsumer.close();
+	}
+
+	@Test
+	public void revokingWaitsForTheEventsOfThePartitions() throws Exception {
+		RebalancingConsumer rebalancing = subscribedConsumer();
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		KeyOrderedEventConsumer eventConsumer = new KeyOrderedEventConsumer(consumer, event -> {
+			if (event.getClaimValidationRecord().getId() == 1L) {
+				blocked.countDown();
+				release.await(5, TimeUnit.SECONDS);
+			}
+		});
+		eventConsumer.setWorkers(2);
+		eventConsumer.subscribe(Collections.singletonList(partition.topic()));
+		rebalancing.rebalance(Collections.singletonList(partition));
+		for (int offset = 0; offset < 5; offset++) {
+			addEvent(offset, offset, "C" + offset);
+		}
+		eventConsumer.pollOnce(0);
+		blocked.await(5, TimeUnit.SECONDS);
+
+		Thread releaser = new Thread(() -> {
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+			}
+			release.countDown();
+		});
+		releaser.start();
+		rebalancing.reassign(Collections.singletonList(partition));
+		releaser.join();
+
+		assertThat(rebalancing.commits.get(partition), is(new OffsetAndMetadata(5)));
+		assertThat(eventConsumer.getPendingRecords(), is(0));
+		eventConsumer.close();
+	}
+
+	@Test
+	public void eventsStillRunningWhenRevokedDoNotCompleteTheirRedelivery() throws Exception {
+		RebalancingConsumer rebalancing = subscribedConsumer();
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch firstBlocked = new CountDownLatch(1);
+		CountDownLatch secondBlocked = new CountDownLatch(1);
+		CountDownLatch releaseFirst = new CountDownLatch(1);
+		CountDownLatch releaseSecond = new CountDownLatch(1);
+		KeyOrderedEventConsumer eventConsumer = new KeyOrderedEventConsumer(consumer, event -> {
+			if (event.getClaimValidationRecord().getId() == 1L) {
+				if (calls.incrementAndGet() == 1) {
+					firstBlocked.countDown();
+					releaseFirst.await(5, TimeUnit.SECONDS);
+				} else {
+					secondBlocked.countDown();
+					releaseSecond.await(5, TimeUnit.SECONDS);
+				}
+			}
+		});
+		eventConsumer.setWorkers(2);
+		eventConsumer.setRevokeTimeout(10);
+		eventConsumer.subscribe(Collections.singletonList(partition.topic()));
+		rebalancing.rebalance(Collections.singletonList(partition));
+		for (int offset = 0; offset < 5; offset++) {
+			addEvent(offset, offset, "C" + offset);
+		}
+		eventConsumer.pollOnce(0);
+		firstBlocked.await(5, TimeUnit.SECONDS);
+
+		rebalancing.reassign(Collections.singletonList(partition));
+		assertThat(rebalancing.commits.get(partition), is(new OffsetAndMetadata(1)));
+		for (int offset = 1; offset < 5; offset++) {
+			addEvent(offset, offset, "C" + offset);
+		}
+		eventConsumer.pollOnce(0);
+
+		releaseFirst.countDown();
+		secondBlocked.await(5, TimeUnit.SECONDS);
+		Thread.sleep(50);
+		eventConsumer.commit();
+		assertThat(rebalancing.commits.get(partition), is(new OffsetAndMetadata(1)));
+		assertThat(eventConsumer.getPendingRecords(), greaterThan(0));
+
+		releaseSecond.countDown();
+		eventConsumer.close();
+		assertThat(rebalancing.commits.get(partition), is(new OffsetAndMetadata(5)));
+		assertThat(eventConsumer.getPendingRecords(), is(0));
+	}
+
+}
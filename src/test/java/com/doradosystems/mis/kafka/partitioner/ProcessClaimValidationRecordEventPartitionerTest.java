@@ -0,0 +1,108 @@
+package com.doradosystems.mis.kafka.partitioner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+import com.doradosystems.mis.kafka.event.ProcessClaimValidationRecordEvent;
+import com.doradosystems.mis.kafka.event.ProcessClaimValidationRecordEventKey;
+
+public class ProcessClaimValidationRecordEventPartitionerTest {
+
+	private static final String TOPIC = "claim-validation-records";
+
+	private ProcessClaimValidationRecordEventPartitioner partitioner;
+
+	@Before
+	public void setup() {
+		partitioner = new ProcessClaimValidationRecordEventPartitioner();
+		partitioner.configure(Collections.emptyMap());
+	}
+
+	private static Cluster cluster(int partitions) {
+		Node node = new Node(0, "localhost", 9092);
+		List<PartitionInfo> infos = new ArrayList<>();
+		for (int i = 0; i < partitions; i++) {
+			infos.add(new PartitionInfo(TOPIC, i, node, new Node[] { node }, new Node[] { node }));
+		}
+		return new Cluster("cluster", Collections.singletonList(node), infos, Collections.emptySet(),
+				Collections.emptySet());
+	}
+
+	private static ProcessClaimValidationRecordEvent event(long batchId, long runNumber, long recordId) {
+		return new ProcessClaimValidationRecordEvent(1L, new ClaimValidationRecord(recordId, batchId, runNumber,
+				ClaimValidationRecord.Status.PENDING, "claim", "record", null, null));
+	}
+
+	private int partitionOf(long batchId, long runNumber, long recordId, Cluster cluster) {
+		return partitioner.partition(TOPIC, null, null, event(batchId, runNumber, recordId), null, cluster);
+	}
+
+	@Test
+	public void recordsOfOneRunShareAPartition() {
+		Cluster cluster = cluster(12);
+		int expected = partitionOf(42, 3, 1, cluster);
+		for (long recordId = 2; recordId < 1000; recordId++) {
+			assertThat(partitionOf(42, 3, recordId, cluster), is(expected));
+		}
+	}
+
+	@Test
+	public void keyAloneRoutesLikeTheEvent() {
+		Cluster cluster = cluster(12);
+		for (long batchId = 1; batchId < 100; batchId++) {
+			String key = ProcessClaimValidationRecordEventKey.of(batchId, 2, 7);
+			assertThat(partitioner.partition(TOPIC, key, key.getBytes(), null, null, cluster),
+					is(partitionOf(batchId, 2, 7, cluster)));
+		}
+	}
+
+	@Test
+	public void addingAPartitionMovesFewRuns() {
+		Cluster before = cluster(10);
+		Cluster after = cluster(11);
+		int moved = 0;
+		for (long batchId = 1; batchId <= 10000; batchId++) {
+			if (partitionOf(batchId, 1, 1, before) != partitionOf(batchId, 1, 1, after)) {
+				moved++;
+			}
+		}
+		// About 1/11 of the runs should move.
+		assertThat(moved, greaterThan(600));
+		assertThat(moved, lessThan(1200));
+	}
+
+	@Test
+	public void hotBatchIsSplitInChunks() {
+		Map<String, Object> configs = new HashMap<>();
+		configs.put(ProcessClaimValidationRecordEventPartitioner.HOT_BATCH_IDS_CONFIG, "42, 43");
+		configs.put(ProcessClaimValidationRecordEventPartitioner.HOT_BATCH_SPLIT_CONFIG, "4");
+		configs.put(ProcessClaimValidationRecordEventPartitioner.SPLIT_CHUNK_SIZE_CONFIG, "100");
+		partitioner.configure(configs);
+		Cluster cluster = cluster(32);
+
+		Set<Integer> partitions = new HashSet<>();
+		for (long recordId = 0; recordId < 400; recordId++) {
+			partitions.add(partitionOf(42, 1, recordId, cluster));
+			assertThat(partitionOf(42, 1, recordId, cluster), is(partitionOf(42, 1, recordId / 100 * 100, cluster)));
+		}
+		assertThat(partitions.size(), greaterThan(1));
+	}
+
+}
@@ -0,0 +1,116 @@
+package com.doradosystems.mis.kafka.serialization;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.beans.SamePropertyValuesAs.samePropertyValuesAs;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+import com.doradosystems.mis.domain.ClaimValidationRecordBlock;
+import com.doradosystems.mis.kafka.event.ProcessClaimValidationRecordEvent;
+
+public class CompactProcessClaimValidationRecordEventFormatTest {
+
+	private CompactProcessClaimValidationRecordEventSerializer serializer = new CompactProcessClaimValidationRecordEventSerializer();
+	private ProcessClaimValidationRecordEventDeserializer deserializer = new ProcessClaimValidationRecordEventDeserializer();
+
+	private static ClaimValidationRecord record(long runNumber, int attemptCount) {
+		return new ClaimValidationRecord(11L, 5L, runNumber, ClaimValidationRecord.Status.PENDING, "C-1",
+				"CLM*C-1*125***11:B:1~SV1*HC:99213*125*UN*1~é", new Date(1000), new Date(2000), attemptCount,
+				null);
+	}
+
+	@Test
+	public void roundTripsThroughTheDeserializer() {
+		ProcessClaimValidationRecordEvent event = new ProcessClaimValidationRecordEvent(3L, record(2, 1));
+
+		ProcessClaimValidationRecordEvent result = deserializer.deserialize(null, serializer.serialize(null, event));
+
+		assertThat(result.getClientId(), is(3L));
+		assertThat(result.getClaimValidationRecord(), samePropertyValuesAs(event.getClaimValidationRecord()));
+	}
+
+	@Test
+	public void roundTripsNullProperties() {
+		ProcessClaimValidationRecordEvent result = deserializer.deserialize(null,
+				serializer.serialize(null, new ProcessClaimValidationRecordEvent(null, null)));
+
+		assertThat(result.getClientId(), is(nullValue()));
+		assertThat(result.getClaimValidationRecord(), is(nullValue()));
+	}
+
+	@Test
+	public void javaSerializedEventsAreStillRead() {
+		ProcessClaimValidationRecordEvent event = new ProcessClaimValidationRecordEvent(3L, record(2, 1));
+		byte[] data = new ProcessClaimValidationRecordEventSerializer().serialize(null, event);
+
+		assertThat(CompactProcessClaimValidationRecordEventFormat.isCompact(data), is(false));
+		assertThat(deserializer.deserialize(null, data).getClaimValidationRecord(),
+				samePropertyValuesAs(event.getClaimValidationRecord()));
+		assertThat(serializer.serialize(null, event).length, lessThan(data.length));
+	}
+
+	@Test
+	public void runNumberAndAttemptCountArePatchedIntoACopy() {
+		byte[] original = serializer.serialize(null, new ProcessClaimValidationRecordEvent(3L, record(2, 1)));
+
+		byte[] patched = CompactProcessClaimValidationRecordEventFormat.withRun(original, 9, 4);
+
+		assertThat(deserializer.deserialize(null, patched).getClaimValidationRecord(),
+				samePropertyValuesAs(record(9, 4)));
+		assertThat(deserializer.deserialize(null, original).getClaimValidationRecord().getRunNumber(), is(2L));
+	}
+
+	@Test
+	public void blockRecordsAreWrittenLikeEvents() {
+		ClaimValidationRecordBlock block = new ClaimValidationRecordBlock();
+		block.add(record(2, 1));
+
+		byte[] data = CompactProcessClaimValidationRecordEventFormat.write(3L, block, 0);
+
+		assertThat(data, is(serializer.serialize(null, new ProcessClaimValidationRecordEvent(3L, record(2, 1)))));
+	}
+
+	@Test
+	public void cacheEvictsLeastRecentlyUsedEvents() {
+		byte[] data = serializer.serialize(null, new ProcessClaimValidationRecordEvent(3L, record(2, 1)));
+		SerializedEventCache cache = new SerializedEventCache(2, data.length * 10L);
+		cache.put(1, data);
+		cache.put(2, data);
+		cache.get(1, 3, 2);
+		cache.put(3, data);
+
+		assertThat(cache.contains(1), is(true));
+		assertThat(cache.contains(2), is(false));
+		assertThat(cache.get(2, 3, 2), is(nullValue()));
+		assertThat(cache.getHits(), is(1L));
+		assertThat(cache.getMisses(), is(1L));
+
+		SerializedEventCache small = new SerializedEventCache(100, data.length * 2L);
+		for (long id = 0; id < 5; id++) {
+			small.put(id, data);
+		}
+		assertThat(small.size(), is(2));
+	}
+
+	@Test
+	public void cacheDropsTheEventsOfABatch() {
+		byte[] data = serializer.serialize(null, new ProcessClaimValidationRecordEvent(3L, record(2, 1)));
+		byte[] other = serializer.serialize(null, new ProcessClaimValidationRecordEvent(3L, new ClaimValidationRecord(
+				12L, 6L, 2L, ClaimValidationRecord.Status.PENDING, "C-2", "CLM*C-2~", null, null)));
+		SerializedEventCache cache = new SerializedEventCache(10, data.length * 10L);
+		cache.put(11, data);
+		cache.put(12, other);
+
+		assertThat(CompactProcessClaimValidationRecordEventFormat.batchIdOf(data), is(5L));
+		assertThat(cache.invalidateBatch(5), is(1));
+		assertThat(cache.contains(11), is(false));
+		assertThat(cache.contains(12), is(true));
+	}
+
+}
@@ -0,0 +1,316 @@
+package com.doradosystems.mis.load;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import com.doradosystems.mis.dao.ClaimValidationBatchDao;
+import com.doradosystems.mis.dao.ClaimValidationRecordDao;
+import com.doradosystems.mis.dao.ClaimValidationResponseDao;
+import com.doradosystems.mis.dao.OutboxEventDao;
+import com.doradosystems.mis.dao.SqlDialect;
+import com.doradosystems.mis.domain.ClaimValidationBatch;
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+import com.doradosystems.mis.kafka.event.ProcessClaimValidationRecordEvent;
+import com.doradosystems.mis.kafka.serialization.ProcessClaimValidationRecordEventDeserializer;
+import com.doradosystems.mis.manager.ClaimValidationBatchManager;
+import com.doradosystems.mis.manager.ClaimValidationResponseManager;
+import com.doradosystems.mis.manager.OutboxRelay;
+
+/**
+ * Drives the whole claim validation pipeline against an embedded H2 database and an
+ * in-memory stand-in for Kafka, and reports the throughput and latency of each stage.
+ * <p>
+ * A run:
+ * <ol>
+ * <li><b>load</b>: generates {@link SyntheticClaims} and inserts each batch and its
+ * records through the {@link ClaimValidationBatchDao} and {@link ClaimValidationRecordDao};</li>
+ * <li><b>claim</b>: claims the batches with
+ * {@link ClaimValidationBatchManager#claimPendingBatches(int)}, which queues an outbox
+ * event for every record;</li>
+ * <li><b>dispatch</b>: drains the outbox through the {@link OutboxRelay} into a
+ * {@link MockProducer}, which hands each serialized event to the validator threads,
+ * measuring the time from send to receipt;</li>
+ * <li><b>validate</b>: the validator threads deserialize each event with the real
+ * deserializer, wait the simulated validation time, and answer it with
+ * {@link ClaimValidationResponseManager#createResponse(long, String, ClaimValidationRecord)};</li>
+ * <li><b>end-to-end</b>: the time from an event being sent to its response being committed;</li>
+ * <li><b>complete</b>: ends each run with {@link ClaimValidationBatchManager#completeRun(ClaimValidationBatch)}.</li>
+ * </ol>
+ * The absolute numbers reflect H2, not production, so the harness is for comparing
+ * changes against each other rather than for capacity planning.
+ * <p>
+ * Run {@link #main(String[])} with {@code -Dload.batches}, {@code -Dload.claimsPerBatch},
+ * {@code -Dload.serviceLines}, {@code -Dload.clients}, {@code -Dload.validators} and
+ * {@code -Dload.validationMicros} to size a run.
+ */
+public class ClaimValidationLoadHarness {
+
+	private static final String TOPIC = "claim-validation";
+
+	private int batches = 10;
+	private int claimsPerBatch = 1000;
+	private int serviceLines = 5;
+	private int clients = 3;
+	private int validators = 4;
+	private long validationMicros = 0;
+	private long seed = 837;
+
+	private final LatencyRecorder load = new LatencyRecorder("load");
+	private final LatencyRecorder claim = new LatencyRecorder("claim");
+	private final LatencyRecorder dispatch = new LatencyRecorder("dispatch");
+	private final LatencyRecorder validate = new LatencyRecorder("validate");
+	private final LatencyRecorder endToEnd = new LatencyRecorder("end-to-end");
+	private final LatencyRecorder complete = new LatencyRecorder("complete");
+
+	private ClaimValidationBatchDao batchDao;
+	private ClaimValidationRecordDao recordDao;
+
+	public void setBatches(int batches) {
+		this.batches = batches;
+	}
+
+	public void setClaimsPerBatch(int claimsPerBatch) {
+		this.claimsPerBatch = claimsPerBatch;
+	}
+
+	public void setServiceLines(int serviceLines) {
+		this.serviceLines = serviceLines;
+	}
+
+	public void setClients(int clients) {
+		this.clients = clients;
+	}
+
+	public void setValidators(int validators) {
+		this.validators = validators;
+	}
+
+	/**
+	 * @param validationMicros The time, in microseconds, each simulated validation takes.
+	 */
+	public void setValidationMicros(long validationMicros) {
+		this.validationMicros = validationMicros;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public ClaimValidationBatchDao getBatchDao() {
+		return batchDao;
+	}
+
+	public ClaimValidationRecordDao getRecordDao() {
+		return recordDao;
+	}
+
+	/**
+	 * @return The recorders of every stage, in pipeline order.
+	 */
+	public List<LatencyRecorder> getStages() {
+		return Arrays.asList(load, claim, dispatch, validate, endToEnd, complete);
+	}
+
+	/**
+	 * Runs the pipeline once, against a new in-memory database.
+	 *
+	 * @return The batches that were claimed.
+	 * @throws Exception If any stage fails.
+	 */
+	public List<ClaimValidationBatch> run() throws Exception {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:load" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000", "sa", "");
+		DatabasePopulatorUtils.execute(
+				new ResourceDatabasePopulator(new ClassPathResource("load/claim-validation-schema.sql")), dataSource);
+		DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+
+		batchDao = new ClaimValidationBatchDao(dataSource, SqlDialect.H2);
+		recordDao = new ClaimValidationRecordDao(dataSource, SqlDialect.H2);
+		ClaimValidationResponseManager responseManager = new ClaimValidationResponseManager();
+		responseManager.setTransactionManager(transactionManager);
+		responseManager.setClaimValidationRecordDao(recordDao);
+		responseManager.setClaimValidationResponseDao(new ClaimValidationResponseDao(dataSource, SqlDialect.H2));
+		OutboxEventDao outboxEventDao = new OutboxEventDao(dataSource);
+		ClaimValidationBatchManager batchManager = new ClaimValidationBatchManager();
+		batchManager.setTransactionManager(transactionManager);
+		batchManager.setClaimValidationBatchDao(batchDao);
+		batchManager.setClaimValidationRecordDao(recordDao);
+		batchManager.setOutboxEventDao(outboxEventDao);
+		batchManager.setDispatchTopic(TOPIC);
+
+		loadClaims();
+
+		long start = System.nanoTime();
+		List<ClaimValidationBatch> claimed = batchManager.claimPendingBatches(batches);
+		claim.record(start, System.nanoTime());
+		int events = outboxEventDao.count();
+
+		BlockingQueue<Sent> broker = new LinkedBlockingQueue<>();
+		CountDownLatch answered = new CountDownLatch(events);
+		ExecutorService validatorPool = Executors.newFixedThreadPool(validators);
+		List<Future<?>> running = new ArrayList<>();
+		for(int i = 0; i < validators; i++) {
+			running.add(validatorPool.submit(() -> {
+				validateEvents(broker, answered, responseManager);
+				return null;
+			}));
+		}
+		try {
+			OutboxRelay relay = new OutboxRelay();
+			relay.setOutboxEventDao(outboxEventDao);
+			relay.setProducer(new BrokerProducer(broker));
+			relay.drain();
+			while(!answered.await(100, TimeUnit.MILLISECONDS)) {
+				for(Future<?> validator : running) {
+					if(validator.isDone()) {
+						// A validator only stops early when it fails; surface its exception.
+						validator.get();
+					}
+				}
+			}
+		} catch (Exception exception) {
+			validatorPool.shutdownNow();
+			throw exception;
+		}
+		// Every event is answered, so the validators stop by themselves.
+		validatorPool.shutdown();
+		for(Future<?> validator : running) {
+			validator.get();
+		}
+
+		for(ClaimValidationBatch batch : claimed) {
+			start = System.nanoTime();
+			batchManager.completeRun(batch);
+			complete.record(start, System.nanoTime());
+		}
+		return claimed;
+	}
+
+	private void loadClaims() throws Exception {
+		SyntheticClaims claims = new SyntheticClaims(seed, serviceLines);
+		for(int b = 0; b < batches; b++) {
+			long clientId = 1 + b % clients;
+			long batchId = batchDao.add(new ClaimValidationBatch(null, clientId, "load-" + b + ".837",
+					ClaimValidationBatch.Status.PENDING, 1L, String.valueOf(b + 1), null, null));
+			for(int c = 0; c < claimsPerBatch; c++) {
+				String claimNumber = "L" + b + "C" + c;
+				long start = System.nanoTime();
+				recordDao.add(clientId, new ClaimValidationRecord(null, batchId, 1L,
+						ClaimValidationRecord.Status.PENDING, claimNumber, claims.next(claimNumber), null, null));
+				load.record(start, System.nanoTime());
+			}
+		}
+	}
+
+	private void validateEvents(BlockingQueue<Sent> broker, CountDownLatch answered,
+			ClaimValidationResponseManager responseManager) throws Exception {
+		ProcessClaimValidationRecordEventDeserializer deserializer = new ProcessClaimValidationRecordEventDeserializer();
+		while(answered.getCount() > 0) {
+			Sent sent = broker.poll(100, TimeUnit.MILLISECONDS);
+			if(sent == null) {
+				continue;
+			}
+			long received = System.nanoTime();
+			dispatch.record(sent.nanos, received);
+			ProcessClaimValidationRecordEvent event = deserializer.deserialize(TOPIC, sent.payload);
+			ClaimValidationRecord record = event.getClaimValidationRecord();
+			if(validationMicros > 0) {
+				TimeUnit.MICROSECONDS.sleep(validationMicros);
+			}
+			responseManager.createResponse(event.getClientId(),
+					"STC*A1:20*" + record.getClaimNumber() + "*WQ~", record);
+			long done = System.nanoTime();
+			validate.record(received, done);
+			endToEnd.record(sent.nanos, done);
+			answered.countDown();
+		}
+	}
+
+	/**
+	 * Prints a report of every stage.
+	 */
+	public void report(PrintStream out) {
+		out.printf("%d batches x %d claims, %d service lines, %d validators%n", batches, claimsPerBatch,
+				serviceLines, validators);
+		for(LatencyRecorder stage : getStages()) {
+			out.println(stage);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		ClaimValidationLoadHarness harness = new ClaimValidationLoadHarness();
+		harness.setBatches(Integer.getInteger("load.batches", harness.batches));
+		harness.setClaimsPerBatch(Integer.getInteger("load.claimsPerBatch", harness.claimsPerBatch));
+		harness.setServiceLines(Integer.getInteger("load.serviceLines", harness.serviceLines));
+		harness.setClients(Integer.getInteger("load.clients", harness.clients));
+		harness.setValidators(Integer.getInteger("load.validators", harness.validators));
+		harness.setValidationMicros(Long.getLong("load.validationMicros", harness.validationMicros));
+		harness.run();
+		harness.report(System.out);
+	}
+
+	/**
+	 * A serialized event in the in-memory broker, with the time it was sent.
+	 */
+	private static final class Sent {
+
+		private final byte[] payload;
+		private final long nanos;
+
+		private Sent(byte[] payload, long nanos) {
+			this.payload = payload;
+			this.nanos = nanos;
+		}
+	}
+
+	/**
+	 * A {@link MockProducer} that acknowledges every send and delivers it to the
+	 * validator threads.
+	 */
+	private static final class BrokerProducer extends MockProducer<String, byte[]> {
+
+		private final BlockingQueue<Sent> broker;
+
+		private BrokerProducer(BlockingQueue<Sent> broker) {
+			super(true, new StringSerializer(), new ByteArraySerializer());
+			this.broker = broker;
+		}
+
+		@Override
+		public synchronized Future<RecordMetadata> send(ProducerRecord<String, byte[]> record,
+				Callback callback) {
+			Future<RecordMetadata> future = super.send(record, callback);
+			broker.add(new Sent(record.value(), System.nanoTime()));
+			return future;
+		}
+
+		@Override
+		public synchronized void flush() {
+			super.flush();
+			// Sends are only kept for inspection in tests; drop them so a long run stays flat.
+			clear();
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package com.doradosystems.mis.load;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.doradosystems.mis.domain.ClaimValidationBatch;
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+
+public class ClaimValidationLoadHarnessTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ClaimValidationLoadHarnessTest.class);
+
+	@Test
+	public void smallRunAnswersEveryClaimAndCompletesEveryBatch() throws Exception {
+		ClaimValidationLoadHarness harness = new ClaimValidationLoadHarness();
+		harness.setBatches(3);
+		harness.setClaimsPerBatch(40);
+		harness.setServiceLines(3);
+		harness.setValidators(3);
+
+		List<ClaimValidationBatch> claimed = harness.run();
+
+		assertThat(claimed.size(), is(3));
+		for(ClaimValidationBatch batch : claimed) {
+			assertThat(harness.getBatchDao().get(batch.getId()).getStatus(), is(ClaimValidationBatch.Status.COMPLETE));
+			assertThat(harness.getRecordDao().countByBatchIdAndRunNumberAndStatus(batch.getId(), 1,
+					ClaimValidationRecord.Status.COMPLETE), is(40));
+		}
+		for(LatencyRecorder stage : harness.getStages()) {
+			assertThat(stage.count(), greaterThan(0));
+		}
+		assertThat(harness.getStages().get(4).count(), is(120));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(PrintStream out = new PrintStream(bytes, true, StandardCharsets.UTF_8.name())) {
+			harness.report(out);
+		}
+		String report = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		LOG.info("Load harness report:{}{}", System.lineSeparator(), report);
+		assertThat(report, containsString("3 batches x 40 claims, 3 service lines, 3 validators"));
+		for(LatencyRecorder stage : harness.getStages()) {
+			assertThat(report, containsString(stage.toString()));
+		}
+	}
+
+}
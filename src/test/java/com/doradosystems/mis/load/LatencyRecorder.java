@@ -0,0 +1,70 @@
+package com.doradosystems.mis.load;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import com.doradosystems.mis.util.LongArrayList;
+
+/**
+ * Records the latencies of one stage of a load run and summarizes them as a
+ * throughput and percentiles.
+ */
+public class LatencyRecorder {
+
+	private final String stage;
+	private final LongArrayList latencies = new LongArrayList(1024);
+	private long startNanos = Long.MAX_VALUE;
+	private long endNanos = Long.MIN_VALUE;
+
+	public LatencyRecorder(String stage) {
+		this.stage = stage;
+	}
+
+	/**
+	 * Records one operation of the stage.
+	 *
+	 * @param startNanos When the operation started, from {@link System#nanoTime()}.
+	 * @param endNanos When the operation ended, from {@link System#nanoTime()}.
+	 */
+	public synchronized void record(long startNanos, long endNanos) {
+		latencies.add(endNanos - startNanos);
+		this.startNanos = Math.min(this.startNanos, startNanos);
+		this.endNanos = Math.max(this.endNanos, endNanos);
+	}
+
+	public synchronized int count() {
+		return latencies.size();
+	}
+
+	/**
+	 * @return The operations per second, from the start of the first operation to
+	 * the end of the last.
+	 */
+	public synchronized double throughput() {
+		if(latencies.isEmpty()) {
+			return 0;
+		}
+		return latencies.size() * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(1, endNanos - startNanos);
+	}
+
+	/**
+	 * @param percentile The percentile, from 0 to 100.
+	 * @return The latency at the percentile, in microseconds.
+	 */
+	public synchronized long percentileMicros(double percentile) {
+		if(latencies.isEmpty()) {
+			return 0;
+		}
+		long[] sorted = latencies.toArray();
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+		return TimeUnit.NANOSECONDS.toMicros(sorted[Math.max(0, Math.min(sorted.length - 1, index))]);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%-10s %8d ops %10.1f ops/s   p50 %8d us   p95 %8d us   p99 %8d us   max %8d us",
+				stage, latencies.size(), throughput(), percentileMicros(50), percentileMicros(95),
+				percentileMicros(99), percentileMicros(100));
+	}
+}
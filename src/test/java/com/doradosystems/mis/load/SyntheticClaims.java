@@ -0,0 +1,56 @@
+package com.doradosystems.mis.load;
+
+import java.util.Random;
+
+/**
+ * Generates synthetic 837P professional claims of a configurable size.
+ * <p>
+ * The claims are structurally plausible X12 (subscriber, claim and service line
+ * loops with realistic element values), but are not meant to pass real edits.
+ */
+public class SyntheticClaims {
+
+	private static final String[] PROCEDURES = { "99213", "99214", "93000", "36415", "80053", "85025", "71046" };
+	private static final String[] DIAGNOSES = { "E119", "I10", "J069", "M545", "R079", "Z0000", "K219" };
+
+	private final Random random;
+	private final int serviceLines;
+
+	/**
+	 * @param seed The seed, so that runs are repeatable.
+	 * @param serviceLines The number of service lines in each claim.
+	 */
+	public SyntheticClaims(long seed, int serviceLines) {
+		this.random = new Random(seed);
+		this.serviceLines = serviceLines;
+	}
+
+	/**
+	 * @param claimNumber The claim number, used as the patient control number.
+	 * @return The claim's segments, from the subscriber HL through the last service line.
+	 */
+	public String next(String claimNumber) {
+		StringBuilder claim = new StringBuilder(256 + serviceLines * 96);
+		int charge = 0;
+		StringBuilder lines = new StringBuilder(serviceLines * 96);
+		for(int line = 1; line <= serviceLines; line++) {
+			int lineCharge = 25 + random.nextInt(400);
+			charge += lineCharge;
+			lines.append("LX*").append(line).append('~')
+					.append("SV1*HC:").append(PROCEDURES[random.nextInt(PROCEDURES.length)]).append('*')
+					.append(lineCharge).append("*UN*1***1~")
+					.append("DTP*472*D8*2017").append(String.format("%02d%02d", 1 + random.nextInt(12),
+							1 + random.nextInt(28))).append('~')
+					.append("REF*6R*").append(claimNumber).append('-').append(line).append('~');
+		}
+		claim.append("HL*2*1*22*0~SBR*P*18*******CI~")
+				.append("NM1*IL*1*DOE*JANE****MI*").append(100000000 + random.nextInt(900000000)).append('~')
+				.append("N3*").append(100 + random.nextInt(9900)).append(" MAIN ST~N4*SPRINGFIELD*IL*62701~")
+				.append("DMG*D8*19").append(50 + random.nextInt(50)).append("0101*F~")
+				.append("CLM*").append(claimNumber).append('*').append(charge).append("***11:B:1*Y*A*Y*Y~")
+				.append("HI*ABK:").append(DIAGNOSES[random.nextInt(DIAGNOSES.length)])
+				.append("*ABF:").append(DIAGNOSES[random.nextInt(DIAGNOSES.length)]).append('~')
+				.append(lines);
+		return claim.toString();
+	}
+}
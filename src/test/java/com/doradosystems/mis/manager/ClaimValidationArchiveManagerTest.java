@@ -0,0 +1,206 @@
+package com.doradosystems.mis.manager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import java.sql.Timestamp;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.doradosystems.mis.dao.ClaimValidationArchiveDao;
+import com.doradosystems.mis.dao.ClaimValidationBatchDao;
+import com.doradosystems.mis.dao.ClaimValidationRecordDao;
+import com.doradosystems.mis.dao.ClaimValidationResponseDao;
+import com.doradosystems.mis.dao.SqlDialect;
+import com.doradosystems.mis.domain.ClaimValidationBatch;
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+import com.doradosystems.mis.kafka.event.ProcessClaimValidationRecordEvent;
+import com.doradosystems.mis.kafka.serialization.CompactProcessClaimValidationRecordEventFormat;
+import com.doradosystems.mis.kafka.serialization.SerializedEventCache;
+
+public class ClaimValidationArchiveManagerTest {
+
+	private static final long DAY = 24 * 60 * 60 * 1000L;
+
+	private JdbcTemplate jdbcTemplate;
+	private ClaimValidationArchiveManager manager;
+	private ClaimValidationBatchDao batchDao;
+	private ClaimValidationArchiveDao archiveDao;
+
+	@Before
+	public void setup() {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:archive" + System.nanoTime() + ";DB_CLOSE_DELAY=-1", "sa", "");
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("create table claim_validation_batch (id bigint primary key, client_id bigint, "
+				+ "filename varchar(255), status varchar(32), run_number bigint, global_control_number varchar(32), "
+				+ "create_date timestamp, updated_date timestamp, priority int, due_date timestamp)");
+		jdbcTemplate.execute("create table claim_validation_record (id bigint auto_increment primary key, "
+				+ "batch_id bigint, run_number bigint, status varchar(32), claim_number varchar(64), record clob, "
+				+ "create_date timestamp default current_timestamp, updated_date timestamp default current_timestamp, "
+				+ "attempt_count int default 0, next_eligible_date timestamp)");
+		jdbcTemplate.execute("create table claim_validation_response (id bigint auto_increment primary key, "
+				+ "batch_id bigint, run_number bigint, status varchar(32), claim_number varchar(64), response clob, "
+				+ "create_date timestamp default current_timestamp, updated_date timestamp default current_timestamp, "
+				+ "claim_validation_record_id bigint)");
+		jdbcTemplate.execute("create table claim_validation_record_archive as select * from claim_validation_record "
+				+ "where 1 = 0");
+		jdbcTemplate.execute("create table claim_validation_response_archive as select * from "
+				+ "claim_validation_response where 1 = 0");
+
+		batchDao = new ClaimValidationBatchDao(dataSource);
+		manager = new ClaimValidationArchiveManager();
+		manager.setTransactionManager(new DataSourceTransactionManager(dataSource));
+		manager.setClaimValidationBatchDao(batchDao);
+		archiveDao = spy(new ClaimValidationArchiveDao(dataSource, SqlDialect.H2));
+		manager.setClaimValidationArchiveDao(archiveDao);
+		manager.setRetention(30 * DAY);
+		manager.setChunkSize(4);
+		manager.setPauseBetweenChunks(0);
+	}
+
+	private void batch(long id, ClaimValidationBatch.Status status, long age, int records) {
+		Timestamp updated = new Timestamp(System.currentTimeMillis() - age);
+		jdbcTemplate.update("insert into claim_validation_batch (id, client_id, filename, status, run_number, "
+				+ "create_date, updated_date) values (?, 1, 'file', ?, 1, ?, ?)", id, status.toString(), updated,
+				updated);
+		for(int i = 0; i < records; i++) {
+			jdbcTemplate.update("insert into claim_validation_record (batch_id, run_number, status, claim_number, "
+					+ "record) values (?, 1, 'COMPLETE', ?, ?)", id, "C" + i, "body " + i);
+			jdbcTemplate.update("insert into claim_validation_response (batch_id, run_number, status, claim_number, "
+					+ "response) values (?, 1, 'COMPLETE', ?, ?)", id, "C" + i, "response " + i);
+		}
+	}
+
+	private int count(String table, long batchId) {
+		return jdbcTemplate.queryForObject("select count(0) from " + table + " where batch_id = ?",
+				new Object[]{ batchId }, Integer.class);
+	}
+
+	@Test
+	public void onlyExpiredCompleteBatchesAreArchived() throws Exception {
+		batch(1, ClaimValidationBatch.Status.COMPLETE, 60 * DAY, 10);
+		batch(2, ClaimValidationBatch.Status.COMPLETE, DAY, 3);
+		batch(3, ClaimValidationBatch.Status.PENDING, 60 * DAY, 3);
+
+		assertThat(manager.archiveExpiredBatches(), is(1));
+
+		assertThat(batchDao.get(1L).getStatus(), is(ClaimValidationBatch.Status.ARCHIVED));
+		assertThat(count("claim_validation_record", 1), is(0));
+		assertThat(count("claim_validation_response", 1), is(0));
+		assertThat(count("claim_validation_record_archive", 1), is(10));
+		assertThat(count("claim_validation_record", 2) + count("claim_validation_record", 3), is(6));
+	}
+
+	@Test
+	public void batchesWithoutPartitionsHaveTheirRowsDeleted() throws Exception {
+		manager.setDropPartitions(true);
+		doReturn(true).when(archiveDao).supportsBatchPartitions();
+		doReturn(false).when(archiveDao).hasBatchPartitions(1L);
+		batch(1, ClaimValidationBatch.Status.COMPLETE, 60 * DAY, 6);
+
+		assertThat(manager.archiveBatch(1), is(true));
+
+		verify(archiveDao, never()).dropBatchPartitions(anyLong());
+		assertThat(count("claim_validation_record", 1), is(0));
+		assertThat(count("claim_validation_response", 1), is(0));
+		assertThat(count("claim_validation_record_archive", 1), is(6));
+	}
+
+	@Test
+	public void batchesWithPartitionsHaveThemDropped() throws Exception {
+		manager.setDropPartitions(true);
+		doReturn(true).when(archiveDao).hasBatchPartitions(1L);
+		doNothing().when(archiveDao).dropBatchPartitions(1L);
+		batch(1, ClaimValidationBatch.Status.COMPLETE, 60 * DAY, 6);
+
+		assertThat(manager.archiveBatch(1), is(true));
+
+		verify(archiveDao).dropBatchPartitions(1L);
+		assertThat(count("claim_validation_record", 1), is(6));
+		assertThat(count("claim_validation_record_archive", 1), is(6));
+	}
+
+	@Test
+	public void h2HasNoBatchPartitions() {
+		assertThat(archiveDao.hasBatchPartitions(1L), is(false));
+	}
+
+	@Test
+	public void archivedBatchesAreDroppedFromTheEventCache() throws Exception {
+		SerializedEventCache cache = new SerializedEventCache(100, 1 << 20);
+		manager.setSerializedEventCache(cache);
+		batch(1, ClaimValidationBatch.Status.COMPLETE, 60 * DAY, 2);
+		batch(2, ClaimValidationBatch.Status.COMPLETE, DAY, 1);
+		for(long id = 1; id <= 3; id++) {
+			cache.put(id, CompactProcessClaimValidationRecordEventFormat.write(new ProcessClaimValidationRecordEvent(1L,
+					new ClaimValidationRecord(id, id <= 2 ? 1L : 2L, 1L, ClaimValidationRecord.Status.PENDING, "C" + id,
+							"body " + id, null, null))));
+		}
+
+		manager.archiveBatch(1);
+
+		assertThat(cache.contains(1), is(false));
+		assertThat(cache.contains(2), is(false));
+		assertThat(cache.contains(3), is(true));
+	}
+
+	@Test
+	public void archivedBatchesCanStillBeRead() throws Exception {
+		batch(1, ClaimValidationBatch.Status.COMPLETE, 60 * DAY, 5);
+		manager.archiveBatch(1);
+
+		ClaimValidationRecordDao recordDao = new ClaimValidationRecordDao(jdbcTemplate.getDataSource());
+		ClaimValidationResponseDao responseDao = new ClaimValidationResponseDao(jdbcTemplate.getDataSource());
+		assertThat(recordDao.getByBatchIdAndRunNumber(1L, 1L).size(), is(0));
+		assertThat(recordDao.getArchivedByBatchIdAndRunNumber(1L, 1L).size(), is(5));
+		assertThat(responseDao.getArchived(1L, 1L).get(0).getResponse(), is("response 0"));
+	}
+
+	@Test
+	public void interruptedArchivingResumesWithoutDuplicates() throws Exception {
+		batch(1, ClaimValidationBatch.Status.COMPLETE, 60 * DAY, 6);
+		jdbcTemplate.update("insert into claim_validation_record_archive select * from claim_validation_record "
+				+ "where claim_number in ('C0', 'C1')");
+
+		manager.archiveBatch(1);
+
+		assertThat(count("claim_validation_record_archive", 1), is(6));
+	}
+
+	@Test
+	public void batchesNoLongerCompleteAreLeftAlone() throws Exception {
+		batch(1, ClaimValidationBatch.Status.PENDING, 60 * DAY, 3);
+
+		assertThat(manager.archiveBatch(1), is(false));
+
+		assertThat(batchDao.get(1L).getStatus(), is(ClaimValidationBatch.Status.PENDING));
+		assertThat(count("claim_validation_record", 1), is(3));
+		assertThat(count("claim_validation_record_archive", 1), is(0));
+	}
+
+	@Test
+	public void batchesLeftArchivingAreFinished() throws Exception {
+		batch(1, ClaimValidationBatch.Status.ARCHIVING, DAY, 6);
+		jdbcTemplate.update("insert into claim_validation_record_archive select * from claim_validation_record "
+				+ "where claim_number in ('C0', 'C1')");
+		jdbcTemplate.update("delete from claim_validation_record where claim_number in ('C0', 'C1')");
+
+		assertThat(manager.archiveExpiredBatches(), is(1));
+
+		assertThat(batchDao.get(1L).getStatus(), is(ClaimValidationBatch.Status.ARCHIVED));
+		assertThat(count("claim_validation_record", 1), is(0));
+		assertThat(count("claim_validation_record_archive", 1), is(6));
+	}
+
+}
@@ -0,0 +1,88 @@
+package com.doradosystems.mis.manager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import com.doradosystems.mis.dao.ClaimValidationBatchDao;
+import com.doradosystems.mis.dao.ClaimValidationRecordDao;
+import com.doradosystems.mis.dao.SqlDialect;
+import com.doradosystems.mis.domain.ClaimValidationBatch;
+
+public class ClaimValidationBatchConcurrentClaimTest {
+
+	private static final int BATCHES = 40;
+	private static final int CLAIMERS = 4;
+
+	private ClaimValidationBatchDao batchDao;
+	private ClaimValidationBatchManager manager;
+
+	@Before
+	public void setup() throws Exception {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:claims" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000", "sa", "");
+		DatabasePopulatorUtils.execute(
+				new ResourceDatabasePopulator(new ClassPathResource("load/claim-validation-schema.sql")), dataSource);
+		batchDao = new ClaimValidationBatchDao(dataSource, SqlDialect.H2);
+		manager = new ClaimValidationBatchManager();
+		manager.setTransactionManager(new DataSourceTransactionManager(dataSource));
+		manager.setClaimValidationBatchDao(batchDao);
+		manager.setClaimValidationRecordDao(new ClaimValidationRecordDao(dataSource, SqlDialect.H2));
+
+		for(int b = 0; b < BATCHES; b++) {
+			batchDao.add(new ClaimValidationBatch(null, 1L, "claim" + b, ClaimValidationBatch.Status.PENDING, 1L,
+					String.valueOf(b), null, null));
+		}
+	}
+
+	@Test
+	public void concurrentClaimsClaimEachBatchOnce() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(CLAIMERS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<List<Long>>> claimers = new ArrayList<>();
+		for(int c = 0; c < CLAIMERS; c++) {
+			claimers.add(executor.submit(() -> {
+				start.await();
+				List<Long> claimed = new ArrayList<>();
+				List<ClaimValidationBatch> batches;
+				while(!(batches = manager.claimPendingBatches(3)).isEmpty()) {
+					for(ClaimValidationBatch batch : batches) {
+						claimed.add(batch.getId());
+					}
+				}
+				return claimed;
+			}));
+		}
+		start.countDown();
+
+		List<Long> claimed = new ArrayList<>();
+		for(Future<List<Long>> claimer : claimers) {
+			claimed.addAll(claimer.get(30, TimeUnit.SECONDS));
+		}
+		executor.shutdown();
+
+		Set<Long> distinct = new HashSet<>(claimed);
+		assertThat(claimed.size(), is(BATCHES));
+		assertThat(distinct.size(), is(BATCHES));
+		assertThat(batchDao.countByStatus(ClaimValidationBatch.Status.PROCESSING), is(BATCHES));
+		assertThat(batchDao.countByStatus(ClaimValidationBatch.Status.PENDING), is(0));
+	}
+}
@@ -0,0 +1,112 @@
+package com.doradosystems.mis.manager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import com.doradosystems.mis.dao.ClaimValidationBatchDao;
+import com.doradosystems.mis.dao.ClaimValidationRecordDao;
+import com.doradosystems.mis.dao.ClaimValidationResponseDao;
+import com.doradosystems.mis.dao.ClaimValidationResultCacheDao;
+import com.doradosystems.mis.dao.OutboxEventDao;
+import com.doradosystems.mis.dao.SqlDialect;
+import com.doradosystems.mis.domain.ClaimValidationBatch;
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+
+public class ClaimValidationBatchManagerResultCacheTest {
+
+	private static final long CLIENT_ID = 7L;
+
+	private JdbcTemplate jdbcTemplate;
+	private ClaimValidationRecordDao recordDao;
+	private ClaimValidationResponseDao responseDao;
+	private ClaimValidationResultCacheDao cacheDao;
+	private OutboxEventDao outboxEventDao;
+	private ClaimValidationBatchManager manager;
+	private long cachedRecordId;
+	private long uncachedRecordId;
+
+	@Before
+	public void setup() throws Exception {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:resultcache" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+		DatabasePopulatorUtils.execute(
+				new ResourceDatabasePopulator(new ClassPathResource("load/claim-validation-schema.sql")), dataSource);
+		DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		ClaimValidationBatchDao batchDao = new ClaimValidationBatchDao(dataSource, SqlDialect.H2);
+		recordDao = new ClaimValidationRecordDao(dataSource, SqlDialect.H2);
+		responseDao = new ClaimValidationResponseDao(dataSource, SqlDialect.H2);
+		cacheDao = spy(new ClaimValidationResultCacheDao(dataSource, SqlDialect.H2));
+		outboxEventDao = new OutboxEventDao(dataSource);
+
+		ClaimValidationResultCache cache = new ClaimValidationResultCache();
+		cache.setClaimValidationResultCacheDao(cacheDao);
+		ClaimValidationResponseManager responseManager = new ClaimValidationResponseManager();
+		responseManager.setTransactionManager(transactionManager);
+		responseManager.setClaimValidationRecordDao(recordDao);
+		responseManager.setClaimValidationResponseDao(responseDao);
+		responseManager.setResultCache(cache);
+
+		manager = new ClaimValidationBatchManager();
+		manager.setTransactionManager(transactionManager);
+		manager.setClaimValidationBatchDao(batchDao);
+		manager.setClaimValidationRecordDao(recordDao);
+		manager.setOutboxEventDao(outboxEventDao);
+		manager.setDispatchTopic("claims");
+		manager.setClaimValidationResponseManager(responseManager);
+
+		long batchId = batchDao.add(new ClaimValidationBatch(null, CLIENT_ID, "cached",
+				ClaimValidationBatch.Status.PENDING, 1L, "1", null, null));
+		cachedRecordId = recordDao.add(new ClaimValidationRecord(null, batchId, 1L,
+				ClaimValidationRecord.Status.PENDING, "C1", "CLM*C1*100~", null, null));
+		uncachedRecordId = recordDao.add(new ClaimValidationRecord(null, batchId, 1L,
+				ClaimValidationRecord.Status.PENDING, "C2", "CLM*C2*100~", null, null));
+		recordDao.add(new ClaimValidationRecord(null, batchId, 1L, ClaimValidationRecord.Status.PENDING, "C3",
+				"CLM*C3*100~", null, null));
+		cacheDao.add(ClaimValidationResultCache.contentHash(CLIENT_ID, "1", "CLM*C1*100~"), CLIENT_ID, "1",
+				"STC*A1~");
+	}
+
+	private int outboxEventCount() {
+		return jdbcTemplate.queryForObject("select count(0) from outbox_event", Integer.class);
+	}
+
+	@Test
+	public void cachedRecordsAreAnsweredAndNotDispatched() throws Exception {
+		assertThat(manager.claimPendingBatches(10).size(), is(1));
+
+		assertThat(outboxEventCount(), is(2));
+		assertThat(responseDao.getByClaimValidationRecordId(cachedRecordId), is(notNullValue()));
+		assertThat(responseDao.getByClaimValidationRecordId(cachedRecordId).getResponse(), is("STC*A1~"));
+		assertThat(recordDao.get(cachedRecordId).getStatus(), is(ClaimValidationRecord.Status.COMPLETE));
+		assertThat(responseDao.getByClaimValidationRecordId(uncachedRecordId), is(nullValue()));
+		assertThat(recordDao.get(uncachedRecordId).getStatus(), is(ClaimValidationRecord.Status.PENDING));
+	}
+
+	@Test
+	public void cacheIsReadWithOneQueryPerClaimedBatch() throws Exception {
+		manager.claimPendingBatches(10);
+
+		verify(cacheDao, times(1)).getResponses(anyList());
+		verify(cacheDao, never()).getResponse(anyString());
+	}
+}
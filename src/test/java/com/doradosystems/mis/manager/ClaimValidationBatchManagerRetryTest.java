@@ -0,0 +1,116 @@
+package com.doradosystems.mis.manager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import com.doradosystems.mis.dao.ClaimValidationBatchDao;
+import com.doradosystems.mis.dao.ClaimValidationRecordDao;
+import com.doradosystems.mis.dao.SqlDialect;
+import com.doradosystems.mis.domain.ClaimValidationBatch;
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+
+public class ClaimValidationBatchManagerRetryTest {
+
+	private static final long BACKOFF = TimeUnit.HOURS.toMillis(1);
+
+	private JdbcTemplate jdbcTemplate;
+	private ClaimValidationBatchDao batchDao;
+	private ClaimValidationRecordDao recordDao;
+	private ClaimValidationRunTracker runTracker = new ClaimValidationRunTracker();
+	private ClaimValidationBatchManager manager;
+	private long batchId;
+	private long recordId;
+
+	@Before
+	public void setup() throws Exception {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:retry" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+		DatabasePopulatorUtils.execute(
+				new ResourceDatabasePopulator(new ClassPathResource("load/claim-validation-schema.sql")), dataSource);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		batchDao = new ClaimValidationBatchDao(dataSource, SqlDialect.H2);
+		recordDao = new ClaimValidationRecordDao(dataSource, SqlDialect.H2);
+		manager = new ClaimValidationBatchManager();
+		manager.setTransactionManager(new DataSourceTransactionManager(dataSource));
+		manager.setClaimValidationBatchDao(batchDao);
+		manager.setClaimValidationRecordDao(recordDao);
+		manager.setRunTracker(runTracker);
+		manager.setRetryBackoff(BACKOFF);
+
+		batchId = batchDao.add(new ClaimValidationBatch(null, 1L, "retry", ClaimValidationBatch.Status.PENDING, 1L,
+				"1", null, null));
+		recordId = recordDao.add(new ClaimValidationRecord(null, batchId, 1L, ClaimValidationRecord.Status.PENDING,
+				"R1", "CLM*R1~", null, null));
+	}
+
+	private ClaimValidationBatch claimAndLeaveIncomplete() throws Exception {
+		List<ClaimValidationBatch> claimed = manager.claimPendingBatches(10);
+		assertThat(claimed.size(), is(1));
+		jdbcTemplate.update("update claim_validation_record set status = 'INCOMPLETE' where id = ?", recordId);
+		return claimed.get(0);
+	}
+
+	private void passBackoff() {
+		Timestamp past = new Timestamp(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1));
+		jdbcTemplate.update("update claim_validation_record set next_eligible_date = ? where id = ?", past, recordId);
+		jdbcTemplate.update("update claim_validation_batch set not_before_date = ? where id = ?", past, batchId);
+	}
+
+	@Test
+	public void batchWithOnlyDeferredRecordsIsNotClaimedUntilOneIsEligible() throws Exception {
+		manager.completeRun(claimAndLeaveIncomplete());
+
+		assertThat(batchDao.get(batchId).getStatus(), is(ClaimValidationBatch.Status.PENDING));
+		assertThat(recordDao.get(recordId).getStatus(), is(ClaimValidationRecord.Status.DEFERRED));
+		assertThat(manager.claimPendingBatches(10), is(empty()));
+		manager.setBatchSelectionMode(ClaimValidationBatchManager.BatchSelectionMode.EARLIEST_DEADLINE_FIRST);
+		assertThat(manager.claimPendingBatches(10), is(empty()));
+		assertThat(batchDao.countByStatusGroupedByClientId(ClaimValidationBatch.Status.PENDING).isEmpty(), is(true));
+
+		passBackoff();
+
+		List<ClaimValidationBatch> claimed = manager.claimPendingBatches(10);
+		assertThat(claimed.size(), is(1));
+		assertThat(recordDao.get(recordId).getStatus(), is(ClaimValidationRecord.Status.PENDING));
+		assertThat(runTracker.getProgress(batchId, claimed.get(0).getRunNumber()).getPendingCount(), is(1L));
+	}
+
+	@Test
+	public void completingARetriedRunClearsTheHoldOnTheBatch() throws Exception {
+		manager.completeRun(claimAndLeaveIncomplete());
+		passBackoff();
+		ClaimValidationBatch batch = manager.claimPendingBatches(10).get(0);
+		jdbcTemplate.update("update claim_validation_record set status = 'COMPLETE' where id = ?", recordId);
+
+		manager.completeRun(batch);
+
+		assertThat(batchDao.get(batchId).getStatus(), is(ClaimValidationBatch.Status.COMPLETE));
+		assertThat(jdbcTemplate.queryForObject("select not_before_date from claim_validation_batch where id = ?",
+				new Object[]{ batchId }, Timestamp.class), is((Timestamp) null));
+	}
+
+	@Test
+	public void runTrackerCountsCarriedOverDeferredRecords() throws Exception {
+		ClaimValidationBatch batch = claimAndLeaveIncomplete();
+
+		manager.completeRun(batch);
+
+		assertThat(runTracker.getProgress(batchId, batch.getRunNumber()).getPendingCount(), is(0L));
+		assertThat(runTracker.getProgress(batchId, batch.getRunNumber()).getDeferredCount(), is(1L));
+	}
+}
@@ -1,9 +1,15 @@
 package com.doradosystems.mis.manager;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.TransactionStatus;
 
 import com.doradosystems.exception.NotFoundException;
 import com.doradosystems.mis.dao.ClaimValidationBatchDao;
@@ -15,8 +21,16 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
 
 import static com.doradosystems.mis.util.ClaimValidationFactoryTestUtil.newClaimValidationBatch;
 import static com.doradosystems.mis.util.ClaimValidationFactoryTestUtil.newClaimValidationRecord;
@@ -82,5 +96,111 @@ public class ClaimValidationBatchManagerTest {
 				eq(ClaimValidationRecord.Status.PENDING));
 	}
 	
+	private ClaimValidationBatchManager newTransactionlessManager() {
+		ClaimValidationBatchManager manager = new ClaimValidationBatchManager() {
+			@Override
+			protected TransactionStatus getTransaction() {
+				return null;
+			}
+			
+			@Override
+			protected void commit(TransactionStatus status) {
+			}
+			
+			@Override
+			protected void rollback(TransactionStatus status) {
+			}
+		};
+		manager.setClaimValidationBatchDao(batchDao);
+		manager.setClaimValidationRecordDao(recordDao);
+		return manager;
+	}
+	
+	@Test
+	public void completeRunDefersAndFailsIncompleteRecordsByAttemptCount() throws Exception {
+		ClaimValidationBatch batch = newClaimValidationBatch(ClaimValidationBatch.Status.PROCESSING);
+		long batchId = batch.getId();
+		long runNumber = batch.getRunNumber();
+		Map<Integer, Integer> attempts = new TreeMap<>();
+		attempts.put(0, 10);
+		attempts.put(2, 1);
+		when(recordDao.countByBatchIdAndRunNumberAndStatus(batchId, runNumber, ClaimValidationRecord.Status.COMPLETE))
+				.thenReturn(5);
+		when(recordDao.countByBatchIdAndRunNumberAndStatusGroupedByAttemptCount(batchId, runNumber,
+				ClaimValidationRecord.Status.INCOMPLETE)).thenReturn(attempts);
+		when(recordDao.updateAttempt(eq(batchId), eq(runNumber), eq(ClaimValidationRecord.Status.INCOMPLETE), eq(0),
+				anyLong(), any(), any())).thenReturn(10);
+		ClaimValidationBatchManager manager = newTransactionlessManager();
+		manager.setMaxAttempts(3);
+		manager.setRetryBackoff(1000);
+		
+		long before = System.currentTimeMillis();
+		manager.completeRun(batch);
+		
+		ArgumentCaptor<Date> nextEligibleDate = ArgumentCaptor.forClass(Date.class);
+		verify(recordDao).updateAttempt(eq(batchId), eq(runNumber), eq(ClaimValidationRecord.Status.INCOMPLETE), eq(0),
+				eq(runNumber + 1), eq(ClaimValidationRecord.Status.DEFERRED), nextEligibleDate.capture());
+		assertThat(nextEligibleDate.getValue().getTime(), greaterThanOrEqualTo(before + 1000));
+		verify(recordDao).updateAttempt(eq(batchId), eq(runNumber), eq(ClaimValidationRecord.Status.INCOMPLETE), eq(2),
+				eq(runNumber), eq(ClaimValidationRecord.Status.FAILED), isNull());
+		verify(batchDao).updateStatusAndRunNumber(batchId, ClaimValidationBatch.Status.PENDING, runNumber + 1);
+	}
+	
+	@Test
+	public void completeRunCompletesBatchWhenOnlyFailedRecordsRemain() throws Exception {
+		ClaimValidationBatch batch = newClaimValidationBatch(ClaimValidationBatch.Status.PROCESSING);
+		long batchId = batch.getId();
+		long runNumber = batch.getRunNumber();
+		when(recordDao.countByBatchIdAndRunNumberAndStatusGroupedByAttemptCount(batchId, runNumber,
+				ClaimValidationRecord.Status.INCOMPLETE)).thenReturn(Collections.singletonMap(0, 4));
+		when(recordDao.updateAttempt(eq(batchId), eq(runNumber), eq(ClaimValidationRecord.Status.INCOMPLETE), eq(0),
+				anyLong(), any(), any())).thenReturn(4);
+		ClaimValidationBatchManager manager = newTransactionlessManager();
+		manager.setMaxAttempts(1);
+		
+		manager.completeRun(batch);
+		
+		verify(recordDao).updateAttempt(batchId, runNumber, ClaimValidationRecord.Status.INCOMPLETE, 0, runNumber,
+				ClaimValidationRecord.Status.FAILED, null);
+		verify(batchDao).updateStatusAndRunNumber(batchId, ClaimValidationBatch.Status.COMPLETE, runNumber);
+	}
+	
+	@Test
+	public void earliestDeadlineFirstClaimsTheMostUrgentBatchesAndRecordsThemPastDue() throws Exception {
+		ClaimValidationBatch pastDue = new ClaimValidationBatch(1L, 1L, "past-due", ClaimValidationBatch.Status.PENDING,
+				1L, "1", new Date(), new Date(), 1, new Date(System.currentTimeMillis() - 1000));
+		ClaimValidationBatch notDue = new ClaimValidationBatch(2L, 1L, "not-due", ClaimValidationBatch.Status.PENDING,
+				1L, "2", new Date(), new Date(), 5, null);
+		when(batchDao.getByStatusWithPriorityAndDueDateAscending(ClaimValidationBatch.Status.PENDING, 2))
+				.thenReturn(Arrays.asList(pastDue, notDue));
+		when(batchDao.updateStatusIfCurrent(anyLong(), eq(ClaimValidationBatch.Status.PENDING),
+				eq(ClaimValidationBatch.Status.PROCESSING))).thenReturn(true);
+		ClaimValidationDeadlineMetrics metrics = new ClaimValidationDeadlineMetrics();
+		ClaimValidationBatchManager manager = newTransactionlessManager();
+		manager.setBatchSelectionMode(ClaimValidationBatchManager.BatchSelectionMode.EARLIEST_DEADLINE_FIRST);
+		manager.setDeadlineMetrics(metrics);
+		
+		assertThat(manager.claimPendingBatches(2).get(0).getFilename(), is("past-due"));
+		
+		verify(batchDao, never()).lockByStatusWithCreateTimeAscending(any(), anyInt());
+		assertThat(metrics.getClaimedPastDueCount(), is(1L));
+	}
+	
+	@Test
+	public void completingABatchAfterItsDueDateRecordsItLate() throws Exception {
+		ClaimValidationBatch batch = new ClaimValidationBatch(1L, 1L, "late", ClaimValidationBatch.Status.PROCESSING,
+				1L, "1", new Date(), new Date(), 5, new Date(System.currentTimeMillis() - 1000));
+		when(recordDao.countByBatchIdAndRunNumberAndStatusGroupedByAttemptCount(1L, 1L,
+				ClaimValidationRecord.Status.INCOMPLETE)).thenReturn(Collections.emptyMap());
+		ClaimValidationDeadlineMetrics metrics = new ClaimValidationDeadlineMetrics();
+		ClaimValidationBatchManager manager = newTransactionlessManager();
+		manager.setDeadlineMetrics(metrics);
+		
+		manager.completeRun(batch);
+		
+		verify(batchDao).updateStatusAndRunNumber(1L, ClaimValidationBatch.Status.COMPLETE, 1L);
+		assertThat(metrics.getCompletedLateCount(), is(1L));
+		assertThat(metrics.getMaxLatenessMillis(), greaterThanOrEqualTo(1000L));
+	}
 
 }
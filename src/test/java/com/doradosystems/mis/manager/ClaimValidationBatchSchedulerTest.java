@@ -0,0 +1,111 @@
+package com.doradosystems.mis.manager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.doradosystems.mis.dao.ClaimValidationBatchDao;
+import com.doradosystems.mis.domain.ClaimValidationBatch;
+
+public class ClaimValidationBatchSchedulerTest {
+
+	private ClaimValidationBatchScheduler scheduler;
+	private ClaimValidationBatchDao batchDao;
+	private Map<Long, Integer> pending;
+	private Map<Long, Integer> processing;
+
+	@Before
+	public void setup() {
+		batchDao = mock(ClaimValidationBatchDao.class);
+		pending = new HashMap<>();
+		processing = new HashMap<>();
+		when(batchDao.countByStatusGroupedByClientId(ClaimValidationBatch.Status.PENDING)).thenReturn(pending);
+		when(batchDao.countByStatusGroupedByClientId(ClaimValidationBatch.Status.PROCESSING)).thenReturn(processing);
+		when(batchDao.getByClientIdAndStatusWithCreateTimeAscending(anyLong(), eq(ClaimValidationBatch.Status.PENDING),
+				anyInt())).thenAnswer(invocation -> {
+					long clientId = invocation.getArgument(0);
+					int limit = invocation.getArgument(2);
+					List<ClaimValidationBatch> batches = new ArrayList<>();
+					for(int i = 0; i < limit; i++) {
+						batches.add(new ClaimValidationBatch(clientId * 100 + i, clientId, "file" + i,
+								ClaimValidationBatch.Status.PENDING, 1L, "1", new Date(), new Date()));
+					}
+					return batches;
+				});
+		scheduler = new ClaimValidationBatchScheduler();
+		scheduler.setClaimValidationBatchDao(batchDao);
+	}
+
+	private static List<Long> clientsOf(List<ClaimValidationBatch> batches) {
+		return batches.stream().map(ClaimValidationBatch::getClientId).collect(Collectors.toList());
+	}
+
+	@Test
+	public void largeClientTakesTurnsWithSmallClients() {
+		pending.put(1L, 50);
+		pending.put(2L, 1);
+		pending.put(3L, 2);
+
+		List<ClaimValidationBatch> selected = scheduler.selectNext(6);
+
+		assertThat(clientsOf(selected), contains(1L, 2L, 3L, 1L, 3L, 1L));
+	}
+
+	@Test
+	public void weightsShareSlotsProportionally() {
+		pending.put(1L, 50);
+		pending.put(2L, 50);
+		Map<Long, Integer> weights = new HashMap<>();
+		weights.put(1L, 3);
+		scheduler.setClientWeights(weights);
+
+		List<Long> clients = clientsOf(scheduler.selectNext(8));
+
+		assertThat(clients.stream().filter(clientId -> clientId == 1L).count(), is(6L));
+		assertThat(clients.stream().filter(clientId -> clientId == 2L).count(), is(2L));
+	}
+
+	@Test
+	public void clientsAtTheirConcurrencyLimitAreSkipped() {
+		pending.put(1L, 50);
+		pending.put(2L, 50);
+		processing.put(1L, 2);
+		scheduler.setMaxConcurrentBatchesPerClient(2);
+
+		List<ClaimValidationBatch> selected = scheduler.selectNext(3);
+
+		assertThat(clientsOf(selected), contains(2L, 2L));
+		verify(batchDao, never()).getByClientIdAndStatusWithCreateTimeAscending(eq(1L),
+				eq(ClaimValidationBatch.Status.PENDING), anyInt());
+	}
+
+	@Test
+	public void fairnessCarriesAcrossSelections() {
+		pending.put(1L, 50);
+		pending.put(2L, 50);
+
+		List<Long> first = clientsOf(scheduler.selectNext(1));
+		List<Long> second = clientsOf(scheduler.selectNext(1));
+
+		assertThat(first, contains(1L));
+		assertThat(second, contains(2L));
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.doradosystems.mis.manager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.doradosystems.mis.domain.ClaimValidationBatch;
+
+public class ClaimValidationDeadlineMetricsTest {
+
+	private ClaimValidationDeadlineMetrics metrics = new ClaimValidationDeadlineMetrics();
+
+	private ClaimValidationBatch batchDueAt(Long dueDate) {
+		return new ClaimValidationBatch(1L, 1L, "batch", ClaimValidationBatch.Status.PROCESSING, 1L, "1", null, null,
+				5, dueDate == null ? null : new Date(dueDate));
+	}
+
+	@Test
+	public void claimsAreOnlyCountedOnceDue() {
+		metrics.recordClaimed(batchDueAt(1000L), new Date(1000));
+		metrics.recordClaimed(batchDueAt(1000L), new Date(1001));
+		metrics.recordClaimed(batchDueAt(null), new Date(5000));
+
+		assertThat(metrics.getClaimedPastDueCount(), is(1L));
+	}
+
+	@Test
+	public void completionsAreCountedOnTimeOrLateWithTheirLateness() {
+		metrics.recordCompleted(batchDueAt(1000L), new Date(1000));
+		metrics.recordCompleted(batchDueAt(1000L), new Date(1500));
+		metrics.recordCompleted(batchDueAt(1000L), new Date(3000));
+
+		assertThat(metrics.getCompletedOnTimeCount(), is(1L));
+		assertThat(metrics.getCompletedLateCount(), is(2L));
+		assertThat(metrics.getTotalLatenessMillis(), is(2500L));
+		assertThat(metrics.getMaxLatenessMillis(), is(2000L));
+	}
+
+	@Test
+	public void batchesWithoutADueDateAreNotCounted() {
+		metrics.recordCompleted(batchDueAt(null), new Date());
+
+		assertThat(metrics.getCompletedOnTimeCount(), is(0L));
+		assertThat(metrics.getCompletedLateCount(), is(0L));
+	}
+}
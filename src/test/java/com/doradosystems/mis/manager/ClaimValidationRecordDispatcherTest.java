@@ -0,0 +1,227 @@
+package com.doradosystems.mis.manager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import com.doradosystems.mis.dao.ClaimValidationRecordDao;
+import com.doradosystems.mis.dao.SqlDialect;
+import com.doradosystems.mis.domain.ClaimValidationBatch;
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+import com.doradosystems.mis.kafka.event.ProcessClaimValidationRecordEvent;
+import com.doradosystems.mis.kafka.event.ProcessClaimValidationRecordEventKey;
+import com.doradosystems.mis.kafka.serialization.CompactProcessClaimValidationRecordEventFormat;
+import com.doradosystems.mis.kafka.serialization.ProcessClaimValidationRecordEventDeserializer;
+import com.doradosystems.mis.kafka.serialization.SerializedEventCache;
+
+public class ClaimValidationRecordDispatcherTest {
+
+	private JdbcTemplate jdbcTemplate;
+	private ClaimValidationRecordDao recordDao;
+	private ClaimValidationRecordDispatcher dispatcher;
+	private LocalProducer producer;
+	private ClaimValidationBatch batch;
+
+	@Before
+	public void setup() throws Exception {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:dispatch" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+		DatabasePopulatorUtils.execute(
+				new ResourceDatabasePopulator(new ClassPathResource("load/claim-validation-schema.sql")), dataSource);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		recordDao = new ClaimValidationRecordDao(dataSource, SqlDialect.H2);
+		for(int i = 0; i < 50; i++) {
+			recordDao.add(new ClaimValidationRecord(null, 1L, 2L, i % 10 == 9 ? ClaimValidationRecord.Status.COMPLETE
+					: ClaimValidationRecord.Status.PENDING, "C" + i, "CLM*C" + i + "~", null, null));
+		}
+		batch = new ClaimValidationBatch(1L, 7L, "file", ClaimValidationBatch.Status.PROCESSING, 2L, "1", null, null);
+
+		producer = new LocalProducer();
+		dispatcher = new ClaimValidationRecordDispatcher();
+		dispatcher.setClaimValidationRecordDao(recordDao);
+		dispatcher.setProducer(producer);
+		dispatcher.setTopic("claims");
+		dispatcher.setPageSize(7);
+		dispatcher.setMaxInFlight(4);
+		dispatcher.setFailureFlushSize(2);
+	}
+
+	@After
+	public void shutdown() {
+		producer.acks.shutdownNow();
+	}
+
+	private int count(ClaimValidationRecord.Status status) {
+		return jdbcTemplate.queryForObject("select count(0) from claim_validation_record where status = ?",
+				new Object[]{ status.toString() }, Integer.class);
+	}
+
+	@Test
+	public void everyPendingRecordIsSentWithBoundedInFlight() throws Exception {
+		assertThat(dispatcher.dispatch(batch), is(45L));
+
+		assertThat(producer.keys.size(), is(45));
+		assertThat(producer.maxInFlight.get(), lessThanOrEqualTo(4));
+		assertThat(producer.maxInFlight.get(), greaterThan(1));
+		assertThat(dispatcher.getDispatchedRecords(), is(45L));
+		assertThat(dispatcher.getDispatchedBytes(), greaterThan(0L));
+		assertThat(count(ClaimValidationRecord.Status.INCOMPLETE), is(0));
+	}
+
+	@Test
+	public void failedSendsAreMarkedIncompleteInBulk() throws Exception {
+		producer.failing.addAll(Arrays.asList(3L, 4L, 5L, 31L, 48L));
+		jdbcTemplate.update("update claim_validation_record set status = 'COMPLETE' where id = 48");
+
+		assertThat(dispatcher.dispatch(batch), is(40L));
+
+		assertThat(count(ClaimValidationRecord.Status.INCOMPLETE), is(4));
+		assertThat(dispatcher.getFailedRecords(), is(4L));
+		assertThat(recordDao.get(31L).getStatus(), is(ClaimValidationRecord.Status.INCOMPLETE));
+	}
+
+	@Test
+	public void completedRecordsAreNotMarkedIncomplete() throws Exception {
+		producer.failing.add(12L);
+		producer.completeBeforeFailing = true;
+
+		dispatcher.dispatch(batch);
+
+		assertThat(recordDao.get(12L).getStatus(), is(ClaimValidationRecord.Status.COMPLETE));
+	}
+
+	@Test
+	public void retriedRecordsAreRedispatchedFromTheCache() throws Exception {
+		SerializedEventCache cache = new SerializedEventCache(1000, 1 << 20);
+		dispatcher.setSerializedEventCache(cache);
+		dispatcher.dispatch(batch);
+		assertThat(cache.getMisses(), is(45L));
+
+		// Roll the records into the next run, and change a body to show it is not read again.
+		jdbcTemplate.update("update claim_validation_record set run_number = 3, attempt_count = 1 where status = 'PENDING'");
+		jdbcTemplate.update("update claim_validation_record set record = 'changed' where id = 1");
+		producer.values.clear();
+		dispatcher.dispatch(new ClaimValidationBatch(1L, 7L, "file", ClaimValidationBatch.Status.PROCESSING, 3L, "1",
+				null, null));
+
+		assertThat(cache.getHits(), is(45L));
+		assertThat(producer.values.size(), is(45));
+		ClaimValidationRecord redispatched = new ProcessClaimValidationRecordEventDeserializer()
+				.deserialize("claims", producer.values.get(ProcessClaimValidationRecordEventKey.of(1L, 3L, 1L)))
+				.getClaimValidationRecord();
+		assertThat(redispatched.getRunNumber(), is(3L));
+		assertThat(redispatched.getAttemptCount(), is(1));
+		assertThat(redispatched.getRecord(), is("CLM*C0~"));
+	}
+
+	@Test
+	public void recordsArchivedBeforeTheirBodiesAreReadAreSkipped() throws Exception {
+		ClaimValidationRecordDao archivingDao = spy(recordDao);
+		doAnswer(invocation -> {
+			jdbcTemplate.update("delete from claim_validation_record where id = 5");
+			return invocation.callRealMethod();
+		}).when(archivingDao).getRecordBodies(any());
+		SerializedEventCache cache = new SerializedEventCache(1000, 1 << 20);
+		dispatcher.setClaimValidationRecordDao(archivingDao);
+		dispatcher.setSerializedEventCache(cache);
+
+		assertThat(dispatcher.dispatch(batch), is(44L));
+
+		assertThat(producer.keys.contains(ProcessClaimValidationRecordEventKey.of(1L, 2L, 5L)), is(false));
+		assertThat(producer.keys.contains(ProcessClaimValidationRecordEventKey.of(1L, 2L, 6L)), is(true));
+		assertThat(cache.contains(5), is(false));
+		assertThat(cache.size(), is(44));
+	}
+
+	@Test
+	public void compactEventsAreEncodedFromABlock() throws Exception {
+		dispatcher.setCompactEvents(true);
+
+		assertThat(dispatcher.dispatch(batch), is(45L));
+
+		assertThat(producer.values.size(), is(45));
+		byte[] value = producer.values.get(ProcessClaimValidationRecordEventKey.of(1L, 2L, 11L));
+		assertThat(CompactProcessClaimValidationRecordEventFormat.isCompact(value), is(true));
+		ProcessClaimValidationRecordEvent event = new ProcessClaimValidationRecordEventDeserializer()
+				.deserialize("claims", value);
+		assertThat(event.getClientId(), is(7L));
+		assertThat(event.getClaimValidationRecord().getId(), is(11L));
+		assertThat(event.getClaimValidationRecord().getRecord(), is("CLM*C10~"));
+		assertThat(event.getClaimValidationRecord().getStatus(), is(ClaimValidationRecord.Status.PENDING));
+	}
+
+	/**
+	 * A stand-in for a Kafka producer that acknowledges sends asynchronously, fails the
+	 * sends of chosen record ids, and tracks how many sends are outstanding.
+	 */
+	private class LocalProducer extends MockProducer<String, byte[]> {
+
+		private final ScheduledExecutorService acks = Executors.newSingleThreadScheduledExecutor();
+		private final Set<String> keys = Collections.synchronizedSet(new HashSet<>());
+		private final Map<String, byte[]> values = new ConcurrentHashMap<>();
+		private final Set<Long> failing = Collections.synchronizedSet(new HashSet<>());
+		private final AtomicInteger inFlight = new AtomicInteger();
+		private final AtomicInteger maxInFlight = new AtomicInteger();
+		private volatile boolean completeBeforeFailing;
+
+		private LocalProducer() {
+			super(false, new StringSerializer(), new ByteArraySerializer());
+		}
+
+		@Override
+		public Future<RecordMetadata> send(ProducerRecord<String, byte[]> record, Callback callback) {
+			keys.add(record.key());
+			values.put(record.key(), record.value());
+			maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			long recordId = ProcessClaimValidationRecordEventKey.recordIdOf(record.key());
+			acks.schedule(() -> {
+				inFlight.decrementAndGet();
+				if(failing.contains(recordId)) {
+					if(completeBeforeFailing) {
+						jdbcTemplate.update("update claim_validation_record set status = 'COMPLETE' where id = ?",
+								recordId);
+					}
+					callback.onCompletion(null, new IllegalStateException("broker unavailable"));
+				} else {
+					callback.onCompletion(new RecordMetadata(new TopicPartition(record.topic(), 0), 0, 0, 0, 0, 0, 0),
+							null);
+				}
+			}, 1, TimeUnit.MILLISECONDS);
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,96 @@
+package com.doradosystems.mis.manager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.doradosystems.mis.dao.ClaimValidationResponseDao;
+import com.doradosystems.mis.domain.ClaimValidationResponse;
+import com.doradosystems.mis.domain.IsaSegment;
+
+public class ClaimValidationResponseFileWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ClaimValidationResponseFileWriter writer;
+	private ClaimValidationResponseDao responseDao;
+	private List<ClaimValidationResponse> responses;
+
+	@Before
+	public void setup() {
+		responseDao = mock(ClaimValidationResponseDao.class);
+		responses = new ArrayList<>();
+		when(responseDao.get(1L, 1L)).thenReturn(responses);
+		AtomicLong controlNumbers = new AtomicLong(100);
+		writer = new ClaimValidationResponseFileWriter();
+		writer.setClaimValidationResponseDao(responseDao);
+		writer.setControlNumbers(controlNumbers::incrementAndGet);
+		writer.setThreads(4);
+	}
+
+	private void addResponses(int count) {
+		for(int i = 0; i < count; i++) {
+			responses.add(new ClaimValidationResponse((long) i, 1L, 1L, ClaimValidationResponse.Status.PENDING,
+					"C" + i, "BHT*0085*08*" + i + "~HL*1**20*1~", null, null, (long) i));
+		}
+	}
+
+	private static String read(Path path) throws Exception {
+		return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void splitsByResponseCountWithSequentialControlNumbers() throws Exception {
+		addResponses(7);
+		writer.setMaxResponsesPerInterchange(3);
+
+		List<Path> files = writer.write(IsaSegment.DEFAULT_VALUES, 1, 1, folder.getRoot().toPath(), "run");
+
+		assertThat(files.size(), is(3));
+		String second = read(files.get(1));
+		assertThat(files.get(1).getFileName().toString(), is("run.002"));
+		assertThat(second, startsWith("ISA*"));
+		assertThat(second, containsString("*000000102* * * ~GS*HN*"));
+		assertThat(second, containsString("~ST*277*0001*005010X214~BHT*0085*08*3~HL*1**20*1~SE*4*0001~"));
+		assertThat(second, endsWith("~GE*3*102~IEA*1*000000102~"));
+		assertThat(read(files.get(2)), endsWith("~GE*1*103~IEA*1*000000103~"));
+	}
+
+	@Test
+	public void splitsBySize() throws Exception {
+		addResponses(10);
+		writer.setMaxBytesPerInterchange(200);
+
+		List<Path> files = writer.write(IsaSegment.DEFAULT_VALUES, 1, 1, folder.getRoot().toPath(), "run");
+
+		assertThat(files.size(), is(5));
+		for(Path file : files) {
+			assertThat(read(file), containsString("~GE*2*"));
+		}
+	}
+
+	@Test
+	public void runWithoutResponsesWritesNothing() throws Exception {
+		assertThat(writer.write(IsaSegment.DEFAULT_VALUES, 1, 1, folder.getRoot().toPath(), "run").isEmpty(),
+				is(true));
+		assertThat(folder.getRoot().list().length, is(0));
+	}
+
+}
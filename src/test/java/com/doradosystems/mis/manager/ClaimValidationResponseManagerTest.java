@@ -0,0 +1,150 @@
+package com.doradosystems.mis.manager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import com.doradosystems.mis.dao.ClaimValidationRecordDao;
+import com.doradosystems.mis.dao.ClaimValidationResponseDao;
+import com.doradosystems.mis.dao.SqlDialect;
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+import com.doradosystems.mis.domain.ClaimValidationResponse;
+import com.doradosystems.mis.kafka.event.ProcessClaimValidationRecordEvent;
+import com.doradosystems.mis.kafka.serialization.CompactProcessClaimValidationRecordEventFormat;
+import com.doradosystems.mis.kafka.serialization.SerializedEventCache;
+
+public class ClaimValidationResponseManagerTest {
+
+	private JdbcTemplate jdbcTemplate;
+	private ClaimValidationRecordDao recordDao;
+	private ClaimValidationResponseDao responseDao;
+	private ClaimValidationResponseManager manager;
+	private ClaimValidationRecord record;
+
+	@Before
+	public void setup() throws Exception {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:responses" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000", "sa", "");
+		DatabasePopulatorUtils.execute(
+				new ResourceDatabasePopulator(new ClassPathResource("load/claim-validation-schema.sql")), dataSource);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		recordDao = new ClaimValidationRecordDao(dataSource, SqlDialect.H2);
+		responseDao = new ClaimValidationResponseDao(dataSource, SqlDialect.H2);
+		manager = new ClaimValidationResponseManager();
+		manager.setTransactionManager(new DataSourceTransactionManager(dataSource));
+		manager.setClaimValidationRecordDao(recordDao);
+		manager.setClaimValidationResponseDao(responseDao);
+		manager.setIdempotentResponses(true);
+
+		jdbcTemplate.update("insert into claim_validation_batch(id, client_id, status, run_number) "
+				+ "values(1, 1, 'PROCESSING', 1)");
+		long recordId = recordDao.add(new ClaimValidationRecord(null, 1L, 1L, ClaimValidationRecord.Status.PENDING,
+				"C1", "CLM*C1~", null, null));
+		record = recordDao.get(recordId);
+	}
+
+	private int responseCount() {
+		return jdbcTemplate.queryForObject(
+				"select count(0) from claim_validation_response where claim_validation_record_id = ?",
+				new Object[]{ record.getId() }, Integer.class);
+	}
+
+	@Test
+	public void responseIsStoredOnceWithItsId() throws Exception {
+		ClaimValidationResponse response = manager.createResponse("STC*A1~", record);
+
+		assertThat(response.getId(), is(notNullValue()));
+		assertThat(responseDao.getByClaimValidationRecordId(record.getId()).getId(), is(response.getId()));
+		assertThat(recordDao.get(record.getId()).getStatus(), is(ClaimValidationRecord.Status.COMPLETE));
+		assertThat(responseDao.upsert(new ClaimValidationResponse(null, 1L, 1L, ClaimValidationResponse.Status.PENDING,
+				"C1", "STC*A2~", null, null, record.getId())), is(false));
+		assertThat(responseCount(), is(1));
+	}
+
+	@Test
+	public void completedRecordIsDroppedFromTheEventCache() throws Exception {
+		SerializedEventCache cache = new SerializedEventCache(100, 1 << 20);
+		cache.put(record.getId(), CompactProcessClaimValidationRecordEventFormat.write(
+				new ProcessClaimValidationRecordEvent(1L, record)));
+		manager.setSerializedEventCache(cache);
+
+		manager.createResponse("STC*A1~", record);
+
+		assertThat(cache.contains(record.getId()), is(false));
+	}
+
+	@Test
+	public void replayReturnsTheExistingResponse() throws Exception {
+		ClaimValidationResponse first = manager.createResponse("STC*A1~", record);
+
+		ClaimValidationResponse replayed = manager.createResponse("STC*A2~", record);
+
+		assertThat(replayed.getId(), is(first.getId()));
+		assertThat(replayed.getResponse(), is("STC*A1~"));
+		assertThat(responseCount(), is(1));
+	}
+
+	@Test
+	public void replayInAUnitOfWorkReturnsTheExistingResponse() throws Exception {
+		ClaimValidationResponse first = manager.createResponse("STC*A1~", record);
+		List<ClaimValidationResponse> replayed = new ArrayList<>();
+
+		manager.inUnitOfWork(session -> {
+			try {
+				replayed.add(session.createResponse("STC*A2~", record));
+			} catch (Exception exception) {
+				throw new IllegalStateException(exception);
+			}
+		});
+
+		assertThat(replayed.get(0).getId(), is(first.getId()));
+		assertThat(responseCount(), is(1));
+	}
+
+	@Test
+	public void concurrentDuplicatesStoreOneResponse() throws Exception {
+		int deliveries = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(deliveries);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<ClaimValidationResponse>> results = new ArrayList<>();
+		for(int i = 0; i < deliveries; i++) {
+			String payload = "STC*A" + i + "~";
+			results.add(executor.submit(() -> {
+				start.await();
+				return manager.createResponse(payload, record);
+			}));
+		}
+		start.countDown();
+
+		List<ClaimValidationResponse> responses = new ArrayList<>();
+		for(Future<ClaimValidationResponse> result : results) {
+			responses.add(result.get(30, TimeUnit.SECONDS));
+		}
+		executor.shutdown();
+
+		assertThat(responseCount(), is(1));
+		Long storedId = responseDao.getByClaimValidationRecordId(record.getId()).getId();
+		for(ClaimValidationResponse response : responses) {
+			assertThat(response.getId() == null || response.getId().equals(storedId), is(true));
+		}
+		assertThat(recordDao.get(record.getId()).getStatus(), is(ClaimValidationRecord.Status.COMPLETE));
+	}
+}
@@ -0,0 +1,105 @@
+package com.doradosystems.mis.manager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.doradosystems.mis.dao.ClaimValidationResultCacheDao;
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+
+public class ClaimValidationResultCacheTest {
+
+	private ClaimValidationResultCache cache;
+	private ClaimValidationResultCacheDao dao;
+
+	@Before
+	public void setup() {
+		dao = mock(ClaimValidationResultCacheDao.class);
+		cache = new ClaimValidationResultCache();
+		cache.setClaimValidationResultCacheDao(dao);
+		cache.setMaxEntries(2);
+	}
+
+	private static ClaimValidationRecord record(String claim) {
+		return record(1L, claim);
+	}
+
+	private static ClaimValidationRecord record(long id, String claim) {
+		return new ClaimValidationRecord(id, 1L, 1L, ClaimValidationRecord.Status.PENDING, "1", claim, new Date(),
+				new Date());
+	}
+
+	@Test
+	public void hashIgnoresLineBreaksAndSurroundingWhitespace() {
+		assertThat(ClaimValidationResultCache.contentHash(1, "1", "CLM*1*100~\r\nNM1*85~\n"),
+				is(ClaimValidationResultCache.contentHash(1, "1", "  CLM*1*100~NM1*85~")));
+	}
+
+	@Test
+	public void hashDependsOnClientAndRuleVersion() {
+		String hash = ClaimValidationResultCache.contentHash(1, "1", "CLM*1*100~");
+		assertThat(ClaimValidationResultCache.contentHash(2, "1", "CLM*1*100~"), not(hash));
+		assertThat(ClaimValidationResultCache.contentHash(1, "2", "CLM*1*100~"), not(hash));
+		assertThat(ClaimValidationResultCache.contentHash(1, "1", "CLM*1*101~"), not(hash));
+	}
+
+	@Test
+	public void cachedResponseIsServedFromMemory() {
+		cache.put(7, record("CLM*1*100~"), "accepted");
+
+		assertThat(cache.get(7, record("CLM*1*100~\n")), is("accepted"));
+		verify(dao, never()).getResponse(anyString());
+	}
+
+	@Test
+	public void evictedResponseIsReadBackFromTheDatabase() {
+		String hash = ClaimValidationResultCache.contentHash(7, "1", "CLM*1*100~");
+		when(dao.getResponse(hash)).thenReturn("accepted");
+		cache.put(7, record("CLM*1*100~"), "accepted");
+		cache.put(7, record("CLM*2*100~"), "rejected");
+		cache.put(7, record("CLM*3*100~"), "accepted");
+
+		assertThat(cache.get(7, record("CLM*1*100~")), is("accepted"));
+		assertThat(cache.get(7, record("CLM*1*100~")), is("accepted"));
+		verify(dao, times(1)).getResponse(hash);
+	}
+
+	@Test
+	public void claimsNotInMemoryAreLookedUpTogether() {
+		String hash = ClaimValidationResultCache.contentHash(7, "1", "CLM*2*100~");
+		when(dao.getResponses(anyList())).thenReturn(Collections.singletonMap(hash, "rejected"));
+		cache.put(7, record("CLM*1*100~"), "accepted");
+
+		Map<Long, String> responses = cache.getAll(7, Arrays.asList(record(1L, "CLM*1*100~"),
+				record(2L, "CLM*2*100~"), record(3L, "CLM*3*100~")));
+
+		assertThat(responses.size(), is(2));
+		assertThat(responses.get(1L), is("accepted"));
+		assertThat(responses.get(2L), is("rejected"));
+		verify(dao, times(1)).getResponses(anyList());
+		verify(dao, never()).getResponse(anyString());
+		assertThat(cache.get(7, record("CLM*2*100~")), is("rejected"));
+	}
+
+	@Test
+	public void unknownClaimIsAMiss() {
+		assertThat(cache.get(7, record("CLM*9*100~")), is(nullValue()));
+	}
+
+}
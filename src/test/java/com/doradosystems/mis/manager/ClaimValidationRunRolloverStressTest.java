@@ -0,0 +1,281 @@
+package com.doradosystems.mis.manager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assume.assumeThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import com.doradosystems.mis.dao.ClaimValidationBatchDao;
+import com.doradosystems.mis.dao.ClaimValidationRecordDao;
+import com.doradosystems.mis.dao.ClaimValidationResponseDao;
+import com.doradosystems.mis.dao.SqlDialect;
+import com.doradosystems.mis.domain.ClaimValidationBatch;
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+
+/**
+ * Runs {@link ClaimValidationBatchManager#completeRun(ClaimValidationBatch)} and
+ * {@link ClaimValidationResponseManager#createResponse(String, ClaimValidationRecord)}
+ * concurrently on the same runs, against an embedded database, with randomized delays,
+ * dropped replies and duplicate deliveries, and checks that:
+ * <ul>
+ * <li>no record is lost: every record ends up COMPLETE and every batch COMPLETE;</li>
+ * <li>no response is orphaned: every response belongs to a COMPLETE record, in a run
+ * no later than the record's, and every record has exactly one response;</li>
+ * <li>run numbers are monotonic: no record or batch is ever seen to go back a run,
+ * and no record is ever seen in a later run than its batch, both checked by a
+ * sampler while the test runs.</li>
+ * </ul>
+ * Runs are completed without waiting for their replies, so late replies usually
+ * arrive after the run they were dispatched in has been rolled over; the stress test
+ * is skipped if none did, and {@link #lateReplyAfterRolloverCompletesTheRecord()}
+ * forces one deterministically. A failed
+ * operation is retried, as a redelivered event or rescheduled run would be. The seed
+ * is logged, so a failing interleaving can be replayed with {@code -Dstress.seed}.
+ */
+public class ClaimValidationRunRolloverStressTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ClaimValidationRunRolloverStressTest.class);
+
+	private static final int BATCHES = 6;
+	private static final int RECORDS_PER_BATCH = 40;
+	private static final int VALIDATORS = 8;
+	private static final int COORDINATORS = 3;
+	private static final long TIME_LIMIT = TimeUnit.SECONDS.toMillis(60);
+
+	private JdbcTemplate jdbcTemplate;
+	private ClaimValidationBatchDao batchDao;
+	private ClaimValidationRecordDao recordDao;
+	private ClaimValidationBatchManager batchManager;
+	private ClaimValidationResponseManager responseManager;
+
+	private final BlockingQueue<ClaimValidationRecord> deliveries = new LinkedBlockingQueue<>();
+	private final ConcurrentLinkedQueue<String> violations = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean running = new AtomicBoolean(true);
+
+	@Before
+	public void setup() throws Exception {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:stress" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000", "sa", "");
+		DatabasePopulatorUtils.execute(
+				new ResourceDatabasePopulator(new ClassPathResource("load/claim-validation-schema.sql")), dataSource);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+
+		batchDao = new ClaimValidationBatchDao(dataSource, SqlDialect.H2);
+		recordDao = new ClaimValidationRecordDao(dataSource, SqlDialect.H2);
+		batchManager = new ClaimValidationBatchManager();
+		batchManager.setTransactionManager(transactionManager);
+		batchManager.setClaimValidationBatchDao(batchDao);
+		batchManager.setClaimValidationRecordDao(recordDao);
+		responseManager = new ClaimValidationResponseManager();
+		responseManager.setTransactionManager(transactionManager);
+		responseManager.setClaimValidationRecordDao(recordDao);
+		responseManager.setClaimValidationResponseDao(new ClaimValidationResponseDao(dataSource, SqlDialect.H2));
+		responseManager.setIdempotentResponses(true);
+
+		for(int b = 0; b < BATCHES; b++) {
+			long batchId = batchDao.add(new ClaimValidationBatch(null, 1L, "stress" + b, ClaimValidationBatch.Status.PENDING,
+					1L, String.valueOf(b), null, null));
+			for(int r = 0; r < RECORDS_PER_BATCH; r++) {
+				recordDao.add(new ClaimValidationRecord(null, batchId, 1L, ClaimValidationRecord.Status.PENDING,
+						"S" + b + "-" + r, "CLM*S" + b + "-" + r + "~", null, null));
+			}
+		}
+	}
+
+	@Test
+	public void lateRepliesRacingRunRolloverLoseNothing() throws Exception {
+		long seed = Long.getLong("stress.seed", System.nanoTime());
+		LOG.info("Stress seed {}", seed);
+		Random seeds = new Random(seed);
+
+		ExecutorService threads = Executors.newFixedThreadPool(VALIDATORS + COORDINATORS + 1);
+		List<Future<?>> futures = new ArrayList<>();
+		for(int i = 0; i < VALIDATORS; i++) {
+			Random random = new Random(seeds.nextLong());
+			futures.add(threads.submit(() -> {
+				validate(random);
+				return null;
+			}));
+		}
+		for(int i = 0; i < COORDINATORS; i++) {
+			Random random = new Random(seeds.nextLong());
+			futures.add(threads.submit(() -> {
+				coordinate(random);
+				return null;
+			}));
+		}
+		futures.add(threads.submit(() -> {
+			watchRunNumbers();
+			return null;
+		}));
+
+		long deadline = System.currentTimeMillis() + TIME_LIMIT;
+		while(batchDao.countByStatus(ClaimValidationBatch.Status.COMPLETE) < BATCHES
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		running.set(false);
+		threads.shutdown();
+		for(Future<?> future : futures) {
+			future.get(10, TimeUnit.SECONDS);
+		}
+
+		int lateReplies = jdbcTemplate.queryForObject("select count(0) from claim_validation_response s "
+				+ "join claim_validation_record r on r.id = s.claim_validation_record_id where s.run_number < r.run_number",
+				Integer.class);
+		LOG.info("{} replies arrived after their run was rolled over.", lateReplies);
+		assertThat("seed " + seed, violations, is(empty()));
+		assertThat("seed " + seed, batchDao.countByStatus(ClaimValidationBatch.Status.COMPLETE), is(BATCHES));
+		assertThat("seed " + seed, jdbcTemplate.queryForObject(
+				"select count(0) from claim_validation_record where status <> 'COMPLETE'", Integer.class), is(0));
+		assertThat("seed " + seed, jdbcTemplate.queryForObject(
+				"select count(0) from claim_validation_record r where (select count(0) from claim_validation_response s "
+						+ "where s.claim_validation_record_id = r.id) <> 1", Integer.class), is(0));
+		assertThat("seed " + seed, jdbcTemplate.queryForObject(
+				"select count(0) from claim_validation_response s left join claim_validation_record r "
+						+ "on r.id = s.claim_validation_record_id where r.id is null or r.status <> 'COMPLETE' "
+						+ "or r.batch_id <> s.batch_id or s.run_number > r.run_number", Integer.class), is(0));
+		assertThat("seed " + seed, jdbcTemplate.queryForObject(
+				"select count(0) from claim_validation_record r join claim_validation_batch b on b.id = r.batch_id "
+						+ "where r.run_number > b.run_number", Integer.class), is(0));
+		assumeThat("no reply raced a rollover; seed " + seed, lateReplies, greaterThan(0));
+	}
+
+	@Test
+	public void lateReplyAfterRolloverCompletesTheRecord() throws Exception {
+		ClaimValidationBatch batch = batchManager.claimPendingBatches(1).get(0);
+		List<ClaimValidationRecord> records = recordDao.getByBatchIdAndRunNumber(batch.getId(), batch.getRunNumber());
+		responseManager.createResponse("STC*A1:20*" + records.get(0).getClaimNumber() + "~", records.get(0));
+		ClaimValidationRecord late = records.get(1);
+
+		batchManager.completeRun(batch);
+		assertThat(recordDao.get(late.getId()).getRunNumber(), is(batch.getRunNumber() + 1));
+		responseManager.createResponse("STC*A1:20*" + late.getClaimNumber() + "~", late);
+
+		assertThat(recordDao.get(late.getId()).getStatus(), is(ClaimValidationRecord.Status.COMPLETE));
+		assertThat(jdbcTemplate.queryForObject("select count(0) from claim_validation_response "
+				+ "where claim_validation_record_id = ? and run_number < ?",
+				new Object[]{ late.getId(), batch.getRunNumber() + 1 }, Integer.class), is(1));
+		assertThat(jdbcTemplate.queryForObject("select count(0) from claim_validation_record r "
+				+ "join claim_validation_batch b on b.id = r.batch_id where r.run_number > b.run_number",
+				Integer.class), is(0));
+	}
+
+	/**
+	 * Answers delivered records after a random delay. Some replies are dropped, as if
+	 * the validator timed out, some are delivered twice, and failed ones are redelivered.
+	 */
+	private void validate(Random random) throws Exception {
+		while(running.get()) {
+			ClaimValidationRecord record = deliveries.poll(10, TimeUnit.MILLISECONDS);
+			if(record == null) {
+				continue;
+			}
+			Thread.sleep(random.nextInt(3));
+			int roll = random.nextInt(100);
+			if(roll < 10) {
+				continue;
+			}
+			if(roll < 20) {
+				deliveries.add(record);
+			}
+			try {
+				responseManager.createResponse("STC*A1:20*" + record.getClaimNumber() + "~", record);
+			} catch (Exception exception) {
+				deliveries.add(record);
+			}
+		}
+	}
+
+	/**
+	 * Claims batches, delivers their pending records, and completes the run after a
+	 * random delay, without waiting for the replies.
+	 */
+	private void coordinate(Random random) throws Exception {
+		while(running.get()) {
+			List<ClaimValidationBatch> claimed;
+			try {
+				claimed = batchManager.claimPendingBatches(1 + random.nextInt(2));
+			} catch (Exception exception) {
+				continue;
+			}
+			if(claimed.isEmpty()) {
+				Thread.sleep(5);
+				continue;
+			}
+			for(ClaimValidationBatch batch : claimed) {
+				for(ClaimValidationRecord record : recordDao.getByBatchIdAndRunNumber(batch.getId(),
+						batch.getRunNumber())) {
+					if(record.getStatus() == ClaimValidationRecord.Status.PENDING) {
+						deliveries.add(record);
+					}
+				}
+			}
+			Thread.sleep(random.nextInt(8));
+			for(ClaimValidationBatch batch : claimed) {
+				while(running.get()) {
+					try {
+						batchManager.completeRun(batch);
+						break;
+					} catch (Exception exception) {
+						Thread.sleep(random.nextInt(3));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Samples every record's and batch's run number and reports any that go backwards,
+	 * and any record that is in a later run than its batch.
+	 */
+	private void watchRunNumbers() throws Exception {
+		Map<String, Long> last = new HashMap<>();
+		while(running.get()) {
+			jdbcTemplate.query("select 'r' || id as k, run_number from claim_validation_record union all "
+					+ "select 'b' || id as k, run_number from claim_validation_batch", rs -> {
+						String key = rs.getString(1);
+						long runNumber = rs.getLong(2);
+						Long previous = last.put(key, runNumber);
+						if(previous != null && runNumber < previous) {
+							violations.add(key + " went from run " + previous + " to " + runNumber);
+						}
+					});
+			jdbcTemplate.query("select r.id, r.run_number, b.run_number from claim_validation_record r "
+					+ "join claim_validation_batch b on b.id = r.batch_id where r.run_number > b.run_number", rs -> {
+						violations.add("r" + rs.getLong(1) + " is in run " + rs.getLong(2) + " but its batch in run "
+								+ rs.getLong(3));
+					});
+			Thread.sleep(1);
+		}
+	}
+
+}
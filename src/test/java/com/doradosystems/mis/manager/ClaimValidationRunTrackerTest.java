@@ -0,0 +1,108 @@
+package com.doradosystems.mis.manager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.doradosystems.mis.domain.ClaimValidationRunProgress;
+
+public class ClaimValidationRunTrackerTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ClaimValidationRunTrackerTest.class);
+
+	private ClaimValidationRunTracker tracker = new ClaimValidationRunTracker();
+
+	@Test
+	public void untrackedRunsAreIgnored() {
+		tracker.recordCompleted(1, 1);
+
+		assertThat(tracker.getProgress(1, 1), is(nullValue()));
+		assertThat(tracker.getProgress().size(), is(0));
+	}
+
+	@Test
+	public void rollOverCarriesUnfinishedRecordsIntoNewRun() {
+		tracker.track(1, 1, 10, 0, 0);
+		for(int i = 0; i < 7; i++) {
+			tracker.recordCompleted(1, 1);
+		}
+		tracker.recordIncomplete(1, 1);
+
+		ClaimValidationRunProgress progress = tracker.getProgress(1, 1);
+		assertThat(progress.getPendingCount(), is(2L));
+		assertThat(progress.getCompleteCount(), is(7L));
+		assertThat(progress.getIncompleteCount(), is(1L));
+
+		tracker.rollOver(1, 1, 2, 3);
+
+		assertThat(tracker.getProgress(1, 1), is(nullValue()));
+		assertThat(tracker.getProgress(1, 2).getPendingCount(), is(3L));
+	}
+
+	@Test
+	public void rollOverTracksRunsWithOnlyDeferredRecords() {
+		tracker.track(1, 1, 1, 0, 0);
+		tracker.recordIncomplete(1, 1);
+
+		tracker.rollOver(1, 1, 1, 0, 1);
+
+		ClaimValidationRunProgress progress = tracker.getProgress(1, 1);
+		assertThat(progress.getPendingCount(), is(0L));
+		assertThat(progress.getIncompleteCount(), is(0L));
+		assertThat(progress.getDeferredCount(), is(1L));
+	}
+
+	@Test
+	public void countsStayExactWith64UpdatingThreads() throws Exception {
+		int threads = 64;
+		int updatesPerThread = 50000;
+		int runs = 4;
+		for(long run = 0; run < runs; run++) {
+			tracker.track(1, run, threads * updatesPerThread / runs, 0, 0);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		for(int t = 0; t < threads; t++) {
+			long run = t % runs;
+			futures.add(executor.submit(() -> {
+				start.await();
+				for(int i = 0; i < updatesPerThread; i++) {
+					tracker.recordCompleted(1, run);
+				}
+				return null;
+			}));
+		}
+
+		long begin = System.nanoTime();
+		start.countDown();
+		for(Future<?> future : futures) {
+			future.get();
+		}
+		long elapsed = System.nanoTime() - begin;
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+
+		LOG.info("{} updates from {} threads took {} ms", threads * updatesPerThread, threads,
+				TimeUnit.NANOSECONDS.toMillis(elapsed));
+		for(long run = 0; run < runs; run++) {
+			ClaimValidationRunProgress progress = tracker.getProgress(1, run);
+			assertThat(progress.getPendingCount(), is(0L));
+			assertThat(progress.getCompleteCount(), is((long) threads * updatesPerThread / runs));
+		}
+	}
+
+}
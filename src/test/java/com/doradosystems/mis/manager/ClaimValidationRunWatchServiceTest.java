@@ -0,0 +1,147 @@
+package com.doradosystems.mis.manager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.doradosystems.mis.dao.ClaimValidationRecordDao;
+import com.doradosystems.mis.domain.ClaimValidationRecord;
+import com.doradosystems.mis.domain.ClaimValidationResponseIdentifier;
+import com.doradosystems.mis.domain.ClaimValidationRunStatusSummary;
+
+public class ClaimValidationRunWatchServiceTest {
+
+	private ClaimValidationRunWatchService service;
+	private ClaimValidationRecordDao recordDao;
+
+	@Before
+	public void setup() {
+		recordDao = mock(ClaimValidationRecordDao.class);
+		service = new ClaimValidationRunWatchService();
+		service.setClaimValidationRecordDao(recordDao);
+		service.setMinPollInterval(100);
+		service.setMaxPollInterval(400);
+	}
+
+	private static ClaimValidationRunStatusSummary summary(long batchId, long runNumber,
+			ClaimValidationRecord.Status status, long count) {
+		return new ClaimValidationRunStatusSummary(new ClaimValidationResponseIdentifier(batchId, runNumber), status,
+				count, new Date(), new Date());
+	}
+
+	@Test
+	public void oneQueryServesEveryWatchedRun() {
+		when(recordDao.summarizeByBatchIdAndRunNumber(anyCollection())).thenReturn(Arrays.asList(
+				summary(1, 1, ClaimValidationRecord.Status.PENDING, 5),
+				summary(1, 1, ClaimValidationRecord.Status.COMPLETE, 3),
+				summary(2, 1, ClaimValidationRecord.Status.COMPLETE, 8)));
+
+		CompletableFuture<Void> pendingRun = service.watch(1, 1, 60000);
+		CompletableFuture<Void> finishedRun = service.watch(2, 1, 60000);
+		CompletableFuture<Void> emptyRun = service.watch(3, 1, 60000);
+
+		service.tick();
+
+		verify(recordDao, times(1)).summarizeByBatchIdAndRunNumber(anyCollection());
+		assertThat(pendingRun.isDone(), is(false));
+		assertThat(finishedRun.isDone(), is(true));
+		assertThat(emptyRun.isDone(), is(true));
+	}
+
+	@Test
+	public void idleRunIsReleased() {
+		Date longAgo = new Date(System.currentTimeMillis() - 10000);
+		when(recordDao.summarizeByBatchIdAndRunNumber(anyCollection())).thenReturn(Arrays.asList(
+				new ClaimValidationRunStatusSummary(new ClaimValidationResponseIdentifier(1L, 1L),
+						ClaimValidationRecord.Status.PENDING, 5, longAgo, longAgo)));
+
+		CompletableFuture<Void> run = service.watch(1, 1, 5000);
+		service.tick();
+
+		assertThat(run.isDone(), is(true));
+	}
+
+	@Test
+	public void backsOffWhileNothingChanges() {
+		Date updated = new Date();
+		when(recordDao.summarizeByBatchIdAndRunNumber(anyCollection())).thenReturn(Arrays.asList(
+				new ClaimValidationRunStatusSummary(new ClaimValidationResponseIdentifier(1L, 1L),
+						ClaimValidationRecord.Status.PENDING, 5, updated, updated)));
+		service.watch(1, 1, 60000);
+
+		service.tick();
+		assertThat(service.getCurrentPollInterval(), is(100L));
+		service.tick();
+		assertThat(service.getCurrentPollInterval(), is(200L));
+		service.tick();
+		service.tick();
+		assertThat(service.getCurrentPollInterval(), is(400L));
+
+		service.watch(2, 1, 60000);
+		assertThat(service.getCurrentPollInterval(), is(100L));
+	}
+
+	@Test
+	public void startedServiceCompletesWaiters() throws Exception {
+		when(recordDao.summarizeByBatchIdAndRunNumber(anyCollection())).thenReturn(Arrays.asList(
+				summary(1, 1, ClaimValidationRecord.Status.COMPLETE, 5)));
+		service.start();
+		try {
+			service.awaitNoPendingRecords(1, 1, 60000);
+		} finally {
+			service.shutdown();
+		}
+	}
+
+	@Test
+	public void waitersFailOncePollingKeepsFailing() {
+		when(recordDao.summarizeByBatchIdAndRunNumber(anyCollection()))
+				.thenThrow(new IllegalStateException("database down"));
+		service.setMaxConsecutiveFailures(2);
+		CompletableFuture<Void> run = service.watch(1, 1, 60000);
+
+		service.poll();
+		assertThat(run.isDone(), is(false));
+		service.poll();
+
+		assertThat(run.isCompletedExceptionally(), is(true));
+		assertThat(service.getWaiterCount(), is(0));
+	}
+
+	@Test
+	public void interruptedCallersStopWatching() throws Exception {
+		when(recordDao.summarizeByBatchIdAndRunNumber(anyCollection())).thenReturn(Arrays.asList(
+				summary(1, 1, ClaimValidationRecord.Status.PENDING, 5)));
+		AtomicReference<Throwable> thrown = new AtomicReference<>();
+		Thread caller = new Thread(() -> {
+			try {
+				service.awaitNoPendingRecords(1, 1, 60000);
+			} catch (Throwable throwable) {
+				thrown.set(throwable);
+			}
+		});
+		caller.start();
+		while(service.getWaiterCount() == 0) {
+			Thread.sleep(1);
+		}
+
+		caller.interrupt();
+		caller.join(5000);
+
+		assertThat(thrown.get() instanceof InterruptedException, is(true));
+		assertThat(service.getWaiterCount(), is(0));
+	}
+
+}
@@ -0,0 +1,84 @@
+package com.doradosystems.mis.manager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.doradosystems.mis.dao.ControlNumberSequenceDao;
+import com.doradosystems.mis.dao.SqlDialect;
+
+public class ControlNumberAllocatorTest {
+
+	private DriverManagerDataSource dataSource;
+	private JdbcTemplate jdbcTemplate;
+
+	@Before
+	public void setup() {
+		dataSource = new DriverManagerDataSource("jdbc:h2:mem:control" + System.nanoTime() + ";DB_CLOSE_DELAY=-1",
+				"sa", "");
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("create table control_number_sequence (name varchar(64) primary key, "
+				+ "next_value bigint not null)");
+	}
+
+	private ControlNumberAllocator allocator(int blockSize) {
+		ControlNumberAllocator allocator = new ControlNumberAllocator();
+		allocator.setTransactionManager(new DataSourceTransactionManager(dataSource));
+		allocator.setControlNumberSequenceDao(new ControlNumberSequenceDao(dataSource, SqlDialect.H2));
+		allocator.setBlockSize(blockSize);
+		return allocator;
+	}
+
+	@Test
+	public void nodesNeverShareANumber() throws Exception {
+		ControlNumberAllocator[] nodes = { allocator(50), allocator(50) };
+		Set<Long> seen = ConcurrentHashMap.newKeySet();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<?>> futures = new ArrayList<>();
+		for(int thread = 0; thread < 8; thread++) {
+			ControlNumberAllocator node = nodes[thread % 2];
+			futures.add(executor.submit(() -> {
+				for(int i = 0; i < 500; i++) {
+					assertThat(seen.add(node.getAsLong()), is(true));
+				}
+			}));
+		}
+		for(Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+
+		assertThat(seen.size(), is(4000));
+		assertThat(jdbcTemplate.queryForObject("select next_value from control_number_sequence", Long.class) <= 4101,
+				is(true));
+	}
+
+	@Test
+	public void wrapsAroundAfterNineDigits() {
+		jdbcTemplate.update("insert into control_number_sequence values ('interchange_control_number', ?)",
+				ControlNumberAllocator.MAX_CONTROL_NUMBER - 1);
+		ControlNumberAllocator allocator = allocator(10);
+
+		List<String> numbers = new ArrayList<>();
+		for(int i = 0; i < 4; i++) {
+			numbers.add(allocator.nextControlNumber());
+		}
+
+		assertThat(numbers, contains("999999998", "999999999", "000000001", "000000002"));
+	}
+
+}
@@ -0,0 +1,107 @@
+package com.doradosystems.mis.manager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.doradosystems.mis.dao.OutboxEventDao;
+import com.doradosystems.mis.domain.OutboxEvent;
+
+public class OutboxRelayTest {
+
+	private OutboxRelay relay;
+	private OutboxEventDao outboxEventDao;
+	private List<OutboxEvent> outbox;
+
+	@Before
+	public void setup() {
+		outbox = new ArrayList<>();
+		outboxEventDao = mock(OutboxEventDao.class);
+		when(outboxEventDao.getOldest(anyInt())).thenAnswer(invocation -> {
+			int limit = invocation.getArgument(0);
+			return new ArrayList<>(outbox.subList(0, Math.min(limit, outbox.size())));
+		});
+		when(outboxEventDao.delete(any(long[].class))).thenAnswer(invocation -> {
+			long[] ids = invocation.getArgument(0);
+			for (long id : ids) {
+				outbox.removeIf(event -> event.getId() == id);
+			}
+			return ids.length;
+		});
+		relay = new OutboxRelay();
+		relay.setOutboxEventDao(outboxEventDao);
+		relay.setBatchSize(3);
+		relay.setSendTimeout(1000);
+	}
+
+	private void addEvents(int count) {
+		for (int i = 1; i <= count; i++) {
+			outbox.add(new OutboxEvent((long) i, "records", "1:1:" + i, new byte[] { (byte) i }, null));
+		}
+	}
+
+	@Test
+	public void drainPublishesEveryEventInOrder() throws InterruptedException {
+		addEvents(7);
+		MockProducer<String, byte[]> producer = new MockProducer<>(true, new StringSerializer(),
+				new ByteArraySerializer());
+		relay.setProducer(producer);
+
+		long published = relay.drain();
+
+		assertThat(published, is(7L));
+		assertThat(outbox.isEmpty(), is(true));
+		assertThat(producer.history().stream().map(ProducerRecord::key).collect(Collectors.toList()),
+				contains("1:1:1", "1:1:2", "1:1:3", "1:1:4", "1:1:5", "1:1:6", "1:1:7"));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void failedSendIsKeptForTheNextPass() throws InterruptedException {
+		addEvents(3);
+		Producer<String, byte[]> producer = mock(Producer.class);
+		CompletableFuture<RecordMetadata> failed = new CompletableFuture<>();
+		failed.completeExceptionally(new IllegalStateException("broker unavailable"));
+		when(producer.send(any())).thenReturn(CompletableFuture.completedFuture(null), failed,
+				CompletableFuture.completedFuture(null));
+		relay.setProducer(producer);
+
+		int published = relay.relayBatch();
+
+		assertThat(published, is(2));
+		assertThat(outbox.stream().map(OutboxEvent::getId).collect(Collectors.toList()), contains(2L));
+		assertThat(relay.drain(), is(1L));
+		assertThat(outbox.isEmpty(), is(true));
+	}
+
+	@Test
+	public void emptyOutboxSendsNothing() throws InterruptedException {
+		MockProducer<String, byte[]> producer = new MockProducer<>(true, new StringSerializer(),
+				new ByteArraySerializer());
+		relay.setProducer(producer);
+
+		assertThat(relay.drain(), is(0L));
+		verify(outboxEventDao, never()).delete(any(long[].class));
+	}
+
+}
@@ -0,0 +1,108 @@
+package com.doradosystems.mis.manager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.TransactionStatus;
+
+public class UnitOfWorkTest {
+
+	private List<TransactionStatus> begun;
+	private List<TransactionStatus> committed;
+	private List<TransactionStatus> rolledBack;
+	private AtomicLong clock;
+	private Object savepoint;
+
+	@Before
+	public void setup() {
+		begun = new ArrayList<>();
+		committed = new ArrayList<>();
+		rolledBack = new ArrayList<>();
+		clock = new AtomicLong();
+		savepoint = new Object();
+	}
+
+	private UnitOfWork newUnitOfWork(int commitInterval, long flushInterval) {
+		return new UnitOfWork(() -> {
+			TransactionStatus transaction = mock(TransactionStatus.class);
+			when(transaction.createSavepoint()).thenReturn(savepoint);
+			begun.add(transaction);
+			return transaction;
+		}, committed::add, rolledBack::add, commitInterval, flushInterval, clock::get);
+	}
+
+	@Test
+	public void commitsEveryCommitIntervalOperations() throws Exception {
+		UnitOfWork unitOfWork = newUnitOfWork(3, Long.MAX_VALUE);
+
+		for(int i = 0; i < 7; i++) {
+			unitOfWork.execute(() -> null);
+		}
+		assertThat(committed.size(), is(2));
+
+		unitOfWork.flush();
+		assertThat(begun.size(), is(3));
+		assertThat(committed, is(begun));
+	}
+
+	@Test
+	public void commitsWhenFlushIntervalElapses() throws Exception {
+		UnitOfWork unitOfWork = newUnitOfWork(100, 1000);
+
+		unitOfWork.execute(() -> null);
+		assertThat(committed.size(), is(0));
+
+		clock.addAndGet(1000);
+		unitOfWork.execute(() -> null);
+		assertThat(committed.size(), is(1));
+	}
+
+	@Test
+	public void failedOperationIsRolledBackToItsSavepoint() throws Exception {
+		UnitOfWork unitOfWork = newUnitOfWork(100, Long.MAX_VALUE);
+		unitOfWork.execute(() -> null);
+
+		try {
+			unitOfWork.execute(() -> {
+				throw new IllegalStateException("bad claim");
+			});
+			fail("Expected the operation's exception to be rethrown");
+		} catch (IllegalStateException expected) {
+			// expected
+		}
+		unitOfWork.execute(() -> null);
+		unitOfWork.flush();
+
+		verify(begun.get(0)).rollbackToSavepoint(savepoint);
+		assertThat(begun.size(), is(1));
+		assertThat(committed.size(), is(1));
+		assertThat(rolledBack.size(), is(0));
+	}
+
+	@Test
+	public void abortRollsBackOnlyTheOpenTransaction() throws Exception {
+		UnitOfWork unitOfWork = newUnitOfWork(2, Long.MAX_VALUE);
+		for(int i = 0; i < 3; i++) {
+			unitOfWork.execute(() -> null);
+		}
+
+		unitOfWork.abort();
+
+		assertThat(committed.size(), is(1));
+		assertThat(rolledBack.size(), is(1));
+		assertThat(rolledBack.get(0), is(begun.get(1)));
+		verify(begun.get(0), never()).rollbackToSavepoint(savepoint);
+	}
+
+}
@@ -0,0 +1,65 @@
+package com.doradosystems.mis.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class LongOpenHashSetTest {
+
+	@Test
+	public void addIgnoresDuplicates() {
+		LongOpenHashSet set = new LongOpenHashSet();
+
+		assertThat(set.add(5L), is(true));
+		assertThat(set.add(5L), is(false));
+		assertThat(set.add(0L), is(true));
+		assertThat(set.add(0L), is(false));
+		assertThat(set.size(), is(2));
+	}
+
+	@Test
+	public void behavesLikeHashSetUnderRandomOperations() {
+		Random random = new Random(42);
+		LongOpenHashSet set = new LongOpenHashSet(4);
+		Set<Long> expected = new HashSet<>();
+
+		for(int i = 0; i < 200000; i++) {
+			long value = random.nextInt(5000) - 100;
+			if(random.nextInt(3) == 0) {
+				assertThat(set.remove(value), is(expected.remove(value)));
+			} else {
+				assertThat(set.add(value), is(expected.add(value)));
+			}
+		}
+
+		assertThat(set.size(), is(expected.size()));
+		for(long value = -100; value < 4900; value++) {
+			assertThat(set.contains(value), is(expected.contains(value)));
+		}
+	}
+
+	@Test
+	public void toArrayReturnsAllValues() {
+		LongOpenHashSet set = new LongOpenHashSet();
+		for(long value = 0; value < 100; value++) {
+			set.add(value);
+		}
+
+		long[] values = set.toArray();
+		Arrays.sort(values);
+
+		long[] expected = new long[100];
+		for(int i = 0; i < expected.length; i++) {
+			expected[i] = i;
+		}
+		assertArrayEquals(expected, values);
+	}
+
+}
@@ -0,0 +1,59 @@
+package com.doradosystems.mis.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import org.junit.Test;
+
+public class ScalableBloomFilterTest {
+
+	@Test
+	public void addedValuesAreAlwaysFound() {
+		ScalableBloomFilter filter = new ScalableBloomFilter(1000, 0.01);
+		for (int i = 0; i < 50000; i++) {
+			filter.add("CLAIM" + i);
+		}
+		for (int i = 0; i < 50000; i++) {
+			assertThat(filter.mightContain("CLAIM" + i), is(true));
+		}
+		assertThat(filter.size(), is(50000L));
+		assertThat(filter.getStageCount(), greaterThan(1));
+	}
+
+	@Test
+	public void falsePositiveRateStaysBounded() {
+		ScalableBloomFilter filter = new ScalableBloomFilter(1000, 0.01);
+		for (int i = 0; i < 50000; i++) {
+			filter.add("CLAIM" + i);
+		}
+		int falsePositives = 0;
+		for (int i = 0; i < 100000; i++) {
+			if (filter.mightContain("OTHER" + i)) {
+				falsePositives++;
+			}
+		}
+		// The compound rate approaches, but should not much exceed, twice the initial rate.
+		assertThat(falsePositives, lessThan(2500));
+	}
+
+	@Test
+	public void serializedFilterAnswersTheSame() {
+		ScalableBloomFilter filter = new ScalableBloomFilter(100, 0.01);
+		for (int i = 0; i < 1000; i++) {
+			filter.add("CLAIM" + i);
+		}
+
+		ScalableBloomFilter copy = ScalableBloomFilter.fromByteArray(filter.toByteArray());
+
+		assertThat(copy.size(), is(filter.size()));
+		assertThat(copy.getStageCount(), is(filter.getStageCount()));
+		for (int i = 0; i < 2000; i++) {
+			assertThat(copy.mightContain("CLAIM" + i), is(filter.mightContain("CLAIM" + i)));
+		}
+		copy.add("CLAIM-NEW");
+		assertThat(copy.mightContain("CLAIM-NEW"), is(true));
+	}
+
+}
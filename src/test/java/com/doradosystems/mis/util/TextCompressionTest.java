@@ -0,0 +1,57 @@
+package com.doradosystems.mis.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import org.junit.Test;
+
+public class TextCompressionTest {
+
+	static String claim(int number) {
+		StringBuilder claim = new StringBuilder();
+		claim.append("ISA*00*          *00*          *ZZ*SUBMITTER      *ZZ*RECEIVER       *170101*1200*^*00501*")
+				.append(String.format("%09d", number)).append("*0*P*:~");
+		for(int line = 1; line <= 20; line++) {
+			claim.append("LX*").append(line).append("~SV1*HC:99213*").append(line * 25)
+					.append("*UN*1***1~DTP*472*D8*20170101~REF*6R*").append(number).append('-').append(line)
+					.append("~");
+		}
+		return claim.append("SE*64*0001~GE*1*1~IEA*1*").append(String.format("%09d", number)).append('~')
+				.toString();
+	}
+
+	@Test
+	public void compressedTextRoundTrips() {
+		String text = claim(42) + "é中";
+
+		String encoded = TextCompression.encode(text);
+
+		assertThat(TextCompression.isCompressed(encoded), is(true));
+		assertThat(encoded.length(), lessThan(text.length() / 3));
+		assertThat(TextCompression.decode(encoded), is(text));
+	}
+
+	@Test
+	public void uncompressedValuesReadUnchanged() {
+		String legacy = claim(7);
+
+		assertThat(TextCompression.decode(legacy), sameInstance(legacy));
+		assertThat(TextCompression.decode(null), nullValue());
+	}
+
+	@Test
+	public void shortValuesAreNotCompressed() {
+		String text = "{\"valid\":true}";
+
+		assertThat(TextCompression.encode(text), sameInstance(text));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void corruptValueIsRejected() {
+		TextCompression.decode(TextCompression.MARKER + "AAAA");
+	}
+
+}
@@ -0,0 +1,65 @@
+-- H2 schema used by the load harness and database-backed tests.
+
+create table claim_validation_batch (
+    id bigint auto_increment primary key,
+    client_id bigint not null,
+    filename varchar(255),
+    status varchar(32) not null,
+    run_number bigint not null,
+    global_control_number varchar(32),
+    create_date timestamp default current_timestamp,
+    updated_date timestamp default current_timestamp,
+    priority int default 5,
+    due_date timestamp,
+    not_before_date timestamp
+);
+
+create table claim_validation_record (
+    id bigint auto_increment primary key,
+    batch_id bigint not null,
+    run_number bigint not null,
+    status varchar(32) not null,
+    claim_number varchar(64),
+    record clob,
+    create_date timestamp default current_timestamp,
+    updated_date timestamp default current_timestamp,
+    attempt_count int default 0 not null,
+    next_eligible_date timestamp
+);
+
+create index claim_validation_record_batch_run_status on claim_validation_record(batch_id, run_number, status);
+
+create table claim_validation_response (
+    id bigint auto_increment primary key,
+    batch_id bigint not null,
+    run_number bigint not null,
+    status varchar(32) not null,
+    claim_number varchar(64),
+    response clob,
+    create_date timestamp default current_timestamp,
+    updated_date timestamp default current_timestamp,
+    claim_validation_record_id bigint
+);
+
+create unique index claim_validation_response_record on claim_validation_response(claim_validation_record_id);
+
+create table outbox_event (
+    id bigint auto_increment primary key,
+    topic varchar(255) not null,
+    event_key varchar(255),
+    payload blob,
+    create_date timestamp default current_timestamp
+);
+
+create table claim_validation_result_cache (
+    content_hash varchar(64) primary key,
+    client_id bigint not null,
+    rule_version varchar(32),
+    response clob
+);
+
+create table claim_number_filter (
+    client_id bigint primary key,
+    filter blob,
+    last_record_id bigint not null
+);